@@ -7,12 +7,15 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.widget.TextView;
 
 import com.kircherelectronics.accelerationexplorer.activity.config.FilterConfigActivity;
+import com.kircherelectronics.accelerationexplorer.filter.FilterComparison;
 import com.kircherelectronics.accelerationexplorer.filter.ImuLaCfOrientation;
 import com.kircherelectronics.accelerationexplorer.filter.ImuLaCfQuaternion;
 import com.kircherelectronics.accelerationexplorer.filter.ImuLaCfRotationMatrix;
@@ -22,7 +25,12 @@ import com.kircherelectronics.accelerationexplorer.filter.LowPassFilterLinearAcc
 import com.kircherelectronics.accelerationexplorer.filter.LowPassFilterSmoothing;
 import com.kircherelectronics.accelerationexplorer.filter.MeanFilterSmoothing;
 import com.kircherelectronics.accelerationexplorer.filter.MedianFilterSmoothing;
+import com.kircherelectronics.accelerationexplorer.filter.kalman.KalmanNoiseProfile;
 import com.kircherelectronics.accelerationexplorer.prefs.PrefUtils;
+import com.kircherelectronics.accelerationexplorer.statistics.LatencyMonitor;
+import com.kircherelectronics.accelerationexplorer.view.RenderScheduler;
+
+import java.io.File;
 
 /*
  * Acceleration Explorer
@@ -67,6 +75,8 @@ public abstract class FilterActivity extends Activity implements
     protected boolean imuLaCfQuaternionEnabled;
     protected boolean imuLaKfQuaternionEnabled;
 
+    protected boolean filterComparisonEnabled;
+
     protected volatile boolean dataReady = false;
 
     private int count = 0;
@@ -86,6 +96,12 @@ public abstract class FilterActivity extends Activity implements
 
     protected ImuLinearAccelerationInterface imuLinearAcceleration;
 
+    // Runs every IMU filter alongside the primary one when comparing filters
+    protected FilterComparison filterComparison;
+
+    // Times each stage of the sensor processing path when enabled
+    protected LatencyMonitor latencyMonitor;
+
     protected MeanFilterSmoothing meanFilterAccelSmoothing;
     protected MeanFilterSmoothing meanFilterMagneticSmoothing;
     protected MeanFilterSmoothing meanFilterRotationSmoothing;
@@ -102,6 +118,10 @@ public abstract class FilterActivity extends Activity implements
 
     protected Runnable runable;
 
+    // Child classes that render on vsync instead of polling with runable
+    // create one, it is invalidated by every sensor event.
+    protected RenderScheduler renderScheduler;
+
     // Sensor manager to access the accelerometer sensor
     protected SensorManager sensorManager;
 
@@ -131,6 +151,8 @@ public abstract class FilterActivity extends Activity implements
 
         lpfLinearAcceleration = new LowPassFilterLinearAccel();
 
+        latencyMonitor = new LatencyMonitor();
+
         sensorManager = (SensorManager) this
                 .getSystemService(Context.SENSOR_SERVICE);
 
@@ -143,7 +165,17 @@ public abstract class FilterActivity extends Activity implements
 
         sensorManager.unregisterListener(this);
 
-        handler.removeCallbacks(runable);
+        if (runable != null) {
+            handler.removeCallbacks(runable);
+        }
+
+        if (renderScheduler != null) {
+            renderScheduler.stop();
+        }
+
+        if (filterComparison != null) {
+            filterComparison.stop();
+        }
     }
 
     @Override
@@ -155,7 +187,13 @@ public abstract class FilterActivity extends Activity implements
         getAxisPrefs();
         updateSensorDelay();
 
-        handler.post(runable);
+        if (runable != null) {
+            handler.post(runable);
+        }
+
+        if (renderScheduler != null) {
+            renderScheduler.start();
+        }
     }
 
     @Override
@@ -165,6 +203,8 @@ public abstract class FilterActivity extends Activity implements
 
     @Override
     public synchronized void onSensorChanged(SensorEvent event) {
+        latencyMonitor.onEvent(event.timestamp);
+
         if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER
                 || event.sensor.getType() == Sensor.TYPE_LINEAR_ACCELERATION) {
             calculateSensorFrequency();
@@ -183,6 +223,8 @@ public abstract class FilterActivity extends Activity implements
                 acceleration[2] = -acceleration[2];
             }
 
+            long start = latencyMonitor.start();
+
             if (meanFilterSmoothingEnabled) {
                 acceleration = meanFilterAccelSmoothing
                         .addSamples(acceleration);
@@ -197,6 +239,10 @@ public abstract class FilterActivity extends Activity implements
                 acceleration = lpfAccelSmoothing.addSamples(acceleration);
             }
 
+            latencyMonitor.stop(LatencyMonitor.STAGE_SMOOTHING, start);
+
+            start = latencyMonitor.start();
+
             if (lpfLinearAccelEnabled) {
                 linearAcceleration = lpfLinearAcceleration
                         .addSamples(acceleration);
@@ -206,6 +252,12 @@ public abstract class FilterActivity extends Activity implements
                     || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled) {
                 imuLinearAcceleration.setAcceleration(acceleration);
             }
+
+            latencyMonitor.stop(LatencyMonitor.STAGE_FUSION, start);
+
+            if (filterComparisonEnabled) {
+                filterComparison.setAcceleration(acceleration);
+            }
         }
 
         if (event.sensor.getType() == Sensor.TYPE_LINEAR_ACCELERATION) {
@@ -219,6 +271,8 @@ public abstract class FilterActivity extends Activity implements
                 linearAcceleration[2] = -linearAcceleration[2];
             }
 
+            long start = latencyMonitor.start();
+
             if (meanFilterSmoothingEnabled) {
                 linearAcceleration = meanFilterAccelSmoothing
                         .addSamples(linearAcceleration);
@@ -233,6 +287,8 @@ public abstract class FilterActivity extends Activity implements
                 linearAcceleration = lpfAccelSmoothing
                         .addSamples(linearAcceleration);
             }
+
+            latencyMonitor.stop(LatencyMonitor.STAGE_SMOOTHING, start);
         }
 
         if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
@@ -240,6 +296,8 @@ public abstract class FilterActivity extends Activity implements
             // Get a local copy of the sensor values
             System.arraycopy(event.values, 0, magnetic, 0, event.values.length);
 
+            long start = latencyMonitor.start();
+
             if (meanFilterSmoothingEnabled) {
                 magnetic = meanFilterMagneticSmoothing.addSamples(magnetic);
             }
@@ -252,16 +310,28 @@ public abstract class FilterActivity extends Activity implements
                 magnetic = lpfMagneticSmoothing.addSamples(magnetic);
             }
 
+            latencyMonitor.stop(LatencyMonitor.STAGE_SMOOTHING, start);
+
+            start = latencyMonitor.start();
+
             if (imuLaCfOrienationEnabled || imuLaCfRotationMatrixEnabled
                     || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled) {
                 imuLinearAcceleration.setMagnetic(magnetic);
             }
+
+            latencyMonitor.stop(LatencyMonitor.STAGE_FUSION, start);
+
+            if (filterComparisonEnabled) {
+                filterComparison.setMagnetic(magnetic);
+            }
         }
 
         if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
             // Get a local copy of the sensor values
             System.arraycopy(event.values, 0, rotation, 0, event.values.length);
 
+            long start = latencyMonitor.start();
+
             if (meanFilterSmoothingEnabled) {
                 rotation = meanFilterRotationSmoothing.addSamples(rotation);
             }
@@ -274,13 +344,32 @@ public abstract class FilterActivity extends Activity implements
                 rotation = lpfRotationSmoothing.addSamples(rotation);
             }
 
+            latencyMonitor.stop(LatencyMonitor.STAGE_SMOOTHING, start);
+
+            start = latencyMonitor.start();
+
+            long gyroscopeTime = System.nanoTime();
+
             if (imuLaCfOrienationEnabled || imuLaCfRotationMatrixEnabled
                     || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled) {
-                imuLinearAcceleration.setGyroscope(rotation, System.nanoTime());
+                imuLinearAcceleration.setGyroscope(rotation, gyroscopeTime);
 
                 linearAcceleration = imuLinearAcceleration
                         .getLinearAcceleration();
             }
+
+            latencyMonitor.stop(LatencyMonitor.STAGE_FUSION, start);
+
+            // Handed over after the primary filter has run so the comparison
+            // can't delay it.
+            if (filterComparisonEnabled) {
+                filterComparison.setGyroscope(rotation, gyroscopeTime,
+                        linearAcceleration);
+            }
+        }
+
+        if (renderScheduler != null) {
+            renderScheduler.invalidate();
         }
     }
 
@@ -333,10 +422,61 @@ public abstract class FilterActivity extends Activity implements
             imuLinearAcceleration
                     .setFilterCoefficient(getPrefImuLaCfQuaternionCoeff());
         } else if (imuLaKfQuaternionEnabled) {
-            imuLinearAcceleration = new ImuLaKfQuaternion();
+            imuLinearAcceleration = new ImuLaKfQuaternion(getKalmanNoiseProfile());
         }
 
         androidLinearAccelEnabled = getPrefAndroidLinearAccelEnabled();
+
+        latencyMonitor.reset();
+        latencyMonitor.setEnabled(getPrefLatencyMonitorEnabled());
+
+        filterComparisonEnabled = getPrefFilterComparisonEnabled()
+                && !androidLinearAccelEnabled;
+
+        if (filterComparisonEnabled) {
+            initFilterComparison();
+        }
+    }
+
+    /**
+     * Create a fresh instance of every IMU filter, with the same coefficients
+     * as the primary filter would use, and start comparing them.
+     */
+    private void initFilterComparison() {
+        ImuLinearAccelerationInterface[] filters = new ImuLinearAccelerationInterface[FilterComparison.FILTERS];
+
+        filters[FilterComparison.FILTER_CF_ORIENTATION] = new ImuLaCfOrientation();
+        filters[FilterComparison.FILTER_CF_ORIENTATION]
+                .setFilterCoefficient(getPrefImuLaCfOrienationCoeff());
+
+        filters[FilterComparison.FILTER_CF_ROTATION_MATRIX] = new ImuLaCfRotationMatrix();
+        filters[FilterComparison.FILTER_CF_ROTATION_MATRIX]
+                .setFilterCoefficient(getPrefImuLaCfRotationMatrixCoeff());
+
+        filters[FilterComparison.FILTER_CF_QUATERNION] = new ImuLaCfQuaternion();
+        filters[FilterComparison.FILTER_CF_QUATERNION]
+                .setFilterCoefficient(getPrefImuLaCfQuaternionCoeff());
+
+        filters[FilterComparison.FILTER_KF_QUATERNION] = new ImuLaKfQuaternion(
+                getKalmanNoiseProfile());
+
+        filterComparison = new FilterComparison(filters);
+        filterComparison.start();
+    }
+
+    /**
+     * Load the Kalman filter noise profile of this device. Profiles are
+     * written by the KalmanNoiseTuner, devices without one use the defaults.
+     *
+     * @return The noise profile.
+     */
+    private KalmanNoiseProfile getKalmanNoiseProfile() {
+        File dir = new File(Environment.getExternalStorageDirectory()
+                + File.separator + "AccelerationExplorer" + File.separator
+                + "Profiles");
+
+        return KalmanNoiseProfile.load(KalmanNoiseProfile.getProfileFile(dir,
+                Build.MODEL));
     }
 
     private boolean getPrefAndroidLinearAccelEnabled() {
@@ -347,6 +487,22 @@ public abstract class FilterActivity extends Activity implements
                 FilterConfigActivity.ANDROID_LINEAR_ACCEL_ENABLED_KEY, false);
     }
 
+    private boolean getPrefLatencyMonitorEnabled() {
+        SharedPreferences prefs = PreferenceManager
+                .getDefaultSharedPreferences(getApplicationContext());
+
+        return prefs.getBoolean(
+                FilterConfigActivity.LATENCY_MONITOR_ENABLED_KEY, false);
+    }
+
+    private boolean getPrefFilterComparisonEnabled() {
+        SharedPreferences prefs = PreferenceManager
+                .getDefaultSharedPreferences(getApplicationContext());
+
+        return prefs.getBoolean(
+                FilterConfigActivity.FILTER_COMPARISON_ENABLED_KEY, false);
+    }
+
     private boolean getPrefImuLaCfOrientationEnabled() {
         SharedPreferences prefs = PreferenceManager
                 .getDefaultSharedPreferences(getApplicationContext());
@@ -514,7 +670,8 @@ public abstract class FilterActivity extends Activity implements
                 }
 
                 if ((imuLaCfOrienationEnabled || imuLaCfRotationMatrixEnabled
-                        || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled)
+                        || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled
+                        || filterComparisonEnabled)
                         && !androidLinearAccelEnabled) {
 
                     // Register for sensor updates.
@@ -546,7 +703,8 @@ public abstract class FilterActivity extends Activity implements
                 }
 
                 if ((imuLaCfOrienationEnabled || imuLaCfRotationMatrixEnabled
-                        || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled)
+                        || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled
+                        || filterComparisonEnabled)
                         && !androidLinearAccelEnabled) {
 
                     // Register for sensor updates.
@@ -578,7 +736,8 @@ public abstract class FilterActivity extends Activity implements
                 }
 
                 if ((imuLaCfOrienationEnabled || imuLaCfRotationMatrixEnabled
-                        || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled)
+                        || imuLaCfQuaternionEnabled || imuLaKfQuaternionEnabled
+                        || filterComparisonEnabled)
                         && !androidLinearAccelEnabled) {
 
                     // Register for sensor updates.
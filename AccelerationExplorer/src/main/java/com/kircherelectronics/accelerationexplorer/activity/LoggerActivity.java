@@ -1,11 +1,17 @@
 package com.kircherelectronics.accelerationexplorer.activity;
 
+import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.graphics.Typeface;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.preference.PreferenceManager;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -18,8 +24,13 @@ import android.widget.Toast;
 import com.androidplot.xy.XYPlot;
 import com.kircherelectronics.accelerationexplorer.R;
 import com.kircherelectronics.accelerationexplorer.activity.config.FilterConfigActivity;
+import com.kircherelectronics.accelerationexplorer.filter.ImuLaKfQuaternion;
+import com.kircherelectronics.accelerationexplorer.filter.kalman.RotationRecording;
 import com.kircherelectronics.accelerationexplorer.plot.DynamicLinePlot;
 import com.kircherelectronics.accelerationexplorer.plot.PlotColor;
+import com.kircherelectronics.accelerationexplorer.prefs.PrefUtils;
+import com.kircherelectronics.accelerationexplorer.statistics.LatencyMonitor;
+import com.kircherelectronics.accelerationexplorer.view.RenderScheduler;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -97,6 +108,9 @@ public class LoggerActivity extends FilterActivity implements Runnable {
     // Output log
     private String log;
 
+    // The Kalman filter inputs recorded alongside the log for offline tuning
+    private RotationRecording rotationRecording;
+
     private Thread thread;
 
     @Override
@@ -118,15 +132,21 @@ public class LoggerActivity extends FilterActivity implements Runnable {
         initPlots();
         initStartButton();
 
-        runable = new Runnable() {
+        // Redraw on vsync, only when new sensor data has arrived
+        renderScheduler = new RenderScheduler(new RenderScheduler.Renderer() {
             @Override
-            public void run() {
-                handler.postDelayed(this, 10);
-
+            public void onRender(long frameTimeNanos) {
                 updateAccelerationText();
                 plotData();
             }
-        };
+        });
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        updatePlotWindow();
     }
 
     @Override
@@ -135,6 +155,17 @@ public class LoggerActivity extends FilterActivity implements Runnable {
         stopDataLog();
     }
 
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        super.onSensorChanged(event);
+
+        // Every sample is plotted, independent of the display rate.
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER
+                || event.sensor.getType() == Sensor.TYPE_LINEAR_ACCELERATION) {
+            plotSample();
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
@@ -154,6 +185,16 @@ public class LoggerActivity extends FilterActivity implements Runnable {
                 startIntentSensorSettings();
                 return true;
 
+            // Show the latency of each processing stage
+            case R.id.action_latency:
+                showLatencyDialog();
+                return true;
+
+            // Show the filter comparison
+            case R.id.action_compare:
+                showFilterComparisonDialog();
+                return true;
+
             // Start the vector activity
             case R.id.action_help:
                 showHelpDialog();
@@ -225,6 +266,22 @@ public class LoggerActivity extends FilterActivity implements Runnable {
         addAccelerationPlot();
     }
 
+    /**
+     * Resize the plot window if the preference changed. Windows wider than
+     * the plot has pixels are decimated by the plot.
+     */
+    private void updatePlotWindow() {
+        SharedPreferences prefs = PreferenceManager
+                .getDefaultSharedPreferences(this);
+
+        int windowSize = Integer.parseInt(prefs.getString(
+                PrefUtils.PLOT_WINDOW_PREF, PrefUtils.PLOT_WINDOW_DEFAULT));
+
+        if (windowSize != dynamicPlot.getWindowSize()) {
+            dynamicPlot.setWindowSize(windowSize);
+        }
+    }
+
     private void initStartButton() {
         final Button button = (Button) findViewById(R.id.button_start);
 
@@ -253,6 +310,8 @@ public class LoggerActivity extends FilterActivity implements Runnable {
      */
     private void logData() {
         if (logData && dataReady) {
+            long start = latencyMonitor.start();
+
             if (generation == 0) {
                 logTime = System.currentTimeMillis();
             }
@@ -280,13 +339,15 @@ public class LoggerActivity extends FilterActivity implements Runnable {
             log += System.getProperty("line.separator");
 
             dataReady = false;
+
+            latencyMonitor.stop(LatencyMonitor.STAGE_LOGGING, start);
         }
     }
 
     /**
-     * Plot the output data in the UI.
+     * Append the latest output to the plot. Never blocks on drawing.
      */
-    private void plotData() {
+    private void plotSample() {
         if (!lpfLinearAccelEnabled && !imuLaCfOrienationEnabled
                 && !imuLaCfRotationMatrixEnabled && !imuLaCfQuaternionEnabled
                 && !androidLinearAccelEnabled && !imuLaKfQuaternionEnabled) {
@@ -298,8 +359,18 @@ public class LoggerActivity extends FilterActivity implements Runnable {
             dynamicPlot.setData(linearAcceleration[1], PLOT_ACCEL_Y_AXIS_KEY);
             dynamicPlot.setData(linearAcceleration[2], PLOT_ACCEL_Z_AXIS_KEY);
         }
+    }
+
+    /**
+     * Plot the output data in the UI.
+     */
+    private void plotData() {
+        long start = latencyMonitor.start();
 
         dynamicPlot.draw();
+
+        latencyMonitor.stop(LatencyMonitor.STAGE_PLOTTING, start);
+        latencyMonitor.onPlotted();
     }
 
     /**
@@ -325,6 +396,51 @@ public class LoggerActivity extends FilterActivity implements Runnable {
         helpDialog.show();
     }
 
+    /**
+     * Show the latency percentiles and throughput of each stage of the sensor
+     * processing path.
+     */
+    private void showLatencyDialog() {
+        if (!latencyMonitor.isEnabled()) {
+            Toast.makeText(this,
+                    "Enable Latency Instrumentation in the settings first",
+                    Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        TextView dump = new TextView(this);
+        dump.setTypeface(Typeface.MONOSPACE);
+        dump.setHorizontallyScrolling(true);
+        dump.setPadding(16, 16, 16, 16);
+        dump.setText(latencyMonitor.dump());
+
+        new AlertDialog.Builder(this).setTitle(R.string.action_latency)
+                .setView(dump).setPositiveButton(R.string.done_label, null)
+                .show();
+    }
+
+    /**
+     * Show the latency, CPU time and deviation of every IMU filter side by
+     * side.
+     */
+    private void showFilterComparisonDialog() {
+        if (!filterComparisonEnabled || filterComparison == null) {
+            Toast.makeText(this, "Enable Filter Comparison in the settings first",
+                    Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        TextView report = new TextView(this);
+        report.setTypeface(Typeface.MONOSPACE);
+        report.setHorizontallyScrolling(true);
+        report.setPadding(16, 16, 16, 16);
+        report.setText(filterComparison.getReport());
+
+        new AlertDialog.Builder(this).setTitle(R.string.action_compare)
+                .setView(report).setPositiveButton(R.string.done_label, null)
+                .show();
+    }
+
     /**
      * Show a settings dialog.
      */
@@ -351,6 +467,18 @@ public class LoggerActivity extends FilterActivity implements Runnable {
 
             log = headers;
             log += System.getProperty("line.separator");
+
+            if (imuLaKfQuaternionEnabled) {
+                rotationRecording = new RotationRecording();
+                ((ImuLaKfQuaternion) imuLinearAcceleration)
+                        .setRecording(rotationRecording);
+
+                Toast.makeText(this, "Recording the first "
+                        + rotationRecording.getCapacity()
+                        + " Kalman filter steps (about 5 min)",
+                        Toast.LENGTH_SHORT).show();
+            }
+
             logData = true;
         }
     }
@@ -360,6 +488,14 @@ public class LoggerActivity extends FilterActivity implements Runnable {
             writeLogToFile();
         }
 
+        if (rotationRecording != null) {
+            if (imuLinearAcceleration instanceof ImuLaKfQuaternion) {
+                ((ImuLaKfQuaternion) imuLinearAcceleration).setRecording(null);
+            }
+
+            rotationRecording = null;
+        }
+
         if (logData && thread != null) {
             logData = false;
 
@@ -395,6 +531,17 @@ public class LoggerActivity extends FilterActivity implements Runnable {
             fos.write(data);
             fos.flush();
             fos.close();
+
+            if (rotationRecording != null) {
+                rotationRecording.write(new File(dir, filename.replace(".csv",
+                        "-kalman.csv")));
+
+                if (rotationRecording.isFull()) {
+                    Toast.makeText(this, "Kalman recording stopped at "
+                            + rotationRecording.getCapacity() + " steps",
+                            Toast.LENGTH_SHORT).show();
+                }
+            }
             Toast.makeText(this, "Log Saved", Toast.LENGTH_SHORT).show();
 
         } catch (FileNotFoundException e) {
@@ -1,24 +1,33 @@
 package com.kircherelectronics.accelerationexplorer.activity;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.graphics.Color;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.util.TypedValue;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.Window;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import com.androidplot.xy.BoundaryMode;
+import com.androidplot.xy.LineAndPointFormatter;
+import com.androidplot.xy.PointLabelFormatter;
+import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.XYPlot;
 import com.kircherelectronics.accelerationexplorer.R;
 import com.kircherelectronics.accelerationexplorer.activity.config.NoiseConfigActivity;
@@ -26,9 +35,14 @@ import com.kircherelectronics.accelerationexplorer.filter.LowPassFilterSmoothing
 import com.kircherelectronics.accelerationexplorer.filter.MeanFilterSmoothing;
 import com.kircherelectronics.accelerationexplorer.filter.MedianFilterSmoothing;
 import com.kircherelectronics.accelerationexplorer.plot.DynamicBarPlot;
+import com.kircherelectronics.accelerationexplorer.statistics.DownsampledHistory;
+import com.kircherelectronics.accelerationexplorer.statistics.NoiseAnalyzer;
 
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /*
  * Acceleration Explorer
  * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
@@ -51,7 +65,9 @@ import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
  * A class intended to measure the noise of the sensor in terms
  * root-mean-squared (RMS). Effectively, the average deviation from the mean of
  * the sensor outputs. Multiple smoothing filters are applied simultaneously to
- * the raw sensor output and can be compared via a bar chart.
+ * the raw sensor output and can be compared via a bar chart. The noise density
+ * of each axis of the raw sensor output is estimated from a Welch averaged
+ * power spectral density on a worker thread and plotted on a second bar chart.
  *
  * @author Kaleb
  */
@@ -61,6 +77,9 @@ public class NoiseActivity extends Activity implements SensorEventListener {
     // Only noise below this threshold will be plotted
     private final static float MAX_NOISE_THRESHOLD = 0.1f;
 
+    // Only noise densities below this threshold will be plotted
+    private final static float MAX_NOISE_DENSITY_THRESHOLD = 0.01f;
+
     // Plot keys for the noise bar plot
     private final static int BAR_PLOT_ACCEL_KEY = 0;
     private final static int BAR_PLOT_LPF_KEY = 1;
@@ -69,6 +88,13 @@ public class NoiseActivity extends Activity implements SensorEventListener {
 
     public static int STD_DEV_SAMPLE_WINDOW = 20;
 
+    // The most points the noise history plot shows
+    private final static int HISTORY_POINTS = 120;
+
+    private final static String[] HISTORY_TIER_LABELS = new String[]{
+            "Seconds", "Seconds (1 s Buckets)", "Seconds (10 s Buckets)",
+            "Seconds (1 min Buckets)"};
+
     // Outputs for the acceleration and LPFs
     private float[] acceleration = new float[3];
     private float[] lpfOutput = new float[3];
@@ -83,6 +109,23 @@ public class NoiseActivity extends Activity implements SensorEventListener {
 
     private DynamicBarPlot barPlot;
 
+    // Noise density bar plot, fed by the noise analyzer
+    private DynamicBarPlot densityPlot;
+
+    // Calculates the power spectral density and Allan deviation of the raw
+    // acceleration on its own thread
+    private NoiseAnalyzer noiseAnalyzer;
+
+    private Thread analysisThread;
+
+    private double[] noiseDensity = new double[NoiseAnalyzer.AXES];
+
+    // The magnitude of the raw acceleration at the plot rate for the whole
+    // session. Each bucket's standard deviation is the noise over its time.
+    private DownsampledHistory noiseHistory;
+
+    private DownsampledHistory.Series historySeries;
+
     // Handler for the UI plots so everything plots smoothly
     private Handler handler;
 
@@ -119,6 +162,19 @@ public class NoiseActivity extends Activity implements SensorEventListener {
 
         barPlot = new DynamicBarPlot(noiseLevelsPlot, "Sensor Noise", this);
 
+        XYPlot noiseDensityPlot = (XYPlot) findViewById(R.id.plot_noise_density);
+        noiseDensityPlot.setTitle("Noise Density");
+
+        densityPlot = new DynamicBarPlot(noiseDensityPlot, "Noise Density",
+                new String[]{"X", "Y", "Z"}, this);
+        densityPlot.setRangeBoundaries(0, MAX_NOISE_DENSITY_THRESHOLD, .002);
+        densityPlot.setRangeLabel("m/s^2/sqrt(Hz)");
+
+        noiseAnalyzer = new NoiseAnalyzer();
+
+        noiseHistory = new DownsampledHistory();
+        historySeries = new DownsampledHistory.Series(HISTORY_POINTS);
+
         sensorManager = (SensorManager) this
                 .getSystemService(Context.SENSOR_SERVICE);
 
@@ -136,6 +192,7 @@ public class NoiseActivity extends Activity implements SensorEventListener {
                 handler.postDelayed(this, 100);
 
                 updateBarPlot();
+                updateDensityPlot();
                 updateAccelerationText();
             }
         };
@@ -165,6 +222,13 @@ public class NoiseActivity extends Activity implements SensorEventListener {
 
                 return true;
 
+            // Show the noise over the session
+            case R.id.action_history:
+
+                showHistoryDialog();
+
+                return true;
+
             // Log the data
             case R.id.menu_settings_help:
 
@@ -184,12 +248,41 @@ public class NoiseActivity extends Activity implements SensorEventListener {
         sensorManager.unregisterListener(this);
 
         handler.removeCallbacks(runable);
+
+        if (analysisThread != null) {
+            analysisThread.interrupt();
+
+            // The worker may be in the middle of a window. Wait for it, so
+            // onResume() can reset the analyzer safely. An analysis takes a
+            // few milliseconds and the interrupt ends the sleep between them.
+            boolean interrupted = false;
+
+            while (analysisThread.isAlive()) {
+                try {
+                    analysisThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            analysisThread = null;
+        }
     }
 
     @Override
     public void onResume() {
         super.onResume();
 
+        noiseAnalyzer.reset();
+        noiseHistory.reset();
+
+        analysisThread = new Thread(noiseAnalyzer, "NoiseAnalyzer");
+        analysisThread.start();
+
         sensorManager.registerListener(this,
                 sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
                 SensorManager.SENSOR_DELAY_FASTEST);
@@ -209,6 +302,8 @@ public class NoiseActivity extends Activity implements SensorEventListener {
         // Get a local copy of the sensor values
         System.arraycopy(event.values, 0, acceleration, 0, event.values.length);
 
+        noiseAnalyzer.addSample(acceleration, event.timestamp);
+
         lpfOutput = lpf.addSamples(acceleration);
 
         meanFilterOutput = meanFilter.addSamples(acceleration);
@@ -280,14 +375,61 @@ public class NoiseActivity extends Activity implements SensorEventListener {
         helpDialog.show();
     }
 
+    /**
+     * Plot the noise of the raw acceleration over the session, one point per
+     * bucket of the finest history tier of at least a second that covers the
+     * session.
+     */
+    private void showHistoryDialog() {
+        long start = noiseHistory.getOldestTime();
+
+        if (start == Long.MAX_VALUE) {
+            Toast.makeText(this, "No history yet", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        noiseHistory.query(start, SystemClock.elapsedRealtimeNanos() + 1,
+                DownsampledHistory.TIER_SECOND, historySeries);
+
+        List<Number> seconds = new ArrayList<Number>(historySeries.size);
+        List<Number> noise = new ArrayList<Number>(historySeries.size);
+
+        for (int i = 0; i < historySeries.size; i++) {
+            seconds.add((historySeries.time[i] - start) / 1e9);
+            noise.add(historySeries.stdDev[i]);
+        }
+
+        XYPlot plot = new XYPlot(this, "Noise History");
+        plot.setRangeBoundaries(0, MAX_NOISE_THRESHOLD, BoundaryMode.AUTO);
+        plot.setRangeLabel("m/s^2");
+        plot.setDomainLabel(HISTORY_TIER_LABELS[historySeries.tier]);
+        plot.setMinimumHeight((int) TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, 250, getResources().getDisplayMetrics()));
+
+        plot.addSeries(new SimpleXYSeries(seconds, noise, "Std Dev"),
+                new LineAndPointFormatter(Color.rgb(0, 153, 204), Color.rgb(0,
+                        153, 204), Color.TRANSPARENT, new PointLabelFormatter(
+                        Color.TRANSPARENT)));
+
+        new AlertDialog.Builder(this).setTitle(R.string.action_history)
+                .setView(plot).setPositiveButton(R.string.done_label, null)
+                .show();
+    }
+
     /**
      * Update the bar plot.
      */
     private void updateBarPlot() {
         Number[] seriesNumbers = new Number[4];
 
-        stdDevMaginitudeAccel.addValue(Math.sqrt(Math.pow(acceleration[0], 2)
-                + Math.pow(acceleration[1], 2) + Math.pow(acceleration[2], 2)));
+        double magnitude = Math.sqrt(Math.pow(acceleration[0], 2)
+                + Math.pow(acceleration[1], 2) + Math.pow(acceleration[2], 2));
+
+        stdDevMaginitudeAccel.addValue(magnitude);
+
+        // Fed at the plot rate on the UI thread, which also queries it, so
+        // the sensor thread never waits for it.
+        noiseHistory.addSample(SystemClock.elapsedRealtimeNanos(), magnitude);
 
         double var = stdDevMaginitudeAccel.getStandardDeviation();
 
@@ -336,6 +478,26 @@ public class NoiseActivity extends Activity implements SensorEventListener {
         barPlot.onDataAvailable(seriesNumbers);
     }
 
+    /**
+     * Update the noise density bar plot with the latest analysis.
+     */
+    private void updateDensityPlot() {
+        if (!noiseAnalyzer.isResultAvailable()) {
+            return;
+        }
+
+        noiseAnalyzer.getNoiseDensity(noiseDensity);
+
+        Number[] seriesNumbers = new Number[NoiseAnalyzer.AXES];
+
+        for (int i = 0; i < NoiseAnalyzer.AXES; i++) {
+            seriesNumbers[i] = Math.min(noiseDensity[i],
+                    MAX_NOISE_DENSITY_THRESHOLD);
+        }
+
+        densityPlot.onDataAvailable(seriesNumbers);
+    }
+
     private void updateAccelerationText() {
         // Update the acceleration data
         textViewXAxis.setText(String.format("%.2f", acceleration[0]));
@@ -2,16 +2,20 @@ package com.kircherelectronics.accelerationexplorer.activity;
 
 import android.app.Dialog;
 import android.content.Intent;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.View;
 import android.view.Window;
 import android.widget.TextView;
 
 import com.kircherelectronics.accelerationexplorer.R;
 import com.kircherelectronics.accelerationexplorer.activity.config.FilterConfigActivity;
 import com.kircherelectronics.accelerationexplorer.view.AccelerationVectorView;
+import com.kircherelectronics.accelerationexplorer.view.AttitudeView;
 
 /*
  * Acceleration Explorer
@@ -39,6 +43,11 @@ import com.kircherelectronics.accelerationexplorer.view.AccelerationVectorView;
 public class VectorActivity extends FilterActivity {
     private AccelerationVectorView view;
 
+    // Renders the attitude and acceleration in 3D on its own thread
+    private AttitudeView attitudeView;
+
+    private volatile boolean attitudeEnabled = false;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -51,6 +60,7 @@ public class VectorActivity extends FilterActivity {
         textViewHzFrequency = (TextView) findViewById(R.id.value_hz_frequency);
 
         view = (AccelerationVectorView) findViewById(R.id.vector_acceleration);
+        attitudeView = (AttitudeView) findViewById(R.id.vector_attitude);
 
         runable = new Runnable() {
             @Override
@@ -63,6 +73,29 @@ public class VectorActivity extends FilterActivity {
         };
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+
+        attitudeView.onPause();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        attitudeView.onResume();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        super.onSensorChanged(event);
+
+        if (attitudeEnabled) {
+            updateAttitude(event);
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
@@ -83,6 +116,12 @@ public class VectorActivity extends FilterActivity {
                 startActivity(intent);
                 return true;
 
+            // Switch between the 2D vector and the 3D attitude
+            case R.id.action_attitude:
+                item.setChecked(!item.isChecked());
+                setAttitudeEnabled(item.isChecked());
+                return true;
+
             // Log the data
             case R.id.menu_settings_help:
                 showHelpDialog();
@@ -115,4 +154,41 @@ public class VectorActivity extends FilterActivity {
             view.updatePoint(linearAcceleration[0], linearAcceleration[1]);
         }
     }
+
+    private void setAttitudeEnabled(boolean enabled) {
+        attitudeEnabled = enabled;
+
+        view.setVisibility(enabled ? View.GONE : View.VISIBLE);
+        attitudeView.setVisibility(enabled ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Hand the latest attitude and acceleration to the 3D view. Its renderer
+     * picks them up on the render thread.
+     *
+     * @param event The sensor event that was just processed.
+     */
+    private void updateAttitude(SensorEvent event) {
+        int type = event.sensor.getType();
+
+        if (type == Sensor.TYPE_MAGNETIC_FIELD) {
+            return;
+        }
+
+        boolean imuEnabled = imuLaCfOrienationEnabled
+                || imuLaCfRotationMatrixEnabled || imuLaCfQuaternionEnabled
+                || imuLaKfQuaternionEnabled;
+
+        boolean linearEnabled = imuEnabled || lpfLinearAccelEnabled
+                || androidLinearAccelEnabled;
+
+        float[] vector = linearEnabled ? linearAcceleration : acceleration;
+
+        if (imuEnabled) {
+            attitudeView.updateAttitude(imuLinearAcceleration.getOrientation(),
+                    vector, event.timestamp);
+        } else {
+            attitudeView.updateAttitude(acceleration, event.timestamp);
+        }
+    }
 }
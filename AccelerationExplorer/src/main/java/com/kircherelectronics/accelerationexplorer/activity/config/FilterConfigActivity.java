@@ -69,6 +69,10 @@ public class FilterConfigActivity extends PreferenceActivity implements
 
     public static final String IMULAKF_QUATERNION_ENABLED_KEY = "imulakf_quaternion_enabled_preference";
 
+    public static final String FILTER_COMPARISON_ENABLED_KEY = "filter_comparison_enabled_preference";
+
+    public static final String LATENCY_MONITOR_ENABLED_KEY = "latency_monitor_enabled_preference";
+
     private SwitchPreference spLpfLinearAccel;
     private SwitchPreference spAndroidLinearAccel;
 
@@ -0,0 +1,635 @@
+package com.kircherelectronics.accelerationexplorer.filter;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import android.os.Debug;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs all of the IMU linear acceleration filters on the same sensor stream so
+ * they can be compared side by side. For each filter the wall time and thread
+ * CPU time spent per update are measured, along with the deviation of its
+ * linear acceleration from the primary filter the activity displays.
+ * <p>
+ * The filters are split between a small number of worker threads, each of
+ * which runs its filters sequentially. A single worker is enough when the
+ * filters are cheap. The sensor thread only copies each event into a
+ * preallocated ring buffer per worker and never blocks or allocates, so the
+ * comparison does not delay the primary filter. If a worker falls behind far
+ * enough to fill its ring, new events are dropped and counted rather than
+ * waited on. An idle worker parks until the sensor thread unparks it with the
+ * next event, so it does not wake up while there is nothing to do.
+ * <p>
+ * Each worker accumulates the statistics of its filters privately and
+ * publishes an immutable Stats snapshot every PUBLISH_NANOS, which the UI
+ * thread reads without locking.
+ */
+public class FilterComparison
+{
+	public static final int FILTERS = 4;
+
+	public static final int FILTER_CF_ORIENTATION = 0;
+	public static final int FILTER_CF_ROTATION_MATRIX = 1;
+	public static final int FILTER_CF_QUATERNION = 2;
+	public static final int FILTER_KF_QUATERNION = 3;
+
+	private static final String[] NAMES =
+	{ "CF Orientation", "CF Rotation Matrix", "CF Quaternion", "KF Quaternion" };
+
+	private static final int TYPE_ACCELERATION = 0;
+	private static final int TYPE_MAGNETIC = 1;
+	private static final int TYPE_GYROSCOPE = 2;
+
+	// Events buffered per worker, a power of two
+	private static final int CAPACITY = 256;
+	private static final int MASK = CAPACITY - 1;
+
+	// How often a busy worker publishes its statistics
+	private static final long PUBLISH_NANOS = 100000000;
+
+	private final ImuLinearAccelerationInterface[] filters;
+	private final Worker[] workers;
+	private final AtomicReferenceArray<Stats> stats;
+
+	private Thread[] threads;
+
+	/**
+	 * Create a comparison with a worker per two filters on multi-core devices
+	 * and a single worker otherwise.
+	 *
+	 * @param filters
+	 *            the filters, indexed by the FILTER_ constants.
+	 */
+	public FilterComparison(ImuLinearAccelerationInterface[] filters)
+	{
+		this(filters, Runtime.getRuntime().availableProcessors() > 2 ? 2 : 1);
+	}
+
+	/**
+	 * Create a comparison.
+	 *
+	 * @param filters
+	 *            the filters, indexed by the FILTER_ constants.
+	 * @param workerCount
+	 *            the number of worker threads, the filters are assigned to
+	 *            them round robin.
+	 */
+	public FilterComparison(ImuLinearAccelerationInterface[] filters,
+			int workerCount)
+	{
+		if (filters.length != FILTERS)
+		{
+			throw new IllegalArgumentException("Expected " + FILTERS
+					+ " filters, got " + filters.length);
+		}
+
+		this.filters = filters;
+
+		workerCount = Math.max(1, Math.min(FILTERS, workerCount));
+
+		stats = new AtomicReferenceArray<Stats>(FILTERS);
+
+		for (int i = 0; i < FILTERS; i++)
+		{
+			stats.set(i, Stats.EMPTY);
+		}
+
+		workers = new Worker[workerCount];
+
+		for (int w = 0; w < workerCount; w++)
+		{
+			int count = 0;
+
+			for (int i = w; i < FILTERS; i += workerCount)
+			{
+				count++;
+			}
+
+			int[] assigned = new int[count];
+
+			for (int i = w, j = 0; i < FILTERS; i += workerCount, j++)
+			{
+				assigned[j] = i;
+			}
+
+			workers[w] = new Worker(assigned);
+		}
+	}
+
+	/**
+	 * Start the worker threads.
+	 */
+	public synchronized void start()
+	{
+		if (threads != null)
+		{
+			return;
+		}
+
+		threads = new Thread[workers.length];
+
+		for (int w = 0; w < workers.length; w++)
+		{
+			threads[w] = new Thread(workers[w], "FilterComparison-" + w);
+			workers[w].thread = threads[w];
+			threads[w].start();
+		}
+	}
+
+	/**
+	 * Stop the worker threads. Events still buffered are discarded.
+	 */
+	public synchronized void stop()
+	{
+		if (threads == null)
+		{
+			return;
+		}
+
+		for (Thread thread : threads)
+		{
+			thread.interrupt();
+		}
+
+		threads = null;
+	}
+
+	/**
+	 * Hand an acceleration event to the comparison. Only the sensor thread
+	 * should call this.
+	 *
+	 * @param acceleration
+	 *            the acceleration.
+	 */
+	public void setAcceleration(float[] acceleration)
+	{
+		offer(TYPE_ACCELERATION, acceleration, null, 0);
+	}
+
+	/**
+	 * Hand a magnetic field event to the comparison. Only the sensor thread
+	 * should call this.
+	 *
+	 * @param magnetic
+	 *            the magnetic field.
+	 */
+	public void setMagnetic(float[] magnetic)
+	{
+		offer(TYPE_MAGNETIC, magnetic, null, 0);
+	}
+
+	/**
+	 * Hand a gyroscope event to the comparison. Only the sensor thread should
+	 * call this.
+	 *
+	 * @param gyroscope
+	 *            the rotation.
+	 * @param timeStamp
+	 *            the time stamp the primary filter was given, so every
+	 *            filter integrates over the same interval.
+	 * @param reference
+	 *            the linear acceleration of the primary filter for this
+	 *            event, the filters' deviation is measured against it.
+	 */
+	public void setGyroscope(float[] gyroscope, long timeStamp,
+			float[] reference)
+	{
+		offer(TYPE_GYROSCOPE, gyroscope, reference, timeStamp);
+	}
+
+	/**
+	 * Get the display name of a filter.
+	 *
+	 * @param filter
+	 *            the filter index.
+	 * @return the name.
+	 */
+	public static String getName(int filter)
+	{
+		return NAMES[filter];
+	}
+
+	/**
+	 * Get the latest snapshot of the statistics of a filter.
+	 *
+	 * @param filter
+	 *            the filter index.
+	 * @return the snapshot.
+	 */
+	public Stats getStats(int filter)
+	{
+		return stats.get(filter);
+	}
+
+	/**
+	 * Format the statistics of every filter as a table, one filter per line.
+	 *
+	 * @return the report.
+	 */
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+
+		report.append(String.format(Locale.US, "%-18s %8s %8s %8s %8s %8s %6s%n",
+				"Filter", "Wall us", "Max us", "CPU us", "Queue ms", "Dev RMS",
+				"Drop"));
+
+		for (int i = 0; i < FILTERS; i++)
+		{
+			Stats snapshot = getStats(i);
+
+			report.append(String.format(Locale.US,
+					"%-18s %8.1f %8.1f %8.1f %8.2f %8.4f %6d%n", NAMES[i],
+					snapshot.getMeanWallNanos() / 1000.0,
+					snapshot.getMaxWallNanos() / 1000.0,
+					snapshot.getMeanCpuNanos() / 1000.0,
+					snapshot.getMeanQueueNanos() / 1000000.0,
+					snapshot.getDeviationRms(), snapshot.getDropped()));
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Discard the statistics gathered so far. The workers clear their totals
+	 * when they next process an event.
+	 */
+	public void resetStats()
+	{
+		for (Worker worker : workers)
+		{
+			worker.resetRequested = true;
+		}
+
+		for (int i = 0; i < FILTERS; i++)
+		{
+			stats.set(i, Stats.EMPTY);
+		}
+	}
+
+	private void offer(int type, float[] values, float[] reference,
+			long timeStamp)
+	{
+		long now = System.nanoTime();
+
+		for (Worker worker : workers)
+		{
+			worker.offer(type, values, reference, timeStamp, now);
+		}
+	}
+
+	/**
+	 * An immutable snapshot of the statistics of a filter.
+	 */
+	public static final class Stats
+	{
+		static final Stats EMPTY = new Stats(new Totals());
+
+		private final long updates;
+		private final long wallNanos;
+		private final long maxWallNanos;
+		private final long cpuNanos;
+		private final long queueNanos;
+		private final long outputs;
+		private final double deviationSquares;
+		private final double maxDeviation;
+		private final long dropped;
+
+		Stats(Totals totals)
+		{
+			updates = totals.updates;
+			wallNanos = totals.wallNanos;
+			maxWallNanos = totals.maxWallNanos;
+			cpuNanos = totals.cpuNanos;
+			queueNanos = totals.queueNanos;
+			outputs = totals.outputs;
+			deviationSquares = totals.deviationSquares;
+			maxDeviation = totals.maxDeviation;
+			dropped = totals.dropped;
+		}
+
+		public long getUpdates()
+		{
+			return updates;
+		}
+
+		public double getMeanWallNanos()
+		{
+			return updates > 0 ? (double) wallNanos / updates : 0;
+		}
+
+		public long getMaxWallNanos()
+		{
+			return maxWallNanos;
+		}
+
+		public double getMeanCpuNanos()
+		{
+			return updates > 0 ? (double) cpuNanos / updates : 0;
+		}
+
+		public double getMeanQueueNanos()
+		{
+			return updates > 0 ? (double) queueNanos / updates : 0;
+		}
+
+		/**
+		 * Get the root mean square of the distance between the filter's linear
+		 * acceleration and the primary filter's.
+		 *
+		 * @return the deviation in m/s^2.
+		 */
+		public double getDeviationRms()
+		{
+			return outputs > 0 ? Math.sqrt(deviationSquares / outputs) : 0;
+		}
+
+		public double getMaxDeviation()
+		{
+			return maxDeviation;
+		}
+
+		/**
+		 * Get the number of events dropped because the worker fell behind.
+		 *
+		 * @return the number of events.
+		 */
+		public long getDropped()
+		{
+			return dropped;
+		}
+	}
+
+	/**
+	 * The running statistics of a filter, owned by its worker thread.
+	 */
+	private static class Totals
+	{
+		long updates;
+		long wallNanos;
+		long maxWallNanos;
+		long cpuNanos;
+		long queueNanos;
+		long outputs;
+		double deviationSquares;
+		double maxDeviation;
+		long dropped;
+
+		void reset()
+		{
+			updates = 0;
+			wallNanos = 0;
+			maxWallNanos = 0;
+			cpuNanos = 0;
+			queueNanos = 0;
+			outputs = 0;
+			deviationSquares = 0;
+			maxDeviation = 0;
+			dropped = 0;
+		}
+	}
+
+	/**
+	 * Runs a subset of the filters on its own thread. The sensor thread is the
+	 * only writer of the ring and the worker the only reader.
+	 */
+	private class Worker implements Runnable
+	{
+		private final int[] assigned;
+
+		private final int[] types = new int[CAPACITY];
+		private final float[] values = new float[CAPACITY * 3];
+		private final float[] references = new float[CAPACITY * 3];
+		private final long[] timeStamps = new long[CAPACITY];
+		private final long[] offerTimes = new long[CAPACITY];
+
+		private volatile long writeCount = 0;
+		private volatile long readCount = 0;
+
+		// The thread running the worker, unparked when an event is offered
+		volatile Thread thread;
+
+		// Set by the worker before it parks, so the sensor thread only
+		// unparks it when it may be waiting.
+		private volatile boolean parked = false;
+
+		// Set by resetStats(), the worker clears its totals when it sees it
+		volatile boolean resetRequested = false;
+
+		// Events dropped, written by the sensor thread only
+		private volatile long dropped = 0;
+
+		// The drop count already added to the statistics
+		private long droppedReported = 0;
+
+		// Owned by the worker thread
+		private final float[] input = new float[3];
+		private final Totals[] totals;
+
+		Worker(int[] assigned)
+		{
+			this.assigned = assigned;
+
+			totals = new Totals[assigned.length];
+
+			for (int i = 0; i < assigned.length; i++)
+			{
+				totals[i] = new Totals();
+			}
+		}
+
+		void offer(int type, float[] v, float[] reference, long timeStamp,
+				long now)
+		{
+			long count = writeCount;
+
+			if (count - readCount >= CAPACITY)
+			{
+				dropped = dropped + 1;
+				return;
+			}
+
+			int index = (int) (count & MASK);
+			int offset = index * 3;
+
+			types[index] = type;
+			values[offset] = v[0];
+			values[offset + 1] = v[1];
+			values[offset + 2] = v[2];
+
+			if (reference != null)
+			{
+				references[offset] = reference[0];
+				references[offset + 1] = reference[1];
+				references[offset + 2] = reference[2];
+			}
+
+			timeStamps[index] = timeStamp;
+			offerTimes[index] = now;
+
+			// The volatile write publishes the event to the worker.
+			writeCount = count + 1;
+
+			// The worker sets parked before it checks writeCount again, so
+			// either it sees this event or we see that it is parked.
+			if (parked)
+			{
+				Thread worker = thread;
+
+				if (worker != null)
+				{
+					LockSupport.unpark(worker);
+				}
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			long lastPublish = System.nanoTime() - PUBLISH_NANOS;
+
+			while (!Thread.currentThread().isInterrupted())
+			{
+				long start = readCount;
+				long end = writeCount;
+
+				if (start == end)
+				{
+					parked = true;
+
+					if (writeCount == end)
+					{
+						LockSupport.park(this);
+					}
+
+					parked = false;
+					continue;
+				}
+
+				if (resetRequested)
+				{
+					resetRequested = false;
+
+					for (Totals t : totals)
+					{
+						t.reset();
+					}
+
+					droppedReported = dropped;
+				}
+
+				for (long i = start; i < end; i++)
+				{
+					process((int) (i & MASK));
+				}
+
+				// Free the slots for the sensor thread.
+				readCount = end;
+
+				long total = dropped;
+				long lost = total - droppedReported;
+				droppedReported = total;
+
+				for (Totals t : totals)
+				{
+					t.dropped += lost;
+				}
+
+				long now = System.nanoTime();
+
+				if (now - lastPublish >= PUBLISH_NANOS)
+				{
+					lastPublish = now;
+
+					for (int j = 0; j < assigned.length; j++)
+					{
+						stats.set(assigned[j], new Stats(totals[j]));
+					}
+				}
+			}
+		}
+
+		private void process(int index)
+		{
+			int offset = index * 3;
+
+			input[0] = values[offset];
+			input[1] = values[offset + 1];
+			input[2] = values[offset + 2];
+
+			long queueNanos = System.nanoTime() - offerTimes[index];
+
+			for (int j = 0; j < assigned.length; j++)
+			{
+				ImuLinearAccelerationInterface filter = filters[assigned[j]];
+				Totals t = totals[j];
+
+				long cpuStart = Debug.threadCpuTimeNanos();
+				long wallStart = System.nanoTime();
+
+				float[] output = null;
+
+				switch (types[index])
+				{
+				case TYPE_ACCELERATION:
+					filter.setAcceleration(input);
+					break;
+				case TYPE_MAGNETIC:
+					filter.setMagnetic(input);
+					break;
+				case TYPE_GYROSCOPE:
+					filter.setGyroscope(input, timeStamps[index]);
+					output = filter.getLinearAcceleration();
+					break;
+				}
+
+				long wallNanos = System.nanoTime() - wallStart;
+				long cpuNanos = Debug.threadCpuTimeNanos() - cpuStart;
+
+				t.updates++;
+				t.wallNanos += wallNanos;
+				t.maxWallNanos = Math.max(t.maxWallNanos, wallNanos);
+				t.queueNanos += queueNanos;
+
+				// threadCpuTimeNanos() is -1 where it is unsupported
+				if (cpuStart >= 0)
+				{
+					t.cpuNanos += cpuNanos;
+				}
+
+				if (output != null)
+				{
+					double dx = output[0] - references[offset];
+					double dy = output[1] - references[offset + 1];
+					double dz = output[2] - references[offset + 2];
+
+					double squares = dx * dx + dy * dy + dz * dz;
+
+					t.outputs++;
+					t.deviationSquares += squares;
+					t.maxDeviation = Math.max(t.maxDeviation,
+							Math.sqrt(squares));
+				}
+			}
+		}
+	}
+}
@@ -218,6 +218,18 @@ public class ImuLaCfOrientation implements ImuLinearAccelerationInterface
 		return linearAcceleration;
 	}
 
+	/**
+	 * Get the fused orientation of the device. The array is reused.
+	 * 
+	 * @return float[] an array containing the orientation of the device where
+	 *         [0] = azimuth, [1] = pitch and [2] = roll in radians, as returned
+	 *         by SensorManager.getOrientation().
+	 */
+	public float[] getOrientation()
+	{
+		return fusedOrientation;
+	}
+
 	/**
 	 * The acceleration of the device. Presumably from Sensor.TYPE_ACCELERATION.
 	 * 
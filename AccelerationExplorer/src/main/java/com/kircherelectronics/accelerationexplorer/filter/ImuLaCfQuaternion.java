@@ -226,6 +226,18 @@ public class ImuLaCfQuaternion implements ImuLinearAccelerationInterface
 		return linearAcceleration;
 	}
 
+	/**
+	 * Get the fused orientation of the device. The array is reused.
+	 * 
+	 * @return float[] an array containing the orientation of the device where
+	 *         [0] = azimuth, [1] = pitch and [2] = roll in radians, as returned
+	 *         by SensorManager.getOrientation().
+	 */
+	public float[] getOrientation()
+	{
+		return fusedOrientation;
+	}
+
 	public void setAcceleration(float[] acceleration)
 	{
 		// Get a local copy of the raw magnetic values from the device sensor.
@@ -4,9 +4,11 @@ import java.util.Arrays;
 
 import org.apache.commons.math3.complex.Quaternion;
 
+import com.kircherelectronics.accelerationexplorer.filter.kalman.KalmanNoiseProfile;
 import com.kircherelectronics.accelerationexplorer.filter.kalman.RotationKalmanFilter;
 import com.kircherelectronics.accelerationexplorer.filter.kalman.RotationMeasurementModel;
 import com.kircherelectronics.accelerationexplorer.filter.kalman.RotationProcessModel;
+import com.kircherelectronics.accelerationexplorer.filter.kalman.RotationRecording;
 
 import android.hardware.SensorManager;
 
@@ -99,8 +101,11 @@ public class ImuLaKfQuaternion implements ImuLinearAccelerationInterface
 	private boolean hasOrientation = false;
 
 	// copy the new gyro values into the gyro array
-	// convert the raw gyro data into a rotation vector
-	private double[] deltaVectorGyro = new double[4];
+	// convert the raw gyro data into a rotation vector. The first gyroscope
+	// event has no time step and applies no rotation, so start with the
+	// identity rather than a zero quaternion.
+	private double[] deltaVectorGyro = new double[]
+	{ 0, 0, 0, 1 };
 	private double[] vectorAccelMag = new double[4];
 	private double[] vectorGyro = new double[4];
 	private float[] fusedVector = new float[4];
@@ -142,14 +147,41 @@ public class ImuLaKfQuaternion implements ImuLinearAccelerationInterface
 	private Quaternion quatGyro;
 	private Quaternion quatAccelMag;
 
+	// Records the filter inputs for offline tuning when not null
+	private volatile RotationRecording recording;
+
 	public ImuLaKfQuaternion()
 	{
-		pm = new RotationProcessModel();
-		mm = new RotationMeasurementModel();
+		this(KalmanNoiseProfile.getDefault());
+	}
+
+	/**
+	 * Create a filter with the process and measurement noise of a device
+	 * profile.
+	 * 
+	 * @param profile
+	 *            the noise profile.
+	 */
+	public ImuLaKfQuaternion(KalmanNoiseProfile profile)
+	{
+		pm = new RotationProcessModel(profile.getProcessNoise());
+		mm = new RotationMeasurementModel(profile.getMeasurementNoise());
 
 		kalmanFilter = new RotationKalmanFilter(pm, mm);
 	}
 
+	/**
+	 * Record the inputs of the Kalman filter so they can be replayed by the
+	 * KalmanNoiseTuner.
+	 * 
+	 * @param recording
+	 *            the recording to add to, or null to stop recording.
+	 */
+	public void setRecording(RotationRecording recording)
+	{
+		this.recording = recording;
+	}
+
 	public float[] getLinearAcceleration()
 	{
 		// values[0]: azimuth, rotation around the Z axis.
@@ -182,6 +214,18 @@ public class ImuLaKfQuaternion implements ImuLinearAccelerationInterface
 		return linearAcceleration;
 	}
 
+	/**
+	 * Get the fused orientation of the device. The array is reused.
+	 * 
+	 * @return float[] an array containing the orientation of the device where
+	 *         [0] = azimuth, [1] = pitch and [2] = roll in radians, as returned
+	 *         by SensorManager.getOrientation().
+	 */
+	public float[] getOrientation()
+	{
+		return fusedOrientation;
+	}
+
 	public void setAcceleration(float[] acceleration)
 	{
 		// Get a local copy of the raw magnetic values from the device sensor.
@@ -368,10 +412,34 @@ public class ImuLaKfQuaternion implements ImuLinearAccelerationInterface
 		vectorGyro[2] = (float) quatGyro.getVectorPart()[2];
 		vectorGyro[3] = (float) quatGyro.getScalarPart();
 
+		RotationRecording recording = this.recording;
+
+		if (recording != null)
+		{
+			recording.add(deltaVectorGyro, vectorAccelMag);
+		}
+
 		// Apply the Kalman filter... Note that the prediction and correction
 		// inputs could be swapped, but the filter is much more stable in this
 		// configuration.
 		kalmanFilter.predict(vectorGyro);
+
+		// q and -q are the same rotation, but the filter averages them
+		// component wise. Correct with the measurement in the same hemisphere
+		// as the prediction, as the KalmanNoiseTuner does when it replays a
+		// recording.
+		double[] prediction = kalmanFilter.getStateEstimation();
+
+		if (prediction[0] * vectorAccelMag[0] + prediction[1]
+				* vectorAccelMag[1] + prediction[2] * vectorAccelMag[2]
+				+ prediction[3] * vectorAccelMag[3] < 0)
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				vectorAccelMag[i] = -vectorAccelMag[i];
+			}
+		}
+
 		kalmanFilter.correct(vectorAccelMag);
 
 		// Apply the new gyroscope delta rotation to the new Kalman filter
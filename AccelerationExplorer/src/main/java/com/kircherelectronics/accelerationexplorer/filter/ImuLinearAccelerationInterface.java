@@ -35,6 +35,16 @@ public interface ImuLinearAccelerationInterface {
      */
     public float[] getLinearAcceleration();
 
+    /**
+     * Get the fused orientation of the device. This method can be called
+     * *only* after getLinearAcceleration() has been called.
+     *
+     * @return float[] an array containing the orientation of the device where
+     * [0] = azimuth, [1] = pitch and [2] = roll in radians, as returned by
+     * SensorManager.getOrientation().
+     */
+    public float[] getOrientation();
+
     /**
      * The acceleration of the device. Presumably from Sensor.TYPE_ACCELERATION.
      *
@@ -0,0 +1,400 @@
+package com.kircherelectronics.accelerationexplorer.filter.kalman;
+
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Searches for the process and measurement noise of the rotation Kalman filter
+ * that best fit a device by replaying a RotationRecording through the filter.
+ * <p>
+ * A well tuned filter produces innovations (measurement minus prediction) that
+ * are consistent with the innovation covariance S the filter expects and that
+ * are white. The cost of a candidate is the squared log of the mean normalized
+ * innovation squared over the measurement dimension, plus the squared lag-1
+ * autocorrelation of each normalized innovation component. Both are zero for
+ * a consistent filter.
+ * <p>
+ * The search is a log spaced grid over Q and R followed by a finer grid around
+ * the best candidate. Every candidate replays the recording with its own
+ * filter, so the candidates are evaluated in parallel on a thread pool with a
+ * thread per core.
+ * <p>
+ * The tuner has no Android dependencies and can be run offline:
+ * <pre>
+ * java KalmanNoiseTuner recording.csv profileDir deviceName
+ * </pre>
+ * which writes the profile that the Kalman filters load for the device.
+ */
+public class KalmanNoiseTuner
+{
+	private static final Logger logger = Logger
+			.getLogger(KalmanNoiseTuner.class.getName());
+
+	private static final int MEASUREMENT_DIMENSION = 4;
+
+	// Steps skipped while the filter converges from its initial covariance
+	private static final int WARM_UP_STEPS = 50;
+
+	// The coarse grid, in decades
+	private static final double MIN_LOG_NOISE = -8;
+	private static final double MAX_LOG_NOISE = 2;
+	private static final double COARSE_STEP = 1;
+
+	// The fine grid around the best coarse candidate, in decades
+	private static final double FINE_SPAN = 1;
+	private static final double FINE_STEP = 0.125;
+
+	private final RotationRecording recording;
+	private final int threads;
+
+	/**
+	 * Create a tuner with a thread per available processor.
+	 *
+	 * @param recording
+	 *            the recording to replay.
+	 */
+	public KalmanNoiseTuner(RotationRecording recording)
+	{
+		this(recording, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a tuner.
+	 *
+	 * @param recording
+	 *            the recording to replay.
+	 * @param threads
+	 *            the number of candidates evaluated in parallel.
+	 */
+	public KalmanNoiseTuner(RotationRecording recording, int threads)
+	{
+		if (recording.size() <= WARM_UP_STEPS + 1)
+		{
+			throw new IllegalArgumentException("Recording is too short to tune: "
+					+ recording.size() + " steps");
+		}
+
+		this.recording = recording;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Search for the best process and measurement noise.
+	 *
+	 * @return the best profile found.
+	 * @throws InterruptedException
+	 *             if the search was interrupted.
+	 * @throws IllegalStateException
+	 *             if no candidate could be evaluated, in which case the
+	 *             recording is unusable.
+	 */
+	public KalmanNoiseProfile tune() throws InterruptedException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try
+		{
+			KalmanNoiseProfile best = search(executor, MIN_LOG_NOISE,
+					MAX_LOG_NOISE, MIN_LOG_NOISE, MAX_LOG_NOISE, COARSE_STEP);
+
+			double logQ = Math.log10(best.getProcessNoise());
+			double logR = Math.log10(best.getMeasurementNoise());
+
+			KalmanNoiseProfile fine = search(executor, logQ - FINE_SPAN, logQ
+					+ FINE_SPAN, logR - FINE_SPAN, logR + FINE_SPAN, FINE_STEP);
+
+			return fine.getCost() < best.getCost() ? fine : best;
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Calculate the innovation inconsistency of a candidate.
+	 *
+	 * @param processNoise
+	 *            the diagonal of Q.
+	 * @param measurementNoise
+	 *            the diagonal of R.
+	 * @return the cost, or positive infinity if the filter diverged.
+	 */
+	public double evaluate(double processNoise, double measurementNoise)
+	{
+		RotationProcessModel pm = new RotationProcessModel(processNoise);
+		RotationMeasurementModel mm = new RotationMeasurementModel(
+				measurementNoise);
+
+		RotationKalmanFilter kalmanFilter = new RotationKalmanFilter(pm, mm);
+
+		RealMatrix h = mm.getMeasurementMatrix();
+		RealMatrix ht = h.transpose();
+
+		double[] delta = new double[4];
+		double[] z = new double[4];
+		double[] estimate = new double[4];
+		double[] input = new double[4];
+
+		double[] previous = new double[MEASUREMENT_DIMENSION];
+		double[] normalized = new double[MEASUREMENT_DIMENSION];
+
+		double nisSum = 0;
+		double[] lagSum = new double[MEASUREMENT_DIMENSION];
+		double[] squareSum = new double[MEASUREMENT_DIMENSION];
+
+		int samples = 0;
+
+		// Like the filter, start integrating the gyroscope from the first
+		// acceleration/magnetic rotation.
+		recording.getAccelMag(0, estimate);
+
+		try
+		{
+			for (int i = 0; i < recording.size(); i++)
+			{
+				recording.getDeltaGyroscope(i, delta);
+				recording.getAccelMag(i, z);
+
+				multiply(estimate, delta, input);
+
+				kalmanFilter.predict(input);
+
+				double[] x = kalmanFilter.getStateEstimation();
+
+				// q and -q are the same rotation. Compare the measurement
+				// with the prediction in the same hemisphere so a sign flip
+				// does not look like a huge innovation.
+				if (dot(x, z) < 0)
+				{
+					for (int j = 0; j < 4; j++)
+					{
+						z[j] = -z[j];
+					}
+				}
+
+				RealVector innovation = MatrixUtils.createRealVector(z)
+						.subtract(h.operate(MatrixUtils.createRealVector(x)));
+
+				RealMatrix s = h.multiply(kalmanFilter.getErrorCovarianceMatrix())
+						.multiply(ht).add(mm.getMeasurementNoise());
+
+				double nis = innovation.dotProduct(new CholeskyDecomposition(s)
+						.getSolver().solve(innovation));
+
+				kalmanFilter.correct(z);
+
+				System.arraycopy(kalmanFilter.getStateEstimation(), 0,
+						estimate, 0, 4);
+
+				if (Double.isNaN(nis) || Double.isInfinite(nis))
+				{
+					return Double.POSITIVE_INFINITY;
+				}
+
+				if (i < WARM_UP_STEPS)
+				{
+					continue;
+				}
+
+				for (int j = 0; j < MEASUREMENT_DIMENSION; j++)
+				{
+					normalized[j] = innovation.getEntry(j)
+							/ Math.sqrt(s.getEntry(j, j));
+
+					if (samples > 0)
+					{
+						lagSum[j] += normalized[j] * previous[j];
+					}
+
+					squareSum[j] += normalized[j] * normalized[j];
+					previous[j] = normalized[j];
+				}
+
+				nisSum += nis;
+				samples++;
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// The covariance lost positive definiteness, the candidate is
+			// unusable.
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double consistency = Math.log(nisSum / samples / MEASUREMENT_DIMENSION);
+
+		double cost = consistency * consistency;
+
+		for (int j = 0; j < MEASUREMENT_DIMENSION; j++)
+		{
+			if (squareSum[j] > 0)
+			{
+				double autocorrelation = lagSum[j] / squareSum[j];
+				cost += autocorrelation * autocorrelation;
+			}
+		}
+
+		return Double.isNaN(cost) ? Double.POSITIVE_INFINITY : cost;
+	}
+
+	/**
+	 * Evaluate a log spaced grid of candidates in parallel. Candidates that
+	 * throw are logged and skipped.
+	 *
+	 * @return the best candidate of the grid.
+	 * @throws IllegalStateException
+	 *             if every candidate threw or diverged.
+	 */
+	private KalmanNoiseProfile search(ExecutorService executor,
+			double minLogQ, double maxLogQ, double minLogR, double maxLogR,
+			double step) throws InterruptedException
+	{
+		List<Future<KalmanNoiseProfile>> futures = new ArrayList<Future<KalmanNoiseProfile>>();
+
+		for (double logQ = minLogQ; logQ <= maxLogQ + 1e-9; logQ += step)
+		{
+			for (double logR = minLogR; logR <= maxLogR + 1e-9; logR += step)
+			{
+				final double q = Math.pow(10, logQ);
+				final double r = Math.pow(10, logR);
+
+				futures.add(executor.submit(new Callable<KalmanNoiseProfile>()
+				{
+					@Override
+					public KalmanNoiseProfile call()
+					{
+						return new KalmanNoiseProfile(q, r, evaluate(q, r));
+					}
+				}));
+			}
+		}
+
+		KalmanNoiseProfile best = null;
+		Throwable firstFailure = null;
+		int failures = 0;
+
+		for (Future<KalmanNoiseProfile> future : futures)
+		{
+			KalmanNoiseProfile candidate;
+
+			try
+			{
+				candidate = future.get();
+			}
+			catch (ExecutionException e)
+			{
+				logger.log(Level.WARNING, "Candidate failed", e.getCause());
+
+				if (firstFailure == null)
+				{
+					firstFailure = e.getCause();
+				}
+
+				failures++;
+				continue;
+			}
+
+			if (best == null || candidate.getCost() < best.getCost())
+			{
+				best = candidate;
+			}
+		}
+
+		if (best == null || Double.isInfinite(best.getCost()))
+		{
+			throw new IllegalStateException("All " + futures.size()
+					+ " candidates failed (" + failures
+					+ " threw, the rest diverged)", firstFailure);
+		}
+
+		if (failures > 0)
+		{
+			logger.warning(failures + " of " + futures.size()
+					+ " candidates failed");
+		}
+
+		return best;
+	}
+
+	/**
+	 * Multiply two quaternions in { x, y, z, w } order, out = a * b.
+	 */
+	private static void multiply(double[] a, double[] b, double[] out)
+	{
+		double x = a[3] * b[0] + a[0] * b[3] + a[1] * b[2] - a[2] * b[1];
+		double y = a[3] * b[1] - a[0] * b[2] + a[1] * b[3] + a[2] * b[0];
+		double z = a[3] * b[2] + a[0] * b[1] - a[1] * b[0] + a[2] * b[3];
+		double w = a[3] * b[3] - a[0] * b[0] - a[1] * b[1] - a[2] * b[2];
+
+		out[0] = x;
+		out[1] = y;
+		out[2] = z;
+		out[3] = w;
+	}
+
+	private static double dot(double[] a, double[] b)
+	{
+		return a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+	}
+
+	/**
+	 * Tune a recording offline and write the profile.
+	 *
+	 * @param args
+	 *            the recording .csv, the profile directory and the device
+	 *            name.
+	 */
+	public static void main(String[] args) throws IOException,
+			InterruptedException
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: KalmanNoiseTuner <recording.csv> <profileDir> <device>");
+			System.exit(1);
+		}
+
+		RotationRecording recording = RotationRecording.read(new File(args[0]));
+
+		KalmanNoiseProfile profile = new KalmanNoiseTuner(recording).tune();
+
+		File file = KalmanNoiseProfile.getProfileFile(new File(args[1]), args[2]);
+		profile.save(file);
+
+		System.out.println("Q = " + profile.getProcessNoise() + ", R = "
+				+ profile.getMeasurementNoise() + ", cost = "
+				+ profile.getCost() + " -> " + file);
+	}
+}
@@ -24,7 +24,7 @@ import org.apache.commons.math3.linear.RealMatrix;
 
 public class RotationMeasurementModel implements MeasurementModel
 {
-	private double noiseCoefficient  = 0.001;
+	private double noiseCoefficient;
 	
 	/**
 	 * The measurement matrix, used to associate the measurement vector to the
@@ -38,9 +38,22 @@ public class RotationMeasurementModel implements MeasurementModel
 	private RealMatrix measurementNoise;
 
 	public RotationMeasurementModel()
+	{
+		this(KalmanNoiseProfile.DEFAULT_MEASUREMENT_NOISE);
+	}
+
+	/**
+	 * Create a measurement model with the given measurement noise.
+	 * 
+	 * @param noiseCoefficient
+	 *            the diagonal of the measurement noise covariance matrix, R.
+	 */
+	public RotationMeasurementModel(double noiseCoefficient)
 	{
 		super();
 
+		this.noiseCoefficient = noiseCoefficient;
+
 		// H = measurementMatrix
 		measurementMatrix = new Array2DRowRealMatrix(new double[][]
 		{
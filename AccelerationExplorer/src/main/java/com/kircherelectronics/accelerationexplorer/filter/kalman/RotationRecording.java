@@ -0,0 +1,295 @@
+package com.kircherelectronics.accelerationexplorer.filter.kalman;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A recording of the inputs to the rotation Kalman filter so they can be
+ * replayed with different noise covariances. Each step holds the gyroscope
+ * delta rotation applied to the previous estimate and the
+ * acceleration/magnetic rotation used as the measurement, both as quaternions
+ * in the { x, y, z, w } order the filter uses.
+ * <p>
+ * The steps are kept in a primitive array that is allocated up front, so the
+ * sensor thread never allocates while recording. Once the recording is full
+ * further steps are dropped. The default capacity of MAX_STEPS is about five
+ * minutes of gyroscope events at SENSOR_DELAY_FASTEST on a 200 Hz device, and
+ * takes about 4 MB. Adding a step and writing the recording are synchronized
+ * because the filter runs on the sensor thread while the recording is usually
+ * written from the UI thread.
+ */
+public class RotationRecording
+{
+	public static final int MAX_STEPS = 60000;
+
+	private static final int STEP_SIZE = 8;
+
+	private final double[] steps;
+	private final int capacity;
+	private int size = 0;
+
+	/**
+	 * Create an empty recording of MAX_STEPS steps.
+	 */
+	public RotationRecording()
+	{
+		this(MAX_STEPS);
+	}
+
+	/**
+	 * Create an empty recording.
+	 *
+	 * @param capacity
+	 *            the maximum number of steps.
+	 */
+	public RotationRecording(int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be positive: "
+					+ capacity);
+		}
+
+		this.capacity = capacity;
+
+		steps = new double[STEP_SIZE * capacity];
+	}
+
+	/**
+	 * Add a step to the recording. The step is dropped if the recording is
+	 * full.
+	 *
+	 * @param deltaGyroscope
+	 *            the gyroscope delta rotation quaternion.
+	 * @param accelMag
+	 *            the acceleration/magnetic rotation quaternion.
+	 * @return false if the recording is full.
+	 */
+	public synchronized boolean add(double[] deltaGyroscope, double[] accelMag)
+	{
+		if (size == capacity)
+		{
+			return false;
+		}
+
+		int offset = size * STEP_SIZE;
+
+		System.arraycopy(deltaGyroscope, 0, steps, offset, 4);
+		System.arraycopy(accelMag, 0, steps, offset + 4, 4);
+
+		size++;
+
+		return true;
+	}
+
+	/**
+	 * Get the number of steps.
+	 *
+	 * @return the number of steps.
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the maximum number of steps.
+	 *
+	 * @return the capacity.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Determine if steps have been dropped because the recording is full.
+	 *
+	 * @return true if the recording is full.
+	 */
+	public synchronized boolean isFull()
+	{
+		return size == capacity;
+	}
+
+	/**
+	 * Get the gyroscope delta rotation of a step.
+	 *
+	 * @param step
+	 *            the step.
+	 * @param out
+	 *            the quaternion, { x, y, z, w }.
+	 */
+	public synchronized void getDeltaGyroscope(int step, double[] out)
+	{
+		System.arraycopy(steps, step * STEP_SIZE, out, 0, 4);
+	}
+
+	/**
+	 * Get the acceleration/magnetic rotation of a step.
+	 *
+	 * @param step
+	 *            the step.
+	 * @param out
+	 *            the quaternion, { x, y, z, w }.
+	 */
+	public synchronized void getAccelMag(int step, double[] out)
+	{
+		System.arraycopy(steps, step * STEP_SIZE + 4, out, 0, 4);
+	}
+
+	/**
+	 * Write the recording to a .csv file, one step per line.
+	 *
+	 * @param file
+	 *            the file.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	public synchronized void write(File file) throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+
+		try
+		{
+			for (int i = 0; i < size; i++)
+			{
+				int offset = i * STEP_SIZE;
+
+				for (int j = 0; j < STEP_SIZE; j++)
+				{
+					if (j > 0)
+					{
+						writer.write(',');
+					}
+
+					writer.write(Double.toString(steps[offset + j]));
+				}
+
+				writer.newLine();
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Read a recording from a .csv file written by write().
+	 *
+	 * @param file
+	 *            the file.
+	 * @return the recording.
+	 * @throws IOException
+	 *             if the file could not be read or is malformed.
+	 */
+	public static RotationRecording read(File file) throws IOException
+	{
+		// Offline recordings are not limited to MAX_STEPS, so size the
+		// recording to the file.
+		RotationRecording recording = new RotationRecording(Math.max(1,
+				countSteps(file)));
+
+		double[] deltaGyroscope = new double[4];
+		double[] accelMag = new double[4];
+
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+
+		try
+		{
+			String line;
+			int lineNumber = 0;
+
+			while ((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+
+				if (line.trim().length() == 0)
+				{
+					continue;
+				}
+
+				String[] values = line.split(",");
+
+				if (values.length != STEP_SIZE)
+				{
+					throw new IOException("Expected " + STEP_SIZE
+							+ " values on line " + lineNumber + " of " + file);
+				}
+
+				try
+				{
+					for (int j = 0; j < 4; j++)
+					{
+						deltaGyroscope[j] = Double.parseDouble(values[j].trim());
+						accelMag[j] = Double.parseDouble(values[j + 4].trim());
+					}
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IOException("Malformed value on line "
+							+ lineNumber + " of " + file);
+				}
+
+				recording.add(deltaGyroscope, accelMag);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		return recording;
+	}
+
+	/**
+	 * Count the non-empty lines of a recording file.
+	 */
+	private static int countSteps(File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+
+		try
+		{
+			int count = 0;
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.trim().length() > 0)
+				{
+					count++;
+				}
+			}
+
+			return count;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
@@ -329,57 +329,39 @@ public final class GaugeRotation extends View
 	}
 
 	/**
-	 * Draw the gauge face.
+	 * Draw the gauge face. The cached face is rotated by the tilt and clipped at
+	 * the horizon, so no memory is allocated per frame.
 	 * 
 	 * @param canvas
 	 */
 	private void drawFace(Canvas canvas)
 	{
-		// free the old bitmap
-		if (faceBitmap != null)
+		if (faceBitmap == null)
 		{
-			faceBitmap.recycle();
+			Log.w(TAG, "Face not created");
+			return;
 		}
 
-		faceBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
-				Bitmap.Config.ARGB_8888);
-
-		Canvas faceCanvas = new Canvas(faceBitmap);
-		float scale = (float) getWidth();
-		faceCanvas.scale(scale, scale);
-
-		skyBackgroundRect.set(rimRect.left, rimRect.top, rimRect.right,
-				rimRect.bottom);
-
-		faceCanvas.drawArc(skyBackgroundRect, 0, 360, true, skyPaint);
-
-		int[] allpixels = new int[faceBitmap.getHeight()
-				* faceBitmap.getWidth()];
+		int width = faceBitmap.getWidth();
+		int height = faceBitmap.getHeight();
 
-		faceBitmap.getPixels(allpixels, 0, faceBitmap.getWidth(), 0, 0,
-				faceBitmap.getWidth(), faceBitmap.getHeight());
+		// The sky above the horizon is left transparent
+		int horizon = (int) ((height / 2) - ((height / 2.5) * rotation[1]));
 
-		for (int i = 0; i < faceBitmap.getHeight() * faceBitmap.getWidth(); i++)
+		if (horizon > height)
 		{
-			allpixels[i] = Color.TRANSPARENT;
+			horizon = height;
 		}
-
-		int height = (int) ((faceBitmap.getHeight() / 2) - ((faceBitmap
-				.getHeight() / 2.5) * rotation[1]));
-
-		if (height > faceBitmap.getHeight())
+		else if (horizon < 0)
 		{
-			height = faceBitmap.getHeight();
+			horizon = 0;
 		}
 
-		faceBitmap.setPixels(allpixels, 0, faceBitmap.getWidth(), 0, 0,
-				faceBitmap.getWidth(), height);
-
 		float angle = (float) -(Math.atan2(-rotation[0], -rotation[2]) * 180 / Math.PI);
 
-		canvas.save(Canvas.MATRIX_SAVE_FLAG);
-		canvas.rotate(angle, faceBitmap.getWidth() / 2f,
-				faceBitmap.getHeight() / 2f);
+		canvas.save();
+		canvas.rotate(angle, width / 2f, height / 2f);
+		canvas.clipRect(0, horizon, width, height);
 
 		canvas.drawBitmap(faceBitmap, 0, 0, backgroundPaint);
 		canvas.restore();
@@ -408,6 +390,7 @@ public final class GaugeRotation extends View
 		Log.d(TAG, "Size changed to " + w + "x" + h);
 
 		regenerateBezel();
+		regenerateFace();
 	}
 
 	/**
@@ -432,6 +415,31 @@ public final class GaugeRotation extends View
 		drawRim(bezelCanvas);
 	}
 
+	/**
+	 * Regenerate the face image. This should only be called when the size of
+	 * the screen has changed. The face is drawn whole and rotated and clipped
+	 * by drawFace().
+	 */
+	private void regenerateFace()
+	{
+		// free the old bitmap
+		if (faceBitmap != null)
+		{
+			faceBitmap.recycle();
+		}
+
+		faceBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
+				Bitmap.Config.ARGB_8888);
+		Canvas faceCanvas = new Canvas(faceBitmap);
+		float scale = (float) getWidth();
+		faceCanvas.scale(scale, scale);
+
+		skyBackgroundRect.set(rimRect.left, rimRect.top, rimRect.right,
+				rimRect.bottom);
+
+		faceCanvas.drawArc(skyBackgroundRect, 0, 360, true, skyPaint);
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas)
 	{
@@ -0,0 +1,324 @@
+package com.kircherelectronics.accelerationexplorer.plot;
+
+import android.graphics.Canvas;
+
+import com.androidplot.Plot;
+import com.androidplot.PlotListener;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A DynamicXYSeries that shows a window far wider than the plot has pixels by
+ * M4 decimation. The window is split into buckets of consecutive samples and
+ * each bucket is drawn as its first, minimum, maximum and last sample, in the
+ * order they occurred. A line through those four points covers exactly the
+ * pixels the line through every sample of the bucket would, so with a bucket
+ * per couple of pixels the plot looks the same as the full resolution one.
+ * <p>
+ * The decimation is incremental: a sample only updates the bucket it falls
+ * in, and whole buckets slide out of the window, so adding a sample is O(1)
+ * and the plot draws a fixed number of points however long the window is.
+ * The series has four points per bucket, duplicates included, so getY(i) is
+ * O(1) as well.
+ * <p>
+ * Like RingBufferXYSeries, the producer appends into a SampleRing without
+ * waiting and the render thread decimates the new samples once per frame in
+ * onBeforeDraw(), so the buckets are only ever touched by the thread that
+ * draws them.
+ */
+public class DecimatedXYSeries implements DynamicXYSeries, PlotListener {
+    private static final int POINTS_PER_BUCKET = 4;
+
+    private final String title;
+
+    private final SampleRing ring;
+
+    // The reader and the buckets are owned by the render thread
+    private final SampleRing.Reader reader;
+
+    private final int windowSize;
+    private final int samplesPerBucket;
+
+    // A ring of buckets, the newest of which may still be filling
+    private final int bucketCapacity;
+    private final long[] bucketStart;
+    private final int[] pointOffset;
+    private final double[] pointValue;
+
+    private int headBucket = 0;
+    private int bucketCount = 0;
+
+    // The number of samples added
+    private long sampleCount = 0;
+
+    // The bucket that is filling
+    private int openCount = 0;
+    private double openFirst;
+    private double openMin;
+    private double openMax;
+    private int openMinOffset;
+    private int openMaxOffset;
+
+    /**
+     * Initialize a new DecimatedXYSeries.
+     *
+     * @param title      The title of the series.
+     * @param windowSize The number of samples in the window.
+     * @param maxPoints  The most points the series should have, presumably
+     *                   about two per horizontal pixel of the plot.
+     */
+    public DecimatedXYSeries(String title, int windowSize, int maxPoints) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+
+        this.title = title;
+        this.windowSize = windowSize;
+
+        int buckets = Math.max(1, maxPoints / POINTS_PER_BUCKET);
+
+        samplesPerBucket = (windowSize + buckets - 1) / buckets;
+
+        // The window rarely starts on a bucket boundary, so keep one more
+        // bucket for the partial bucket at the start of the window.
+        bucketCapacity = (windowSize + samplesPerBucket - 1) / samplesPerBucket + 1;
+
+        bucketStart = new long[bucketCapacity];
+        pointOffset = new int[bucketCapacity * POINTS_PER_BUCKET];
+        pointValue = new double[bucketCapacity * POINTS_PER_BUCKET];
+
+        ring = new SampleRing(SampleRing.DEFAULT_LAG);
+        reader = ring.newReader();
+    }
+
+    /**
+     * Get the number of samples each bucket holds.
+     *
+     * @return The samples per bucket.
+     */
+    public int getSamplesPerBucket() {
+        return samplesPerBucket;
+    }
+
+    /**
+     * Append a sample. Never blocks, the sample is decimated by the render
+     * thread on the next frame.
+     *
+     * @param value The sample.
+     */
+    @Override
+    public void add(double value) {
+        ring.add(value);
+    }
+
+    /**
+     * Discard all samples. The plot drops them on its next frame.
+     */
+    @Override
+    public void clear() {
+        ring.clear();
+    }
+
+    @Override
+    public int size() {
+        return bucketCount * POINTS_PER_BUCKET;
+    }
+
+    @Override
+    public Number getX(int index) {
+        int point = getPoint(index);
+
+        long windowStart = Math.max(0, sampleCount - windowSize);
+        long x = bucketStart[point / POINTS_PER_BUCKET] + pointOffset[point]
+                - windowStart;
+
+        // Samples of the first bucket that have slid out of the window are
+        // pinned to its left edge.
+        return Math.max(0, x);
+    }
+
+    @Override
+    public Number getY(int index) {
+        return pointValue[getPoint(index)];
+    }
+
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public void onBeforeDraw(Plot plot, Canvas canvas) {
+        ring.read(reader);
+
+        if (reader.cleared) {
+            headBucket = 0;
+            bucketCount = 0;
+            sampleCount = 0;
+            openCount = 0;
+        }
+
+        if (reader.skipped > 0) {
+            skip(reader.skipped);
+        }
+
+        for (int i = 0; i < reader.count; i++) {
+            append(reader.values[i]);
+        }
+    }
+
+    @Override
+    public void onAfterDraw(Plot plot, Canvas canvas) {
+    }
+
+    /**
+     * Decimate a sample.
+     *
+     * @param value The sample.
+     */
+    private void append(double value) {
+        if (openCount == 0) {
+            openBucket();
+
+            openFirst = value;
+            openMin = value;
+            openMax = value;
+            openMinOffset = 0;
+            openMaxOffset = 0;
+        } else {
+            if (value < openMin) {
+                openMin = value;
+                openMinOffset = openCount;
+            }
+
+            if (value > openMax) {
+                openMax = value;
+                openMaxOffset = openCount;
+            }
+        }
+
+        writeOpenBucket(value);
+
+        sampleCount++;
+
+        if (++openCount == samplesPerBucket) {
+            openCount = 0;
+        }
+
+        dropOldBuckets();
+    }
+
+    /**
+     * Account for samples the render thread fell too far behind to read. The
+     * bucket that is filling is closed early and the window moves on, so the
+     * line just bridges the gap.
+     *
+     * @param samples The number of samples lost.
+     */
+    private void skip(long samples) {
+        sampleCount += samples;
+        openCount = 0;
+
+        dropOldBuckets();
+    }
+
+    /**
+     * Drop the buckets that have slid out of the window entirely.
+     */
+    private void dropOldBuckets() {
+        long windowStart = sampleCount - windowSize;
+
+        while (bucketCount > 1
+                && bucketStart[headBucket] + samplesPerBucket <= windowStart) {
+            dropBucket();
+        }
+    }
+
+    /**
+     * Start a new bucket, dropping the oldest if the ring is full.
+     */
+    private void openBucket() {
+        if (bucketCount == bucketCapacity) {
+            dropBucket();
+        }
+
+        bucketCount++;
+
+        bucketStart[getBucket(bucketCount - 1)] = sampleCount;
+    }
+
+    /**
+     * Drop the oldest bucket.
+     */
+    private void dropBucket() {
+        headBucket = headBucket + 1 == bucketCapacity ? 0 : headBucket + 1;
+        bucketCount--;
+    }
+
+    /**
+     * Write the four points of the bucket that is filling.
+     *
+     * @param last The latest sample.
+     */
+    private void writeOpenBucket(double last) {
+        int base = getBucket(bucketCount - 1) * POINTS_PER_BUCKET;
+
+        pointOffset[base] = 0;
+        pointValue[base] = openFirst;
+
+        // The extremes in the order they occurred
+        if (openMinOffset <= openMaxOffset) {
+            pointOffset[base + 1] = openMinOffset;
+            pointValue[base + 1] = openMin;
+            pointOffset[base + 2] = openMaxOffset;
+            pointValue[base + 2] = openMax;
+        } else {
+            pointOffset[base + 1] = openMaxOffset;
+            pointValue[base + 1] = openMax;
+            pointOffset[base + 2] = openMinOffset;
+            pointValue[base + 2] = openMin;
+        }
+
+        pointOffset[base + 3] = openCount;
+        pointValue[base + 3] = last;
+    }
+
+    /**
+     * Get the ring slot of a bucket.
+     *
+     * @param bucket The bucket, 0 being the oldest.
+     * @return The slot.
+     */
+    private int getBucket(int bucket) {
+        int slot = headBucket + bucket;
+
+        return slot >= bucketCapacity ? slot - bucketCapacity : slot;
+    }
+
+    /**
+     * Get the point array index of a series index.
+     *
+     * @param index The series index.
+     * @return The index into pointOffset and pointValue.
+     */
+    private int getPoint(int index) {
+        return getBucket(index / POINTS_PER_BUCKET) * POINTS_PER_BUCKET
+                + index % POINTS_PER_BUCKET;
+    }
+}
@@ -53,8 +53,14 @@ import java.util.Arrays;
  * @version %I%, %G%
  */
 public class DynamicBarPlot {
+    private static final String[] DEFAULT_DOMAIN_LABELS = {"Accel", "LPF",
+            "Mean", "Median"};
+
     private Context context;
 
+    // The names of the bars, indexed by the domain value
+    private String[] domainLabels;
+
     // RMS Noise levels bar chart series
     private SimpleXYSeries levelsSeries = null;
 
@@ -71,15 +77,50 @@ public class DynamicBarPlot {
      * @param seriesTitle     The name of the plot.
      */
     public DynamicBarPlot(XYPlot noiseLevelsPlot, String seriesTitle, Context context) {
+        this(noiseLevelsPlot, seriesTitle, DEFAULT_DOMAIN_LABELS, context);
+    }
+
+    /**
+     * Initialize a new DynamicBarPlot.
+     *
+     * @param noiseLevelsPlot The plot.
+     * @param seriesTitle     The name of the plot.
+     * @param domainLabels    The names of the bars, in order.
+     */
+    public DynamicBarPlot(XYPlot noiseLevelsPlot, String seriesTitle,
+                          String[] domainLabels, Context context) {
         super();
 
         this.context = context;
         this.plot = noiseLevelsPlot;
         this.seriesTitle = seriesTitle;
+        this.domainLabels = domainLabels;
 
         initPlot();
     }
 
+    /**
+     * Set the fixed range of the plot.
+     *
+     * @param min  The minimum range of the plot.
+     * @param max  The maximum range of the plot.
+     * @param step The range increment between labels.
+     */
+    public void setRangeBoundaries(double min, double max, double step) {
+        plot.setRangeStep(XYStepMode.INCREMENT_BY_VAL, step);
+        plot.setRangeBoundaries(min, max, BoundaryMode.FIXED);
+    }
+
+    /**
+     * Set the range label of the plot.
+     *
+     * @param label The range label.
+     */
+    public void setRangeLabel(String label) {
+        plot.setRangeLabel(label);
+        plot.getRangeLabelWidget().pack();
+    }
+
     /**
      * Add data to the plot.
      *
@@ -106,7 +147,7 @@ public class DynamicBarPlot {
                                 153, 204)));
 
         // This needs to be changed with the number of plots, must be >= 1
-        plot.setDomainStepValue(4);
+        plot.setDomainStepValue(domainLabels.length);
 
         plot.setRangeStep(XYStepMode.INCREMENT_BY_VAL, .02);
         plot.setRangeValueFormat(new DecimalFormat("#.###"));
@@ -255,21 +296,10 @@ public class DynamicBarPlot {
             // using num.intValue() will floor the value, so we add 0.5 to round
             // instead:
             int roundNum = (int) (num.floatValue() + 0.5f);
-            switch (roundNum) {
-                case 0:
-                    toAppendTo.append("Accel");
-                    break;
-                case 1:
-                    toAppendTo.append("LPF");
-                    break;
-                case 2:
-                    toAppendTo.append("Mean");
-                    break;
-                case 3:
-                    toAppendTo.append("Median");
-                    break;
-                default:
-                    toAppendTo.append("Unknown");
+            if (roundNum >= 0 && roundNum < domainLabels.length) {
+                toAppendTo.append(domainLabels[roundNum]);
+            } else {
+                toAppendTo.append("Unknown");
             }
             return toAppendTo;
         }
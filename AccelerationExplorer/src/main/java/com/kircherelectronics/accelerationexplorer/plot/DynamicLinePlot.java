@@ -16,11 +16,8 @@ import com.androidplot.ui.YLayoutStyle;
 import com.androidplot.xy.BoundaryMode;
 import com.androidplot.xy.LineAndPointFormatter;
 import com.androidplot.xy.PointLabelFormatter;
-import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.XYPlot;
 
-import java.util.LinkedList;
-
 /*
  * Acceleration Explorer
  * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
@@ -42,6 +39,12 @@ import java.util.LinkedList;
 /**
  * Dynamic plot is responsible for plotting data on a line graph. It is capable
  * of dynamically adding and removing plots as required by the user.
+ * <p>
+ * The data rate and the display rate are decoupled: setData() can be called
+ * from the sensor thread for every sample and never blocks, while draw()
+ * redraws the plot at the display rate, picking up whatever arrived since the
+ * last frame. The series are replaced as a whole when they change, so
+ * setData() reads them without a lock.
  *
  * @author Kaleb
  * @version %I%, %G%
@@ -59,8 +62,13 @@ public class DynamicLinePlot {
 
     private XYPlot plot;
 
-    private SparseArray<SimpleXYSeries> series;
-    private SparseArray<LinkedList<Number>> history;
+    // Wider windows are decimated to about two points per pixel
+    private final int maxPoints;
+
+    // Copied on write by the UI thread, read by the producer
+    private volatile SparseArray<DynamicXYSeries> series;
+
+    private SparseArray<LineAndPointFormatter> formatters;
 
     /**
      * Initialize a new Acceleration View object.
@@ -72,8 +80,11 @@ public class DynamicLinePlot {
         this.plot = plot;
         this.context = context;
 
-        series = new SparseArray<SimpleXYSeries>();
-        history = new SparseArray<LinkedList<Number>>();
+        series = new SparseArray<DynamicXYSeries>();
+        formatters = new SparseArray<LineAndPointFormatter>();
+
+        // The plot is laid out later, but it is never wider than the screen.
+        maxPoints = 2 * context.getResources().getDisplayMetrics().widthPixels;
 
         initPlot();
     }
@@ -126,35 +137,51 @@ public class DynamicLinePlot {
     }
 
     /**
-     * Set the plot window size.
+     * Set the plot window size. Windows with more points than the plot can
+     * show are decimated. The series are recreated, so the plot starts over.
      *
      * @param windowSize The plot window size.
      */
     public void setWindowSize(int windowSize) {
         this.windowSize = windowSize;
+
+        SparseArray<DynamicXYSeries> resized = series.clone();
+
+        for (int i = 0; i < resized.size(); i++) {
+            int key = resized.keyAt(i);
+
+            plot.removeSeries(resized.valueAt(i));
+
+            resized.setValueAt(i, createSeries(resized.valueAt(i).getTitle()));
+
+            plot.addSeries(resized.valueAt(i), formatters.get(key));
+        }
+
+        series = resized;
+
+        plot.setDomainBoundaries(0, windowSize, BoundaryMode.FIXED);
     }
 
     /**
-     * Set the data.
+     * Set the data. Appending to a series is O(1), does not allocate and
+     * never blocks, so it can be called from the sensor thread for every
+     * sample. Samples for a series that has been removed are dropped.
      *
      * @param data the data.
      */
     public void setData(double data, int key) {
+        DynamicXYSeries s = series.get(key);
 
-        if (history.get(key).size() > windowSize) {
-            history.get(key).removeFirst();
+        if (s != null) {
+            s.add(data);
         }
-
-        history.get(key).addLast(data);
-
-        series.get(key).setModel(history.get(key),
-                SimpleXYSeries.ArrayFormat.Y_VALS_ONLY);
     }
 
     /**
-     * Draw the plot.
+     * Draw the plot with the data that has arrived so far. Call this once
+     * per frame; the series take their snapshot when the plot draws.
      */
-    public synchronized void draw() {
+    public void draw() {
         plot.redraw();
     }
 
@@ -166,9 +193,7 @@ public class DynamicLinePlot {
      * @param color      The series color.
      */
     public void addSeriesPlot(String seriesName, int key, int color) {
-        history.append(key, new LinkedList<Number>());
-
-        series.append(key, new SimpleXYSeries(seriesName));
+        DynamicXYSeries added = createSeries(seriesName);
 
         LineAndPointFormatter formatter = new LineAndPointFormatter(Color.rgb(
                 0, 153, 204), Color.rgb(0, 153, 204), Color.TRANSPARENT,
@@ -190,8 +215,13 @@ public class DynamicLinePlot {
 
         formatter.setVertexPaint(vertexPaint);
 
-        plot.addSeries(series.get(key), formatter);
+        formatters.append(key, formatter);
 
+        plot.addSeries(added, formatter);
+
+        SparseArray<DynamicXYSeries> updated = series.clone();
+        updated.put(key, added);
+        series = updated;
     }
 
     /**
@@ -202,10 +232,26 @@ public class DynamicLinePlot {
     public void removeSeriesPlot(int key) {
         plot.removeSeries(series.get(key));
 
-        history.get(key).removeAll(history.get(key));
-        history.remove(key);
+        SparseArray<DynamicXYSeries> updated = series.clone();
+        updated.remove(key);
+        series = updated;
+
+        formatters.remove(key);
+    }
+
+    /**
+     * Create a series for the current window size.
+     *
+     * @param seriesName The name of the series.
+     * @return The series.
+     */
+    private DynamicXYSeries createSeries(String seriesName) {
+        // The window spans windowSize updates, so it holds one more point.
+        if (windowSize + 1 <= maxPoints) {
+            return new RingBufferXYSeries(seriesName, windowSize + 1);
+        }
 
-        series.remove(key);
+        return new DecimatedXYSeries(seriesName, windowSize + 1, maxPoints);
     }
 
     /**
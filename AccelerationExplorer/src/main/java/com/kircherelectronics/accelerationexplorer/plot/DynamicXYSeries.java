@@ -0,0 +1,43 @@
+package com.kircherelectronics.accelerationexplorer.plot;
+
+import com.androidplot.xy.XYSeries;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface for XYSeries that show a sliding window of the latest samples
+ * of a signal, the x value being the sample number within the window.
+ * <p>
+ * Samples are appended by a single producer thread, typically at the sensor
+ * rate, and are picked up by the plot once per frame when it draws. Appending
+ * never blocks on drawing.
+ */
+public interface DynamicXYSeries extends XYSeries {
+    /**
+     * Append a sample, sliding the window if it is full. Never blocks.
+     *
+     * @param value The sample.
+     */
+    public void add(double value);
+
+    /**
+     * Discard all samples.
+     */
+    public void clear();
+}
@@ -0,0 +1,171 @@
+package com.kircherelectronics.accelerationexplorer.plot;
+
+import android.graphics.Canvas;
+
+import com.androidplot.Plot;
+import com.androidplot.PlotListener;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An XYSeries of the latest y values, kept in a circular buffer of doubles.
+ * The x value of a point is its index, the oldest point being 0. Appending a
+ * value is O(1) and does not allocate, and getY(i) is O(1).
+ * <p>
+ * The producer appends into a SampleRing and never waits for the plot. The
+ * circular buffer the plot draws from belongs to the plot's render thread,
+ * which moves the new values over once per frame when the plot calls
+ * onBeforeDraw(), so a frame never tears and the data rate is independent of
+ * the display rate. If the plot falls behind by more than the ring holds, the
+ * values it missed are dropped and the window just moves on.
+ */
+public class RingBufferXYSeries implements DynamicXYSeries, PlotListener {
+    private final String title;
+
+    private final SampleRing ring;
+
+    // Owned by the render thread
+    private final SampleRing.Reader reader;
+    private final double[] buffer;
+
+    // The index of the oldest value
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Initialize a new RingBufferXYSeries.
+     *
+     * @param title    The title of the series.
+     * @param capacity The number of values kept, older values are discarded.
+     */
+    public RingBufferXYSeries(String title, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.title = title;
+
+        buffer = new double[capacity];
+
+        ring = new SampleRing(capacity + SampleRing.DEFAULT_LAG);
+        reader = ring.newReader();
+    }
+
+    /**
+     * Append a value, discarding the oldest value if the series is full.
+     * Never blocks.
+     *
+     * @param value The y value.
+     */
+    @Override
+    public void add(double value) {
+        ring.add(value);
+    }
+
+    /**
+     * Get the number of values the series can hold.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Discard all values. The plot drops them on its next frame.
+     */
+    @Override
+    public void clear() {
+        ring.clear();
+    }
+
+    /**
+     * Get a value as a primitive. Called by the render thread.
+     *
+     * @param index The index, 0 being the oldest value.
+     * @return The y value.
+     */
+    public double getValue(int index) {
+        int i = head + index;
+
+        if (i >= buffer.length) {
+            i -= buffer.length;
+        }
+
+        return buffer[i];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Number getX(int index) {
+        return index;
+    }
+
+    @Override
+    public Number getY(int index) {
+        return getValue(index);
+    }
+
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public void onBeforeDraw(Plot plot, Canvas canvas) {
+        ring.read(reader);
+
+        if (reader.cleared) {
+            head = 0;
+            size = 0;
+        }
+
+        int capacity = buffer.length;
+
+        // Only the newest values that fit matter
+        for (int i = Math.max(0, reader.count - capacity); i < reader.count; i++) {
+            double value = reader.values[i];
+
+            if (size < capacity) {
+                int tail = head + size;
+
+                if (tail >= capacity) {
+                    tail -= capacity;
+                }
+
+                buffer[tail] = value;
+                size++;
+            } else {
+                buffer[head] = value;
+
+                if (++head == capacity) {
+                    head = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onAfterDraw(Plot plot, Canvas canvas) {
+    }
+}
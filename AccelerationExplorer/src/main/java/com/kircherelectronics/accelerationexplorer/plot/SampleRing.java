@@ -0,0 +1,178 @@
+package com.kircherelectronics.accelerationexplorer.plot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Hands samples from the thread that produces them to the thread that draws
+ * them without locks. The producer appends at the sensor rate and never
+ * waits; the reader copies everything appended since its last read once per
+ * frame.
+ * <p>
+ * Samples are numbered by a sequence that only grows. The producer writes a
+ * sample into its slot and then publishes the new sequence. A reader that
+ * falls more than the capacity behind loses the oldest samples instead of
+ * slowing the producer down: after copying, it checks the sequence again, like
+ * a seqlock, and discards the samples the producer may have overwritten in the
+ * meantime. The slots are atomic so these checks are ordered with the copy.
+ * <p>
+ * There must be a single producer thread and a single reader thread.
+ */
+public class SampleRing {
+    // How far a reader can fall behind before it loses samples, about 4
+    // seconds at the fastest sensor rates
+    public static final int DEFAULT_LAG = 2048;
+
+    /**
+     * The state of a reader, owned by the reader thread.
+     */
+    public static class Reader {
+        // The samples of the last read, oldest first
+        public final double[] values;
+
+        // The number of valid values
+        public int count;
+
+        // The number of samples lost before values[0] since the previous read
+        public long skipped;
+
+        // True if the ring was cleared since the previous read
+        public boolean cleared;
+
+        private long position = 0;
+        private long clearedAt = 0;
+
+        private Reader(int capacity) {
+            values = new double[capacity];
+        }
+    }
+
+    private final AtomicLongArray buffer;
+    private final int mask;
+
+    // The number of samples published
+    private final AtomicLong written = new AtomicLong(0);
+
+    // The sequence at the last clear()
+    private volatile long clearedAt = 0;
+
+    /**
+     * Initialize a new SampleRing.
+     *
+     * @param capacity The number of samples kept, rounded up to a power of
+     *                 two.
+     */
+    public SampleRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        buffer = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Get the number of samples kept.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Create the reader. The ring has a single reader.
+     *
+     * @return The reader.
+     */
+    public Reader newReader() {
+        return new Reader(getCapacity());
+    }
+
+    /**
+     * Append a sample. Called by the producer, never blocks and does not
+     * allocate.
+     *
+     * @param value The sample.
+     */
+    public void add(double value) {
+        long sequence = written.get();
+
+        buffer.lazySet((int) (sequence & mask), Double.doubleToRawLongBits(value));
+
+        written.lazySet(sequence + 1);
+    }
+
+    /**
+     * Discard the samples the reader hasn't read yet and tell it to discard
+     * those it already has.
+     */
+    public void clear() {
+        clearedAt = written.get();
+    }
+
+    /**
+     * Copy the samples appended since the previous read. Called by the
+     * reader, does not allocate.
+     *
+     * @param reader The reader.
+     */
+    public void read(Reader reader) {
+        long cleared = clearedAt;
+
+        reader.cleared = cleared != reader.clearedAt;
+
+        if (reader.cleared) {
+            reader.clearedAt = cleared;
+            reader.position = Math.max(reader.position, cleared);
+        }
+
+        int capacity = getCapacity();
+        long end = written.get();
+        long start = Math.max(reader.position, end - capacity);
+
+        int count = (int) (end - start);
+
+        for (int i = 0; i < count; i++) {
+            reader.values[i] = Double.longBitsToDouble(buffer.get((int) ((start + i) & mask)));
+        }
+
+        // The producer may have overwritten the oldest samples while they
+        // were copied, including the one it is writing right now.
+        long overwritten = written.get() + 1 - capacity;
+        int invalid = (int) Math.min(count, Math.max(0, overwritten - start));
+
+        if (invalid > 0) {
+            System.arraycopy(reader.values, invalid, reader.values, 0, count - invalid);
+            count -= invalid;
+        }
+
+        reader.skipped = start + invalid - reader.position;
+        reader.count = count;
+        reader.position = end;
+    }
+}
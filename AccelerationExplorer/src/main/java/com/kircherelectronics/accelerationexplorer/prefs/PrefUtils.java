@@ -23,4 +23,8 @@ public class PrefUtils {
     public final static String SENSOR_FREQUENCY_SLOW = "0";
     public final static String SENSOR_FREQUENCY_MEDIUM = "1";
     public final static String SENSOR_FREQUENCY_FAST = "2";
+
+    // The number of samples the LoggerActivity plot spans
+    public final static String PLOT_WINDOW_PREF = "plot_window_preference";
+    public final static String PLOT_WINDOW_DEFAULT = "200";
 }
@@ -0,0 +1,485 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps the history of a sensor metric at several resolutions with bounded
+ * memory. Samples go into a ring of raw samples and are summarized into 1
+ * second buckets, which are summarized into 10 second buckets, which are
+ * summarized into 1 minute buckets. Every bucket holds the count, minimum,
+ * maximum, sum and sum of squares of its samples, so the mean and standard
+ * deviation of any bucket, or of several merged buckets, are exact.
+ * <p>
+ * Each tier is a fixed size ring of primitive arrays, so the memory does not
+ * grow with the length of the session and adding a sample allocates nothing.
+ * With the default capacities the raw tier covers the last 4096 samples, the
+ * 1 second tier 10 minutes, the 10 second tier 2 hours and the 1 minute tier
+ * 24 hours, in about 300 kB.
+ * <p>
+ * A query picks the finest tier that still covers the requested time range
+ * within the requested number of points and copies the buckets in the range
+ * into a Series, in O(buckets). The methods are synchronized, so samples can
+ * be added and queried from different threads, but a caller that samples at
+ * the sensor rate pays for the lock on every sample. NoiseActivity feeds it at
+ * the plot rate instead.
+ */
+public class DownsampledHistory {
+    public static final int TIER_RAW = 0;
+    public static final int TIER_SECOND = 1;
+    public static final int TIER_TEN_SECONDS = 2;
+    public static final int TIER_MINUTE = 3;
+
+    public static final int TIERS = 4;
+
+    private static final long[] BUCKET_NANOS = new long[]{0, 1000000000L,
+            10000000000L, 60000000000L};
+
+    private static final int[] DEFAULT_CAPACITY = new int[]{4096, 600, 720,
+            1440};
+
+    /**
+     * The result of a query, one entry per bucket in time order. The arrays
+     * are allocated once, so a Series can be reused for every query.
+     */
+    public static class Series {
+        // The start of each bucket in nanoseconds
+        public final long[] time;
+        public final int[] count;
+        public final double[] min;
+        public final double[] max;
+        public final double[] mean;
+        public final double[] stdDev;
+
+        // The number of valid entries
+        public int size;
+
+        // The tier the buckets came from
+        public int tier;
+
+        /**
+         * Initialize a new Series.
+         *
+         * @param capacity The most buckets a query returns.
+         */
+        public Series(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+            }
+
+            time = new long[capacity];
+            count = new int[capacity];
+            min = new double[capacity];
+            max = new double[capacity];
+            mean = new double[capacity];
+            stdDev = new double[capacity];
+        }
+
+        public int getCapacity() {
+            return time.length;
+        }
+    }
+
+    /**
+     * A ring of buckets of one resolution, plus the bucket that is still
+     * being filled.
+     */
+    private static class Tier {
+        final long bucketNanos;
+
+        final long[] time;
+        final int[] count;
+        final double[] min;
+        final double[] max;
+        final double[] sum;
+        final double[] sumSq;
+
+        // Index of the oldest bucket and number of closed buckets
+        int head;
+        int size;
+
+        // The open bucket
+        boolean open;
+        long openTime;
+        int openCount;
+        double openMin;
+        double openMax;
+        double openSum;
+        double openSumSq;
+
+        Tier(long bucketNanos, int capacity) {
+            this.bucketNanos = bucketNanos;
+
+            time = new long[capacity];
+            count = new int[capacity];
+            min = new double[capacity];
+            max = new double[capacity];
+            sum = new double[capacity];
+            sumSq = new double[capacity];
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+            open = false;
+        }
+
+        int index(int i) {
+            int index = head + i;
+            return index < time.length ? index : index - time.length;
+        }
+
+        void push(long t, int n, double lo, double hi, double s, double sq) {
+            int index;
+
+            if (size < time.length) {
+                index = index(size);
+                size++;
+            } else {
+                // Full, overwrite the oldest bucket
+                index = head;
+                head = index(1);
+            }
+
+            time[index] = t;
+            count[index] = n;
+            min[index] = lo;
+            max[index] = hi;
+            sum[index] = s;
+            sumSq[index] = sq;
+        }
+
+        void openBucket(long t) {
+            open = true;
+            openTime = t;
+            openCount = 0;
+            openMin = Double.POSITIVE_INFINITY;
+            openMax = Double.NEGATIVE_INFINITY;
+            openSum = 0;
+            openSumSq = 0;
+        }
+
+        void merge(int n, double lo, double hi, double s, double sq) {
+            openCount += n;
+            openMin = Math.min(openMin, lo);
+            openMax = Math.max(openMax, hi);
+            openSum += s;
+            openSumSq += sq;
+        }
+
+        /**
+         * Get the position of the first closed bucket for which the start
+         * plus the given width is after the given time, or size if there is
+         * none.
+         */
+        int search(long t, long width) {
+            int lo = 0;
+            int hi = size;
+
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+
+                if (time[index(mid)] + width <= t) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            return lo;
+        }
+
+        long oldest() {
+            if (size > 0) {
+                return time[head];
+            }
+
+            return open ? openTime : Long.MAX_VALUE;
+        }
+    }
+
+    private final Tier[] tiers = new Tier[TIERS];
+
+    // Sums are kept relative to the first sample so that the variance of
+    // a metric with a large offset, like gravity, stays precise.
+    private boolean referenceInitialized = false;
+    private double reference = 0;
+
+    // Buckets are aligned to the first timestamp
+    private long origin = 0;
+
+    /**
+     * Initialize a new DownsampledHistory with the default capacities.
+     */
+    public DownsampledHistory() {
+        this(DEFAULT_CAPACITY[TIER_RAW], DEFAULT_CAPACITY[TIER_SECOND],
+                DEFAULT_CAPACITY[TIER_TEN_SECONDS], DEFAULT_CAPACITY[TIER_MINUTE]);
+    }
+
+    /**
+     * Initialize a new DownsampledHistory.
+     *
+     * @param rawCapacity       The number of raw samples kept.
+     * @param secondCapacity    The number of 1 second buckets kept.
+     * @param tenSecondCapacity The number of 10 second buckets kept.
+     * @param minuteCapacity    The number of 1 minute buckets kept.
+     */
+    public DownsampledHistory(int rawCapacity, int secondCapacity,
+                              int tenSecondCapacity, int minuteCapacity) {
+        int[] capacity = new int[]{rawCapacity, secondCapacity,
+                tenSecondCapacity, minuteCapacity};
+
+        for (int tier = 0; tier < TIERS; tier++) {
+            if (capacity[tier] < 1) {
+                throw new IllegalArgumentException("Capacity must be positive: " + capacity[tier]);
+            }
+
+            tiers[tier] = new Tier(BUCKET_NANOS[tier], capacity[tier]);
+        }
+    }
+
+    /**
+     * Discard all samples.
+     */
+    public synchronized void reset() {
+        referenceInitialized = false;
+        reference = 0;
+        origin = 0;
+
+        for (int tier = 0; tier < TIERS; tier++) {
+            tiers[tier].clear();
+        }
+    }
+
+    /**
+     * Add a sample. Timestamps must not decrease.
+     *
+     * @param timestamp The timestamp of the sample in nanoseconds.
+     * @param value     The sample.
+     */
+    public synchronized void addSample(long timestamp, double value) {
+        if (!referenceInitialized) {
+            reference = value;
+            origin = timestamp;
+            referenceInitialized = true;
+        }
+
+        double x = value - reference;
+
+        tiers[TIER_RAW].push(timestamp, 1, x, x, x, x * x);
+
+        // Close the buckets the sample is past, finest first, so each closed
+        // bucket is merged into the next tier before that tier is checked.
+        for (int tier = TIER_SECOND; tier < TIERS; tier++) {
+            Tier t = tiers[tier];
+
+            if (t.open && timestamp - t.openTime >= t.bucketNanos) {
+                closeBucket(tier);
+            }
+        }
+
+        for (int tier = TIER_SECOND; tier < TIERS; tier++) {
+            Tier t = tiers[tier];
+
+            if (!t.open) {
+                t.openBucket(alignBucket(timestamp, t.bucketNanos));
+            }
+        }
+
+        tiers[TIER_SECOND].merge(1, x, x, x, x * x);
+    }
+
+    /**
+     * Copy the history between two times into a series, at the finest
+     * resolution for which the range fits into the series. The bucket that is
+     * still being filled is included, so the latest samples are always part
+     * of the result. If even the coarsest tier has more buckets in the range
+     * than fit, the newest ones are returned.
+     *
+     * @param startTime The start of the range in nanoseconds, inclusive.
+     * @param endTime   The end of the range in nanoseconds, exclusive.
+     * @param series    The series to fill.
+     */
+    public void query(long startTime, long endTime, Series series) {
+        query(startTime, endTime, TIER_RAW, series);
+    }
+
+    /**
+     * Copy the history between two times into a series, like
+     * query(long, long, Series), but from no finer tier than the given one.
+     * The standard deviation of a raw sample is always 0, so a plot of the
+     * spread of the samples starts at TIER_SECOND.
+     *
+     * @param startTime The start of the range in nanoseconds, inclusive.
+     * @param endTime   The end of the range in nanoseconds, exclusive.
+     * @param minTier   The finest tier to use.
+     * @param series    The series to fill.
+     */
+    public synchronized void query(long startTime, long endTime, int minTier,
+                                   Series series) {
+        if (minTier < TIER_RAW || minTier >= TIERS) {
+            throw new IllegalArgumentException("No such tier: " + minTier);
+        }
+
+        series.size = 0;
+        series.tier = minTier;
+
+        if (!referenceInitialized || endTime <= startTime) {
+            return;
+        }
+
+        int capacity = series.getCapacity();
+        int tier = minTier;
+
+        for (; tier < TIERS - 1; tier++) {
+            Tier t = tiers[tier];
+
+            // A finer tier is good enough when it reaches back to the start
+            // of the range and the range fits into the series.
+            boolean covers = t.oldest() <= Math.max(startTime, origin);
+
+            if (covers && countBuckets(t, startTime, endTime) <= capacity) {
+                break;
+            }
+        }
+
+        Tier t = tiers[tier];
+        series.tier = tier;
+
+        int first = firstBucket(t, startTime);
+        int last = lastBucket(t, endTime);
+
+        boolean includeOpen = isOpenInRange(t, startTime, endTime);
+
+        // Drop the oldest buckets if there are too many
+        int total = last - first + (includeOpen ? 1 : 0);
+
+        if (total > capacity) {
+            first += total - capacity;
+        }
+
+        for (int i = first; i < last; i++) {
+            int index = t.index(i);
+
+            setEntry(series, t.time[index], t.count[index], t.min[index],
+                    t.max[index], t.sum[index], t.sumSq[index]);
+        }
+
+        if (includeOpen && series.size < capacity) {
+            // The open bucket hasn't received the samples of the open buckets
+            // of the finer tiers yet.
+            int n = t.openCount;
+            double lo = t.openMin;
+            double hi = t.openMax;
+            double sum = t.openSum;
+            double sumSq = t.openSumSq;
+
+            for (int finer = TIER_SECOND; finer < tier; finer++) {
+                Tier f = tiers[finer];
+
+                if (f.open && f.openCount > 0) {
+                    n += f.openCount;
+                    lo = Math.min(lo, f.openMin);
+                    hi = Math.max(hi, f.openMax);
+                    sum += f.openSum;
+                    sumSq += f.openSumSq;
+                }
+            }
+
+            setEntry(series, t.openTime, n, lo, hi, sum, sumSq);
+        }
+    }
+
+    /**
+     * Get the time of the oldest sample or bucket still kept.
+     *
+     * @return The time in nanoseconds, or Long.MAX_VALUE if there is no
+     * history.
+     */
+    public synchronized long getOldestTime() {
+        long oldest = Long.MAX_VALUE;
+
+        for (int tier = 0; tier < TIERS; tier++) {
+            oldest = Math.min(oldest, tiers[tier].oldest());
+        }
+
+        return oldest;
+    }
+
+    private void closeBucket(int tier) {
+        Tier t = tiers[tier];
+
+        t.push(t.openTime, t.openCount, t.openMin, t.openMax, t.openSum,
+                t.openSumSq);
+        t.open = false;
+
+        if (tier + 1 < TIERS) {
+            Tier next = tiers[tier + 1];
+
+            if (!next.open) {
+                next.openBucket(alignBucket(t.openTime, next.bucketNanos));
+            }
+
+            next.merge(t.openCount, t.openMin, t.openMax, t.openSum,
+                    t.openSumSq);
+        }
+    }
+
+    private long alignBucket(long timestamp, long bucketNanos) {
+        long offset = timestamp - origin;
+
+        return origin + offset - (offset % bucketNanos + bucketNanos)
+                % bucketNanos;
+    }
+
+    private int countBuckets(Tier t, long startTime, long endTime) {
+        int n = Math.max(0, lastBucket(t, endTime) - firstBucket(t, startTime));
+
+        return isOpenInRange(t, startTime, endTime) ? n + 1 : n;
+    }
+
+    // The first closed bucket that ends after the start of the range
+    private int firstBucket(Tier t, long startTime) {
+        return t.search(startTime, Math.max(t.bucketNanos, 1));
+    }
+
+    // One past the last closed bucket that starts before the end of the range
+    private int lastBucket(Tier t, long endTime) {
+        return t.search(endTime, 1);
+    }
+
+    private boolean isOpenInRange(Tier t, long startTime, long endTime) {
+        return t.open && t.openTime < endTime
+                && t.openTime + t.bucketNanos > startTime;
+    }
+
+    private void setEntry(Series series, long time, int count, double min,
+                          double max, double sum, double sumSq) {
+        int i = series.size++;
+
+        double mean = sum / count;
+        double variance = sumSq / count - mean * mean;
+
+        series.time[i] = time;
+        series.count[i] = count;
+        series.min[i] = min + reference;
+        series.max[i] = max + reference;
+        series.mean[i] = mean + reference;
+        series.stdDev[i] = variance > 0 ? Math.sqrt(variance) : 0;
+    }
+}
@@ -0,0 +1,168 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A histogram of durations in nanoseconds with log-linear buckets, in the
+ * style of HdrHistogram. Each power of two is split into SUB_BUCKETS linear
+ * buckets, so any recorded value is known to within 1 / SUB_BUCKETS of itself
+ * over the whole range of a long with a fixed, small number of buckets.
+ * <p>
+ * Recording is lock-free and allocation free, so any number of threads can
+ * record into the same histogram while another reads it. A reader sees each
+ * counter atomically but not a consistent snapshot of all of them, which is
+ * fine for monitoring.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values below SUB_BUCKETS have a bucket each, then SUB_BUCKETS per
+    // power of two up to 2^62.
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration in nanoseconds, negative values are recorded
+     *              as zero.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(getBucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+
+        long current = max.get();
+
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get the number of durations recorded.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the mean duration.
+     *
+     * @return The mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+
+        return n > 0 ? (double) sum.get() / n : 0;
+    }
+
+    /**
+     * Get the longest duration.
+     *
+     * @return The maximum in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get a percentile of the durations.
+     *
+     * @param percentile The percentile, 0 - 100.
+     * @return The highest value equivalent to the bucket the percentile falls
+     * in, in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1,
+                (long) Math.ceil(total * Math.min(100, percentile) / 100.0));
+
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= target) {
+                return Math.min(getHighestEquivalentValue(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Discard everything recorded. Durations recorded concurrently may or may
+     * not survive the reset.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getHighestEquivalentValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
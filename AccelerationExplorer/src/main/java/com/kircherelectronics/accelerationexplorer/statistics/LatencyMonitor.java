@@ -0,0 +1,210 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Measures where the time goes between a sensor event and the value drawn on
+ * the screen. Each stage of the sensor processing path has a
+ * LatencyHistogram, and the age of the sensor events is tracked both when they
+ * arrive and when the value they produced is plotted.
+ * <p>
+ * A stage is timed with:
+ * <pre>
+ * long start = monitor.start();
+ * ...
+ * monitor.stop(LatencyMonitor.STAGE_FUSION, start);
+ * </pre>
+ * When the monitor is disabled start() returns 0 without reading the clock and
+ * stop() returns immediately, so the instrumentation costs a volatile read per
+ * stage. Every method can be called from any thread.
+ * <p>
+ * Event ages assume SensorEvent.timestamp is on the
+ * SystemClock.elapsedRealtimeNanos() time base, which is the case on most
+ * devices. Where it is not the ages are meaningless.
+ */
+public class LatencyMonitor {
+    public static final int STAGE_EVENT_AGE = 0;
+    public static final int STAGE_SMOOTHING = 1;
+    public static final int STAGE_FUSION = 2;
+    public static final int STAGE_LOGGING = 3;
+    public static final int STAGE_PLOTTING = 4;
+    public static final int STAGE_PLOTTED_AGE = 5;
+
+    public static final int STAGES = 6;
+
+    private static final String[] STAGE_NAMES = {"Event age", "Smoothing",
+            "Fusion", "Logging", "Plotting", "Plotted age"};
+
+    private final LatencyHistogram[] histograms;
+
+    private volatile boolean enabled = false;
+
+    // The timestamp of the latest sensor event, on the elapsed realtime base
+    private volatile long latestEventTimestamp = 0;
+
+    private volatile long resetTime;
+
+    /**
+     * Initialize a new, disabled LatencyMonitor.
+     */
+    public LatencyMonitor() {
+        histograms = new LatencyHistogram[STAGES];
+
+        for (int i = 0; i < STAGES; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+
+        resetTime = System.nanoTime();
+    }
+
+    /**
+     * Enable or disable the monitor.
+     *
+     * @param enabled True to record.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Determine if the monitor is recording.
+     *
+     * @return True if enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start timing a stage.
+     *
+     * @return The start time to hand to stop(), or 0 if disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish timing a stage.
+     *
+     * @param stage The stage.
+     * @param start The value returned by start().
+     */
+    public void stop(int stage, long start) {
+        if (start != 0) {
+            histograms[stage].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record the arrival of a sensor event.
+     *
+     * @param eventTimestamp The SensorEvent.timestamp in nanoseconds.
+     */
+    public void onEvent(long eventTimestamp) {
+        if (enabled) {
+            latestEventTimestamp = eventTimestamp;
+
+            histograms[STAGE_EVENT_AGE].record(SystemClock.elapsedRealtimeNanos()
+                    - eventTimestamp);
+        }
+    }
+
+    /**
+     * Record that the value produced by the latest sensor event has been
+     * plotted.
+     */
+    public void onPlotted() {
+        if (enabled) {
+            long timestamp = latestEventTimestamp;
+
+            if (timestamp != 0) {
+                histograms[STAGE_PLOTTED_AGE].record(SystemClock
+                        .elapsedRealtimeNanos() - timestamp);
+            }
+        }
+    }
+
+    /**
+     * Get the histogram of a stage.
+     *
+     * @param stage The stage.
+     * @return The histogram.
+     */
+    public LatencyHistogram getHistogram(int stage) {
+        return histograms[stage];
+    }
+
+    /**
+     * Get the display name of a stage.
+     *
+     * @param stage The stage.
+     * @return The name.
+     */
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * Discard everything recorded.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+
+        latestEventTimestamp = 0;
+        resetTime = System.nanoTime();
+    }
+
+    /**
+     * Format the throughput and latency percentiles of every stage as a
+     * table, one stage per line, with the latencies in microseconds.
+     *
+     * @return The dump.
+     */
+    public String dump() {
+        double seconds = (System.nanoTime() - resetTime) / 1000000000.0;
+
+        StringBuilder dump = new StringBuilder();
+
+        dump.append(String.format(Locale.US, "%-12s %8s %8s %8s %8s %8s %8s%n",
+                "Stage", "Count", "Rate/s", "p50 us", "p90 us", "p99 us",
+                "Max us"));
+
+        for (int i = 0; i < STAGES; i++) {
+            LatencyHistogram histogram = histograms[i];
+            long count = histogram.getCount();
+
+            dump.append(String.format(Locale.US,
+                    "%-12s %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n",
+                    STAGE_NAMES[i], count, seconds > 0 ? count / seconds : 0,
+                    histogram.getPercentile(50) / 1000.0,
+                    histogram.getPercentile(90) / 1000.0,
+                    histogram.getPercentile(99) / 1000.0,
+                    histogram.getMax() / 1000.0));
+        }
+
+        return dump.toString();
+    }
+}
@@ -0,0 +1,405 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Characterises the noise of a three axis sensor. For each axis a Welch
+ * averaged power spectral density is calculated over a large window of the
+ * latest samples, and the Allan deviation at octave spaced cluster times is
+ * calculated over every sample since the last reset.
+ * <p>
+ * The sensor thread hands samples over with addSample(), which only writes
+ * into a preallocated ring buffer and never blocks. The analysis itself runs
+ * in run(), which is intended to be the body of a worker thread and
+ * re-analyzes the latest window periodically until the thread is
+ * interrupted. The UI thread reads the latest results with the getters.
+ */
+public class NoiseAnalyzer implements Runnable {
+    public static final int AXES = 3;
+
+    // Samples per analysis window and per Welch segment
+    public static final int DEFAULT_WINDOW_LENGTH = 4096;
+    public static final int DEFAULT_SEGMENT_LENGTH = 512;
+
+    // How often the worker re-analyzes the window
+    private static final long ANALYSIS_PERIOD_MS = 500;
+
+    private final int windowLength;
+
+    // The ring buffer written by the sensor thread
+    private final int capacity;
+    private final int mask;
+    private final float[][] ring;
+    private final long[] timestamps;
+    private volatile long writeCount = 0;
+
+    // The next sample to feed to the Allan variance, owned by the worker
+    private long readCount = 0;
+    private long firstTimestamp = 0;
+
+    // Work buffers owned by the worker thread
+    private final double[][] window;
+    private final double[][] psd;
+    private final double[][] adev;
+    private final double[] tau;
+    private final double[] noiseDensity;
+
+    private final WelchPsd welch;
+    private final StreamingAllanVariance[] allanVariance;
+
+    // Results published to the UI thread, guarded by lock
+    private final Object lock = new Object();
+    private final double[][] publishedPsd;
+    private final double[][] publishedAdev;
+    private final double[] publishedTau;
+    private final double[] publishedNoiseDensity;
+    private double publishedSampleRate = 0;
+    private int publishedTauCount = 0;
+    private boolean resultAvailable = false;
+
+    /**
+     * Initialize a new NoiseAnalyzer with the default window and segment
+     * lengths.
+     */
+    public NoiseAnalyzer() {
+        this(DEFAULT_WINDOW_LENGTH, DEFAULT_SEGMENT_LENGTH);
+    }
+
+    /**
+     * Initialize a new NoiseAnalyzer.
+     *
+     * @param windowLength  The number of samples analyzed at a time.
+     * @param segmentLength The Welch segment length, a power of two no larger
+     *                      than the window.
+     */
+    public NoiseAnalyzer(int windowLength, int segmentLength) {
+        if (segmentLength > windowLength) {
+            throw new IllegalArgumentException("Segment length " + segmentLength
+                    + " is larger than the window " + windowLength);
+        }
+
+        this.windowLength = windowLength;
+
+        // Leave room for the sensor thread to keep writing while the worker
+        // copies the window out.
+        capacity = Integer.highestOneBit(windowLength - 1) << 2;
+        mask = capacity - 1;
+
+        ring = new float[AXES][capacity];
+        timestamps = new long[capacity];
+
+        welch = new WelchPsd(segmentLength);
+
+        allanVariance = new StreamingAllanVariance[AXES];
+
+        for (int axis = 0; axis < AXES; axis++) {
+            allanVariance[axis] = new StreamingAllanVariance();
+        }
+
+        int maxTaus = StreamingAllanVariance.MAX_LEVELS;
+
+        window = new double[AXES][windowLength];
+        psd = new double[AXES][welch.getBinCount()];
+        adev = new double[AXES][maxTaus];
+        tau = new double[maxTaus];
+        noiseDensity = new double[AXES];
+
+        publishedPsd = new double[AXES][welch.getBinCount()];
+        publishedAdev = new double[AXES][maxTaus];
+        publishedTau = new double[maxTaus];
+        publishedNoiseDensity = new double[AXES];
+    }
+
+    /**
+     * Add a sample from the sensor. Only the sensor thread should call this.
+     *
+     * @param values    The sample, at least AXES values.
+     * @param timestamp The sample timestamp in nanoseconds, presumably
+     *                  SensorEvent.timestamp.
+     */
+    public void addSample(float[] values, long timestamp) {
+        long count = writeCount;
+        int index = (int) (count & mask);
+
+        for (int axis = 0; axis < AXES; axis++) {
+            ring[axis][index] = values[axis];
+        }
+
+        timestamps[index] = timestamp;
+
+        // The volatile write publishes the sample to the worker thread.
+        writeCount = count + 1;
+    }
+
+    /**
+     * Discard all samples and results. Must not be called while samples are
+     * being added or the worker is running, so stop the worker and join it
+     * first.
+     */
+    public void reset() {
+        writeCount = 0;
+        readCount = 0;
+
+        for (int axis = 0; axis < AXES; axis++) {
+            allanVariance[axis].reset();
+        }
+
+        synchronized (lock) {
+            resultAvailable = false;
+            publishedTauCount = 0;
+            publishedSampleRate = 0;
+        }
+    }
+
+    /**
+     * Analyze the latest window periodically until the thread is
+     * interrupted.
+     */
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(ANALYSIS_PERIOD_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            analyze();
+        }
+    }
+
+    /**
+     * Determine if a result has been calculated yet.
+     *
+     * @return True if the getters return a result.
+     */
+    public boolean isResultAvailable() {
+        synchronized (lock) {
+            return resultAvailable;
+        }
+    }
+
+    /**
+     * Get the number of bins of the power spectral density.
+     *
+     * @return The number of bins.
+     */
+    public int getBinCount() {
+        return welch.getBinCount();
+    }
+
+    /**
+     * Get the estimated sample rate of the last analyzed window.
+     *
+     * @return The sample rate in Hz.
+     */
+    public double getSampleRate() {
+        synchronized (lock) {
+            return publishedSampleRate;
+        }
+    }
+
+    /**
+     * Get the frequency resolution of the power spectral density.
+     *
+     * @return The width of a bin in Hz.
+     */
+    public double getFrequencyResolution() {
+        synchronized (lock) {
+            return publishedSampleRate / welch.getSegmentLength();
+        }
+    }
+
+    /**
+     * Get the noise density of each axis, the root of the mean power spectral
+     * density excluding DC.
+     *
+     * @param out The output, at least AXES values.
+     */
+    public void getNoiseDensity(double[] out) {
+        synchronized (lock) {
+            System.arraycopy(publishedNoiseDensity, 0, out, 0, AXES);
+        }
+    }
+
+    /**
+     * Get the power spectral density of an axis.
+     *
+     * @param axis The axis.
+     * @param out  The output, at least getBinCount() values.
+     */
+    public void getPowerSpectralDensity(int axis, double[] out) {
+        synchronized (lock) {
+            System.arraycopy(publishedPsd[axis], 0, out, 0,
+                    publishedPsd[axis].length);
+        }
+    }
+
+    /**
+     * Get the Allan deviation of an axis over all samples since the last
+     * reset.
+     *
+     * @param axis The axis.
+     * @param tau  The output cluster times in seconds.
+     * @param adev The output Allan deviations.
+     * @return The number of cluster times written.
+     */
+    public int getAllanDeviation(int axis, double[] tau, double[] adev) {
+        synchronized (lock) {
+            int count = Math.min(publishedTauCount,
+                    Math.min(tau.length, adev.length));
+
+            System.arraycopy(publishedTau, 0, tau, 0, count);
+            System.arraycopy(publishedAdev[axis], 0, adev, 0, count);
+
+            return count;
+        }
+    }
+
+    /**
+     * Analyze the latest window of samples.
+     */
+    private void analyze() {
+        long end = writeCount;
+
+        int tauCount = updateAllanVariance(end);
+
+        if (end < windowLength) {
+            return;
+        }
+
+        long start = end - windowLength;
+
+        for (int i = 0; i < windowLength; i++) {
+            int index = (int) ((start + i) & mask);
+
+            for (int axis = 0; axis < AXES; axis++) {
+                window[axis][i] = ring[axis][index];
+            }
+        }
+
+        long first = timestamps[(int) (start & mask)];
+        long last = timestamps[(int) ((end - 1) & mask)];
+
+        // If the sensor thread lapped us while copying, the window is torn and
+        // we will try again next period. Sample start + capacity goes into the
+        // slot of the first sample, and the sensor thread may already be
+        // writing it before writeCount says so.
+        if (writeCount - start >= capacity) {
+            return;
+        }
+
+        if (last <= first) {
+            return;
+        }
+
+        double sampleRate = (windowLength - 1) / ((last - first) / 1000000000.0);
+
+        for (int axis = 0; axis < AXES; axis++) {
+            welch.estimate(window[axis], windowLength, sampleRate, psd[axis]);
+
+            double sum = 0;
+
+            for (int k = 1; k < psd[axis].length; k++) {
+                sum += psd[axis][k];
+            }
+
+            noiseDensity[axis] = Math.sqrt(sum / (psd[axis].length - 1));
+        }
+
+        synchronized (lock) {
+            for (int axis = 0; axis < AXES; axis++) {
+                System.arraycopy(psd[axis], 0, publishedPsd[axis], 0,
+                        psd[axis].length);
+                System.arraycopy(adev[axis], 0, publishedAdev[axis], 0,
+                        tauCount);
+            }
+
+            System.arraycopy(tau, 0, publishedTau, 0, tauCount);
+            System.arraycopy(noiseDensity, 0, publishedNoiseDensity, 0, AXES);
+
+            publishedTauCount = tauCount;
+            publishedSampleRate = sampleRate;
+            resultAvailable = true;
+        }
+    }
+
+    /**
+     * Feed every sample added since the last analysis to the Allan variance.
+     *
+     * @param end The number of samples written when the analysis started.
+     * @return The number of Allan deviation cluster times available.
+     */
+    private int updateAllanVariance(long end) {
+        long start = readCount;
+
+        if (allanVariance[0].getSampleCount() == 0 && end > start) {
+            firstTimestamp = timestamps[(int) (start & mask)];
+        }
+
+        if (end - start < capacity) {
+            for (long i = start; i < end; i++) {
+                int index = (int) (i & mask);
+
+                for (int axis = 0; axis < AXES; axis++) {
+                    allanVariance[axis].addSample(ring[axis][index]);
+                }
+            }
+        }
+
+        if (writeCount - start >= capacity) {
+            // The sensor thread lapped us and samples were lost. The Allan
+            // variance needs an unbroken sequence, so start over.
+            readCount = writeCount;
+
+            for (int axis = 0; axis < AXES; axis++) {
+                allanVariance[axis].reset();
+            }
+
+            return 0;
+        }
+
+        readCount = end;
+
+        long samples = allanVariance[0].getSampleCount();
+
+        if (samples < 2) {
+            return 0;
+        }
+
+        long lastTimestamp = timestamps[(int) ((end - 1) & mask)];
+
+        if (lastTimestamp <= firstTimestamp) {
+            return 0;
+        }
+
+        double tau0 = ((lastTimestamp - firstTimestamp) / 1000000000.0)
+                / (samples - 1);
+
+        int tauCount = 0;
+
+        for (int axis = 0; axis < AXES; axis++) {
+            tauCount = allanVariance[axis].getAllanDeviation(tau0, tau,
+                    adev[axis]);
+        }
+
+        return tauCount;
+    }
+}
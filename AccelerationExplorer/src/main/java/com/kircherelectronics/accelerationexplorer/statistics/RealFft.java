@@ -0,0 +1,167 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A radix-2 FFT for real valued input. The n real samples are packed into an
+ * n/2 point complex sequence, transformed in place and then split back into
+ * the spectrum of the real signal. All of the twiddle factors and work
+ * buffers are allocated once in the constructor, so transforming a segment
+ * does not allocate.
+ * <p>
+ * An instance is not thread safe, each thread needs its own.
+ */
+public class RealFft {
+    private final int n;
+    private final int half;
+
+    // cos(2*PI*k/n) and sin(2*PI*k/n) for k = 0..n/2
+    private final double[] cos;
+    private final double[] sin;
+
+    private final int[] bitReverse;
+
+    // Work buffers for the n/2 point complex transform
+    private final double[] re;
+    private final double[] im;
+
+    /**
+     * Initialize a new RealFft.
+     *
+     * @param n The transform length, a power of two that is at least 4.
+     */
+    public RealFft(int n) {
+        if (n < 4 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("FFT length must be a power of two >= 4: " + n);
+        }
+
+        this.n = n;
+        this.half = n / 2;
+
+        cos = new double[half + 1];
+        sin = new double[half + 1];
+
+        for (int k = 0; k <= half; k++) {
+            double angle = 2 * Math.PI * k / n;
+            cos[k] = Math.cos(angle);
+            sin[k] = Math.sin(angle);
+        }
+
+        bitReverse = new int[half];
+
+        int bits = Integer.numberOfTrailingZeros(half);
+
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+
+        re = new double[half];
+        im = new double[half];
+    }
+
+    /**
+     * Get the transform length.
+     *
+     * @return The number of real samples in a transform.
+     */
+    public int getLength() {
+        return n;
+    }
+
+    /**
+     * Calculate the squared magnitude of the spectrum of the real input,
+     * |X(k)|^2 for k = 0..n/2.
+     *
+     * @param x   The real input, at least n samples.
+     * @param out The output, at least n/2 + 1 values.
+     */
+    public void powerSpectrum(double[] x, double[] out) {
+        // Pack the even samples into the real part and the odd samples into
+        // the imaginary part, in bit reversed order.
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = x[2 * i];
+            im[j] = x[2 * i + 1];
+        }
+
+        transform();
+
+        // Split the n/2 point complex spectrum Z into the spectrum X of the
+        // real sequence:
+        // X(k) = (Z(k) + Z*(n/2-k))/2 - i*W(k)*(Z(k) - Z*(n/2-k))/2
+        // where W(k) = exp(-2*PI*i*k/n).
+        out[0] = (re[0] + im[0]) * (re[0] + im[0]);
+        out[half] = (re[0] - im[0]) * (re[0] - im[0]);
+
+        for (int k = 1; k < half; k++) {
+            double zr = re[k];
+            double zi = im[k];
+            double cr = re[half - k];
+            double ci = -im[half - k];
+
+            double evenRe = (zr + cr) * 0.5;
+            double evenIm = (zi + ci) * 0.5;
+            double diffRe = (zr - cr) * 0.5;
+            double diffIm = (zi - ci) * 0.5;
+
+            // odd = -i * diff
+            double oddRe = diffIm;
+            double oddIm = -diffRe;
+
+            double wr = cos[k];
+            double wi = -sin[k];
+
+            double xr = evenRe + wr * oddRe - wi * oddIm;
+            double xi = evenIm + wr * oddIm + wi * oddRe;
+
+            out[k] = xr * xr + xi * xi;
+        }
+    }
+
+    /**
+     * The in place, iterative n/2 point complex FFT on the bit reversed work
+     * buffers.
+     */
+    private void transform() {
+        for (int size = 2; size <= half; size <<= 1) {
+            int halfSize = size >> 1;
+            // exp(-2*PI*i*j/size) = W(j*n/size)
+            int step = n / size;
+
+            for (int i = 0; i < half; i += size) {
+                for (int j = 0; j < halfSize; j++) {
+                    int t = j * step;
+                    double wr = cos[t];
+                    double wi = -sin[t];
+
+                    int a = i + j;
+                    int b = a + halfSize;
+
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Calculates the Allan variance of an arbitrarily long recording in a single
+ * pass, at octave spaced cluster sizes m = 1, 2, 4, ... samples.
+ * <p>
+ * The samples are integrated into a cumulative sum (the "phase") and the
+ * Allan variance at cluster size m is the mean of
+ * (phase[k + 2m] - 2 * phase[k + m] + phase[k])^2 / (2 * m^2). The fully
+ * overlapping estimator uses every k, which needs the last 2m phase values
+ * and therefore O(N) memory. Instead, each octave only keeps the phase at
+ * every m/overlap samples, so each cluster size is evaluated with the given
+ * number of overlapping clusters per cluster length and needs 2 * overlap + 1
+ * values. Cluster sizes up to the overlap factor are fully overlapping. The
+ * memory is O(overlap * log N) and a sample costs O(log overlap) amortized.
+ * <p>
+ * Everything is calculated in units of samples, so the sample period is only
+ * needed to report the cluster times. The class has no Android dependencies
+ * and can be used offline on recorded data as well as on the device.
+ */
+public class StreamingAllanVariance {
+    // Supports recordings of up to 2^MAX_LEVELS samples
+    public static final int MAX_LEVELS = 40;
+
+    public static final int DEFAULT_OVERLAP = 4;
+
+    private final int overlap;
+
+    // Per octave: the decimated phase history and the accumulated sums
+    private final double[][] history;
+    private final int[] historyLength;
+    private final int[] lag;
+    private final int[] head;
+    private final long[] filled;
+    private final double[] sum;
+    private final long[] terms;
+
+    private boolean referenceInitialized = false;
+    private double reference = 0;
+
+    private double phase = 0;
+    private long count = 0;
+
+    /**
+     * Initialize a new StreamingAllanVariance with the default overlap.
+     */
+    public StreamingAllanVariance() {
+        this(DEFAULT_OVERLAP);
+    }
+
+    /**
+     * Initialize a new StreamingAllanVariance.
+     *
+     * @param overlap The number of overlapping clusters evaluated per cluster
+     *                length, a power of two. Larger values lower the
+     *                variance of the estimate at the cost of memory and time.
+     */
+    public StreamingAllanVariance(int overlap) {
+        if (overlap < 1 || (overlap & (overlap - 1)) != 0) {
+            throw new IllegalArgumentException("Overlap must be a power of two: " + overlap);
+        }
+
+        this.overlap = overlap;
+
+        history = new double[MAX_LEVELS][2 * overlap + 1];
+        historyLength = new int[MAX_LEVELS];
+        lag = new int[MAX_LEVELS];
+        head = new int[MAX_LEVELS];
+        filled = new long[MAX_LEVELS];
+        sum = new double[MAX_LEVELS];
+        terms = new long[MAX_LEVELS];
+
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            long m = 1L << level;
+            lag[level] = (int) Math.min(m, overlap);
+            historyLength[level] = 2 * lag[level] + 1;
+        }
+
+        reset();
+    }
+
+    /**
+     * Discard all samples.
+     */
+    public void reset() {
+        referenceInitialized = false;
+        reference = 0;
+        phase = 0;
+        count = 0;
+
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            head[level] = 0;
+            filled[level] = 0;
+            sum[level] = 0;
+            terms[level] = 0;
+        }
+
+        addPhase(0);
+    }
+
+    /**
+     * Get the number of samples added.
+     *
+     * @return The number of samples.
+     */
+    public long getSampleCount() {
+        return count;
+    }
+
+    /**
+     * Add the next sample of the recording.
+     *
+     * @param value The sample.
+     */
+    public void addSample(double value) {
+        // The Allan variance does not depend on a constant offset, so we
+        // integrate relative to the first sample to keep the cumulative sum
+        // small and precise over long recordings.
+        if (!referenceInitialized) {
+            reference = value;
+            referenceInitialized = true;
+        }
+
+        phase += value - reference;
+        count++;
+
+        addPhase(count);
+    }
+
+    /**
+     * Add a run of samples of the recording.
+     *
+     * @param values The samples.
+     * @param offset The index of the first sample.
+     * @param length The number of samples.
+     */
+    public void addSamples(double[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            addSample(values[i]);
+        }
+    }
+
+    /**
+     * Get the Allan variance at each cluster size that has at least one term.
+     *
+     * @param tau0 The sample period in seconds.
+     * @param tau  The output cluster times in seconds.
+     * @param avar The output Allan variances.
+     * @return The number of cluster times written.
+     */
+    public int getAllanVariance(double tau0, double[] tau, double[] avar) {
+        int n = 0;
+
+        for (int level = 0; level < MAX_LEVELS && n < tau.length
+                && n < avar.length; level++) {
+            if (terms[level] == 0) {
+                break;
+            }
+
+            double m = 1L << level;
+
+            tau[n] = m * tau0;
+            avar[n] = sum[level] / (2 * m * m * terms[level]);
+
+            n++;
+        }
+
+        return n;
+    }
+
+    /**
+     * Get the Allan deviation at each cluster size that has at least one
+     * term.
+     *
+     * @param tau0 The sample period in seconds.
+     * @param tau  The output cluster times in seconds.
+     * @param adev The output Allan deviations.
+     * @return The number of cluster times written.
+     */
+    public int getAllanDeviation(double tau0, double[] tau, double[] adev) {
+        int n = getAllanVariance(tau0, tau, adev);
+
+        for (int i = 0; i < n; i++) {
+            adev[i] = Math.sqrt(adev[i]);
+        }
+
+        return n;
+    }
+
+    /**
+     * Push the phase at the given index to every octave that samples it.
+     *
+     * @param index The phase index, the number of samples integrated.
+     */
+    private void addPhase(long index) {
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            long stride = (1L << level) / lag[level];
+
+            // Strides grow with the level, so once an octave does not sample
+            // this index none of the larger ones do.
+            if ((index & (stride - 1)) != 0) {
+                break;
+            }
+
+            double[] h = history[level];
+            int length = historyLength[level];
+            int l = lag[level];
+
+            int position = head[level];
+            h[position] = phase;
+
+            if (++filled[level] >= length) {
+                int oneLag = position - l;
+                if (oneLag < 0) {
+                    oneLag += length;
+                }
+
+                int twoLag = oneLag - l;
+                if (twoLag < 0) {
+                    twoLag += length;
+                }
+
+                double d = phase - 2 * h[oneLag] + h[twoLag];
+
+                sum[level] += d * d;
+                terms[level]++;
+            }
+
+            head[level] = position + 1 == length ? 0 : position + 1;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Estimates the one-sided power spectral density of a signal with Welch's
+ * method. The signal is cut into segments that overlap by half, each segment
+ * has its mean removed and a Hann window applied, and the periodograms of the
+ * segments are averaged. Averaging trades frequency resolution for a much
+ * lower variance of the estimate, which is what we want when characterising
+ * sensor noise.
+ * <p>
+ * The output is in units of signal^2/Hz, so for the accelerometer the square
+ * root of a bin is the noise density in (m/s^2)/sqrt(Hz).
+ */
+public class WelchPsd {
+    private final int segmentLength;
+    private final int hop;
+
+    // Sum of the squared window, normalizes the periodogram for the window
+    private double windowPower;
+
+    private final double[] window;
+    private final double[] segment;
+    private final double[] periodogram;
+
+    private final RealFft fft;
+
+    /**
+     * Initialize a new WelchPsd.
+     *
+     * @param segmentLength The segment length, a power of two.
+     */
+    public WelchPsd(int segmentLength) {
+        this.segmentLength = segmentLength;
+        this.hop = segmentLength / 2;
+
+        fft = new RealFft(segmentLength);
+
+        window = new double[segmentLength];
+        segment = new double[segmentLength];
+        periodogram = new double[segmentLength / 2 + 1];
+
+        for (int i = 0; i < segmentLength; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / segmentLength);
+            windowPower += window[i] * window[i];
+        }
+    }
+
+    /**
+     * Get the number of bins in the estimate.
+     *
+     * @return The number of bins, segmentLength/2 + 1.
+     */
+    public int getBinCount() {
+        return periodogram.length;
+    }
+
+    /**
+     * Get the segment length.
+     *
+     * @return The segment length.
+     */
+    public int getSegmentLength() {
+        return segmentLength;
+    }
+
+    /**
+     * Estimate the power spectral density of the first length samples of x.
+     *
+     * @param x          The signal.
+     * @param length     The number of samples of x to use, at least one
+     *                   segment.
+     * @param sampleRate The sample rate of the signal in Hz.
+     * @param psd        The output, at least getBinCount() values. Bin k is
+     *                   at k * sampleRate / segmentLength Hz.
+     * @return The number of segments that were averaged.
+     */
+    public int estimate(double[] x, int length, double sampleRate, double[] psd) {
+        int bins = periodogram.length;
+
+        for (int k = 0; k < bins; k++) {
+            psd[k] = 0;
+        }
+
+        int segments = 0;
+
+        for (int start = 0; start + segmentLength <= length; start += hop) {
+            double mean = 0;
+
+            for (int i = 0; i < segmentLength; i++) {
+                mean += x[start + i];
+            }
+
+            mean /= segmentLength;
+
+            for (int i = 0; i < segmentLength; i++) {
+                segment[i] = (x[start + i] - mean) * window[i];
+            }
+
+            fft.powerSpectrum(segment, periodogram);
+
+            for (int k = 0; k < bins; k++) {
+                psd[k] += periodogram[k];
+            }
+
+            segments++;
+        }
+
+        if (segments == 0) {
+            return 0;
+        }
+
+        double scale = 1.0 / (segments * sampleRate * windowPower);
+
+        for (int k = 0; k < bins; k++) {
+            // Fold the negative frequencies into the one-sided estimate,
+            // except for DC and Nyquist which only appear once.
+            if (k == 0 || k == bins - 1) {
+                psd[k] *= scale;
+            } else {
+                psd[k] *= 2 * scale;
+            }
+        }
+
+        return segments;
+    }
+}
@@ -0,0 +1,427 @@
+package com.kircherelectronics.accelerationexplorer.view;
+
+import android.hardware.SensorManager;
+import android.opengl.GLES20;
+import android.opengl.GLSurfaceView;
+import android.opengl.Matrix;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Renders the attitude of the device as a 3D model, along with the
+ * acceleration vector and a trail of the latest acceleration vectors, with
+ * OpenGL ES 2.0. The world frame is the Android one: x east, y north and z up.
+ * <p>
+ * All geometry lives in vertex buffer objects. The device model and the world
+ * axes are uploaded once per surface. The acceleration vector and the trail
+ * are updated in place with glBufferSubData(), a vertex or two per frame, so
+ * rendering a frame allocates nothing. The trail buffer holds every vertex
+ * twice, at i and i + TRAIL_LENGTH, so the trail is always one contiguous line
+ * strip however far the ring has wrapped.
+ * <p>
+ * The samples are read from an AttitudeSnapshot on the render thread.
+ */
+public class AttitudeRenderer implements GLSurfaceView.Renderer {
+    private static final String tag = AttitudeRenderer.class.getSimpleName();
+
+    // The number of acceleration vectors in the trail
+    public static final int TRAIL_LENGTH = 256;
+
+    private static final int FLOAT_SIZE = 4;
+    private static final int COORDS = 3;
+    private static final int VERTEX_SIZE = COORDS * FLOAT_SIZE;
+
+    // Half the size of the device model, a phone-shaped slab
+    private static final float HALF_WIDTH = 0.35f;
+    private static final float HALF_HEIGHT = 0.7f;
+    private static final float HALF_DEPTH = 0.04f;
+
+    private static final float AXIS_LENGTH = 1.0f;
+
+    // The length of a 1g acceleration vector
+    private static final float VECTOR_SCALE = 1.0f / SensorManager.GRAVITY_EARTH;
+
+    private static final String VERTEX_SHADER = "uniform mat4 uMvpMatrix;\n"
+            + "attribute vec4 aPosition;\n"
+            + "void main() {\n"
+            + "  gl_Position = uMvpMatrix * aPosition;\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n"
+            + "uniform vec4 uColor;\n"
+            + "void main() {\n"
+            + "  gl_FragColor = uColor;\n"
+            + "}\n";
+
+    private static final float[] COLOR_BODY = new float[]{0.25f, 0.25f, 0.25f, 1.0f};
+    private static final float[] COLOR_EDGE = new float[]{1.0f, 1.0f, 1.0f, 1.0f};
+    private static final float[] COLOR_X = new float[]{0.9f, 0.2f, 0.2f, 1.0f};
+    private static final float[] COLOR_Y = new float[]{0.2f, 0.9f, 0.2f, 1.0f};
+    private static final float[] COLOR_Z = new float[]{0.2f, 0.4f, 1.0f, 1.0f};
+    private static final float[] COLOR_WORLD = new float[]{0.4f, 0.4f, 0.4f, 1.0f};
+    private static final float[] COLOR_VECTOR = new float[]{1.0f, 0.24f, 0.0f, 1.0f};
+    private static final float[] COLOR_TRAIL = new float[]{1.0f, 0.24f, 0.0f, 0.5f};
+
+    // The layout of the static buffer, in vertices
+    private static final int BODY_FIRST = 0;
+    private static final int BODY_COUNT = 36;
+    private static final int EDGE_FIRST = BODY_FIRST + BODY_COUNT;
+    private static final int EDGE_COUNT = 24;
+    private static final int DEVICE_AXES_FIRST = EDGE_FIRST + EDGE_COUNT;
+    private static final int WORLD_AXES_FIRST = DEVICE_AXES_FIRST + 6;
+    private static final int STATIC_COUNT = WORLD_AXES_FIRST + 6;
+
+    private final AttitudeSnapshot snapshot;
+
+    private final float[] modelMatrix = new float[16];
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
+    private final float[] mvpMatrix = new float[16];
+
+    // Scratch space for the vertices written per frame
+    private final FloatBuffer vertex;
+    private final float[] worldAcceleration = new float[3];
+
+    private int program;
+    private int positionHandle;
+    private int mvpMatrixHandle;
+    private int colorHandle;
+
+    private int staticBuffer;
+    private int vectorBuffer;
+    private int trailBuffer;
+
+    // The slot the next trail vertex goes to
+    private int trailHead = 0;
+    private int trailCount = 0;
+
+    private long lastSequence = 0;
+
+    /**
+     * Initialize a new AttitudeRenderer.
+     *
+     * @param snapshot The snapshot the samples are read from.
+     */
+    public AttitudeRenderer(AttitudeSnapshot snapshot) {
+        this.snapshot = snapshot;
+
+        vertex = ByteBuffer.allocateDirect(2 * VERTEX_SIZE)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        Matrix.setIdentityM(modelMatrix, 0);
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 unused, EGLConfig config) {
+        // Everything is created again when the context is recreated.
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMvpMatrix");
+        colorHandle = GLES20.glGetUniformLocation(program, "uColor");
+
+        int[] buffers = new int[3];
+        GLES20.glGenBuffers(3, buffers, 0);
+
+        staticBuffer = buffers[0];
+        vectorBuffer = buffers[1];
+        trailBuffer = buffers[2];
+
+        FloatBuffer geometry = createStaticGeometry();
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, staticBuffer);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, STATIC_COUNT * VERTEX_SIZE,
+                geometry, GLES20.GL_STATIC_DRAW);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vectorBuffer);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, 2 * VERTEX_SIZE, null,
+                GLES20.GL_DYNAMIC_DRAW);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, trailBuffer);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, 2 * TRAIL_LENGTH
+                * VERTEX_SIZE, null, GLES20.GL_DYNAMIC_DRAW);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        GLES20.glLineWidth(3.0f);
+
+        trailHead = 0;
+        trailCount = 0;
+
+        // Redraw the current frame into the new buffers.
+        lastSequence = 0;
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 unused, int width, int height) {
+        GLES20.glViewport(0, 0, width, height);
+
+        float aspect = (float) width / height;
+
+        Matrix.perspectiveM(projectionMatrix, 0, 45.0f, aspect, 0.1f, 20.0f);
+
+        // Looking north and down at the origin from the south
+        Matrix.setLookAtM(viewMatrix, 0, 0.0f, -3.2f, 2.4f, 0.0f, 0.0f, 0.0f,
+                0.0f, 0.0f, 1.0f);
+
+        Matrix.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0,
+                viewMatrix, 0);
+    }
+
+    @Override
+    public void onDrawFrame(GL10 unused) {
+        snapshot.poll();
+
+        AttitudeSnapshot.Frame frame = snapshot.getFrame();
+
+        if (frame.sequence != lastSequence) {
+            lastSequence = frame.sequence;
+
+            updateModelMatrix(frame.quaternion);
+            updateVector(frame.acceleration);
+        }
+
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        GLES20.glUseProgram(program);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+
+        // The world axes and the acceleration are drawn in the world frame.
+        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false,
+                viewProjectionMatrix, 0);
+
+        bindBuffer(staticBuffer);
+        drawArrays(GLES20.GL_LINES, WORLD_AXES_FIRST, 6, COLOR_WORLD);
+
+        if (trailCount > 0) {
+            bindBuffer(vectorBuffer);
+            drawArrays(GLES20.GL_LINES, 0, 2, COLOR_VECTOR);
+        }
+
+        if (trailCount > 1) {
+            int first = trailHead - trailCount;
+
+            if (first < 0) {
+                first += TRAIL_LENGTH;
+            }
+
+            bindBuffer(trailBuffer);
+            drawArrays(GLES20.GL_LINE_STRIP, first, trailCount, COLOR_TRAIL);
+        }
+
+        // The device in its attitude
+        Matrix.multiplyMM(mvpMatrix, 0, viewProjectionMatrix, 0, modelMatrix, 0);
+        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+
+        bindBuffer(staticBuffer);
+        drawArrays(GLES20.GL_TRIANGLES, BODY_FIRST, BODY_COUNT, COLOR_BODY);
+        drawArrays(GLES20.GL_LINES, EDGE_FIRST, EDGE_COUNT, COLOR_EDGE);
+        drawArrays(GLES20.GL_LINES, DEVICE_AXES_FIRST, 2, COLOR_X);
+        drawArrays(GLES20.GL_LINES, DEVICE_AXES_FIRST + 2, 2, COLOR_Y);
+        drawArrays(GLES20.GL_LINES, DEVICE_AXES_FIRST + 4, 2, COLOR_Z);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glDisableVertexAttribArray(positionHandle);
+    }
+
+    /**
+     * Convert the attitude quaternion to the model matrix, column-major as
+     * OpenGL expects.
+     *
+     * @param q The attitude as a unit quaternion, w, x, y, z.
+     */
+    private void updateModelMatrix(float[] q) {
+        float w = q[0];
+        float x = q[1];
+        float y = q[2];
+        float z = q[3];
+
+        modelMatrix[0] = 1 - 2 * (y * y + z * z);
+        modelMatrix[1] = 2 * (x * y + w * z);
+        modelMatrix[2] = 2 * (x * z - w * y);
+
+        modelMatrix[4] = 2 * (x * y - w * z);
+        modelMatrix[5] = 1 - 2 * (x * x + z * z);
+        modelMatrix[6] = 2 * (y * z + w * x);
+
+        modelMatrix[8] = 2 * (x * z + w * y);
+        modelMatrix[9] = 2 * (y * z - w * x);
+        modelMatrix[10] = 1 - 2 * (x * x + y * y);
+    }
+
+    /**
+     * Rotate the acceleration into the world frame and write it to the vector
+     * and trail buffers.
+     *
+     * @param acceleration The acceleration in the device frame.
+     */
+    private void updateVector(float[] acceleration) {
+        // The model matrix rotates the device frame into the world frame.
+        for (int i = 0; i < 3; i++) {
+            worldAcceleration[i] = (modelMatrix[i] * acceleration[0]
+                    + modelMatrix[4 + i] * acceleration[1]
+                    + modelMatrix[8 + i] * acceleration[2]) * VECTOR_SCALE;
+        }
+
+        vertex.clear();
+        vertex.put(0).put(0).put(0);
+        vertex.put(worldAcceleration);
+        vertex.flip();
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vectorBuffer);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, 2 * VERTEX_SIZE,
+                vertex);
+
+        vertex.clear();
+        vertex.put(worldAcceleration);
+        vertex.flip();
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, trailBuffer);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, trailHead * VERTEX_SIZE,
+                VERTEX_SIZE, vertex);
+
+        vertex.position(0);
+
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, (trailHead + TRAIL_LENGTH)
+                * VERTEX_SIZE, VERTEX_SIZE, vertex);
+
+        if (++trailHead == TRAIL_LENGTH) {
+            trailHead = 0;
+        }
+
+        if (trailCount < TRAIL_LENGTH) {
+            trailCount++;
+        }
+    }
+
+    private void bindBuffer(int buffer) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+        GLES20.glVertexAttribPointer(positionHandle, COORDS, GLES20.GL_FLOAT,
+                false, VERTEX_SIZE, 0);
+    }
+
+    private void drawArrays(int mode, int first, int count, float[] color) {
+        GLES20.glUniform4fv(colorHandle, 1, color, 0);
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    /**
+     * Build the vertices that never change: the device body as triangles, its
+     * edges and axes as lines, and the world axes as lines.
+     *
+     * @return The vertices.
+     */
+    private static FloatBuffer createStaticGeometry() {
+        float[][] corners = new float[8][];
+
+        for (int i = 0; i < 8; i++) {
+            corners[i] = new float[]{(i & 1) == 0 ? -HALF_WIDTH : HALF_WIDTH,
+                    (i & 2) == 0 ? -HALF_HEIGHT : HALF_HEIGHT,
+                    (i & 4) == 0 ? -HALF_DEPTH : HALF_DEPTH};
+        }
+
+        // Two triangles per face, by corner
+        int[] faces = new int[]{
+                4, 5, 7, 4, 7, 6, // screen, +z
+                0, 2, 3, 0, 3, 1, // back, -z
+                1, 3, 7, 1, 7, 5, // +x
+                0, 4, 6, 0, 6, 2, // -x
+                2, 6, 7, 2, 7, 3, // +y
+                0, 1, 5, 0, 5, 4}; // -y
+
+        int[] edges = new int[]{0, 1, 2, 3, 4, 5, 6, 7, 0, 2, 1, 3, 4, 6, 5,
+                7, 0, 4, 1, 5, 2, 6, 3, 7};
+
+        FloatBuffer geometry = ByteBuffer
+                .allocateDirect(STATIC_COUNT * VERTEX_SIZE)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        for (int corner : faces) {
+            geometry.put(corners[corner]);
+        }
+
+        for (int corner : edges) {
+            geometry.put(corners[corner]);
+        }
+
+        // The device axes, from the screen surface
+        geometry.put(new float[]{0, 0, HALF_DEPTH, AXIS_LENGTH, 0, HALF_DEPTH});
+        geometry.put(new float[]{0, 0, HALF_DEPTH, 0, AXIS_LENGTH, HALF_DEPTH});
+        geometry.put(new float[]{0, 0, HALF_DEPTH, 0, 0, HALF_DEPTH + AXIS_LENGTH});
+
+        // The world axes
+        geometry.put(new float[]{-AXIS_LENGTH, 0, 0, AXIS_LENGTH, 0, 0});
+        geometry.put(new float[]{0, -AXIS_LENGTH, 0, 0, AXIS_LENGTH, 0});
+        geometry.put(new float[]{0, 0, -AXIS_LENGTH, 0, 0, AXIS_LENGTH});
+
+        geometry.flip();
+
+        return geometry;
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) {
+        int program = GLES20.glCreateProgram();
+
+        GLES20.glAttachShader(program, loadShader(GLES20.GL_VERTEX_SHADER,
+                vertexSource));
+        GLES20.glAttachShader(program, loadShader(GLES20.GL_FRAGMENT_SHADER,
+                fragmentSource));
+        GLES20.glLinkProgram(program);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+
+        if (status[0] == 0) {
+            Log.e(tag, "Could not link program: "
+                    + GLES20.glGetProgramInfoLog(program));
+        }
+
+        return program;
+    }
+
+    private static int loadShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+
+        if (status[0] == 0) {
+            Log.e(tag, "Could not compile shader: "
+                    + GLES20.glGetShaderInfoLog(shader));
+        }
+
+        return shader;
+    }
+}
@@ -0,0 +1,110 @@
+package com.kircherelectronics.accelerationexplorer.view;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Hands the latest attitude and acceleration from the sensor thread to the
+ * render thread without locks or allocation. It is a triple buffer: the
+ * writer fills the back frame and swaps it with the middle frame, the reader
+ * swaps the middle frame with its front frame when the middle one is newer.
+ * Neither side ever waits for the other, the reader always sees a complete
+ * frame, and frames the reader had no time to draw are simply overwritten.
+ * <p>
+ * There must be a single writer thread and a single reader thread.
+ */
+public class AttitudeSnapshot {
+    // Set on the middle index when it holds a frame the reader hasn't taken
+    private static final int FRESH = 4;
+
+    /**
+     * A published sample.
+     */
+    public static class Frame {
+        // The attitude as a unit quaternion, w, x, y, z
+        public final float[] quaternion = new float[]{1, 0, 0, 0};
+
+        // The acceleration in m/s^2 in the device frame
+        public final float[] acceleration = new float[3];
+
+        // The sensor timestamp in nanoseconds
+        public long timestamp;
+
+        // The number of the frame, counting from 1
+        public long sequence;
+    }
+
+    private final Frame[] frames = new Frame[]{new Frame(), new Frame(),
+            new Frame()};
+
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // Owned by the writer
+    private int back = 0;
+    private long sequence = 0;
+
+    // Owned by the reader
+    private int front = 2;
+
+    /**
+     * Publish a sample. Called by the writer.
+     *
+     * @param quaternion   The attitude as a unit quaternion, w, x, y, z.
+     * @param acceleration The acceleration in the device frame.
+     * @param timestamp    The sensor timestamp in nanoseconds.
+     */
+    public void publish(float[] quaternion, float[] acceleration, long timestamp) {
+        Frame frame = frames[back];
+
+        System.arraycopy(quaternion, 0, frame.quaternion, 0, 4);
+        System.arraycopy(acceleration, 0, frame.acceleration, 0, 3);
+        frame.timestamp = timestamp;
+        frame.sequence = ++sequence;
+
+        // The swap publishes the writes above to the reader.
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Take the latest published frame if there is a newer one than the last
+     * taken. Called by the reader.
+     *
+     * @return True if getFrame() has changed.
+     */
+    public boolean poll() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+
+        front = middle.getAndSet(front) & ~FRESH;
+
+        return true;
+    }
+
+    /**
+     * Get the frame last taken by poll(). Called by the reader. The frame
+     * stays unchanged until the next poll().
+     *
+     * @return The frame, with a sequence of 0 if nothing has been taken yet.
+     */
+    public Frame getFrame() {
+        return frames[front];
+    }
+}
@@ -0,0 +1,197 @@
+package com.kircherelectronics.accelerationexplorer.view;
+
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.util.AttributeSet;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Shows the attitude of the device in 3D along with its acceleration vector
+ * and a trail of the latest acceleration vectors. Rendering happens with an
+ * AttitudeRenderer on the GLSurfaceView render thread, so unlike
+ * AccelerationVectorView it doesn't load the UI thread.
+ * <p>
+ * The sensor thread hands samples over with updateAttitude(), which converts
+ * the orientation to a quaternion, publishes it to an AttitudeSnapshot and
+ * requests a render. Neither thread blocks the other and a frame is only
+ * rendered when there is a new sample. The owning activity must call
+ * onPause() and onResume().
+ */
+public class AttitudeView extends GLSurfaceView {
+    private final AttitudeSnapshot snapshot = new AttitudeSnapshot();
+
+    // Owned by the sensor thread
+    private final float[] rotationMatrix = new float[9];
+    private final float[] quaternion = new float[4];
+    private final float[] gravityOrientation = new float[3];
+
+    /**
+     * Create a new instance.
+     *
+     * @param context
+     */
+    public AttitudeView(Context context) {
+        super(context);
+
+        init();
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param context
+     * @param attrs
+     */
+    public AttitudeView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        init();
+    }
+
+    /**
+     * Publish a sample.
+     *
+     * @param orientation  The fused orientation, azimuth, pitch and roll in
+     *                     radians as returned by SensorManager.getOrientation().
+     * @param acceleration The acceleration in the device frame.
+     * @param timestamp    The sensor timestamp in nanoseconds.
+     */
+    public void updateAttitude(float[] orientation, float[] acceleration,
+                               long timestamp) {
+        getRotationMatrixFromOrientation(orientation);
+        getQuaternionFromRotationMatrix();
+
+        snapshot.publish(quaternion, acceleration, timestamp);
+
+        requestRender();
+    }
+
+    /**
+     * Publish a sample when no fused orientation is available. The pitch and
+     * roll are estimated from the direction of gravity in the acceleration,
+     * which only holds while the device isn't accelerating, and the azimuth
+     * is 0.
+     *
+     * @param acceleration The acceleration in the device frame, including
+     *                     gravity.
+     * @param timestamp    The sensor timestamp in nanoseconds.
+     */
+    public void updateAttitude(float[] acceleration, long timestamp) {
+        float norm = (float) Math.sqrt(acceleration[0] * acceleration[0]
+                + acceleration[1] * acceleration[1] + acceleration[2]
+                * acceleration[2]);
+
+        if (norm > 0) {
+            gravityOrientation[0] = 0;
+            gravityOrientation[1] = (float) Math.asin(-acceleration[1] / norm);
+            gravityOrientation[2] = (float) Math.atan2(-acceleration[0],
+                    acceleration[2]);
+        }
+
+        updateAttitude(gravityOrientation, acceleration, timestamp);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Square, like the other gauges
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+
+        int chosenDimension = Math.min(widthSize, heightSize);
+
+        if (chosenDimension == 0) {
+            chosenDimension = Math.max(widthSize, heightSize);
+        }
+
+        setMeasuredDimension(chosenDimension, chosenDimension);
+    }
+
+    private void init() {
+        if (isInEditMode()) {
+            return;
+        }
+
+        setEGLContextClientVersion(2);
+        setPreserveEGLContextOnPause(true);
+        setRenderer(new AttitudeRenderer(snapshot));
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
+    }
+
+    /**
+     * Build the rotation matrix from the device frame to the world frame from
+     * the orientation. This inverts SensorManager.getOrientation(): the
+     * rotation is about y (roll), then x (pitch), then z (azimuth).
+     *
+     * @param orientation The azimuth, pitch and roll in radians.
+     */
+    private void getRotationMatrixFromOrientation(float[] orientation) {
+        float sinZ = (float) Math.sin(orientation[0]);
+        float cosZ = (float) Math.cos(orientation[0]);
+        float sinX = (float) Math.sin(orientation[1]);
+        float cosX = (float) Math.cos(orientation[1]);
+        float sinY = (float) Math.sin(orientation[2]);
+        float cosY = (float) Math.cos(orientation[2]);
+
+        rotationMatrix[0] = cosZ * cosY - sinZ * sinX * sinY;
+        rotationMatrix[1] = sinZ * cosX;
+        rotationMatrix[2] = cosZ * sinY + sinZ * sinX * cosY;
+        rotationMatrix[3] = -sinZ * cosY - cosZ * sinX * sinY;
+        rotationMatrix[4] = cosZ * cosX;
+        rotationMatrix[5] = -sinZ * sinY + cosZ * sinX * cosY;
+        rotationMatrix[6] = -cosX * sinY;
+        rotationMatrix[7] = -sinX;
+        rotationMatrix[8] = cosX * cosY;
+    }
+
+    /**
+     * Convert the rotation matrix to a unit quaternion, w, x, y, z, taking
+     * the square root of the largest term for accuracy.
+     */
+    private void getQuaternionFromRotationMatrix() {
+        float[] r = rotationMatrix;
+        float trace = r[0] + r[4] + r[8];
+
+        if (trace > 0) {
+            float s = (float) Math.sqrt(trace + 1.0) * 2;
+            quaternion[0] = 0.25f * s;
+            quaternion[1] = (r[7] - r[5]) / s;
+            quaternion[2] = (r[2] - r[6]) / s;
+            quaternion[3] = (r[3] - r[1]) / s;
+        } else if (r[0] > r[4] && r[0] > r[8]) {
+            float s = (float) Math.sqrt(1.0 + r[0] - r[4] - r[8]) * 2;
+            quaternion[0] = (r[7] - r[5]) / s;
+            quaternion[1] = 0.25f * s;
+            quaternion[2] = (r[1] + r[3]) / s;
+            quaternion[3] = (r[2] + r[6]) / s;
+        } else if (r[4] > r[8]) {
+            float s = (float) Math.sqrt(1.0 + r[4] - r[0] - r[8]) * 2;
+            quaternion[0] = (r[2] - r[6]) / s;
+            quaternion[1] = (r[1] + r[3]) / s;
+            quaternion[2] = 0.25f * s;
+            quaternion[3] = (r[5] + r[7]) / s;
+        } else {
+            float s = (float) Math.sqrt(1.0 + r[8] - r[0] - r[4]) * 2;
+            quaternion[0] = (r[3] - r[1]) / s;
+            quaternion[1] = (r[2] + r[6]) / s;
+            quaternion[2] = (r[5] + r[7]) / s;
+            quaternion[3] = 0.25f * s;
+        }
+    }
+}
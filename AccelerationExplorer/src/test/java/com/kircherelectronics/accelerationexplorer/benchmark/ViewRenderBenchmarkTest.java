@@ -0,0 +1,89 @@
+package com.kircherelectronics.accelerationexplorer.benchmark;
+
+import android.graphics.Color;
+import android.hardware.SensorManager;
+
+import com.kircherelectronics.accelerationexplorer.BuildConfig;
+import com.kircherelectronics.accelerationexplorer.gauge.GaugeAcceleration;
+import com.kircherelectronics.accelerationexplorer.view.AccelerationVectorView;
+import com.xpf.benchmark.RenderBenchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Render benchmarks for the custom views. Each view gets a new sample every
+ * frame, a slow rotation of gravity plus some noise, like the sensor would
+ * deliver while the device is handled.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = RenderBenchmark.SDK)
+public class ViewRenderBenchmarkTest {
+    private static final int SIZE = 480;
+
+    @Test
+    public void gaugeAcceleration() {
+        final GaugeAcceleration gauge = new GaugeAcceleration(
+                RuntimeEnvironment.application);
+
+        RenderBenchmark benchmark = new RenderBenchmark("GaugeAcceleration",
+                gauge, SIZE, SIZE);
+
+        RenderBenchmark.assertNoRegression(benchmark.run(
+                new RenderBenchmark.FrameUpdater() {
+                    @Override
+                    public void onFrame(int frame) {
+                        gauge.updatePoint(getX(frame), getY(frame),
+                                Color.rgb(255, 61, 0));
+                    }
+                }));
+    }
+
+    @Test
+    public void accelerationVectorView() {
+        final AccelerationVectorView view = new AccelerationVectorView(
+                RuntimeEnvironment.application);
+
+        RenderBenchmark benchmark = new RenderBenchmark(
+                "AccelerationVectorView", view, SIZE, SIZE);
+
+        RenderBenchmark.assertNoRegression(benchmark.run(
+                new RenderBenchmark.FrameUpdater() {
+                    @Override
+                    public void onFrame(int frame) {
+                        view.updatePoint(getX(frame), getY(frame));
+                    }
+                }));
+    }
+
+    private static float getX(int frame) {
+        return (float) (SensorManager.GRAVITY_EARTH * Math.sin(frame * 0.02)
+                + 0.05 * Math.sin(frame * 1.7));
+    }
+
+    private static float getY(int frame) {
+        return (float) (SensorManager.GRAVITY_EARTH * Math.cos(frame * 0.02)
+                + 0.05 * Math.cos(frame * 2.3));
+    }
+}
@@ -0,0 +1,237 @@
+package com.kircherelectronics.accelerationexplorer.plot;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Checks the M4 points of DecimatedXYSeries against the samples they stand
+ * for. Frames are simulated by calling onBeforeDraw() as the plot does.
+ */
+public class DecimatedXYSeriesTest {
+    // 10 buckets of 10 samples
+    private static final int WINDOW_SIZE = 100;
+    private static final int MAX_POINTS = 40;
+    private static final int SAMPLES_PER_BUCKET = 10;
+
+    @Test
+    public void drawsFirstMinMaxLastOfEachBucket() {
+        DecimatedXYSeries series = new DecimatedXYSeries("test", WINDOW_SIZE, MAX_POINTS);
+        double[] samples = randomSamples(WINDOW_SIZE, 32);
+
+        assertEquals(SAMPLES_PER_BUCKET, series.getSamplesPerBucket());
+
+        add(series, samples, 0, samples.length);
+        series.onBeforeDraw(null, null);
+
+        assertEquals(MAX_POINTS, series.size());
+
+        for (int bucket = 0; bucket < WINDOW_SIZE / SAMPLES_PER_BUCKET; bucket++) {
+            assertBucket(series, bucket, samples, bucket * SAMPLES_PER_BUCKET,
+                    SAMPLES_PER_BUCKET, 0);
+        }
+    }
+
+    @Test
+    public void keepsExtremesInTheOrderTheyOccurred() {
+        DecimatedXYSeries series = new DecimatedXYSeries("test", WINDOW_SIZE, MAX_POINTS);
+        double[] samples = new double[SAMPLES_PER_BUCKET];
+
+        // The maximum comes before the minimum
+        samples[2] = 5;
+        samples[7] = -3;
+
+        add(series, samples, 0, samples.length);
+        series.onBeforeDraw(null, null);
+
+        assertEquals(4, series.size());
+        assertPoint(series, 1, 2, 5);
+        assertPoint(series, 2, 7, -3);
+    }
+
+    @Test
+    public void updatesTheBucketThatIsFilling() {
+        DecimatedXYSeries series = new DecimatedXYSeries("test", WINDOW_SIZE, MAX_POINTS);
+        double[] samples = randomSamples(25, 32);
+
+        add(series, samples, 0, 23);
+        series.onBeforeDraw(null, null);
+
+        // Two full buckets and one with three samples
+        assertEquals(12, series.size());
+        assertBucket(series, 2, samples, 20, 3, 0);
+
+        add(series, samples, 23, 2);
+        series.onBeforeDraw(null, null);
+
+        assertEquals(12, series.size());
+        assertBucket(series, 2, samples, 20, 5, 0);
+    }
+
+    @Test
+    public void slidesTheWindowBucketByBucket() {
+        DecimatedXYSeries series = new DecimatedXYSeries("test", WINDOW_SIZE, MAX_POINTS);
+        double[] samples = randomSamples(2 * WINDOW_SIZE, 32);
+
+        // Over several frames, like the render thread would
+        add(series, samples, 0, 95);
+        series.onBeforeDraw(null, null);
+        add(series, samples, 95, 55);
+        series.onBeforeDraw(null, null);
+
+        // The window is samples 50 to 149, exactly ten buckets
+        long windowStart = 150 - WINDOW_SIZE;
+
+        assertEquals(MAX_POINTS, series.size());
+
+        for (int bucket = 0; bucket < 10; bucket++) {
+            assertBucket(series, bucket, samples, 50 + bucket * SAMPLES_PER_BUCKET,
+                    SAMPLES_PER_BUCKET, windowStart);
+        }
+
+        assertEquals(0, series.getX(0).intValue());
+        assertEquals(WINDOW_SIZE - 1, series.getX(series.size() - 1).intValue());
+
+        // Five more samples open a new bucket. The first bucket has slid
+        // halfway out of the window and its points left of it are pinned to
+        // the edge.
+        add(series, samples, 150, 5);
+        series.onBeforeDraw(null, null);
+
+        windowStart = 155 - WINDOW_SIZE;
+
+        assertEquals(44, series.size());
+        assertBucket(series, 0, samples, 50, SAMPLES_PER_BUCKET, windowStart);
+        assertBucket(series, 10, samples, 150, 5, windowStart);
+        assertEquals(0, series.getX(0).intValue());
+
+        // Once it has slid out entirely it is dropped
+        add(series, samples, 155, 5);
+        series.onBeforeDraw(null, null);
+
+        assertEquals(MAX_POINTS, series.size());
+        assertBucket(series, 0, samples, 60, SAMPLES_PER_BUCKET, 160 - WINDOW_SIZE);
+    }
+
+    @Test
+    public void drawsAFixedNumberOfPointsForLongWindows() {
+        DecimatedXYSeries series = new DecimatedXYSeries("test", 100000, 2000);
+        double[] samples = randomSamples(250000, 32);
+
+        for (int offset = 0; offset < samples.length; offset += 1000) {
+            add(series, samples, offset, 1000);
+            series.onBeforeDraw(null, null);
+
+            int buckets = series.size() / 4;
+
+            // At most one bucket more than the window needs, for the one
+            // that has partly slid out.
+            assertTrue("buckets: " + buckets, buckets <= 500 + 1);
+        }
+
+        long windowStart = samples.length - 100000;
+        int first = (int) (windowStart / series.getSamplesPerBucket()) * series.getSamplesPerBucket();
+
+        assertBucket(series, 0, samples, first, series.getSamplesPerBucket(), windowStart);
+    }
+
+    @Test
+    public void clearDropsAllPoints() {
+        DecimatedXYSeries series = new DecimatedXYSeries("test", WINDOW_SIZE, MAX_POINTS);
+        double[] samples = randomSamples(30, 32);
+
+        add(series, samples, 0, 30);
+        series.onBeforeDraw(null, null);
+        series.clear();
+        series.onBeforeDraw(null, null);
+
+        assertEquals(0, series.size());
+
+        add(series, samples, 0, 3);
+        series.onBeforeDraw(null, null);
+
+        assertEquals(4, series.size());
+        assertBucket(series, 0, samples, 0, 3, 0);
+    }
+
+    private static double[] randomSamples(int count, long seed) {
+        Random random = new Random(seed);
+        double[] samples = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            samples[i] = random.nextGaussian();
+        }
+
+        return samples;
+    }
+
+    private static void add(DecimatedXYSeries series, double[] samples, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            series.add(samples[i]);
+        }
+    }
+
+    /**
+     * Check the four points of a bucket against the samples it holds.
+     *
+     * @param bucket      The bucket, 0 being the oldest in the series.
+     * @param start       The index of the first sample of the bucket.
+     * @param count       The number of samples in the bucket.
+     * @param windowStart The index of the first sample in the window.
+     */
+    private static void assertBucket(DecimatedXYSeries series, int bucket, double[] samples,
+                                     int start, int count, long windowStart) {
+        int min = start;
+        int max = start;
+
+        for (int i = start; i < start + count; i++) {
+            if (samples[i] < samples[min]) {
+                min = i;
+            }
+
+            if (samples[i] > samples[max]) {
+                max = i;
+            }
+        }
+
+        int point = bucket * 4;
+        int last = start + count - 1;
+
+        assertEquals(samples[start], series.getY(point).doubleValue(), 0);
+        assertEquals(samples[Math.min(min, max)], series.getY(point + 1).doubleValue(), 0);
+        assertEquals(samples[Math.max(min, max)], series.getY(point + 2).doubleValue(), 0);
+        assertEquals(samples[last], series.getY(point + 3).doubleValue(), 0);
+
+        // Points left of the window are pinned to its edge
+        assertEquals(Math.max(0, start - windowStart), series.getX(point).longValue());
+        assertEquals(Math.max(0, Math.min(min, max) - windowStart), series.getX(point + 1).longValue());
+        assertEquals(Math.max(0, Math.max(min, max) - windowStart), series.getX(point + 2).longValue());
+        assertEquals(Math.max(0, last - windowStart), series.getX(point + 3).longValue());
+    }
+
+    private static void assertPoint(DecimatedXYSeries series, int index, long x, double y) {
+        assertEquals(x, series.getX(index).longValue());
+        assertEquals(y, series.getY(index).doubleValue(), 0);
+    }
+}
@@ -0,0 +1,181 @@
+package com.kircherelectronics.accelerationexplorer.plot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The producer appends the sequence number of every sample, so a snapshot
+ * that is torn, out of order or contains a slot from the previous lap shows up
+ * as a gap in the numbers.
+ */
+public class SampleRingTest {
+    private static final int SAMPLES = 2000000;
+
+    // Small enough that the reader falls behind and loses samples often
+    private static final int CAPACITY = 64;
+
+    @Test
+    public void readsSamplesInOrder() {
+        SampleRing ring = new SampleRing(CAPACITY);
+        SampleRing.Reader reader = ring.newReader();
+
+        for (int i = 0; i < 10; i++) {
+            ring.add(i);
+        }
+
+        ring.read(reader);
+
+        assertEquals(10, reader.count);
+        assertEquals(0, reader.skipped);
+        assertFalse(reader.cleared);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, reader.values[i], 0);
+        }
+
+        ring.read(reader);
+
+        assertEquals(0, reader.count);
+        assertEquals(0, reader.skipped);
+    }
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(64, new SampleRing(33).getCapacity());
+        assertEquals(64, new SampleRing(64).getCapacity());
+        assertEquals(1, new SampleRing(1).getCapacity());
+    }
+
+    @Test
+    public void losesOldestSamplesWhenReaderFallsBehind() {
+        SampleRing ring = new SampleRing(8);
+        SampleRing.Reader reader = ring.newReader();
+
+        for (int i = 0; i < 20; i++) {
+            ring.add(i);
+        }
+
+        ring.read(reader);
+
+        // The slot the producer writes next is never trusted, so one sample
+        // fewer than the capacity is returned.
+        assertEquals(7, reader.count);
+        assertEquals(13, reader.skipped);
+
+        for (int i = 0; i < reader.count; i++) {
+            assertEquals(13 + i, reader.values[i], 0);
+        }
+    }
+
+    @Test
+    public void clearDiscardsUnreadSamples() {
+        SampleRing ring = new SampleRing(CAPACITY);
+        SampleRing.Reader reader = ring.newReader();
+
+        for (int i = 0; i < 5; i++) {
+            ring.add(i);
+        }
+
+        ring.read(reader);
+
+        ring.add(5);
+        ring.add(6);
+        ring.clear();
+        ring.add(7);
+        ring.add(8);
+
+        ring.read(reader);
+
+        assertTrue(reader.cleared);
+        assertEquals(2, reader.count);
+        assertEquals(7, reader.values[0], 0);
+        assertEquals(8, reader.values[1], 0);
+
+        ring.read(reader);
+
+        assertFalse(reader.cleared);
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentSnapshotsAreNeverTornOrOutOfOrder() throws InterruptedException {
+        final SampleRing ring = new SampleRing(CAPACITY);
+        SampleRing.Reader reader = ring.newReader();
+
+        Thread producer = new Thread("producer") {
+            @Override
+            public void run() {
+                for (int i = 0; i < SAMPLES; i++) {
+                    ring.add(i);
+                }
+            }
+        };
+
+        producer.start();
+
+        long next = 0;
+        long received = 0;
+        long skipped = 0;
+        int reads = 0;
+
+        while (true) {
+            boolean done = !producer.isAlive();
+
+            ring.read(reader);
+
+            // The samples a snapshot lost come right before it
+            next += reader.skipped;
+            skipped += reader.skipped;
+
+            for (int i = 0; i < reader.count; i++) {
+                if (reader.values[i] != next) {
+                    fail("read " + reads + ": expected sample " + next + " at " + i + " of "
+                            + reader.count + " but got " + reader.values[i]);
+                }
+
+                next++;
+            }
+
+            received += reader.count;
+            reads++;
+
+            if (done) {
+                break;
+            }
+
+            // Let the producer lap the reader now and then, like a frame that
+            // takes too long.
+            if (reads % 1000 == 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        producer.join();
+
+        assertEquals(SAMPLES, next);
+        assertEquals(SAMPLES, received + skipped);
+        assertTrue("the reader never fell behind", skipped > 0);
+        assertTrue("the reader never kept up", received > CAPACITY);
+    }
+}
@@ -0,0 +1,227 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Feeds DownsampledHistory at 10 Hz, the rate NoiseActivity feeds it at, and
+ * checks every bucket it returns against the samples the bucket covers.
+ */
+public class DownsampledHistoryTest {
+    private static final long START = 5000000000L;
+    private static final long INTERVAL = 100000000L;
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void rollsSecondsUpIntoTenSecondsAndMinutes() {
+        DownsampledHistory history = new DownsampledHistory();
+        double[] samples = feed(history, 1250);
+
+        // 12 closed 10 second buckets and the open one, which still has the
+        // last 5 seconds in the open buckets of the finer tiers
+        DownsampledHistory.Series series = new DownsampledHistory.Series(100);
+        history.query(START, end(samples), DownsampledHistory.TIER_TEN_SECONDS, series);
+
+        assertEquals(DownsampledHistory.TIER_TEN_SECONDS, series.tier);
+        assertEquals(13, series.size);
+
+        for (int i = 0; i < series.size; i++) {
+            assertBucket(series, i, samples, i * 100, Math.min(1250, (i + 1) * 100));
+        }
+
+        // Two closed minutes and the open one
+        history.query(START, end(samples), DownsampledHistory.TIER_MINUTE, series);
+
+        assertEquals(DownsampledHistory.TIER_MINUTE, series.tier);
+        assertEquals(3, series.size);
+        assertBucket(series, 0, samples, 0, 600);
+        assertBucket(series, 1, samples, 600, 1200);
+        assertBucket(series, 2, samples, 1200, 1250);
+    }
+
+    @Test
+    public void mergedBucketsAreExactForLargeOffsets() {
+        DownsampledHistory history = new DownsampledHistory();
+        double[] samples = new double[6000];
+        Random random = new Random(38);
+
+        // Gravity plus a little noise, ten minutes worth
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 9.80665 + 0.005 * random.nextGaussian();
+            history.addSample(START + i * INTERVAL, samples[i]);
+        }
+
+        DownsampledHistory.Series series = new DownsampledHistory.Series(100);
+        history.query(START, end(samples), DownsampledHistory.TIER_MINUTE, series);
+
+        assertEquals(10, series.size);
+
+        for (int i = 0; i < series.size; i++) {
+            assertBucket(series, i, samples, i * 600, (i + 1) * 600);
+        }
+    }
+
+    @Test
+    public void picksTheFinestTierThatCoversTheRange() {
+        // The raw tier keeps 1.6 seconds, the 1 second tier 8 seconds
+        DownsampledHistory history = new DownsampledHistory(16, 8, 8, 8);
+        double[] samples = feed(history, 600);
+        long end = end(samples);
+
+        DownsampledHistory.Series series = new DownsampledHistory.Series(100);
+
+        // The last second is still in the raw tier
+        history.query(end - SECOND, end, series);
+
+        assertEquals(DownsampledHistory.TIER_RAW, series.tier);
+        assertEquals(10, series.size);
+
+        for (int i = 0; i < series.size; i++) {
+            assertBucket(series, i, samples, 590 + i, 591 + i);
+            assertEquals(0, series.stdDev[i], 0);
+        }
+
+        // Unless it is too fine for the caller. The second is still open.
+        history.query(end - SECOND, end, DownsampledHistory.TIER_SECOND, series);
+
+        assertEquals(DownsampledHistory.TIER_SECOND, series.tier);
+        assertEquals(1, series.size);
+        assertBucket(series, 0, samples, 590, 600);
+
+        // Five seconds ago is in the 1 second tier only
+        history.query(end - 5 * SECOND, end, series);
+
+        assertEquals(DownsampledHistory.TIER_SECOND, series.tier);
+        assertEquals(5, series.size);
+
+        for (int i = 0; i < series.size; i++) {
+            assertBucket(series, i, samples, 550 + i * 10, 560 + i * 10);
+        }
+
+        // The whole minute is only covered by the 10 second tier, whose open
+        // bucket includes the open second.
+        history.query(START, end, series);
+
+        assertEquals(DownsampledHistory.TIER_TEN_SECONDS, series.tier);
+        assertEquals(6, series.size);
+
+        for (int i = 0; i < series.size; i++) {
+            assertBucket(series, i, samples, i * 100, (i + 1) * 100);
+        }
+
+        // Six buckets don't fit into three points, the open minute does
+        DownsampledHistory.Series small = new DownsampledHistory.Series(3);
+        history.query(START, end, small);
+
+        assertEquals(DownsampledHistory.TIER_MINUTE, small.tier);
+        assertEquals(1, small.size);
+        assertBucket(small, 0, samples, 0, 600);
+    }
+
+    @Test
+    public void returnsTheNewestBucketsIfNoneFit() {
+        DownsampledHistory history = new DownsampledHistory(16, 8, 8, 8);
+        double[] samples = feed(history, 3000);
+
+        // Four closed minutes and the open one, into three points
+        DownsampledHistory.Series series = new DownsampledHistory.Series(3);
+        history.query(START, end(samples), series);
+
+        assertEquals(DownsampledHistory.TIER_MINUTE, series.tier);
+        assertEquals(3, series.size);
+        assertBucket(series, 0, samples, 1200, 1800);
+        assertBucket(series, 1, samples, 1800, 2400);
+        assertBucket(series, 2, samples, 2400, 3000);
+    }
+
+    @Test
+    public void resetDiscardsTheHistory() {
+        DownsampledHistory history = new DownsampledHistory();
+        feed(history, 100);
+
+        history.reset();
+
+        DownsampledHistory.Series series = new DownsampledHistory.Series(10);
+        history.query(START, START + 60 * SECOND, series);
+
+        assertEquals(0, series.size);
+        assertEquals(Long.MAX_VALUE, history.getOldestTime());
+    }
+
+    /**
+     * Add samples at 10 Hz, starting at START.
+     *
+     * @return The samples.
+     */
+    private static double[] feed(DownsampledHistory history, int count) {
+        double[] samples = new double[count];
+        Random random = new Random(38);
+
+        for (int i = 0; i < count; i++) {
+            samples[i] = 9.81 + random.nextGaussian();
+            history.addSample(START + i * INTERVAL, samples[i]);
+        }
+
+        return samples;
+    }
+
+    private static long end(double[] samples) {
+        return START + samples.length * INTERVAL;
+    }
+
+    /**
+     * Check a bucket against the samples from first to last, exclusive.
+     */
+    private static void assertBucket(DownsampledHistory.Series series, int i,
+                                     double[] samples, int first, int last) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+
+        for (int j = first; j < last; j++) {
+            min = Math.min(min, samples[j]);
+            max = Math.max(max, samples[j]);
+            sum += samples[j];
+        }
+
+        int count = last - first;
+        double mean = sum / count;
+        double sumSq = 0;
+
+        for (int j = first; j < last; j++) {
+            sumSq += (samples[j] - mean) * (samples[j] - mean);
+        }
+
+        double stdDev = Math.sqrt(sumSq / count);
+
+        String bucket = "bucket " + i + " of tier " + series.tier;
+
+        assertEquals(bucket, START + first * INTERVAL, series.time[i]);
+        assertEquals(bucket, count, series.count[i]);
+        assertEquals(bucket, min, series.min[i], 1e-12);
+        assertEquals(bucket, max, series.max[i], 1e-12);
+        assertEquals(bucket, mean, series.mean[i], 1e-12);
+        assertEquals(bucket, stdDev, series.stdDev[i], 1e-9);
+    }
+}
@@ -0,0 +1,88 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs NoiseAnalyzer on its worker thread, as NoiseActivity does.
+ */
+public class NoiseAnalyzerTest {
+    private static final double SAMPLE_RATE = 200;
+    private static final long INTERVAL_NANOS = (long) (1e9 / SAMPLE_RATE);
+
+    @Test(timeout = 10000)
+    public void estimatesNoiseDensityAndSampleRate() throws InterruptedException {
+        double[] sigma = new double[]{0.01, 0.02, 0.04};
+        NoiseAnalyzer analyzer = new NoiseAnalyzer();
+        Random random = new Random(26);
+        float[] values = new float[NoiseAnalyzer.AXES];
+
+        for (int i = 0; i < NoiseAnalyzer.DEFAULT_WINDOW_LENGTH; i++) {
+            for (int axis = 0; axis < NoiseAnalyzer.AXES; axis++) {
+                values[axis] = (float) ((axis == 2 ? 9.81 : 0)
+                        + sigma[axis] * random.nextGaussian());
+            }
+
+            analyzer.addSample(values, 1000000000L + i * INTERVAL_NANOS);
+        }
+
+        Thread worker = new Thread(analyzer, "NoiseAnalyzer");
+        worker.start();
+
+        while (!analyzer.isResultAvailable()) {
+            Thread.sleep(50);
+        }
+
+        worker.interrupt();
+        worker.join();
+
+        assertEquals(SAMPLE_RATE, analyzer.getSampleRate(), 1e-6);
+
+        // White noise has a one-sided density of sigma / sqrt(fs / 2)
+        double[] density = new double[NoiseAnalyzer.AXES];
+        analyzer.getNoiseDensity(density);
+
+        for (int axis = 0; axis < NoiseAnalyzer.AXES; axis++) {
+            double expected = sigma[axis] / Math.sqrt(SAMPLE_RATE / 2);
+            assertEquals("axis " + axis, expected, density[axis], expected * 0.05);
+        }
+
+        // Every sample went into the Allan deviation, whose shortest cluster
+        // time is one sample.
+        double[] tau = new double[StreamingAllanVariance.MAX_LEVELS];
+        double[] adev = new double[StreamingAllanVariance.MAX_LEVELS];
+
+        assertTrue(analyzer.getAllanDeviation(0, tau, adev) > 0);
+        assertEquals(1 / SAMPLE_RATE, tau[0], 1e-9);
+        assertEquals(sigma[0], adev[0], sigma[0] * 0.05);
+
+        // The worker is joined, so the analyzer can be reset for the next
+        // session.
+        analyzer.reset();
+
+        assertFalse(analyzer.isResultAvailable());
+    }
+}
@@ -0,0 +1,79 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Compares RealFft against a direct DFT.
+ */
+public class RealFftTest {
+
+    @Test
+    public void matchesDirectDft() {
+        Random random = new Random(26);
+
+        for (int n = 4; n <= 1024; n <<= 1) {
+            double[] x = new double[n];
+
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextGaussian();
+            }
+
+            double[] expected = directPowerSpectrum(x);
+            double[] actual = new double[n / 2 + 1];
+
+            new RealFft(n).powerSpectrum(x, actual);
+
+            for (int k = 0; k <= n / 2; k++) {
+                assertEquals("n = " + n + ", bin " + k, expected[k], actual[k],
+                        1e-9 * n);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLengthThatIsNotAPowerOfTwo() {
+        new RealFft(12);
+    }
+
+    private static double[] directPowerSpectrum(double[] x) {
+        int n = x.length;
+        double[] out = new double[n / 2 + 1];
+
+        for (int k = 0; k <= n / 2; k++) {
+            double re = 0;
+            double im = 0;
+
+            for (int i = 0; i < n; i++) {
+                double angle = 2 * Math.PI * k * i / n;
+                re += x[i] * Math.cos(angle);
+                im -= x[i] * Math.sin(angle);
+            }
+
+            out[k] = re * re + im * im;
+        }
+
+        return out;
+    }
+}
@@ -0,0 +1,138 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Compares StreamingAllanVariance against a direct calculation over the whole
+ * recording and against the known Allan variance of white noise.
+ */
+public class StreamingAllanVarianceTest {
+    private static final double TAU0 = 0.01;
+
+    @Test
+    public void matchesDirectCalculation() {
+        Random random = new Random(27);
+        double[] x = new double[5000];
+
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 9.81 + 0.02 * random.nextGaussian() + 1e-5 * i;
+        }
+
+        for (int overlap = 1; overlap <= 16; overlap <<= 1) {
+            StreamingAllanVariance allan = new StreamingAllanVariance(overlap);
+            allan.addSamples(x, 0, x.length);
+
+            double[] tau = new double[StreamingAllanVariance.MAX_LEVELS];
+            double[] avar = new double[StreamingAllanVariance.MAX_LEVELS];
+
+            int n = allan.getAllanVariance(TAU0, tau, avar);
+
+            // The largest cluster that fits twice into 5000 samples is 2048
+            assertEquals(12, n);
+
+            for (int level = 0; level < n; level++) {
+                long m = 1L << level;
+                double expected = directAllanVariance(x, m, overlap);
+
+                assertEquals(m * TAU0, tau[level], 1e-12);
+                assertEquals("overlap " + overlap + ", m = " + m, expected,
+                        avar[level], expected * 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void whiteNoiseFallsWithSquareRootOfTau() {
+        double sigma = 0.05;
+        Random random = new Random(27);
+        StreamingAllanVariance allan = new StreamingAllanVariance();
+
+        for (int i = 0; i < 1 << 18; i++) {
+            allan.addSample(sigma * random.nextGaussian());
+        }
+
+        assertEquals(1 << 18, allan.getSampleCount());
+
+        double[] tau = new double[StreamingAllanVariance.MAX_LEVELS];
+        double[] adev = new double[StreamingAllanVariance.MAX_LEVELS];
+
+        int n = allan.getAllanDeviation(TAU0, tau, adev);
+
+        // The estimate gets noisy when only a few clusters fit, so only the
+        // shorter cluster times are checked.
+        for (int level = 0; level <= 8 && level < n; level++) {
+            double expected = sigma / Math.sqrt(1L << level);
+
+            assertEquals("m = " + (1L << level), expected, adev[level],
+                    expected * 0.1);
+        }
+    }
+
+    @Test
+    public void resetDiscardsSamples() {
+        StreamingAllanVariance allan = new StreamingAllanVariance();
+
+        for (int i = 0; i < 100; i++) {
+            allan.addSample(i % 3);
+        }
+
+        allan.reset();
+
+        assertEquals(0, allan.getSampleCount());
+        assertEquals(0, allan.getAllanVariance(TAU0, new double[4], new double[4]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlapThatIsNotAPowerOfTwo() {
+        new StreamingAllanVariance(3);
+    }
+
+    /**
+     * The Allan variance at cluster size m from the whole phase, with the
+     * clusters starting every m / overlap samples (every sample when m is at
+     * most the overlap), as the streaming estimator evaluates them.
+     */
+    private static double directAllanVariance(double[] x, long m, int overlap) {
+        double[] phase = new double[x.length + 1];
+
+        for (int i = 0; i < x.length; i++) {
+            phase[i + 1] = phase[i] + x[i] - x[0];
+        }
+
+        long stride = Math.max(1, m / overlap);
+        double sum = 0;
+        long terms = 0;
+
+        for (long k = 0; k + 2 * m < phase.length; k += stride) {
+            double d = phase[(int) (k + 2 * m)] - 2 * phase[(int) (k + m)]
+                    + phase[(int) k];
+
+            sum += d * d;
+            terms++;
+        }
+
+        return sum / (2.0 * m * m * terms);
+    }
+}
@@ -0,0 +1,110 @@
+package com.kircherelectronics.accelerationexplorer.statistics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Acceleration Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Checks the scaling of WelchPsd against signals with a known spectrum.
+ */
+public class WelchPsdTest {
+    private static final double SAMPLE_RATE = 100;
+    private static final int SEGMENT_LENGTH = 256;
+
+    @Test
+    public void whiteNoiseHasFlatDensity() {
+        double sigma = 0.02;
+        double[] x = new double[16384];
+        Random random = new Random(26);
+
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 9.81 + sigma * random.nextGaussian();
+        }
+
+        WelchPsd welch = new WelchPsd(SEGMENT_LENGTH);
+        double[] psd = new double[welch.getBinCount()];
+
+        int segments = welch.estimate(x, x.length, SAMPLE_RATE, psd);
+
+        assertEquals(x.length / (SEGMENT_LENGTH / 2) - 1, segments);
+
+        // The one-sided density of white noise is 2 * sigma^2 / fs
+        double expected = 2 * sigma * sigma / SAMPLE_RATE;
+        double mean = 0;
+
+        for (int k = 1; k < psd.length - 1; k++) {
+            mean += psd[k];
+        }
+
+        mean /= psd.length - 2;
+
+        assertEquals(expected, mean, expected * 0.05);
+
+        // The mean (gravity) is removed from every segment
+        assertTrue(psd[0] < expected);
+    }
+
+    @Test
+    public void sinePowerIsPreserved() {
+        double amplitude = 0.5;
+        int bin = 20;
+        double frequency = bin * SAMPLE_RATE / SEGMENT_LENGTH;
+        double[] x = new double[4096];
+
+        for (int i = 0; i < x.length; i++) {
+            x[i] = amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE);
+        }
+
+        WelchPsd welch = new WelchPsd(SEGMENT_LENGTH);
+        double[] psd = new double[welch.getBinCount()];
+
+        welch.estimate(x, x.length, SAMPLE_RATE, psd);
+
+        // The Hann window spreads a tone at the centre of a bin over three
+        // bins. Their integral is the power of the sine, amplitude^2 / 2.
+        double power = 0;
+
+        for (int k = bin - 1; k <= bin + 1; k++) {
+            power += psd[k] * SAMPLE_RATE / SEGMENT_LENGTH;
+        }
+
+        assertEquals(amplitude * amplitude / 2, power,
+                amplitude * amplitude / 2 * 0.02);
+
+        for (int k = 0; k < psd.length; k++) {
+            if (Math.abs(k - bin) > 1) {
+                assertTrue("bin " + k, psd[k] < psd[bin] * 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void tooShortSignalHasNoSegments() {
+        WelchPsd welch = new WelchPsd(SEGMENT_LENGTH);
+        double[] psd = new double[welch.getBinCount()];
+
+        assertEquals(0, welch.estimate(new double[SEGMENT_LENGTH - 1],
+                SEGMENT_LENGTH - 1, SAMPLE_RATE, psd));
+    }
+}
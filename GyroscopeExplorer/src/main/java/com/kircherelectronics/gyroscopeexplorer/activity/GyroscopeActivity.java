@@ -17,7 +17,6 @@ import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
-import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -36,6 +35,7 @@ import com.kircherelectronics.gyroscopeexplorer.activity.filter.ImuOKfQuaternion
 import com.kircherelectronics.gyroscopeexplorer.activity.filter.Orientation;
 import com.kircherelectronics.gyroscopeexplorer.activity.gauge.GaugeBearing;
 import com.kircherelectronics.gyroscopeexplorer.activity.gauge.GaugeRotation;
+import com.kircherelectronics.gyroscopeexplorer.view.RenderScheduler;
 
 /*
  * Gyroscope Explorer
@@ -66,6 +66,9 @@ public class GyroscopeActivity extends Activity implements Runnable
 {
 	private static final String tag = GyroscopeActivity.class.getSimpleName();
 
+	// The gauges are smooth at 30 fps, more only costs battery
+	private static final int MAX_FPS = 30;
+
 	// Indicate if the output should be logged to a .csv file
 	private boolean logData = false;
 	private boolean dataReady = false;
@@ -90,13 +93,11 @@ public class GyroscopeActivity extends Activity implements Runnable
 	private GaugeBearing gaugeBearingCalibrated;
 	private GaugeRotation gaugeTiltCalibrated;
 
-	// Handler for the UI plots so everything plots smoothly
-	protected Handler handler;
+	// Redraws the gauges on vsync when the orientation changes
+	private RenderScheduler renderScheduler;
 
 	private Orientation orientation;
 
-	protected Runnable runable;
-
 	// Acceleration plot titles
 	private String plotAccelXAxisTitle = "Azimuth";
 	private String plotAccelYAxisTitle = "Pitch";
@@ -122,6 +123,20 @@ public class GyroscopeActivity extends Activity implements Runnable
 		initUI();
 
 		gyroscopeAvailable = gyroscopeAvailable();
+
+		renderScheduler = new RenderScheduler(new RenderScheduler.Renderer()
+		{
+			@Override
+			public void onRender(long frameTimeNanos)
+			{
+				vOrientation = orientation.getOrientation();
+
+				dataReady = true;
+
+				updateText();
+				updateGauges();
+			}
+		}, MAX_FPS);
 	};
 
 	@Override
@@ -171,9 +186,10 @@ public class GyroscopeActivity extends Activity implements Runnable
 		readPrefs();
 		reset();
 
+		orientation.setRenderScheduler(renderScheduler);
 		orientation.onResume();
 
-		handler.post(runable);
+		renderScheduler.start();
 	}
 
 	public void onPause()
@@ -182,7 +198,7 @@ public class GyroscopeActivity extends Activity implements Runnable
 
 		orientation.onPause();
 
-		handler.removeCallbacks(runable);
+		renderScheduler.stop();
 	}
 
 	/**
@@ -438,24 +454,6 @@ public class GyroscopeActivity extends Activity implements Runnable
 
 			showGyroscopeNotAvailableAlert();
 		}
-
-		handler = new Handler();
-
-		runable = new Runnable()
-		{
-			@Override
-			public void run()
-			{
-				handler.postDelayed(this, 100);
-
-				vOrientation = orientation.getOrientation();
-
-				dataReady = true;
-
-				updateText();
-				updateGauges();
-			}
-		};
 	}
 
 	private void readPrefs()
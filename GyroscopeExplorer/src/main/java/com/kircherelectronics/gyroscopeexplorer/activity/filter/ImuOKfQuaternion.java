@@ -1,12 +1,16 @@
 package com.kircherelectronics.gyroscopeexplorer.activity.filter;
 
+import java.io.File;
 import java.util.Arrays;
 
 import org.apache.commons.math3.complex.Quaternion;
 
 import android.content.Context;
 import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Environment;
 
+import com.kircherelectronics.gyroscopeexplorer.activity.filter.kalman.KalmanNoiseProfile;
 import com.kircherelectronics.gyroscopeexplorer.activity.filter.kalman.RotationKalmanFilter;
 import com.kircherelectronics.gyroscopeexplorer.activity.filter.kalman.RotationMeasurementModel;
 import com.kircherelectronics.gyroscopeexplorer.activity.filter.kalman.RotationProcessModel;
@@ -111,6 +115,9 @@ public class ImuOKfQuaternion extends Orientation
 	private RotationProcessModel pm;
 	private RotationMeasurementModel mm;
 
+	// The process and measurement noise tuned for this device
+	private KalmanNoiseProfile noiseProfile;
+
 	private Quaternion quatGyroDelta;
 	private Quaternion quatGyro;
 	private Quaternion quatAccelMag;
@@ -119,8 +126,10 @@ public class ImuOKfQuaternion extends Orientation
 	{
 		super(context);
 
-		pm = new RotationProcessModel();
-		mm = new RotationMeasurementModel();
+		noiseProfile = loadNoiseProfile();
+
+		pm = new RotationProcessModel(noiseProfile.getProcessNoise());
+		mm = new RotationMeasurementModel(noiseProfile.getMeasurementNoise());
 
 		kalmanFilter = new RotationKalmanFilter(pm, mm);
 	}
@@ -186,8 +195,8 @@ public class ImuOKfQuaternion extends Orientation
 		// final orientation angles from sensor fusion
 		vFusedOrientation = new float[3];
 
-		pm = new RotationProcessModel();
-		mm = new RotationMeasurementModel();
+		pm = new RotationProcessModel(noiseProfile.getProcessNoise());
+		mm = new RotationMeasurementModel(noiseProfile.getMeasurementNoise());
 
 		kalmanFilter = new RotationKalmanFilter(pm, mm);
 
@@ -333,6 +342,24 @@ public class ImuOKfQuaternion extends Orientation
 		// inputs could be swapped, but the filter is much more stable in this
 		// configuration.
 		kalmanFilter.predict(qvOrientationGyroscope);
+
+		// q and -q are the same rotation, but the filter averages them
+		// component wise. Correct with the measurement in the same hemisphere
+		// as the prediction, as Acceleration Explorer's filter and the
+		// KalmanNoiseTuner do, so the tuned noise profile fits this filter.
+		double[] prediction = kalmanFilter.getStateEstimation();
+
+		if (prediction[0] * qvOrientationAccelMag[0] + prediction[1]
+				* qvOrientationAccelMag[1] + prediction[2]
+				* qvOrientationAccelMag[2] + prediction[3]
+				* qvOrientationAccelMag[3] < 0)
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				qvOrientationAccelMag[i] = -qvOrientationAccelMag[i];
+			}
+		}
+
 		kalmanFilter.correct(qvOrientationAccelMag);
 
 		// Apply the new gyroscope delta rotation to the new Kalman filter
@@ -359,6 +386,23 @@ public class ImuOKfQuaternion extends Orientation
 		SensorManager.getOrientation(rmFusedOrientation, vFusedOrientation);
 	}
 
+	/**
+	 * Load the Kalman filter noise profile of this device, or the defaults if
+	 * the device has not been tuned. The KalmanNoiseTuner tunes recordings
+	 * made by Acceleration Explorer, so the profile is shared with it.
+	 * 
+	 * @return the noise profile.
+	 */
+	private KalmanNoiseProfile loadNoiseProfile()
+	{
+		File dir = new File(Environment.getExternalStorageDirectory()
+				+ File.separator + "AccelerationExplorer" + File.separator
+				+ "Profiles");
+
+		return KalmanNoiseProfile.load(KalmanNoiseProfile.getProfileFile(dir,
+				Build.MODEL));
+	}
+
 	@Override
 	public void setFilterCoefficient(float filterCoefficient)
 	{
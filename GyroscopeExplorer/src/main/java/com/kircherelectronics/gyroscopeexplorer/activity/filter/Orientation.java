@@ -1,6 +1,7 @@
 package com.kircherelectronics.gyroscopeexplorer.activity.filter;
 
 import com.kircherelectronics.gyroscopeexplorer.activity.ConfigActivity;
+import com.kircherelectronics.gyroscopeexplorer.view.RenderScheduler;
 
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -83,6 +84,9 @@ public abstract class Orientation implements OrientationInterface,
 	// We need the SensorManager to register for Sensor Events.
 	protected SensorManager sensorManager;
 
+	// Invalidated when the orientation changes so the UI redraws
+	private RenderScheduler renderScheduler;
+
 	public Orientation(Context context)
 	{
 		this.context = context;
@@ -142,6 +146,11 @@ public abstract class Orientation implements OrientationInterface,
 			timeStampGyroscope = event.timestamp;
 
 			onGyroscopeChanged();
+
+			if (renderScheduler != null)
+			{
+				renderScheduler.invalidate();
+			}
 		}
 
 		if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE_UNCALIBRATED)
@@ -158,10 +167,26 @@ public abstract class Orientation implements OrientationInterface,
 			timeStampGyroscope = event.timestamp;
 
 			onGyroscopeChanged();
+
+			if (renderScheduler != null)
+			{
+				renderScheduler.invalidate();
+			}
 		}
 
 	}
 
+	/**
+	 * Set the scheduler to invalidate whenever the orientation changes.
+	 * 
+	 * @param renderScheduler
+	 *            the scheduler, or null.
+	 */
+	public void setRenderScheduler(RenderScheduler renderScheduler)
+	{
+		this.renderScheduler = renderScheduler;
+	}
+
 	public void onPause()
 	{
 		sensorManager.unregisterListener(this);
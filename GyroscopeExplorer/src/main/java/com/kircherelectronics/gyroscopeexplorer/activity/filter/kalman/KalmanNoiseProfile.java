@@ -0,0 +1,225 @@
+package com.kircherelectronics.gyroscopeexplorer.activity.filter.kalman;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/*
+ * Gyroscope Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The process and measurement noise of the rotation Kalman filter for a
+ * particular device. Profiles are written by the KalmanNoiseTuner of
+ * Acceleration Explorer and stored as a properties file per device, which the
+ * Kalman filters load when they are created. Devices without a profile use the
+ * defaults.
+ */
+public class KalmanNoiseProfile
+{
+	public static final double DEFAULT_PROCESS_NOISE = 1;
+	public static final double DEFAULT_MEASUREMENT_NOISE = 0.001;
+
+	private static final String PROCESS_NOISE_KEY = "process_noise";
+	private static final String MEASUREMENT_NOISE_KEY = "measurement_noise";
+	private static final String COST_KEY = "cost";
+
+	private static final String FILE_EXTENSION = ".properties";
+
+	private final double processNoise;
+	private final double measurementNoise;
+
+	// The innovation inconsistency the tuner found for these values
+	private final double cost;
+
+	/**
+	 * Create a profile.
+	 *
+	 * @param processNoise
+	 *            the diagonal of Q.
+	 * @param measurementNoise
+	 *            the diagonal of R.
+	 * @param cost
+	 *            the innovation inconsistency of the values, or NaN if
+	 *            unknown.
+	 */
+	public KalmanNoiseProfile(double processNoise, double measurementNoise,
+			double cost)
+	{
+		this.processNoise = processNoise;
+		this.measurementNoise = measurementNoise;
+		this.cost = cost;
+	}
+
+	/**
+	 * Get the default profile.
+	 *
+	 * @return the profile the filters use when a device has not been tuned.
+	 */
+	public static KalmanNoiseProfile getDefault()
+	{
+		return new KalmanNoiseProfile(DEFAULT_PROCESS_NOISE,
+				DEFAULT_MEASUREMENT_NOISE, Double.NaN);
+	}
+
+	/**
+	 * Get the profile file of a device.
+	 *
+	 * @param dir
+	 *            the directory the profiles are kept in.
+	 * @param device
+	 *            the device name, presumably Build.MODEL.
+	 * @return the profile file.
+	 */
+	public static File getProfileFile(File dir, String device)
+	{
+		return new File(dir, device.replaceAll("[^A-Za-z0-9._-]", "_")
+				+ FILE_EXTENSION);
+	}
+
+	/**
+	 * Load a profile. Missing or unreadable profiles fall back to the
+	 * defaults so a filter can always be created.
+	 *
+	 * @param file
+	 *            the profile file.
+	 * @return the profile.
+	 */
+	public static KalmanNoiseProfile load(File file)
+	{
+		if (!file.exists())
+		{
+			return getDefault();
+		}
+
+		Properties properties = new Properties();
+		InputStream in = null;
+
+		try
+		{
+			in = new FileInputStream(file);
+			properties.load(in);
+
+			double q = Double.parseDouble(properties.getProperty(
+					PROCESS_NOISE_KEY,
+					String.valueOf(DEFAULT_PROCESS_NOISE)));
+			double r = Double.parseDouble(properties.getProperty(
+					MEASUREMENT_NOISE_KEY,
+					String.valueOf(DEFAULT_MEASUREMENT_NOISE)));
+			double cost = Double.parseDouble(properties.getProperty(COST_KEY,
+					"NaN"));
+
+			if (!(q > 0) || !(r > 0))
+			{
+				return getDefault();
+			}
+
+			return new KalmanNoiseProfile(q, r, cost);
+		}
+		catch (IOException e)
+		{
+			return getDefault();
+		}
+		catch (NumberFormatException e)
+		{
+			return getDefault();
+		}
+		finally
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException e)
+				{
+					// nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Save the profile.
+	 *
+	 * @param file
+	 *            the profile file.
+	 * @throws IOException
+	 *             if the profile could not be written.
+	 */
+	public void save(File file) throws IOException
+	{
+		File dir = file.getParentFile();
+
+		if (dir != null && !dir.exists())
+		{
+			dir.mkdirs();
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty(PROCESS_NOISE_KEY, String.valueOf(processNoise));
+		properties.setProperty(MEASUREMENT_NOISE_KEY,
+				String.valueOf(measurementNoise));
+		properties.setProperty(COST_KEY, String.valueOf(cost));
+
+		OutputStream out = new FileOutputStream(file);
+
+		try
+		{
+			properties.store(out, "Rotation Kalman filter noise profile");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Get the process noise.
+	 *
+	 * @return the diagonal of Q.
+	 */
+	public double getProcessNoise()
+	{
+		return processNoise;
+	}
+
+	/**
+	 * Get the measurement noise.
+	 *
+	 * @return the diagonal of R.
+	 */
+	public double getMeasurementNoise()
+	{
+		return measurementNoise;
+	}
+
+	/**
+	 * Get the innovation inconsistency of the profile.
+	 *
+	 * @return the cost found by the tuner, or NaN if unknown.
+	 */
+	public double getCost()
+	{
+		return cost;
+	}
+}
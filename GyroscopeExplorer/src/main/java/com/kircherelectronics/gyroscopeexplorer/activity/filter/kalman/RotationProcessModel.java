@@ -45,6 +45,17 @@ public class RotationProcessModel implements ProcessModel
 	private RealMatrix controlMatrix;
 
 	public RotationProcessModel()
+	{
+		this(KalmanNoiseProfile.DEFAULT_PROCESS_NOISE);
+	}
+
+	/**
+	 * Create a process model with the given process noise.
+	 * 
+	 * @param processNoiseCoefficient
+	 *            the diagonal of the process noise covariance matrix, Q.
+	 */
+	public RotationProcessModel(double processNoiseCoefficient)
 	{
 		super();
 
@@ -67,10 +78,10 @@ public class RotationProcessModel implements ProcessModel
 		// Q = processNoiseCovMatrix
 		processNoiseCovMatrix = new Array2DRowRealMatrix(new double[][]
 		{
-		{ 1, 0, 0, 0 },
-		{ 0, 1, 0, 0 },
-		{ 0, 0, 1, 0 },
-		{ 0, 0, 0, 1 } });
+		{ processNoiseCoefficient, 0, 0, 0 },
+		{ 0, processNoiseCoefficient, 0, 0 },
+		{ 0, 0, processNoiseCoefficient, 0 },
+		{ 0, 0, 0, processNoiseCoefficient } });
 
 		// xP = initialStateEstimateVector
 		initialStateEstimateVector = new ArrayRealVector(new double[]
@@ -116,8 +116,6 @@ public final class GaugeBearing extends View {
     private Bitmap background;
     private Bitmap hand;
 
-    private Canvas handCanvas;
-
     private Paint backgroundPaint;
     private Paint facePaint;
     private Paint handPaint;
@@ -188,8 +186,6 @@ public final class GaugeBearing extends View {
 
         drawHand(canvas);
 
-        canvas.restore();
-
         moveHand();
     }
 
@@ -384,44 +380,23 @@ public final class GaugeBearing extends View {
     }
 
     /**
-     * Draw the gauge hand.
-     *
-     * @param canvas
-     */
-    /**
-     * Draw the gauge hand.
+     * Draw the gauge hand. The hand is cached in a bitmap and rotated with the
+     * canvas, so no memory is allocated per frame.
      *
      * @param canvas
      */
     private void drawHand(Canvas canvas) {
-        // *Bug Notice* We draw the hand with a bitmap and a new canvas because
-        // canvas.drawPath() doesn't work. This seems to be related to devices
-        // with hardware acceleration enabled.
-
-        // free the old bitmap
-        if (hand != null) {
-            hand.recycle();
+        if (hand == null) {
+            Log.w(tag, "Hand not created");
+            return;
         }
 
-        hand = Bitmap.createBitmap(getWidth(), getHeight(),
-                Bitmap.Config.ARGB_8888);
-        handCanvas = new Canvas(hand);
-        float scale = (float) getWidth();
-        handCanvas.scale(scale, scale);
-
-        if (handInitialized) {
-            float handAngle = degreeToAngle(handPosition);
-            handCanvas.save(Canvas.MATRIX_SAVE_FLAG);
-            handCanvas.rotate(handAngle, 0.5f, 0.5f);
-            handCanvas.drawPath(handPath, handPaint);
-        } else {
-            float handAngle = degreeToAngle(0);
-            handCanvas.save(Canvas.MATRIX_SAVE_FLAG);
-            handCanvas.rotate(handAngle, 0.5f, 0.5f);
-            handCanvas.drawPath(handPath, handPaint);
-        }
+        float handAngle = degreeToAngle(handInitialized ? handPosition : 0);
 
+        canvas.save();
+        canvas.rotate(handAngle, getWidth() / 2f, getHeight() / 2f);
         canvas.drawBitmap(hand, 0, 0, backgroundPaint);
+        canvas.restore();
     }
 
     /**
@@ -442,6 +417,7 @@ public final class GaugeBearing extends View {
         Log.d(tag, "Size changed to " + w + "x" + h);
 
         regenerateBackground();
+        regenerateHand();
     }
 
     /**
@@ -465,6 +441,30 @@ public final class GaugeBearing extends View {
         drawFace(backgroundCanvas);
     }
 
+    /**
+     * Regenerate the hand image. This should only be called when the size of
+     * the screen has changed. The hand is drawn pointing up and rotated into
+     * place by drawHand().
+     */
+    private void regenerateHand() {
+        // *Bug Notice* We draw the hand with a bitmap and a new canvas because
+        // canvas.drawPath() doesn't work. This seems to be related to devices
+        // with hardware acceleration enabled.
+
+        // free the old bitmap
+        if (hand != null) {
+            hand.recycle();
+        }
+
+        hand = Bitmap.createBitmap(getWidth(), getHeight(),
+                Bitmap.Config.ARGB_8888);
+        Canvas handCanvas = new Canvas(hand);
+        float scale = (float) getWidth();
+        handCanvas.scale(scale, scale);
+
+        handCanvas.drawPath(handPath, handPaint);
+    }
+
     /**
      * Move the hand.
      */
@@ -264,56 +264,33 @@ public final class GaugeRotation extends View {
     }
 
     /**
-     * Draw the gauge face.
+     * Draw the gauge face. The cached face is rotated by the roll and clipped
+     * at the horizon, so no memory is allocated per frame.
      *
      * @param canvas
      */
     private void drawFace(Canvas canvas) {
-        // free the old bitmap
-        if (faceBitmap != null) {
-            faceBitmap.recycle();
+        if (faceBitmap == null) {
+            Log.w(tag, "Face not created");
+            return;
         }
 
-        faceBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
-                Bitmap.Config.ARGB_8888);
+        int width = faceBitmap.getWidth();
+        int height = faceBitmap.getHeight();
 
-        Canvas faceCanvas = new Canvas(faceBitmap);
-        float scale = (float) getWidth();
-        faceCanvas.scale(scale, scale);
-
-        skyBackgroundRect.set(rimRect.left, rimRect.top, rimRect.right,
-                rimRect.bottom);
+        // The sky above the horizon is left transparent
+        int horizon = (int) ((height / 2) - ((height / 2.5) * rotation[1]));
 
-        faceCanvas.drawArc(skyBackgroundRect, 0, 360, true, skyPaint);
-
-        int[] allpixels = new int[faceBitmap.getHeight()
-                * faceBitmap.getWidth()];
-
-        faceBitmap.getPixels(allpixels, 0, faceBitmap.getWidth(), 0, 0,
-                faceBitmap.getWidth(), faceBitmap.getHeight());
-
-        for (int i = 0; i < faceBitmap.getHeight() * faceBitmap.getWidth(); i++) {
-            allpixels[i] = Color.TRANSPARENT;
-        }
-
-        int height = (int) ((faceBitmap.getHeight() / 2) - ((faceBitmap
-                .getHeight() / 2.5) * rotation[1]));
-
-        if (height > faceBitmap.getHeight()) {
-            height = faceBitmap.getHeight();
+        if (horizon > height) {
+            horizon = height;
+        } else if (horizon < 0) {
+            horizon = 0;
         }
 
-        // Check for 0 case
-        if (height == 0) {
-            height = 1;
-        }
-
-        faceBitmap.setPixels(allpixels, 0, faceBitmap.getWidth(), 0, 0,
-                faceBitmap.getWidth(), height);
-
-        canvas.save(Canvas.MATRIX_SAVE_FLAG);
-        canvas.rotate((float) Math.toDegrees(rotation[2]), faceBitmap.getWidth() / 2f,
-                faceBitmap.getHeight() / 2f);
+        canvas.save();
+        canvas.rotate((float) Math.toDegrees(rotation[2]), width / 2f,
+                height / 2f);
+        canvas.clipRect(0, horizon, width, height);
 
         canvas.drawBitmap(faceBitmap, 0, 0, backgroundPaint);
         canvas.restore();
@@ -337,6 +314,7 @@ public final class GaugeRotation extends View {
         Log.d(tag, "Size changed to " + w + "x" + h);
 
         regenerateBezel();
+        regenerateFace();
     }
 
     /**
@@ -359,6 +337,29 @@ public final class GaugeRotation extends View {
         drawRim(bezelCanvas);
     }
 
+    /**
+     * Regenerate the face image. This should only be called when the size of
+     * the screen has changed. The face is drawn whole and rotated and clipped
+     * by drawFace().
+     */
+    private void regenerateFace() {
+        // free the old bitmap
+        if (faceBitmap != null) {
+            faceBitmap.recycle();
+        }
+
+        faceBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
+                Bitmap.Config.ARGB_8888);
+        Canvas faceCanvas = new Canvas(faceBitmap);
+        float scale = (float) getWidth();
+        faceCanvas.scale(scale, scale);
+
+        skyBackgroundRect.set(rimRect.left, rimRect.top, rimRect.right,
+                rimRect.bottom);
+
+        faceCanvas.drawArc(skyBackgroundRect, 0, 360, true, skyPaint);
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         drawBezel(canvas);
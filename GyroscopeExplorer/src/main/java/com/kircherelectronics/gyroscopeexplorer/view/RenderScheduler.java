@@ -0,0 +1,205 @@
+package com.kircherelectronics.gyroscopeexplorer.view;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Gyroscope Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Paces UI updates with the display. Instead of redrawing on a fixed delay,
+ * the owner calls invalidate() whenever the data changes, from any thread, and
+ * the renderer is called on the UI thread on the next vsync. Any number of
+ * invalidations between two frames are coalesced into a single render, no
+ * frames are scheduled at all while nothing changes, and renders are limited
+ * to a maximum frame rate.
+ */
+public class RenderScheduler implements Choreographer.FrameCallback
+{
+	public static final int DEFAULT_MAX_FPS = 60;
+
+	// Allowance for vsync jitter when pacing below the display rate
+	private static final long FRAME_TOLERANCE_NANOS = 2000000;
+
+	/**
+	 * An interface for the code that draws a frame.
+	 */
+	public interface Renderer
+	{
+		/**
+		 * Draw a frame. Called on the UI thread.
+		 *
+		 * @param frameTimeNanos
+		 *            the vsync time of the frame.
+		 */
+		public void onRender(long frameTimeNanos);
+	}
+
+	private final Renderer renderer;
+
+	private final Choreographer choreographer;
+	private final Handler handler;
+
+	private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+	private volatile boolean running = false;
+
+	// Owned by the UI thread
+	private boolean callbackPosted = false;
+	private long frameIntervalNanos;
+	private long lastRenderNanos = 0;
+
+	private final Runnable postFrameRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			postFrame();
+		}
+	};
+
+	/**
+	 * Initialize a new RenderScheduler with the default frame rate cap. Must
+	 * be created on the UI thread.
+	 *
+	 * @param renderer
+	 *            the renderer.
+	 */
+	public RenderScheduler(Renderer renderer)
+	{
+		this(renderer, DEFAULT_MAX_FPS);
+	}
+
+	/**
+	 * Initialize a new RenderScheduler. Must be created on the UI thread.
+	 *
+	 * @param renderer
+	 *            the renderer.
+	 * @param maxFps
+	 *            the most frames rendered per second.
+	 */
+	public RenderScheduler(Renderer renderer, int maxFps)
+	{
+		this.renderer = renderer;
+
+		choreographer = Choreographer.getInstance();
+		handler = new Handler(Looper.getMainLooper());
+
+		setMaxFps(maxFps);
+	}
+
+	/**
+	 * Set the frame rate cap. Must be called on the UI thread.
+	 *
+	 * @param maxFps
+	 *            the most frames rendered per second.
+	 */
+	public void setMaxFps(int maxFps)
+	{
+		if (maxFps < 1)
+		{
+			throw new IllegalArgumentException("Frame rate must be positive: " + maxFps);
+		}
+
+		frameIntervalNanos = 1000000000L / maxFps;
+	}
+
+	/**
+	 * Start rendering. A first frame is rendered right away. Must be called on
+	 * the UI thread.
+	 */
+	public void start()
+	{
+		running = true;
+		lastRenderNanos = 0;
+
+		dirty.set(true);
+		postFrame();
+	}
+
+	/**
+	 * Stop rendering. Must be called on the UI thread.
+	 */
+	public void stop()
+	{
+		running = false;
+
+		handler.removeCallbacks(postFrameRunnable);
+		choreographer.removeFrameCallback(this);
+		callbackPosted = false;
+	}
+
+	/**
+	 * Request a render because the data changed. Can be called from any
+	 * thread, and is cheap enough to call for every sensor event.
+	 */
+	public void invalidate()
+	{
+		// Only the first invalidation since the last render schedules a frame.
+		if (!dirty.getAndSet(true) && running)
+		{
+			if (Looper.myLooper() == Looper.getMainLooper())
+			{
+				postFrame();
+			}
+			else
+			{
+				handler.post(postFrameRunnable);
+			}
+		}
+	}
+
+	@Override
+	public void doFrame(long frameTimeNanos)
+	{
+		callbackPosted = false;
+
+		if (!running || !dirty.get())
+		{
+			return;
+		}
+
+		if (frameTimeNanos - lastRenderNanos < frameIntervalNanos
+				- FRAME_TOLERANCE_NANOS)
+		{
+			// Too soon for the frame rate cap, try again next vsync.
+			postFrame();
+			return;
+		}
+
+		lastRenderNanos = frameTimeNanos;
+
+		// Cleared before rendering so changes made while rendering schedule
+		// another frame.
+		dirty.set(false);
+
+		renderer.onRender(frameTimeNanos);
+	}
+
+	private void postFrame()
+	{
+		if (running && !callbackPosted)
+		{
+			callbackPosted = true;
+			choreographer.postFrameCallback(this);
+		}
+	}
+}
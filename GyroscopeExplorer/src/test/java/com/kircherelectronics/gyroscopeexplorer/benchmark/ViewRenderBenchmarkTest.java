@@ -0,0 +1,61 @@
+package com.kircherelectronics.gyroscopeexplorer.benchmark;
+
+import com.kircherelectronics.com.gyroscopeexplorer.BuildConfig;
+import com.kircherelectronics.gyroscopeexplorer.activity.gauge.GaugeBearing;
+import com.xpf.benchmark.RenderBenchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/*
+ * Gyroscope Explorer
+ * Copyright (C) 2013-2015, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Render benchmarks for the custom views. The bearing gauge gets a new
+ * azimuth every frame, turning slowly with some jitter and wrapping around
+ * north, like the fused orientation while the device is turned.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = RenderBenchmark.SDK)
+public class ViewRenderBenchmarkTest {
+    private static final int SIZE = 480;
+
+    @Test
+    public void gaugeBearing() {
+        final GaugeBearing gauge = new GaugeBearing(
+                RuntimeEnvironment.application);
+
+        RenderBenchmark benchmark = new RenderBenchmark("GaugeBearing",
+                gauge, SIZE, SIZE);
+
+        RenderBenchmark.assertNoRegression(benchmark.run(
+                new RenderBenchmark.FrameUpdater() {
+                    @Override
+                    public void onFrame(int frame) {
+                        double azimuth = frame * 0.01 + 0.02 * Math.sin(frame * 1.3);
+
+                        // -PI < azimuth <= PI, as SensorManager reports it
+                        gauge.updateBearing((float) (Math.IEEEremainder(azimuth,
+                                2 * Math.PI)));
+                    }
+                }));
+    }
+}
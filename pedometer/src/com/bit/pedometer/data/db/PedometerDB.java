@@ -4,15 +4,20 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.bit.pedometer.data.bean.Group;
 import com.bit.pedometer.data.bean.Step;
 import com.bit.pedometer.data.bean.User;
 import com.bit.pedometer.data.bean.Weather;
+import com.bit.pedometer.service.StepCounter;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 对数据库pedometer里的各个表进行增删改查
@@ -22,10 +27,45 @@ import java.util.List;
 public class PedometerDB {
 
     public static final String DB_NAME = "pedometer.db";// 数据库名称
-    public static final int VERSION = 1;// 数据版本
+    public static final int VERSION = 3;// 数据版本，升级见 PedometerOpenHelper.onUpgrade
+
+    /**
+     * 步数时间序列的粒度，对应 step_minute、step_hour、step_day 三张表
+     */
+    public static final int SERIES_MINUTE = 0;
+    public static final int SERIES_HOUR = 1;
+    public static final int SERIES_DAY = 2;
+    private static final String[] SERIES_TABLES = {"step_minute", "step_hour", "step_day"};
     private static PedometerDB pedometerDB;
     private SQLiteDatabase db;
 
+    // user 表里除了头像以外的列，不需要头像的查询不读 BLOB
+    private static final String[] USER_COLUMNS = {"objectId", "name", "sex", "weight",
+            "step_length", "sensitivity", "groupId", "today_step"};
+    // 要显示头像的查询用这些列，头像在最后
+    private static final String[] USER_COLUMNS_WITH_PICTURE = {"objectId", "name", "sex",
+            "weight", "step_length", "sensitivity", "groupId", "today_step", "picture"};
+
+    // 最多缓存的用户数，PK 的列表一般只有几个人
+    private static final int USER_CACHE_SIZE = 64;
+
+    /**
+     * 按 objectId 缓存从 user 表读出的用户，包括头像的字节，重复打开的页面不用再读数据库。
+     * 缓存里的对象不交给调用的人，取出和放入时都复制一份，调用的人修改了不保存也不会影响缓存。
+     * 写 user 表的方法都会同步修改或者移除缓存。
+     */
+    private final LruCache<String, User> userCache = new LruCache<String, User>(USER_CACHE_SIZE);
+    // 第一个用户（此app的用户）的 objectId，还没有读过时为 null
+    private volatile String firstUserId;
+
+    // 计步时反复执行的写入，编译一次重复使用。SQLiteStatement 不是线程安全的，使用时锁住它
+    private final SQLiteStatement updateStepNumber;
+    private final SQLiteStatement updateTodayStep;
+    private final SQLiteStatement addGroupSteps;
+    private final SQLiteStatement putDayTotal;
+    private final SQLiteStatement[] insertBucket = new SQLiteStatement[SERIES_TABLES.length];
+    private final SQLiteStatement[] addToBucket = new SQLiteStatement[SERIES_TABLES.length];
+
     /**
      * 将PedometerDB的构造方法设置为私有方法，在别的类里不能通过new来创建这个对象
      *
@@ -35,6 +75,21 @@ public class PedometerDB {
         PedometerOpenHelper pHelper = new PedometerOpenHelper(context, DB_NAME,
                 null, VERSION);
         db = pHelper.getWritableDatabase();
+
+        updateStepNumber = db.compileStatement(
+                "update step set number = ? where userId = ? and date = ?");
+        updateTodayStep = db.compileStatement(
+                "update user set today_step = ? where objectId = ?");
+        addGroupSteps = db.compileStatement(
+                "update group1 set total_number = total_number + ? where id = ?");
+        putDayTotal = db.compileStatement(
+                "insert or replace into step_day(userId, bucket, steps) values(?, ?, ?)");
+        for (int i = 0; i < SERIES_TABLES.length; i++) {
+            insertBucket[i] = db.compileStatement("insert or ignore into " + SERIES_TABLES[i]
+                    + "(userId, bucket, steps) values(?, ?, 0)");
+            addToBucket[i] = db.compileStatement("update " + SERIES_TABLES[i]
+                    + " set steps = steps + ? where userId = ? and bucket = ?");
+        }
     }
 
     /**
@@ -47,6 +102,22 @@ public class PedometerDB {
         return pedometerDB;
     }
 
+    /**
+     * 开始一个事务，和 setTransactionSuccessful、endTransaction 一起使用，
+     * 把多次写入合并成一次提交
+     */
+    public void beginTransaction() {
+        db.beginTransaction();
+    }
+
+    public void setTransactionSuccessful() {
+        db.setTransactionSuccessful();
+    }
+
+    public void endTransaction() {
+        db.endTransaction();
+    }
+
     /**
      * 增加user表里的数据
      *
@@ -65,6 +136,7 @@ public class PedometerDB {
             values.put("groupId", user.getGroupId());
             values.put("today_step", user.getToday_step());
             db.insert("user", null, values);
+            evictUser(user.getObjectId());
         }
     }
 
@@ -77,11 +149,14 @@ public class PedometerDB {
         if (user != null) {
             db.delete("user", "objectId = ?",
                     new String[]{user.getObjectId()});
+            evictUser(user.getObjectId());
+            firstUserId = null;
         }
     }
 
     /**
-     * 升级user表里的数据
+     * 升级user表里的数据。today_step 只由 updateTodayStep 写，界面上拿着的 user 里的步数可能已经过时，
+     * 这里不写，不会覆盖计步的结果
      *
      * @param user
      */
@@ -96,9 +171,9 @@ public class PedometerDB {
             values.put("sensitivity", user.getSensitivity());
             values.put("step_length", user.getStep_length());
             values.put("groupId", user.getGroupId());
-            values.put("today_step", user.getToday_step());
             db.update("user", values, "objectId = ?",
                     new String[]{user.getObjectId()});
+            evictUser(user.getObjectId());
         }
     }
 
@@ -112,9 +187,73 @@ public class PedometerDB {
             ContentValues values = new ContentValues();
             values.put("objectId", user.getObjectId());
             db.update("user", values, null, null);
+            // 所有用户的 objectId 都变了
+            userCache.evictAll();
+            firstUserId = null;
         }
     }
 
+    private void evictUser(String objectId) {
+        if (objectId != null) {
+            userCache.remove(objectId);
+        }
+    }
+
+    /**
+     * 从缓存里取出一个用户的副本
+     *
+     * @return 没有缓存时返回 null
+     */
+    private User getCachedUser(String objectId) {
+        if (objectId == null) {
+            return null;
+        }
+        User user = userCache.get(objectId);
+        return user == null ? null : copyUser(user);
+    }
+
+    private void putCachedUser(User user) {
+        if (user != null && user.getObjectId() != null) {
+            userCache.put(user.getObjectId(), copyUser(user));
+        }
+    }
+
+    /**
+     * 复制一个用户，头像的字节不会在原地修改，两个对象共用
+     */
+    static User copyUser(User user) {
+        User copy = new User();
+        copy.setObjectId(user.getObjectId());
+        copy.setName(user.getName());
+        copy.setSex(user.getSex());
+        copy.setPicture(user.getPicture());
+        copy.setWeight(user.getWeight());
+        copy.setStep_length(user.getStep_length());
+        copy.setSensitivity(user.getSensitivity());
+        copy.setGroupId(user.getGroupId());
+        copy.setToday_step(user.getToday_step());
+        return copy;
+    }
+
+    /**
+     * 读出游标当前行的用户，游标的列是 USER_COLUMNS，或者 USER_COLUMNS_WITH_PICTURE 时连头像一起读
+     */
+    private static User readUser(Cursor cursor) {
+        User user = new User();
+        user.setObjectId(cursor.getString(0));
+        user.setName(cursor.getString(1));
+        user.setSex(cursor.getString(2));
+        user.setWeight(cursor.getInt(3));
+        user.setStep_length(cursor.getInt(4));
+        user.setSensitivity(cursor.getInt(5));
+        user.setGroupId(cursor.getInt(6));
+        user.setToday_step(cursor.getInt(7));
+        if (cursor.getColumnCount() > USER_COLUMNS.length) {
+            user.setPicture(cursor.getBlob(USER_COLUMNS.length));
+        }
+        return user;
+    }
+
     /**
      * 增加step表里的数据
      *
@@ -126,7 +265,10 @@ public class PedometerDB {
             values.put("number", step.getNumber());
             values.put("date", step.getDate());
             values.put("userId", step.getUserId());
-            db.insert("step", null, values);
+            // 同一个用户同一天已经有一行时插入失败，返回 -1
+            if (db.insert("step", null, values) != -1) {
+                putDayTotal(step);
+            }
         }
     }
 
@@ -143,9 +285,149 @@ public class PedometerDB {
             values.put("userId", step.getUserId());
             db.update("step", values, "userId = ? and date = ?", new String[]{
                     step.getUserId(), step.getDate()});
+            putDayTotal(step);
+        }
+    }
+
+    /**
+     * step 表里一天的总数同时写到按天的时间序列里，两边总是一致的
+     */
+    private void putDayTotal(Step step) {
+        putDayTotal(step.getUserId(), step.getDate(), step.getNumber());
+    }
+
+    private void putDayTotal(String userId, String date, int number) {
+        synchronized (putDayTotal) {
+            putDayTotal.bindString(1, userId);
+            putDayTotal.bindLong(2, StepCounter.parseDay(date));
+            putDayTotal.bindLong(3, number);
+            putDayTotal.executeInsert();
+        }
+    }
+
+    /**
+     * 只修改某一天的步数，不重写整行
+     *
+     * @return 这一天没有记录时返回 false
+     */
+    public boolean updateStepNumber(String userId, String date, int number) {
+        int rows;
+        synchronized (updateStepNumber) {
+            updateStepNumber.bindLong(1, number);
+            updateStepNumber.bindString(2, userId);
+            updateStepNumber.bindString(3, date);
+            rows = updateStepNumber.executeUpdateDelete();
+        }
+        if (rows > 0) {
+            putDayTotal(userId, date, number);
+        }
+        return rows > 0;
+    }
+
+    /**
+     * 只修改用户今天的步数。updateUser 会连头像一起重写，计步时不要用它
+     */
+    public void updateTodayStep(String objectId, int steps) {
+        synchronized (updateTodayStep) {
+            updateTodayStep.bindLong(1, steps);
+            updateTodayStep.bindString(2, objectId);
+            updateTodayStep.executeUpdateDelete();
+        }
+        // 这次写入可能在 StepWriter 的事务里，事务回滚时缓存不能留着没提交的步数，所以移除，下次从表里读
+        evictUser(objectId);
+    }
+
+    /**
+     * 组的总步数加上 steps，不用先读出来
+     */
+    public void addGroupSteps(int groupId, int steps) {
+        synchronized (addGroupSteps) {
+            addGroupSteps.bindLong(1, steps);
+            addGroupSteps.bindLong(2, groupId);
+            addGroupSteps.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * 把新走的步数加到它所在的分钟和小时上，按天的总数由 updateStep 写入
+     *
+     * @param userId
+     * @param minute 1970-01-01 以来的分钟数，按当地时间
+     * @param steps  新走的步数
+     */
+    public void addStepsToSeries(String userId, long minute, int steps) {
+        addToBucket(SERIES_MINUTE, userId, minute, steps);
+        addToBucket(SERIES_HOUR, userId, minute / 60, steps);
+    }
+
+    private void addToBucket(int series, String userId, long bucket, int steps) {
+        SQLiteStatement insert = insertBucket[series];
+        synchronized (insert) {
+            insert.bindString(1, userId);
+            insert.bindLong(2, bucket);
+            insert.executeInsert();
+        }
+        SQLiteStatement add = addToBucket[series];
+        synchronized (add) {
+            add.bindLong(1, steps);
+            add.bindString(2, userId);
+            add.bindLong(3, bucket);
+            add.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * 删除早于 bucket 的按分钟的步数，按小时和按天的汇总保留
+     *
+     * @param minute 1970-01-01 以来的分钟数
+     */
+    public void deleteMinutesBefore(long minute) {
+        db.delete("step_minute", "bucket < ?", new String[]{String.valueOf(minute)});
+    }
+
+    /**
+     * 用一次查询取出连续一段时间里每个时间段的步数，没有记录的时间段是 0。
+     * 周、月、年的图表都按天取，一周 7 个，一年 366 个。
+     *
+     * @param userId
+     * @param series SERIES_MINUTE、SERIES_HOUR 或 SERIES_DAY
+     * @param start  第一个时间段，1970-01-01 以来的分钟数、小时数或天数，按当地时间
+     * @param count  时间段的个数
+     * @return 从 start 开始每个时间段的步数
+     */
+    public int[] loadStepSeries(String userId, int series, long start, int count) {
+        int[] steps = new int[count];
+        Cursor cursor = db.query(SERIES_TABLES[series], new String[]{"bucket", "steps"},
+                "userId = ? and bucket >= ? and bucket < ?",
+                new String[]{userId, String.valueOf(start), String.valueOf(start + count)},
+                null, null, null);
+        try {
+            int bucketIndex = cursor.getColumnIndexOrThrow("bucket");
+            int stepsIndex = cursor.getColumnIndexOrThrow("steps");
+            while (cursor.moveToNext()) {
+                steps[(int) (cursor.getLong(bucketIndex) - start)] = cursor.getInt(stepsIndex);
+            }
+        } finally {
+            cursor.close();
         }
+        return steps;
+    }
+
+    /**
+     * 用一次查询取出一段日期里每天的步数，代替逐天调用 loadSteps
+     *
+     * @param userId
+     * @param fromDate 第一天，yyyyMMdd
+     * @param toDate   最后一天，yyyyMMdd，包括这一天
+     * @return 从 fromDate 开始每天的步数，没有记录的一天是 0
+     */
+    public int[] loadStepRange(String userId, String fromDate, String toDate) {
+        int from = StepCounter.parseDay(fromDate);
+        int to = StepCounter.parseDay(toDate);
+        return loadStepSeries(userId, SERIES_DAY, from, Math.max(0, to - from + 1));
     }
 
+
     /**
      * 升级step表里的数据
      *
@@ -153,11 +435,20 @@ public class PedometerDB {
      */
     public void changeuserId(Step step) {
         if (step != null) {
-            ContentValues values = new ContentValues();
-            // values.put("number", step.getNumber());
-            // values.put("date", step.getDate());
-            values.put("userId", step.getUserId());
-            db.update("step", values, null, null);
+            changeuserId(step.getUserId());
+        }
+    }
+
+    /**
+     * 把所有的步数记录都改到 userId 名下，注册到服务器得到新的 objectId 之后调用。
+     * 只有一个本机用户的记录，不用先读出来逐条修改
+     */
+    public void changeuserId(String userId) {
+        ContentValues values = new ContentValues();
+        values.put("userId", userId);
+        db.update("step", values, null, null);
+        for (String table : SERIES_TABLES) {
+            db.update(table, values, null, null);
         }
     }
 
@@ -282,61 +573,60 @@ public class PedometerDB {
     }
 
     /**
-     * 取出user中所有的数据，按照步数的降序取出
+     * 取出所有用户，包括头像，按照今天步数的降序取出
      *
-     * @return
+     * @return 没有用户时是空的列表
      */
     public List<User> lodListUsers() {
-        List<User> list = null;
-        Cursor cursor = db.rawQuery(
-                "select * from user  order by today_step desc", null);
-        if (cursor.moveToFirst()) {
-            list = new ArrayList<User>();
-            do {
-                User user = new User();
-                user.setObjectId(cursor.getString(cursor
-                        .getColumnIndex("objectId")));
-                user.setGroupId(cursor.getInt(cursor.getColumnIndex("groupId")));
-                user.setName(cursor.getString(cursor.getColumnIndex("name")));
-                user.setSex(cursor.getString(cursor.getColumnIndex("sex")));
-                user.setPicture(cursor.getBlob(cursor.getColumnIndex("picture")));
-                user.setSensitivity(cursor.getInt(cursor
-                        .getColumnIndex("sensitivity")));
-                user.setStep_length(cursor.getInt(cursor
-                        .getColumnIndex("step_length")));
-                user.setWeight(cursor.getInt(cursor.getColumnIndex("weight")));
-                user.setToday_step(cursor.getInt(cursor
-                        .getColumnIndex("today_step")));
+        // 先只查顺序，所有用户都在缓存里时不用读头像
+        List<User> list = new ArrayList<User>();
+        Cursor ids = db.query("user", new String[]{"objectId"}, null, null, null, null,
+                "today_step desc");
+        try {
+            while (ids.moveToNext()) {
+                User user = getCachedUser(ids.getString(0));
+                if (user == null) {
+                    list = null;
+                    break;
+                }
                 list.add(user);
-            } while (cursor.moveToNext());
+            }
+        } finally {
+            ids.close();
+        }
+        if (list != null) {
+            return list;
         }
-        return list;
 
+        list = new ArrayList<User>();
+        Cursor cursor = db.query("user", USER_COLUMNS_WITH_PICTURE, null, null, null, null,
+                "today_step desc");
+        try {
+            while (cursor.moveToNext()) {
+                User user = readUser(cursor);
+                list.add(user);
+                putCachedUser(user);
+            }
+        } finally {
+            cursor.close();
+        }
+        return list;
     }
 
     /**
-     * 更具date取出所有的step数据
-     *
-     * @return
+     * @return 本地保存的所有用户的 objectId，不读其他的列
      */
-    public List<Step> loadListSteps() {
-        List<Step> list = new ArrayList<Step>();
-
-        Cursor cursor = db.rawQuery("select * from step order by number desc",
-                null);
-        if (cursor.moveToFirst()) {
-            do {
-                Step step = new Step();
-                step.setId(cursor.getInt(cursor.getColumnIndex("id")));
-                step.setNumber(cursor.getInt(cursor.getColumnIndex("number")));
-                step.setDate(cursor.getString(cursor.getColumnIndex("date")));
-                step.setUserId(cursor.getString(cursor.getColumnIndex("userId")));
-                list.add(step);
-            } while (cursor.moveToNext());
-
+    public Set<String> loadUserIds() {
+        Set<String> ids = new HashSet<String>();
+        Cursor cursor = db.query("user", new String[]{"objectId"}, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
         }
-
-        return list;
+        return ids;
     }
 
     /**
@@ -346,56 +636,101 @@ public class PedometerDB {
      * @return
      */
     public User loadUser(String objectId) {
+        User user = getCachedUser(objectId);
+        if (user != null) {
+            return user;
+        }
+        Cursor cursor = db.query("user", USER_COLUMNS_WITH_PICTURE, "objectId = ?",
+                new String[]{objectId}, null, null, null, "1");
+        try {
+            if (cursor.moveToFirst()) {
+                user = readUser(cursor);
+            } else {
+                Log.i("tag", "User is null!");
+            }
+        } finally {
+            cursor.close();
+        }
+        putCachedUser(user);
+        return user;
+    }
+
+    /**
+     * 取出第一个用户，不读头像
+     *
+     * @return 还没有注册时返回 null
+     */
+    public User loadFirstUserInfo() {
+        User user = getCachedUser(firstUserId);
+        if (user != null) {
+            return user;
+        }
+        user = loadUserInfo(null, null);
+        if (user != null) {
+            firstUserId = user.getObjectId();
+        }
+        return user;
+    }
+
+    /**
+     * 根据id取出user数据，不读头像
+     */
+    public User loadUserInfo(String objectId) {
+        User user = getCachedUser(objectId);
+        if (user != null) {
+            return user;
+        }
+        return loadUserInfo("objectId = ?", new String[]{objectId});
+    }
+
+    private User loadUserInfo(String selection, String[] args) {
         User user = null;
-        Cursor cursor = db.query("user", null, "objectId = ?",
-                new String[]{objectId}, null, null, null);
-        if (cursor.moveToFirst()) {
-            do {
-                user = new User();
-                user.setName(cursor.getString(cursor.getColumnIndex("name")));
-                user.setSex(cursor.getString(cursor.getColumnIndex("sex")));
-                user.setObjectId(objectId);
-                user.setPicture(cursor.getBlob(cursor.getColumnIndex("picture")));
-                user.setSensitivity(cursor.getInt(cursor
-                        .getColumnIndex("sensitivity")));
-                user.setStep_length(cursor.getInt(cursor
-                        .getColumnIndex("step_length")));
-                user.setWeight(cursor.getInt(cursor.getColumnIndex("weight")));
-                user.setGroupId(cursor.getInt(cursor.getColumnIndex("groupId")));
-                user.setToday_step(cursor.getInt(cursor
-                        .getColumnIndex("today_step")));
-            } while (cursor.moveToNext());
-        } else {
-            Log.i("tag", "User is null!");
+        Cursor cursor = db.query("user", USER_COLUMNS, selection, args, null, null, null, "1");
+        try {
+            if (cursor.moveToFirst()) {
+                user = readUser(cursor);
+            }
+        } finally {
+            cursor.close();
         }
         return user;
     }
 
+    /**
+     * @return user 表的行数
+     */
+    public int countUsers() {
+        Cursor cursor = db.rawQuery("select count(*) from user", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * 取出第一个用户，也就是用此app的用户
      *
      * @return
      */
     public User loadFirstUser() {
-        User user = null;
-        Cursor cursor = db.query("user", null, null, null, null, null, null);
-        if (cursor.moveToFirst()) {
-            user = new User();
-            user.setName(cursor.getString(cursor.getColumnIndex("name")));
-            user.setSex(cursor.getString(cursor.getColumnIndex("sex")));
-            user.setObjectId(cursor.getString(cursor.getColumnIndex("objectId")));
-            user.setPicture(cursor.getBlob(cursor.getColumnIndex("picture")));
-            user.setSensitivity(cursor.getInt(cursor
-                    .getColumnIndex("sensitivity")));
-            user.setStep_length(cursor.getInt(cursor
-                    .getColumnIndex("step_length")));
-            user.setWeight(cursor.getInt(cursor.getColumnIndex("weight")));
-            user.setGroupId(cursor.getInt(cursor.getColumnIndex("groupId")));
-            user.setToday_step(cursor.getInt(cursor
-                    .getColumnIndex("today_step")));
-        } else {
-            Log.i("tag", "User is null!");
+        User user = getCachedUser(firstUserId);
+        if (user != null) {
+            return user;
+        }
+        Cursor cursor = db.query("user", USER_COLUMNS_WITH_PICTURE, null, null, null, null,
+                null, "1");
+        try {
+            if (cursor.moveToFirst()) {
+                user = readUser(cursor);
+                firstUserId = user.getObjectId();
+            } else {
+                Log.i("tag", "User is null!");
+            }
+        } finally {
+            cursor.close();
         }
+        putCachedUser(user);
         return user;
     }
 
@@ -8,13 +8,50 @@ import android.database.sqlite.SQLiteOpenHelper;
 public class PedometerOpenHelper extends SQLiteOpenHelper {
 
     /**
-     * 创建step表
+     * 创建step表，date 是 yyyyMMdd，每个用户每天一行
      */
-    public static final String CREATE_STEP = "create table step("
-            + "id integer primary key autoincrement,"
-            + "number text,"
-            + "date integer,"
-            + "userId text)";
+    public static final String CREATE_STEP = createStep("step");
+
+    /**
+     * step 表的索引。loadSteps 按 (userId, date) 查询，历史记录变多之后不用扫描整个表。
+     * step_number 现在没有查询用到，删除它要再升级一个版本，先留着
+     */
+    public static final String CREATE_STEP_USER_DATE = "create unique index step_user_date on step(userId, date)";
+    public static final String CREATE_STEP_NUMBER = "create index step_number on step(number)";
+
+    /**
+     * user 表按 objectId 查询
+     */
+    public static final String CREATE_USER_OBJECT_ID = "create index user_object_id on user(objectId)";
+
+    /**
+     * 版本 3 把 number 从 text 改成 integer。SQLite 不能修改列的类型，所以建一个新表复制数据，
+     * 同一个用户同一天重复的行只保留步数最多的一行
+     */
+    private static final String COPY_STEP_V3 = "insert into step_new(number, date, userId) "
+            + "select ifnull(max(cast(number as integer)), 0), cast(date as integer), userId from step "
+            + "where userId is not null and date is not null "
+            + "group by userId, cast(date as integer) order by min(id)";
+
+    /**
+     * 步数的时间序列，bucket 是 1970-01-01 以来按当地时间的分钟数、小时数和天数，
+     * 每个用户每个时间段一行。按分钟和按小时的由 StepWriter 增量累加，按天的和 step 表同时写入。
+     */
+    public static final String CREATE_STEP_MINUTE = createSeries("step_minute");
+    public static final String CREATE_STEP_HOUR = createSeries("step_hour");
+    public static final String CREATE_STEP_DAY = createSeries("step_day");
+
+    /**
+     * 从已有的 step 表生成按天的时间序列，date 是 yyyyMMdd。版本 1 的 step 表没有 not null，
+     * 旧版本保存过 userId 为 null 的行，日期也可能不合法（julianday 返回 null），这些行不复制，
+     * 否则违反 step_day 的 not null，升级失败以后每次打开数据库都会失败
+     */
+    private static final String FILL_STEP_DAY = "insert or replace into step_day(userId, bucket, steps) "
+            + "select userId, bucket, max(steps) from ("
+            + "select userId, cast(julianday(substr(date, 1, 4) || '-' || substr(date, 5, 2) || '-' "
+            + "|| substr(date, 7, 2)) - 2440587.5 as integer) as bucket, cast(number as integer) as steps "
+            + "from step where userId is not null and number is not null and length(date) = 8) "
+            + "where bucket is not null group by userId, bucket";
 
     /**
      * 创建group表
@@ -69,14 +106,69 @@ public class PedometerOpenHelper extends SQLiteOpenHelper {
      */
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_STEP);
+        db.execSQL(CREATE_STEP_USER_DATE);
+        db.execSQL(CREATE_STEP_NUMBER);
         db.execSQL(CREATE_USER);
+        db.execSQL(CREATE_USER_OBJECT_ID);
         db.execSQL(CREATE_WEATHER);
         db.execSQL(CREATE_GROUP);
+        createSeriesTables(db);
     }
 
+    /**
+     * 从旧版本逐个版本升级上来。SQLiteOpenHelper 在一个事务里调用 onUpgrade，
+     * 任何一步失败时整个升级回滚，下次打开时从原来的版本重新升级。
+     * 增加版本时在 upgradeTo 里加一个 case，同时修改 onCreate 里的建表语句。
+     */
     @Override
-    public void onUpgrade(SQLiteDatabase arg0, int arg1, int arg2) {
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            upgradeTo(db, version);
+        }
+    }
+
+    private void upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                // 步数的时间序列
+                createSeriesTables(db);
+                db.execSQL(FILL_STEP_DAY);
+                break;
+            case 3:
+                // step 表的列改成 integer，加上索引
+                db.execSQL(createStep("step_new"));
+                db.execSQL(COPY_STEP_V3);
+                db.execSQL("drop table step");
+                db.execSQL("alter table step_new rename to step");
+                db.execSQL(CREATE_STEP_USER_DATE);
+                db.execSQL(CREATE_STEP_NUMBER);
+                db.execSQL(CREATE_USER_OBJECT_ID);
+                break;
+            default:
+                throw new IllegalStateException("No upgrade to version " + version);
+        }
+    }
+
+    private static String createStep(String table) {
+        return "create table " + table + "("
+                + "id integer primary key autoincrement,"
+                + "number integer not null default 0,"
+                + "date integer not null,"
+                + "userId text not null)";
+    }
+
+    private static String createSeries(String table) {
+        return "create table " + table + "("
+                + "userId text not null,"
+                + "bucket integer not null,"
+                + "steps integer not null default 0,"
+                + "primary key (userId, bucket))";
+    }
 
+    private void createSeriesTables(SQLiteDatabase db) {
+        db.execSQL(CREATE_STEP_MINUTE);
+        db.execSQL(CREATE_STEP_HOUR);
+        db.execSQL(CREATE_STEP_DAY);
     }
 
 
@@ -0,0 +1,411 @@
+package com.bit.pedometer.data.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.bit.pedometer.data.bean.Group;
+import com.bit.pedometer.data.bean.Step;
+import com.bit.pedometer.data.bean.User;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * PedometerDB 的异步入口。所有查询和写入都在同一个后台线程里按顺序执行，结果通过回调在主线程交回，
+ * 或者通过 Future 取得，界面不用等数据库。StepWriter 的定时写入也在这个线程里，读到的总是写完的数据。
+ * 先提交的写入一定在后提交的查询之前完成，所以写完马上关闭页面、下一个页面再查询也能读到。
+ * <p>
+ * PedometerDB 本身的方法仍然是同步的，只在这个线程里调用，界面不直接调用。
+ */
+public class PedometerRepository {
+
+    /**
+     * 查询结果的回调，在主线程调用
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+
+        /**
+         * 查询或写入抛出了异常，onResult 不会再调用
+         */
+        void onError(Exception e);
+    }
+
+    private static final String TAG = "PedometerRepository";
+
+    private static PedometerRepository repository;
+
+    private final Context context;
+    private final ScheduledExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 只在数据库线程里访问。第一次用到时才打开，打开和升级数据库都不在主线程
+    private PedometerDB pedometerDB;
+
+    private PedometerRepository(Context context) {
+        this.context = context;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PedometerDB");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized static PedometerRepository getInstance(Context context) {
+        if (repository == null) {
+            repository = new PedometerRepository(context.getApplicationContext());
+        }
+        return repository;
+    }
+
+    /**
+     * @return 数据库线程，给需要定时执行的写入使用
+     */
+    ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return 数据库，只能在数据库线程里调用
+     */
+    PedometerDB getDatabase() {
+        if (pedometerDB == null) {
+            pedometerDB = PedometerDB.getInstance(context);
+        }
+        return pedometerDB;
+    }
+
+    /**
+     * 在数据库线程里执行一个查询
+     *
+     * @return 查询的结果，不要在主线程里等待
+     */
+    public <T> Future<T> submit(Callable<T> query) {
+        return executor.submit(query);
+    }
+
+    /**
+     * 在数据库线程里执行一个查询，结果在主线程交给 callback，出错时交给 callback.onError
+     *
+     * @param callback 不需要结果的写入可以是 null，出错时只记录日志
+     */
+    public <T> void load(final Callable<T> query, final Callback<T> callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result;
+                try {
+                    result = query.call();
+                } catch (final Exception e) {
+                    Log.e(TAG, "query failed", e);
+                    if (callback != null) {
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onError(e);
+                            }
+                        });
+                    }
+                    return;
+                }
+                if (callback != null) {
+                    final T delivered = result;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResult(delivered);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * 异步的 PedometerDB.loadStepRange
+     */
+    public void loadStepRange(final String userId, final String fromDate, final String toDate,
+                              Callback<int[]> callback) {
+        load(new Callable<int[]>() {
+            @Override
+            public int[] call() {
+                return getDatabase().loadStepRange(userId, fromDate, toDate);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.lodListUsers，按今天的步数降序，包括头像
+     */
+    public void loadUsers(Callback<List<User>> callback) {
+        load(new Callable<List<User>>() {
+            @Override
+            public List<User> call() {
+                return getDatabase().lodListUsers();
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.loadUserIds
+     */
+    public void loadUserIds(Callback<Set<String>> callback) {
+        load(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return getDatabase().loadUserIds();
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.loadFirstUserInfo，不读头像
+     */
+    public void loadFirstUserInfo(Callback<User> callback) {
+        load(new Callable<User>() {
+            @Override
+            public User call() {
+                return getDatabase().loadFirstUserInfo();
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.loadFirstUser，包括头像
+     */
+    public void loadFirstUser(Callback<User> callback) {
+        load(new Callable<User>() {
+            @Override
+            public User call() {
+                return getDatabase().loadFirstUser();
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.loadUserInfo，不读头像
+     */
+    public void loadUserInfo(final String objectId, Callback<User> callback) {
+        load(new Callable<User>() {
+            @Override
+            public User call() {
+                return getDatabase().loadUserInfo(objectId);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.loadUser，包括头像
+     */
+    public void loadUser(final String objectId, Callback<User> callback) {
+        load(new Callable<User>() {
+            @Override
+            public User call() {
+                return getDatabase().loadUser(objectId);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.loadSteps
+     */
+    public void loadSteps(final String userId, final String date, Callback<Step> callback) {
+        load(new Callable<Step>() {
+            @Override
+            public Step call() {
+                return getDatabase().loadSteps(userId, date);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步的 PedometerDB.loadListGroup
+     */
+    public void loadGroups(Callback<List<Group>> callback) {
+        load(new Callable<List<Group>>() {
+            @Override
+            public List<Group> call() {
+                return getDatabase().loadListGroup();
+            }
+        }, callback);
+    }
+
+    /**
+     * 第一次打开时创建 PK 用的几个空组
+     */
+    public void createGroups(final int count) {
+        load(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PedometerDB db = getDatabase();
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < count; i++) {
+                        Group group = new Group();
+                        group.setTotal_number(0);
+                        group.setMember_number(0);
+                        db.saveGroup(group);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * 注册本机的用户：保存用户和今天的步数记录，用户所在的组加一个人
+     */
+    public void saveNewUser(User user, final Step step, Callback<Void> callback) {
+        final User saved = PedometerDB.copyUser(user);
+        load(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PedometerDB db = getDatabase();
+                db.beginTransaction();
+                try {
+                    db.saveUser(saved);
+                    db.saveStep(step);
+                    changeGroup(db, saved.getGroupId(), 1, 0);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * 把 PK 列表里的用户加到本地，用户所在的组加上他和他的步数
+     */
+    public void addMember(User user, Callback<Void> callback) {
+        final User added = PedometerDB.copyUser(user);
+        load(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PedometerDB db = getDatabase();
+                db.beginTransaction();
+                try {
+                    db.saveUser(added);
+                    changeGroup(db, added.getGroupId(), 1, added.getToday_step());
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * 删除用户，用户所在的组减去他和他的步数
+     */
+    public void deleteUser(User user, Callback<Void> callback) {
+        final User deleted = PedometerDB.copyUser(user);
+        load(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PedometerDB db = getDatabase();
+                db.beginTransaction();
+                try {
+                    db.deleteUser(deleted);
+                    changeGroup(db, deleted.getGroupId(), -1, -deleted.getToday_step());
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * 把用户移到另一个组，两个组的人数和步数跟着改
+     */
+    public void moveUser(User user, final int groupId, Callback<Void> callback) {
+        final User moved = PedometerDB.copyUser(user);
+        load(new Callable<Void>() {
+            @Override
+            public Void call() {
+                if (moved.getGroupId() == groupId) {
+                    return null;
+                }
+                PedometerDB db = getDatabase();
+                db.beginTransaction();
+                try {
+                    changeGroup(db, moved.getGroupId(), -1, -moved.getToday_step());
+                    changeGroup(db, groupId, 1, moved.getToday_step());
+                    moved.setGroupId(groupId);
+                    db.updateUser(moved);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * 在后台保存用户的设置。保存的是调用时的副本，之后界面再修改 user 不影响这次写入
+     */
+    public void updateUser(User user) {
+        final User updated = PedometerDB.copyUser(user);
+        load(new Callable<Void>() {
+            @Override
+            public Void call() {
+                getDatabase().updateUser(updated);
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * 注册到服务器得到新的 objectId 之后，把本地的用户和所有的步数记录改到新的 objectId 名下
+     */
+    public void changeObjectId(User user, Callback<Void> callback) {
+        final User changed = PedometerDB.copyUser(user);
+        load(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PedometerDB db = getDatabase();
+                db.beginTransaction();
+                try {
+                    db.changeObjectId(changed);
+                    db.changeuserId(changed.getObjectId());
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * 组的人数和总步数加上 members 和 steps，组不存在时什么都不做。在数据库线程的事务里调用
+     */
+    private void changeGroup(PedometerDB db, int groupId, int members, int steps) {
+        Group group = db.loadGroup(groupId);
+        if (group == null) {
+            Log.w(TAG, "group " + groupId + " not found");
+            return;
+        }
+        group.setMember_number(group.getMember_number() + members);
+        group.setTotal_number(group.getTotal_number() + steps);
+        db.updateGroup(group);
+    }
+}
@@ -0,0 +1,203 @@
+package com.bit.pedometer.data.db;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.bit.pedometer.data.bean.Step;
+import com.bit.pedometer.data.bean.User;
+import com.bit.pedometer.service.StepCounter;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 StepCounter 里的步数写到数据库。步数先留在内存里，每隔 FLUSH_INTERVAL_SECONDS 秒，
+ * 或者界面暂停、计步服务停止、日期变化时，在后台线程里用一个事务写一次 user、step、group 三张表，
+ * 新走的步数同时累加到按分钟和按小时的时间序列里。步数没有变化时不写。主线程上不再有写数据库的操作。
+ * <p>
+ * 所有写操作都在 PedometerRepository 的数据库线程里按顺序执行，不会互相覆盖，界面的查询也排在
+ * 同一个线程里。只修改步数的列，用预编译的语句，不重写用户的头像。进程被直接杀掉时最多丢失最近
+ * FLUSH_INTERVAL_SECONDS 秒还没写入的步数。
+ */
+public class StepWriter {
+
+    public static final int FLUSH_INTERVAL_SECONDS = 30;
+
+    // 按分钟的步数保留 30 天
+    private static final int MINUTE_RETENTION_DAYS = 30;
+
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    private static final String TAG = "StepWriter";
+
+    private static StepWriter stepWriter;
+
+    private final PedometerRepository repository;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> periodicFlush;
+
+    // 以下只在后台线程访问，数据库和上一次写入的日期和步数
+    private PedometerDB pedometerDB;
+    private int flushedDay = -1;
+    private int flushedSteps = -1;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            writeToday();
+        }
+    };
+
+    private final Runnable rolloverTask = new Runnable() {
+        @Override
+        public void run() {
+            writeRollover();
+        }
+    };
+
+    private StepWriter(Context context) {
+        repository = PedometerRepository.getInstance(context);
+        executor = repository.getExecutor();
+    }
+
+    public synchronized static StepWriter getInstance(Context context) {
+        if (stepWriter == null) {
+            stepWriter = new StepWriter(context.getApplicationContext());
+        }
+        return stepWriter;
+    }
+
+    /**
+     * 开始定时写入，计步服务启动时调用
+     */
+    public synchronized void start() {
+        if (periodicFlush == null) {
+            periodicFlush = executor.scheduleWithFixedDelay(flushTask,
+                    FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 停止定时写入并马上写一次，计步服务停止时调用
+     */
+    public synchronized void stop() {
+        if (periodicFlush != null) {
+            periodicFlush.cancel(false);
+            periodicFlush = null;
+        }
+        flush();
+    }
+
+    /**
+     * 在后台线程里马上写一次，不阻塞调用的线程
+     */
+    public void flush() {
+        executor.execute(flushTask);
+    }
+
+    /**
+     * 日期变化时在后台线程里写入前一天的总数，并创建今天的记录
+     */
+    public void rollover() {
+        executor.execute(rolloverTask);
+    }
+
+    private void writeToday() {
+        pedometerDB = repository.getDatabase();
+        StepCounter.DayTotal total = StepCounter.snapshot();
+        if (total.day == flushedDay && total.steps == flushedSteps) {
+            return;
+        }
+        User user = pedometerDB.loadFirstUserInfo();
+        if (user == null) {
+            return;// 还没有创建用户
+        }
+        if (total.day != flushedDay) {
+            total = restoreSaved(user, total);
+        }
+
+        pedometerDB.beginTransaction();
+        try {
+            writeSteps(user, total);
+            pedometerDB.setTransactionSuccessful();
+        } finally {
+            pedometerDB.endTransaction();
+        }
+        flushedDay = total.day;
+        flushedSteps = total.steps;
+    }
+
+    private void writeRollover() {
+        pedometerDB = repository.getDatabase();
+        User user = pedometerDB.loadFirstUserInfo();
+        if (user == null) {
+            return;
+        }
+
+        // 计步服务不在运行时内存里没有前一天的步数，数据库里最后写入的就是总数
+        StepCounter.DayTotal closed = StepCounter.rollover();
+        StepCounter.DayTotal today = restoreSaved(user, StepCounter.snapshot());
+
+        pedometerDB.beginTransaction();
+        try {
+            if (closed != null) {
+                writeSteps(user, closed);
+            }
+            writeSteps(user, today);
+            pedometerDB.deleteMinutesBefore((today.day - MINUTE_RETENTION_DAYS) * MINUTES_PER_DAY);
+            pedometerDB.setTransactionSuccessful();
+        } finally {
+            pedometerDB.endTransaction();
+        }
+        flushedDay = today.day;
+        flushedSteps = today.steps;
+        Log.i(TAG, "rollover to " + today.getDate());
+    }
+
+    /**
+     * 进程重新启动后内存里的步数从 0 开始，不能用它覆盖数据库里已经保存的，先把保存的恢复到内存里
+     */
+    private StepCounter.DayTotal restoreSaved(User user, StepCounter.DayTotal total) {
+        Step saved = pedometerDB.loadSteps(user.getObjectId(), total.getDate());
+        if (saved == null || saved.getNumber() <= total.steps) {
+            return total;
+        }
+        StepCounter.restore(saved.getNumber());
+        return StepCounter.snapshot();
+    }
+
+    /**
+     * 写入某一天的步数，组的总步数加上和上一次写入的差。在事务里调用。
+     */
+    private void writeSteps(User user, StepCounter.DayTotal total) {
+        String date = total.getDate();
+        Step step = pedometerDB.loadSteps(user.getObjectId(), date);
+        int previous = 0;
+        if (step == null) {
+            step = new Step();
+            step.setDate(date);
+            step.setUserId(user.getObjectId());
+            step.setNumber(total.steps);
+            pedometerDB.saveStep(step);
+        } else {
+            previous = step.getNumber();
+            pedometerDB.updateStepNumber(user.getObjectId(), date, total.steps);
+        }
+
+        int delta = total.steps - previous;
+        if (delta != 0) {
+            pedometerDB.addGroupSteps(user.getGroupId(), delta);
+        }
+        if (delta > 0) {
+            // 新走的步数算在写入时的这一分钟，前一天的算在那一天的最后一分钟
+            long minute = Math.min(StepCounter.currentMinute(),
+                    (total.day + 1) * MINUTES_PER_DAY - 1);
+            pedometerDB.addStepsToSeries(user.getObjectId(), minute, delta);
+        }
+
+        if (total.day == StepCounter.today()) {
+            pedometerDB.updateTodayStep(user.getObjectId(), total.steps);
+        }
+    }
+}
@@ -1,26 +1,13 @@
 package com.bit.pedometer.service;
 
-import android.annotation.SuppressLint;
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
 import android.util.Log;
 
-import com.bit.pedometer.data.bean.Step;
-import com.bit.pedometer.data.bean.User;
-import com.bit.pedometer.data.db.PedometerDB;
-
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import com.bit.pedometer.data.db.StepWriter;
 
 public class AutoSaveService extends Service {
-    private PedometerDB pedometerDB;
-    private Step step;
-    private User user;
-    private String date;
-    private Calendar calendar;
-    private SimpleDateFormat sdf;
 
     @Override
     public IBinder onBind(Intent arg0) {
@@ -38,30 +25,10 @@ public class AutoSaveService extends Service {
         return super.onStartCommand(intent, flags, startId);
     }
 
-    @SuppressLint("SimpleDateFormat")
     private void init() {
         Log.i("info", "你好啊");
-        calendar = Calendar.getInstance();
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        sdf = new SimpleDateFormat("yyyyMMdd");
-        pedometerDB = PedometerDB.getInstance(this);
-        date = sdf.format(calendar.getTime());
-        Log.i("info", date);
-
-        user = pedometerDB.loadFirstUser();
-        step = pedometerDB.loadSteps(user.getObjectId(), date);
-        step.setNumber(StepDetector.CURRENT_SETP);
-        pedometerDB.updateStep(step);
-        Log.i("info", "你好啊1");
-
-        user.setToday_step(0);
-        pedometerDB.updateUser(user);
-
-        step = new Step();
-        step.setDate(sdf.format(new Date()));
-        step.setNumber(0);
-        step.setUserId(user.getObjectId());
-        pedometerDB.saveStep(step);
+        // 前一天的总数和今天的新记录在后台线程里一起写入
+        StepWriter.getInstance(this).rollover();
     }
 
 }
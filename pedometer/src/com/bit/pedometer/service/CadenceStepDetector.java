@@ -0,0 +1,282 @@
+package com.bit.pedometer.service;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+
+/**
+ * 根据加速度的模计步，和 StepDetector 的算法相互替代。
+ * <p>
+ * 加速度的模不受手机朝向的影响。先用一个二阶带通滤波器（biquad）只留下走路的 0.8~3.2Hz，
+ * 同时去掉重力；然后找滤波后信号的波峰，波峰高于自适应的阈值，并且和上一步之间信号回落到过零以下，
+ * 才算一步。阈值跟着最近的波峰高度变化，所以轻走和跑步都能计到，站着不动时的小抖动计不到。
+ * <p>
+ * 可选地用 Goertzel 算法估计步频：每 4 秒算一次几个频点上的能量，能量最大的频点就是当前步频，
+ * 两步之间的最短间隔按步频调整，防止一步里的两次冲击被计成两步。
+ * <p>
+ * 所有时间都取自 event.timestamp，不用收到事件时的系统时间，所以传感器可以批量上报，
+ * 采样率低到 50Hz 也能正常计步。采样率变化时滤波器系数会重新计算。每个采样的计算量是固定的，
+ * 不分配内存。只能在一个线程里调用，不加锁。
+ */
+public class CadenceStepDetector implements SensorEventListener {
+
+	private static final double LOW_HZ = 0.8;
+	private static final double HIGH_HZ = 3.2;
+
+	// 注册时请求的采样率，收到第一批采样之前按这个频率设计滤波器
+	public static final double NOMINAL_RATE_HZ = 50;
+
+	// 实际采样率和设计滤波器时的采样率相差超过 10% 时重新计算系数
+	private static final double RATE_TOLERANCE = 0.1;
+
+	// 两步之间最短 0.25 秒，也就是步频最高 4Hz
+	private static final long MIN_STEP_INTERVAL_NS = 250000000L;
+
+	// 超过 2 秒没有一步认为已经停下，阈值和步频重新开始
+	private static final long IDLE_NS = 2000000000L;
+
+	// 两个采样之间超过 0.5 秒（传感器暂停过），滤波器重新开始
+	private static final long MAX_GAP_NS = 500000000L;
+
+	// 阈值是最近波峰高度的一半
+	private static final double THRESHOLD_RATIO = 0.5;
+	private static final double ENVELOPE_WEIGHT = 0.25;
+
+	// 估计步频的窗口和频点，窗口 4 秒时频率分辨率是 0.25Hz
+	private static final double WINDOW_SECONDS = 4;
+	private static final int BINS = 13;
+	private static final double BIN_STEP_HZ = (HIGH_HZ - LOW_HZ) / (BINS - 1);
+
+	// 最大能量至少是平均能量的 3 倍才认为有明显的步频
+	private static final double CADENCE_PROMINENCE = 3;
+
+	// 步频已知时两步之间最短是 0.6 个步周期
+	private static final double CADENCE_INTERVAL_RATIO = 0.6;
+
+	private boolean cadenceEnabled = true;
+
+	// 带通滤波器的系数，已经除以 a0，b1 恒为 0
+	private double b0, b2, a1, a2;
+	// 转置直接 II 型的状态
+	private double z1, z2;
+	private double designRate = 0;
+
+	// 采样间隔的滑动平均，纳秒
+	private double meanIntervalNs = 1e9 / NOMINAL_RATE_HZ;
+	private long lastTimestamp = -1;
+
+	// 波峰检测
+	private double y1, y2;
+	private long t1;
+	private boolean armed = false;
+	private double envelope = 0;
+	private long lastStep = 0;
+
+	// Goertzel 的状态，每个频点一组
+	private final double[] coeff = new double[BINS];
+	private final double[] s1 = new double[BINS];
+	private final double[] s2 = new double[BINS];
+	private int windowSamples = 0;
+	private int windowLength = 0;
+	private double cadenceHz = 0;
+
+	public CadenceStepDetector() {
+		design(NOMINAL_RATE_HZ);
+	}
+
+	/**
+	 * 是否估计步频，关掉时每个采样少一些计算，两步之间的最短间隔固定为 0.25 秒
+	 */
+	public void setCadenceEnabled(boolean enabled) {
+		cadenceEnabled = enabled;
+		cadenceHz = 0;
+		resetWindow();
+	}
+
+	/**
+	 * 最近估计的步频
+	 *
+	 * @return 每分钟的步数，还没有估计出来或者已经停下时返回 0
+	 */
+	public float getCadence() {
+		return (float) (cadenceHz * 60);
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+			addSample(event.timestamp, event.values[0], event.values[1],
+					event.values[2]);
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+	}
+
+	/**
+	 * 处理一个加速度采样
+	 *
+	 * @param timestamp
+	 *            采样时间，纳秒，和 event.timestamp 一样
+	 * @return 这个采样是否检测到一步
+	 */
+	public boolean addSample(long timestamp, float x, float y, float z) {
+		double magnitude = Math.sqrt(x * x + y * y + z * z);
+
+		long interval = timestamp - lastTimestamp;
+		if (lastTimestamp < 0 || interval > MAX_GAP_NS) {
+			restart(timestamp, magnitude);
+			return false;
+		}
+		if (interval <= 0) {
+			return false;// 重复的采样
+		}
+		lastTimestamp = timestamp;
+
+		meanIntervalNs += (interval - meanIntervalNs) * 0.05;
+		double rate = 1e9 / meanIntervalNs;
+		if (Math.abs(rate - designRate) > designRate * RATE_TOLERANCE) {
+			// 状态里有重力对应的稳态（输入恒为 g 时 z1 = z2 = b2 * g），换系数时跟着换，
+			// 否则重力相当于一个阶跃输入，会产生一个假的波峰
+			double oldB2 = b2;
+			design(rate);
+			z1 += (b2 - oldB2) * magnitude;
+			z2 += (b2 - oldB2) * magnitude;
+		}
+
+		double out = b0 * magnitude + z1;
+		z1 = -a1 * out + z2;
+		z2 = b2 * magnitude - a2 * out;
+
+		if (cadenceEnabled) {
+			updateCadence(out);
+		}
+
+		boolean step = false;
+		if (out < 0) {
+			armed = true;
+		} else if (y1 > y2 && y1 >= out && y1 > 0) {
+			// 上一个采样是波峰
+			step = onPeak(y1, t1);
+		}
+
+		y2 = y1;
+		y1 = out;
+		t1 = timestamp;
+		return step;
+	}
+
+	private boolean onPeak(double peak, long time) {
+		if (time - lastStep > IDLE_NS) {
+			envelope = 0;
+			cadenceHz = 0;
+		}
+
+		double threshold = Math.max(getMinPeak(), envelope * THRESHOLD_RATIO);
+		envelope += (peak - envelope) * ENVELOPE_WEIGHT;
+
+		if (!armed || peak < threshold || time - lastStep < getMinInterval()) {
+			return false;
+		}
+
+		armed = false;
+		lastStep = time;
+		StepCounter.add(1);
+		return true;
+	}
+
+	/**
+	 * 设置里的灵敏度是 1~10，数值越大越不灵敏，对应波峰至少 0.05~0.5m/s²
+	 */
+	private double getMinPeak() {
+		return StepDetector.SENSITIVITY * 0.05;
+	}
+
+	private long getMinInterval() {
+		if (cadenceHz <= 0) {
+			return MIN_STEP_INTERVAL_NS;
+		}
+		return Math.max(MIN_STEP_INTERVAL_NS,
+				(long) (CADENCE_INTERVAL_RATIO * 1e9 / cadenceHz));
+	}
+
+	/**
+	 * 在所有频点上做一步 Goertzel 迭代，窗口满了之后取能量最大的频点作为步频
+	 */
+	private void updateCadence(double sample) {
+		for (int i = 0; i < BINS; i++) {
+			double s = sample + coeff[i] * s1[i] - s2[i];
+			s2[i] = s1[i];
+			s1[i] = s;
+		}
+		if (++windowSamples < windowLength) {
+			return;
+		}
+
+		int best = 0;
+		double bestPower = 0;
+		double total = 0;
+		for (int i = 0; i < BINS; i++) {
+			double power = s1[i] * s1[i] + s2[i] * s2[i] - coeff[i] * s1[i]
+					* s2[i];
+			total += power;
+			if (power > bestPower) {
+				bestPower = power;
+				best = i;
+			}
+		}
+		if (bestPower > CADENCE_PROMINENCE * total / BINS) {
+			cadenceHz = LOW_HZ + best * BIN_STEP_HZ;
+		} else {
+			cadenceHz = 0;
+		}
+		resetWindow();
+	}
+
+	/**
+	 * 按采样率计算带通滤波器（RBJ 的峰值增益为 0dB 的带通）和 Goertzel 的系数
+	 */
+	private void design(double rate) {
+		designRate = rate;
+
+		double center = Math.sqrt(LOW_HZ * HIGH_HZ);
+		double q = center / (HIGH_HZ - LOW_HZ);
+		double w0 = 2 * Math.PI * center / rate;
+		double alpha = Math.sin(w0) / (2 * q);
+		double a0 = 1 + alpha;
+
+		b0 = alpha / a0;
+		b2 = -alpha / a0;
+		a1 = -2 * Math.cos(w0) / a0;
+		a2 = (1 - alpha) / a0;
+
+		resetWindow();
+	}
+
+	private void resetWindow() {
+		for (int i = 0; i < BINS; i++) {
+			coeff[i] = 2 * Math.cos(2 * Math.PI * (LOW_HZ + i * BIN_STEP_HZ)
+					/ designRate);
+			s1[i] = 0;
+			s2[i] = 0;
+		}
+		windowSamples = 0;
+		windowLength = (int) Math.round(WINDOW_SECONDS * designRate);
+	}
+
+	/**
+	 * 第一个采样或者中断之后重新开始。滤波器的状态设成输入一直是当前值时的稳态，
+	 * 输出从 0 开始，不会因为重力突然出现而产生一个假的波峰。
+	 */
+	private void restart(long timestamp, double magnitude) {
+		lastTimestamp = timestamp;
+		z1 = b2 * magnitude;
+		z2 = b2 * magnitude;
+		y1 = 0;
+		y2 = 0;
+		t1 = timestamp;
+		armed = false;
+		resetWindow();
+	}
+}
@@ -0,0 +1,86 @@
+package com.bit.pedometer.service;
+
+import android.annotation.TargetApi;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+
+/**
+ * 用硬件计步传感器计步（Android 4.4 以上）。优先使用 TYPE_STEP_COUNTER，没有时使用
+ * TYPE_STEP_DETECTOR。注册时指定 maxReportLatencyUs，传感器在自己的 FIFO 里攒一批事件
+ * 再一起上报，期间 CPU 可以休眠，不用像软件算法那样处理每一个加速度采样。
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+public class HardwareStepSource implements StepSource, SensorEventListener {
+
+	// 最多攒 5 秒的事件再上报，界面上的步数最多晚 5 秒
+	public static final int MAX_REPORT_LATENCY_US = 5 * 1000 * 1000;
+
+	private final SensorManager sensorManager;
+	private Sensor sensor;
+
+	// TYPE_STEP_COUNTER 上报的是开机以来的总步数，记住上一次的值算出增量
+	private float lastCount = -1;
+
+	public HardwareStepSource(SensorManager sensorManager) {
+		this.sensorManager = sensorManager;
+	}
+
+	/**
+	 * 设备是否有硬件计步传感器
+	 */
+	public static boolean isAvailable(SensorManager sensorManager) {
+		return findSensor(sensorManager) != null;
+	}
+
+	@Override
+	public boolean start() {
+		sensor = findSensor(sensorManager);
+		if (sensor == null) {
+			return false;
+		}
+		lastCount = -1;
+		return sensorManager.registerListener(this, sensor,
+				SensorManager.SENSOR_DELAY_NORMAL, MAX_REPORT_LATENCY_US);
+	}
+
+	@Override
+	public void stop() {
+		sensorManager.unregisterListener(this);
+		sensor = null;
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		if (event.sensor.getType() == Sensor.TYPE_STEP_COUNTER) {
+			float count = event.values[0];
+			if (lastCount >= 0) {
+				// 重启后计数从 0 开始
+				float steps = count >= lastCount ? count - lastCount : count;
+				StepCounter.add((int) steps);
+			}
+			lastCount = count;
+		} else if (event.sensor.getType() == Sensor.TYPE_STEP_DETECTOR) {
+			// 每个事件代表一步
+			StepCounter.add(event.values.length > 0 ? (int) event.values[0] : 1);
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+	}
+
+	private static Sensor findSensor(SensorManager sensorManager) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+			return null;
+		}
+		Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_COUNTER);
+		if (sensor == null) {
+			sensor = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR);
+		}
+		return sensor;
+	}
+}
@@ -0,0 +1,51 @@
+package com.bit.pedometer.service;
+
+import android.annotation.TargetApi;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.Build;
+
+/**
+ * 没有硬件计步传感器时，用加速度传感器和 CadenceStepDetector 的软件算法计步。
+ * 走路的频率只有 1~3Hz，50Hz 的采样已经足够，不再用 SENSOR_DELAY_FASTEST 处理每一个采样。
+ * CadenceStepDetector 用 event.timestamp 计算时间，所以 Android 4.4 以上可以让传感器批量上报，
+ * 期间 CPU 可以休眠。
+ */
+public class SoftwareStepSource implements StepSource {
+
+	// 50Hz
+	private static final int SAMPLING_PERIOD_US = (int) (1000000 / CadenceStepDetector.NOMINAL_RATE_HZ);
+
+	private final SensorManager sensorManager;
+	private final CadenceStepDetector stepDetector;
+
+	public SoftwareStepSource(SensorManager sensorManager) {
+		this.sensorManager = sensorManager;
+		this.stepDetector = new CadenceStepDetector();
+	}
+
+	@Override
+	public boolean start() {
+		Sensor sensor = sensorManager
+				.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+		if (sensor == null) {
+			return false;
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return registerBatched(sensor);
+		}
+		return sensorManager.registerListener(stepDetector, sensor,
+				SAMPLING_PERIOD_US);
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private boolean registerBatched(Sensor sensor) {
+		return sensorManager.registerListener(stepDetector, sensor,
+				SAMPLING_PERIOD_US, HardwareStepSource.MAX_REPORT_LATENCY_US);
+	}
+
+	@Override
+	public void stop() {
+		sensorManager.unregisterListener(stepDetector);
+	}
+}
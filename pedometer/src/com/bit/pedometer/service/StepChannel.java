@@ -0,0 +1,102 @@
+package com.bit.pedometer.service;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * 步数变化的通知通道。计步的线程在步数变化时调用 publish，界面注册监听器后在主线程收到最新步数，
+ * 不再需要界面开线程定时轮询。
+ * <p>
+ * 两次通知之间的多次 publish 合并成一次，通知的频率不超过屏幕刷新率；步数不变时什么都不做，
+ * 不会唤醒主线程。
+ */
+public final class StepChannel {
+
+	/**
+	 * 步数变化的监听器，在主线程调用
+	 */
+	public interface OnStepChangeListener {
+		void onStepChanged(int steps);
+	}
+
+	private static final long MIN_INTERVAL_MS = 16;// 约 60Hz
+
+	private static final AtomicInteger latest = new AtomicInteger(0);
+	private static final AtomicBoolean pending = new AtomicBoolean(false);
+	private static final CopyOnWriteArrayList<OnStepChangeListener> listeners = new CopyOnWriteArrayList<OnStepChangeListener>();
+	private static final Handler handler = new Handler(Looper.getMainLooper());
+
+	// 上次通知的时间，只在主线程修改
+	private static volatile long lastDispatch = 0;
+	private static int lastDispatched = -1;// 只在主线程访问
+
+	private static final Runnable dispatch = new Runnable() {
+		@Override
+		public void run() {
+			// 先清除标志，通知过程中的 publish 会再安排一次通知
+			pending.set(false);
+			lastDispatch = SystemClock.uptimeMillis();
+
+			int steps = latest.get();
+			if (steps == lastDispatched) {
+				return;
+			}
+			lastDispatched = steps;
+			for (OnStepChangeListener listener : listeners) {
+				listener.onStepChanged(steps);
+			}
+		}
+	};
+
+	private StepChannel() {
+	}
+
+	/**
+	 * 发布新的步数，任何线程都可以调用，不阻塞
+	 *
+	 * @param steps
+	 *            当前步数
+	 */
+	public static void publish(int steps) {
+		if (latest.getAndSet(steps) == steps) {
+			return;
+		}
+		// 只有两次通知之间的第一次 publish 安排通知
+		if (!pending.getAndSet(true)) {
+			long delay = lastDispatch + MIN_INTERVAL_MS
+					- SystemClock.uptimeMillis();
+			handler.postDelayed(dispatch, Math.max(0, delay));
+		}
+	}
+
+	/**
+	 * 最新发布的步数
+	 */
+	public static int get() {
+		return latest.get();
+	}
+
+	/**
+	 * 注册监听器，在主线程调用。注册时马上收到一次当前步数。
+	 *
+	 * @param listener
+	 */
+	public static void register(OnStepChangeListener listener) {
+		listeners.addIfAbsent(listener);
+		listener.onStepChanged(latest.get());
+	}
+
+	/**
+	 * 注销监听器，在主线程调用
+	 *
+	 * @param listener
+	 */
+	public static void unregister(OnStepChangeListener listener) {
+		listeners.remove(listener);
+	}
+}
@@ -0,0 +1,202 @@
+package com.bit.pedometer.service;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 当天的步数。计步的线程、界面和保存数据的服务都通过这个类读写步数，不再直接改 StepDetector
+ * 的静态变量。
+ * <p>
+ * 状态是一个不可变的快照（哪一天、这一天的步数、上一个结束的日子和它的步数），用 CAS 整体替换，
+ * 不加锁。过了零点之后第一个修改步数的线程把前一天结束，步数从 0 开始，前一天的总数留在快照里，
+ * 等保存数据的服务取走，所以零点前后的步数不会丢也不会算到另一天。
+ */
+public final class StepCounter {
+
+	private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * 某一天的步数
+	 */
+	public static final class DayTotal {
+		/** 1970-01-01 以来的天数，按当地时间 */
+		public final int day;
+		public final int steps;
+
+		DayTotal(int day, int steps) {
+			this.day = day;
+			this.steps = steps;
+		}
+
+		/**
+		 * @return 数据库里用的日期，yyyyMMdd
+		 */
+		public String getDate() {
+			return formatDay(day);
+		}
+	}
+
+	private static final class State {
+		final int day;
+		final int steps;
+		final int closedDay;// 没有时为 -1
+		final int closedSteps;
+
+		State(int day, int steps, int closedDay, int closedSteps) {
+			this.day = day;
+			this.steps = steps;
+			this.closedDay = closedDay;
+			this.closedSteps = closedSteps;
+		}
+	}
+
+	private static final AtomicReference<State> state = new AtomicReference<State>(
+			new State(-1, 0, -1, 0));
+
+	private StepCounter() {
+	}
+
+	/**
+	 * 增加步数，任何线程都可以调用，不阻塞
+	 *
+	 * @param steps
+	 *            新走的步数
+	 * @return 当天的总步数
+	 */
+	public static int add(int steps) {
+		int today = today();
+		State current;
+		State next;
+		do {
+			current = state.get();
+			next = current.day == today ? new State(today, current.steps
+					+ steps, current.closedDay, current.closedSteps)
+					: rollover(current, today, steps);
+		} while (!state.compareAndSet(current, next));
+
+		StepChannel.publish(next.steps);
+		return next.steps;
+	}
+
+	/**
+	 * 从数据库恢复当天的步数。进程重新启动后计数从 0 开始，取数据库和内存里较大的一个，
+	 * 所以界面重新创建时不会覆盖服务在这期间计的步数。
+	 *
+	 * @param steps
+	 *            数据库里保存的当天步数
+	 */
+	public static void restore(int steps) {
+		int today = today();
+		State current;
+		State next;
+		do {
+			current = state.get();
+			if (current.day == today) {
+				if (current.steps >= steps) {
+					return;
+				}
+				next = new State(today, steps, current.closedDay,
+						current.closedSteps);
+			} else {
+				next = rollover(current, today, steps);
+			}
+		} while (!state.compareAndSet(current, next));
+
+		StepChannel.publish(next.steps);
+	}
+
+	/**
+	 * @return 当天的步数，过了零点还没有人修改时是 0
+	 */
+	public static int get() {
+		State current = state.get();
+		return current.day == today() ? current.steps : 0;
+	}
+
+	/**
+	 * @return 当天的日期和步数，两者是同一时刻的
+	 */
+	public static DayTotal snapshot() {
+		int today = today();
+		State current = state.get();
+		return new DayTotal(today, current.day == today ? current.steps : 0);
+	}
+
+	/**
+	 * 如果还没过到今天，结束前一天。给零点之后保存前一天数据的服务用。
+	 *
+	 * @return 最近结束的一天和它的总步数，进程启动以来还没有结束过一天时返回 null
+	 */
+	public static DayTotal rollover() {
+		int today = today();
+		State current;
+		State next;
+		do {
+			current = state.get();
+			if (current.day == today) {
+				next = current;
+				break;
+			}
+			next = rollover(current, today, 0);
+		} while (!state.compareAndSet(current, next));
+
+		StepChannel.publish(next.steps);
+		return next.closedDay < 0 ? null : new DayTotal(next.closedDay,
+				next.closedSteps);
+	}
+
+	private static State rollover(State current, int today, int steps) {
+		if (current.day < 0) {
+			return new State(today, steps, current.closedDay,
+					current.closedSteps);
+		}
+		return new State(today, steps, current.day, current.steps);
+	}
+
+	/**
+	 * @return 1970-01-01 以来的天数，按当地时间
+	 */
+	public static int today() {
+		long now = System.currentTimeMillis();
+		return (int) ((now + TimeZone.getDefault().getOffset(now)) / DAY_MS);
+	}
+
+	/**
+	 * @return 1970-01-01 以来的分钟数，按当地时间，除以 24*60 就是 today()
+	 */
+	public static long currentMinute() {
+		long now = System.currentTimeMillis();
+		return (now + TimeZone.getDefault().getOffset(now)) / (60 * 1000L);
+	}
+
+	/**
+	 * @param date
+	 *            yyyyMMdd
+	 * @return 1970-01-01 以来的天数
+	 */
+	public static int parseDay(String date) {
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd", Locale.US);
+		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+		try {
+			return (int) (sdf.parse(date).getTime() / DAY_MS);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Bad date: " + date, e);
+		}
+	}
+
+	/**
+	 * @param day
+	 *            1970-01-01 以来的天数
+	 * @return yyyyMMdd
+	 */
+	public static String formatDay(int day) {
+		// day 是按当地时间算的，用 UTC 格式化那一天的 0 点就是当地的日期
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd", Locale.US);
+		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return sdf.format(new Date(day * DAY_MS));
+	}
+}
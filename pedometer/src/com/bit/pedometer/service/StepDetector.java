@@ -14,13 +14,11 @@ import android.hardware.SensorManager;
  */
 public class StepDetector implements SensorEventListener {
 
-    public static int CURRENT_SETP = 0;
     public static float SENSITIVITY = 10; // SENSITIVITY灵敏度
     private float mLastValues[] = new float[3 * 2];
     private float mScale[] = new float[2];
     private float mYOffset;
-    private static long end = 0;
-    private static long start = 0;
+    private long start = 0;// 上一步的时间
     /**
      * 最后加速度方向
      */
@@ -73,9 +71,9 @@ public class StepDetector implements SensorEventListener {
 
                         if (isAlmostAsLargeAsPrevious && isPreviousLargeEnough
                                 && isNotContra) {
-                            end = System.currentTimeMillis();
+                            long end = System.currentTimeMillis();
                             if (end - start > 500) { // 此时判断为走了一步
-                                CURRENT_SETP++;
+                                StepCounter.add(1);
                                 mLastMatch = extType;
                                 start = end;
                             }
@@ -1,16 +1,17 @@
 package com.bit.pedometer.service;
 
 import android.app.Service;
-import android.content.Context;
 import android.content.Intent;
-import android.hardware.Sensor;
 import android.hardware.SensorManager;
 import android.os.IBinder;
 
+import com.bit.pedometer.data.db.StepWriter;
+
 public class StepService extends Service {
 	public static Boolean flag = false;
 	private SensorManager sensorManager;
-	private StepDetector stepDetector;
+	private StepSource stepSource;
+	private boolean destroyed = false;
 
 	@Override
 	public IBinder onBind(Intent arg0) {
@@ -21,6 +22,7 @@ public class StepService extends Service {
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		StepWriter.getInstance(this).start();
 
 		new Thread(new Runnable() {
 			public void run() {
@@ -30,15 +32,24 @@ public class StepService extends Service {
 
 	}
 
-	private void startStepDetector() {
+	private synchronized void startStepDetector() {
+		if (destroyed) {
+			return;// 线程启动前服务已经停止
+		}
 		flag = true;
-		stepDetector = new StepDetector(this);
 		sensorManager = (SensorManager) this.getSystemService(SENSOR_SERVICE);//获取传感器管理器的实例
-		Sensor sensor = sensorManager
-				.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);//获得传感器的类型，这里获得的类型是加速度传感器
-		//此方法用来注册，只有注册过才会生效，参数：SensorEventListener的实例，Sensor的实例，更新速率
-		sensorManager.registerListener(stepDetector, sensor,
-				SensorManager.SENSOR_DELAY_FASTEST);
+
+		// 优先使用硬件计步传感器，没有或者注册失败时才用加速度传感器和软件算法
+		if (HardwareStepSource.isAvailable(sensorManager)) {
+			stepSource = new HardwareStepSource(sensorManager);
+			if (stepSource.start()) {
+				return;
+			}
+		}
+		stepSource = new SoftwareStepSource(sensorManager);
+		if (!stepSource.start()) {
+			stepSource = null;
+		}
 	}
 
 	@Override
@@ -50,9 +61,13 @@ public class StepService extends Service {
 	public void onDestroy() {
 		super.onDestroy();
 		flag = false;
-		if (stepDetector != null) {
-			sensorManager.unregisterListener(stepDetector);
+		synchronized (this) {
+			destroyed = true;
+			if (stepSource != null) {
+				stepSource.stop();
+				stepSource = null;
+			}
 		}
-
+		StepWriter.getInstance(this).stop();
 	}
 }
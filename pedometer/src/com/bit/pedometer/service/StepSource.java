@@ -0,0 +1,20 @@
+package com.bit.pedometer.service;
+
+/**
+ * 步数来源。StepService 通过这个接口启动和停止计步，不关心步数是由硬件计步传感器
+ * 还是由加速度传感器加软件算法得到的，检测到的步数都累加到 StepCounter。
+ */
+public interface StepSource {
+
+	/**
+	 * 注册传感器开始计步
+	 *
+	 * @return 设备上没有所需的传感器时返回 false
+	 */
+	boolean start();
+
+	/**
+	 * 注销传感器停止计步
+	 */
+	void stop();
+}
@@ -4,7 +4,7 @@ import java.util.Timer;
 import java.util.TimerTask;
 
 import com.bit.pedometer.R;
-import com.bit.pedometer.service.StepDetector;
+import com.bit.pedometer.service.StepCounter;
 import com.bit.pedometer.service.StepService;
 
 import android.app.Activity;
@@ -24,8 +24,8 @@ public class WelcomeActivity extends Activity {
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		this.requestWindowFeature(Window.FEATURE_NO_TITLE);//页面设置为无标题
-		//如果StepServer是启动的话或者CURRENT_SETP不为0，则直接进入到主页面，否则进入欢迎页面
-		if (StepService.flag || StepDetector.CURRENT_SETP > 0) {
+		//如果StepServer是启动的话或者今天的步数不为0，则直接进入到主页面，否则进入欢迎页面
+		if (StepService.flag || StepCounter.get() > 0) {
 			Intent intent = new Intent(WelcomeActivity.this, MainActivity.class);
 			startActivity(intent);
 			this.finish();
@@ -4,8 +4,7 @@ package com.bit.pedometer.ui.fragment;
 import java.util.List;
 
 import com.bit.pedometer.ui.activity.MainActivity;
-import com.bit.pedometer.data.db.PedometerDB;
-import com.bit.pedometer.data.bean.Group;
+import com.bit.pedometer.data.db.PedometerRepository;
 
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
@@ -35,7 +34,6 @@ public class FragmentAdapter implements OnCheckedChangeListener {
 	public FragmentAdapter(FragmentActivity activity,
 			final List<Fragment> fragments, final int fgContentId,
 			RadioGroup rGroup, Context context) {
-		PedometerDB pedometerDB = PedometerDB.getInstance(context);
 		this.activity = activity;
 		this.fragments = fragments;
 		this.rGroup = rGroup;
@@ -46,19 +44,8 @@ public class FragmentAdapter implements OnCheckedChangeListener {
 			fTransaction.add(fgContentId, fragments.get(2));
 			fTransaction.commit();
 		} else {
-			//如果是第一次登陆则自动初始化三个小组，进行PK
-			Group group = new Group();
-			group.setTotal_number(0);
-			group.setMember_number(0);
-			pedometerDB.saveGroup(group);
-
-			group.setTotal_number(0);
-			group.setMember_number(0);
-			pedometerDB.saveGroup(group);
-
-			group.setTotal_number(0);
-			group.setMember_number(0);
-			pedometerDB.saveGroup(group);
+			//如果是第一次登陆则自动初始化三个小组，进行PK，在后台线程里写入
+			PedometerRepository.getInstance(context).createGroups(3);
 
 			//进行对话框提示，需要进行注册
 			AlertDialog.Builder dialog = new AlertDialog.Builder(context);
@@ -1,13 +1,11 @@
 package com.bit.pedometer.ui.fragment;
 
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 
 import com.bit.pedometer.ui.activity.MainActivity;
 import com.bit.pedometer.R;
-import com.bit.pedometer.data.db.PedometerDB;
-import com.bit.pedometer.ui.fragment.tools.DisplayUtil;
-import com.bit.pedometer.data.bean.Step;
+import com.bit.pedometer.data.db.PedometerRepository;
+import com.bit.pedometer.service.StepCounter;
 import com.bit.pedometer.ui.view.HistogramView;
 
 import android.annotation.SuppressLint;
@@ -21,11 +19,11 @@ import android.view.animation.Animation;
 import android.view.animation.Transformation;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import android.widget.Toast;
 
 public class FragmentAnalysis extends Fragment implements OnTouchListener {
 	private HistogramView hv;
 
-	private PedometerDB pedometerDB;
 
 	private String[] weeks;// 设置星期数目
 	private int[] steps;// 设置7天的步数
@@ -34,15 +32,12 @@ public class FragmentAnalysis extends Fragment implements OnTouchListener {
 	private TextView average_step;
 	private TextView sum_step;
 
-	private Step step = null;
-
 	private int average = 0;
 	private int sum = 0;
 	private int average1 = 0;
 	private int sum1 = 0;
 
 	private Calendar calendar;
-	private String day;
 
 	private View view;
 
@@ -61,7 +56,6 @@ public class FragmentAnalysis extends Fragment implements OnTouchListener {
 		init();
 		setWeek();
 		setProgress();
-		view.startAnimation(ani);
 
 	}
 
@@ -79,97 +73,43 @@ public class FragmentAnalysis extends Fragment implements OnTouchListener {
 
 		hv = (HistogramView) view.findViewById(R.id.histograms);
 
-		pedometerDB = PedometerDB.getInstance(getActivity());
-
 		hv.setOnTouchListener(this);
 
 	}
 
-	@SuppressLint("SimpleDateFormat")
 	private void setProgress() {
-		int i = 0;
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-		day = sdf.format(calendar.getTime());
-		// Toast.makeText(getActivity(), day + "", Toast.LENGTH_LONG).show();
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, day);
-		if (step != null) {
-			steps[i++] = step.getNumber();
-			sum += step.getNumber();
-		} else {
-			steps[i++] = 0;
-			sum += 0;
-		}
-
-		calendar.add(Calendar.DAY_OF_MONTH, -1);
-		day = sdf.format(calendar.getTime());
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, day);
-		if (step != null) {
-			steps[i++] = step.getNumber();
-			sum += step.getNumber();
-		} else {
-			steps[i++] = 0;
-			sum += 0;
-		}
-		// Toast.makeText(getActivity(), day+"", Toast.LENGTH_LONG).show();
-
-		calendar.add(Calendar.DAY_OF_MONTH, -1);
-		day = sdf.format(calendar.getTime());
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, day);
-		if (step != null) {
-			steps[i++] = step.getNumber();
-			sum += step.getNumber();
-		} else {
-			steps[i++] = 0;
-			sum += 0;
-		}
-
-		calendar.add(Calendar.DAY_OF_MONTH, -1);
-		day = sdf.format(calendar.getTime());
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, day);
-		if (step != null) {
-			steps[i++] = step.getNumber();
-			sum += step.getNumber();
-		} else {
-			steps[i++] = 0;
-			sum += 0;
-		}
-
-		calendar.add(Calendar.DAY_OF_MONTH, -1);
-		day = sdf.format(calendar.getTime());
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, day);
-		if (step != null) {
-			steps[i++] = step.getNumber();
-			sum += step.getNumber();
-		} else {
-			steps[i++] = 0;
-			sum += 0;
-		}
-
-		calendar.add(Calendar.DAY_OF_MONTH, -1);
-		day = sdf.format(calendar.getTime());
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, day);
-		if (step != null) {
-			steps[i++] = step.getNumber();
-			sum += step.getNumber();
-		} else {
-			steps[i++] = 0;
-			sum += 0;
-		}
+		// 在后台线程里一次查询取出最近 7 天，days[0] 是最早的一天
+		int today = StepCounter.today();
+		PedometerRepository.getInstance(getActivity()).loadStepRange(
+				MainActivity.myObjectId,
+				StepCounter.formatDay(today - steps.length + 1),
+				StepCounter.formatDay(today),
+				new PedometerRepository.Callback<int[]>() {
+
+					@Override
+					public void onResult(int[] days) {
+						if (!isAdded()) {
+							return;// 查询期间界面已经关闭
+						}
+						sum = 0;
+						for (int i = 0; i < steps.length; i++) {
+							steps[i] = days[steps.length - 1 - i];
+							sum += steps[i];
+						}
+						hv.setProgress(steps);
+						view.startAnimation(ani);
+					}
 
-		calendar.add(Calendar.DAY_OF_MONTH, -1);
-		day = sdf.format(calendar.getTime());
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, day);
-		if (step != null) {
-			steps[i++] = step.getNumber();
-			sum += step.getNumber();
-		} else {
-			steps[i++] = 0;
-			sum += 0;
-		}
+					@Override
+					public void onError(Exception e) {
+						if (isAdded()) {
+							Toast.makeText(getActivity(), "读取步数失败",
+									Toast.LENGTH_SHORT).show();
+						}
+					}
+				});
 
 		hv.setWeekd(weeks);
-		hv.setProgress(steps);
-
 	}
 
 	private void setWeek() {
@@ -228,26 +168,16 @@ public class FragmentAnalysis extends Fragment implements OnTouchListener {
 	@SuppressLint("ClickableViewAccessibility")
 	@Override
 	public boolean onTouch(View v, MotionEvent event) {
-		int step = (v.getWidth() - dp2px(30)) / 8;
-		int x = (int) event.getX();
-		for (int i = 0; i < 7; i++) {
-			if (x > (dp2px(15) + step * (i + 1) - dp2px(15))
-					&& x < (dp2px(15) + step * (i + 1) + dp2px(15))) {
-				text[i] = 1;
-				for (int j = 0; j < 7; j++) {
-					if (i != j) {
-						text[j] = 0;
-					}
-				}
-				hv.setText(text);
+		// 柱子的位置由 HistogramView 计算，柱子数目不限于 7 条
+		int column = hv.getColumnAt(event.getX());
+		if (column >= 0 && column < text.length) {
+			for (int j = 0; j < text.length; j++) {
+				text[j] = column == j ? 1 : 0;
 			}
+			hv.setText(text);
 		}
 
 		return false;
 	}
 
-	private int dp2px(int value) {
-		return DisplayUtil.dip2px(getActivity(), value);
-	}
-
 }
@@ -3,16 +3,19 @@ package com.bit.pedometer.ui.fragment;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.Callable;
 
 import com.bit.pedometer.ui.activity.MainActivity;
 import com.bit.pedometer.R;
 import com.bit.pedometer.data.db.PedometerDB;
+import com.bit.pedometer.data.db.PedometerRepository;
 import com.bit.pedometer.data.bean.Step;
 
 import android.annotation.SuppressLint;
 import android.app.DatePickerDialog;
 import android.support.v4.app.Fragment;
 import android.app.DatePickerDialog.OnDateSetListener;
+import android.content.Context;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,6 +27,7 @@ import android.widget.DatePicker;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 public class FragmentHistory extends Fragment implements OnClickListener {
 	private AllAnimation ani;
@@ -44,8 +48,7 @@ public class FragmentHistory extends Fragment implements OnClickListener {
 	private String date;
 	private String date1;
 
-	private PedometerDB pedometerDB;
-	private Step step;
+	private int stepNumber;// 选择的日期所走的步数
 
 	private int count;
 	private int progress;
@@ -82,19 +85,14 @@ public class FragmentHistory extends Fragment implements OnClickListener {
 		year = calendar.get(Calendar.YEAR);
 		month = calendar.get(Calendar.MONTH);
 		day = calendar.get(Calendar.DAY_OF_MONTH);
-		pedometerDB = PedometerDB.getInstance(getActivity());
-
 		sdf = new SimpleDateFormat("yyyyMMdd");
 		date1 = sdf.format(new Date());
 
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, date1);
-		if (step == null) {
-			step = new Step();
-		}
-		view.startAnimation(ani);
 		number.setText(count + "");
 		progressBar.setProgress(progress);
 		ratio.setText(ratio1 + "%");
+		date = date1;
+		queryStep();
 
 	}
 
@@ -104,15 +102,9 @@ public class FragmentHistory extends Fragment implements OnClickListener {
 
 			public void onDateSet(DatePicker arg0, int arg1, int arg2, int arg3) {
 
-				if (arg3 < 10 && arg2 < 10) {
-					date = arg1 + "" + "0" + (arg2 + 1) + "0" + arg3;
-				} else if (arg3 < 10) {
-					date = arg1 + "" + (arg2 + 1) + "0" + arg3;
-				} else if (arg2 < 10) {
-					date = arg1 + "" + "0" + (arg2 + 1) + arg3;
-				} else {
-					date = arg1 + "" + (arg2 + 1) + "" + arg3;
-				}
+				Calendar picked = Calendar.getInstance();
+				picked.set(arg1, arg2, arg3);
+				date = sdf.format(picked.getTime());
 				if (date.equals(date1)) {
 					tView.setText("今天");
 				} else {
@@ -133,8 +125,25 @@ public class FragmentHistory extends Fragment implements OnClickListener {
 	}
 
 	// 这是用来测试数据的，正常使用的话，可以将这个方法删除。
+	// 在数据库线程里写入，不阻塞界面
 	private void insert() {
-		if (pedometerDB.lodListUsers().size() < 2) {
+		final Context context = getActivity().getApplicationContext();
+		final String userId = MainActivity.myObjectId;
+		PedometerRepository.getInstance(context).load(new Callable<Void>() {
+			@Override
+			public Void call() {
+				insert(PedometerDB.getInstance(context), userId);
+				return null;
+			}
+		}, null);
+	}
+
+	@SuppressLint("SimpleDateFormat")
+	private void insert(PedometerDB pedometerDB, String userId) {
+		// 在数据库线程里运行，不用界面的 calendar 和 sdf
+		Calendar calendar = Calendar.getInstance();
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+		if (pedometerDB.countUsers() < 2) {
 			int drawables[] = new int[] { R.drawable.head1, R.drawable.head2,
 					R.drawable.head3, R.drawable.head4, R.drawable.head5,
 					R.drawable.head6, R.drawable.head8, R.drawable.head9,
@@ -144,37 +153,37 @@ public class FragmentHistory extends Fragment implements OnClickListener {
 			Step step = new Step();
 			step.setNumber(9000);
 			step.setDate(sdf.format(calendar.getTime()));
-			step.setUserId(MainActivity.myObjectId);
+			step.setUserId(userId);
 			pedometerDB.saveStep(step);
 
 			calendar.add(Calendar.DAY_OF_MONTH, -1);
 			step.setNumber(8754);
 			step.setDate(sdf.format(calendar.getTime()));
-			step.setUserId(MainActivity.myObjectId);
+			step.setUserId(userId);
 			pedometerDB.saveStep(step);
 
 			calendar.add(Calendar.DAY_OF_MONTH, -1);
 			step.setNumber(4213);
 			step.setDate(sdf.format(calendar.getTime()));
-			step.setUserId(MainActivity.myObjectId);
+			step.setUserId(userId);
 			pedometerDB.saveStep(step);
 
 			calendar.add(Calendar.DAY_OF_MONTH, -1);
 			step.setNumber(1234);
 			step.setDate(sdf.format(calendar.getTime()));
-			step.setUserId(MainActivity.myObjectId);
+			step.setUserId(userId);
 			pedometerDB.saveStep(step);
 
 			calendar.add(Calendar.DAY_OF_MONTH, -1);
 			step.setNumber(4523);
 			step.setDate(sdf.format(calendar.getTime()));
-			step.setUserId(MainActivity.myObjectId);
+			step.setUserId(userId);
 			pedometerDB.saveStep(step);
 
 			calendar.add(Calendar.DAY_OF_MONTH, -1);
 			step.setNumber(1342);
 			step.setDate(sdf.format(calendar.getTime()));
-			step.setUserId(MainActivity.myObjectId);
+			step.setUserId(userId);
 			pedometerDB.saveStep(step);
 
 //			String temp = sdf.format(new Date());
@@ -329,22 +338,34 @@ public class FragmentHistory extends Fragment implements OnClickListener {
 	}
 
 	/**
-	 * 查询选择日期所走的步数
+	 * 在后台线程里查询选择日期所走的步数，查到后播放动画
 	 */
 	private void queryStep() {
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, date);
-		if (step != null) {
-			// count = 0;
-			// Toast.makeText(getActivity(), step.getNumber() + "---"+date,
-			// Toast.LENGTH_SHORT).show();
-			progressBar.setProgress(0);
-			number.setText(count + "");
-			view.startAnimation(ani);
-		} else {
-			progressBar.setProgress(0);
-			number.setText(0 + "");
-			ratio.setText("0%");
-		}
+		final String queried = date;
+		PedometerRepository.getInstance(getActivity()).loadStepRange(
+				MainActivity.myObjectId, queried, queried,
+				new PedometerRepository.Callback<int[]>() {
+
+					@Override
+					public void onResult(int[] steps) {
+						// 界面已经关闭，或者查询期间又选了别的日期
+						if (!isAdded() || !queried.equals(date)) {
+							return;
+						}
+						stepNumber = steps[0];
+						progressBar.setProgress(0);
+						number.setText(0 + "");
+						view.startAnimation(ani);
+					}
+
+					@Override
+					public void onError(Exception e) {
+						if (isAdded()) {
+							Toast.makeText(getActivity(), "读取步数失败",
+									Toast.LENGTH_SHORT).show();
+						}
+					}
+				});
 	}
 
 	private class AllAnimation extends Animation {
@@ -353,15 +374,15 @@ public class FragmentHistory extends Fragment implements OnClickListener {
 				Transformation t) {
 			super.applyTransformation(interpolatedTime, t);
 			if (interpolatedTime < 1.0f) {
-				count = (int) (step.getNumber() * interpolatedTime);
-				progress = (int) ((step.getNumber() / (double) 10000)
+				count = (int) (stepNumber * interpolatedTime);
+				progress = (int) ((stepNumber / (double) 10000)
 						* progressBar.getMax() * interpolatedTime);
-				ratio1 = (int) ((step.getNumber() / (double) 10000) * 100 * interpolatedTime);
+				ratio1 = (int) ((stepNumber / (double) 10000) * 100 * interpolatedTime);
 			} else {
-				count = step.getNumber();
-				progress = (int) ((step.getNumber() / (double) 10000) * progressBar
+				count = stepNumber;
+				progress = (int) ((stepNumber / (double) 10000) * progressBar
 						.getMax());
-				ratio1 = (int) ((step.getNumber() / (double) 10000) * 100);
+				ratio1 = (int) ((stepNumber / (double) 10000) * 100);
 			}
 			view.postInvalidate();
 			progressBar.setProgress(progress);
@@ -10,12 +10,14 @@ import cn.sharesdk.framework.ShareSDK;
 
 import com.bit.pedometer.ui.activity.MainActivity;
 import com.bit.pedometer.R;
-import com.bit.pedometer.data.db.PedometerDB;
+import com.bit.pedometer.data.db.PedometerRepository;
+import com.bit.pedometer.data.db.StepWriter;
 import com.bit.pedometer.ui.fragment.onekeyshare.*;
-import com.bit.pedometer.data.bean.Group;
 import com.bit.pedometer.data.bean.Step;
 import com.bit.pedometer.data.bean.User;
 import com.bit.pedometer.data.bean.Weather;
+import com.bit.pedometer.service.StepChannel;
+import com.bit.pedometer.service.StepCounter;
 import com.bit.pedometer.service.StepDetector;
 import com.bit.pedometer.service.StepService;
 import com.bit.pedometer.ui.view.CircleBar;
@@ -37,51 +39,33 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.Toast;
 
-public class FragmentPedometer extends Fragment implements OnClickListener {
+public class FragmentPedometer extends Fragment implements OnClickListener,
+		StepChannel.OnStepChangeListener {
 	private View view;
 	private CircleBar circleBar;
 	private int total_step = 0;
-	private Thread thread;
 	private int Type = 1;
 	private int calories = 0;
 	private ImageView sharekey;
 	private int step_length = 50;
 	private int weight = 70;
-	private Step step = null;
-	private User user = null;
-	private Group group = null;
 	private Weather weather;
-	private PedometerDB pedometerDB;
+	private PedometerRepository repository;
 	private SimpleDateFormat sdf;
 	private String today;
 	private String test;
 	private boolean flag = true;// 来判断第三个页面是否开启动画
 
+	// 天气查询在网络线程返回，通过 handler 回到主线程刷新。
+	// 请求返回时页面可能已经销毁（onDestroyView 之后 getView() 为 null），这时不再刷新
 	@SuppressLint("HandlerLeak")
 	Handler handler = new Handler() {
 		public void handleMessage(Message msg) {
 			super.handleMessage(msg);
-			total_step = StepDetector.CURRENT_SETP;
-			if (Type == 1) {
-				circleBar.setProgress(total_step, Type);
-			} else if (Type == 2) {
-				calories = (int) (weight * total_step * step_length * 0.01 * 0.01);
-				circleBar.setProgress(calories, Type);
-			} else if (Type == 3) {
-				if (flag) {
-					circleBar.startCustomAnimation();
-					flag = false;
-				}
-				if (test != null || weather.getWeather() == null) {
-					weather.setWeather("正在更新中...");
-					weather.setPtime("");
-					weather.setTemp1("");
-					weather.setTemp2("");
-					circleBar.setWeather(weather);
-				} else {
-					circleBar.setWeather(weather);
-				}
+			if (getView() == null) {
+				return;
 			}
+			refresh();
 		}
 	};
 
@@ -90,36 +74,54 @@ public class FragmentPedometer extends Fragment implements OnClickListener {
 			Bundle savedInstanceState) {
 		this.view = inflater.inflate(R.layout.pedometer, container, false);
 		init();
-		mThread();
+		// 步数变化时才刷新，不再开线程每 500ms 轮询
+		StepChannel.register(this);
 		return view;
 	}
 
 	@Override
-	public void onPause() {
-		super.onPause();
-		saveDate();
+	public void onDestroyView() {
+		super.onDestroyView();
+		StepChannel.unregister(this);
+		handler.removeCallbacksAndMessages(null);
 	}
+
 	@Override
-	public void onDestroy() {
-		// TODO Auto-generated method stub
-		super.onDestroy();
-		saveDate();
+	public void onStepChanged(int steps) {
+		total_step = steps;
+		if (Type != 3) {
+			refresh();
+		}
 	}
-	
 
-	private void saveDate() {
-		user = pedometerDB.loadUser(MainActivity.myObjectId);
-		step = pedometerDB.loadSteps(MainActivity.myObjectId, today);
-		group = pedometerDB.loadGroup(user.getGroupId());
-		user.setToday_step(StepDetector.CURRENT_SETP);
-		pedometerDB.updateUser(user);
-//		Toast.makeText(getActivity(), StepDetector.CURRENT_SETP+"--" + group.getID(),
-//				Toast.LENGTH_LONG).show();
-		group.setTotal_number(group.getTotal_number()
-				+ (user.getToday_step()- step.getNumber()));
-		pedometerDB.updateGroup(group);
-		step.setNumber(StepDetector.CURRENT_SETP);
-		pedometerDB.updateStep(step);
+	private void refresh() {
+		if (Type == 1) {
+			circleBar.setProgress(total_step, Type);
+		} else if (Type == 2) {
+			calories = (int) (weight * total_step * step_length * 0.01 * 0.01);
+			circleBar.setProgress(calories, Type);
+		} else if (Type == 3) {
+			if (flag) {
+				circleBar.startCustomAnimation();
+				flag = false;
+			}
+			if (test != null || weather.getWeather() == null) {
+				weather.setWeather("正在更新中...");
+				weather.setPtime("");
+				weather.setTemp1("");
+				weather.setTemp2("");
+				circleBar.setWeather(weather);
+			} else {
+				circleBar.setWeather(weather);
+			}
+		}
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+		// 在后台线程里写入，不阻塞界面
+		StepWriter.getInstance(getActivity()).flush();
 	}
 
 	@SuppressLint("SimpleDateFormat")
@@ -137,15 +139,11 @@ public class FragmentPedometer extends Fragment implements OnClickListener {
 		sdf = new SimpleDateFormat("yyyyMMdd");
 		today = sdf.format(new Date());
 		
-		pedometerDB = PedometerDB.getInstance(getActivity());
-		user = pedometerDB.loadUser(MainActivity.myObjectId);
+		repository = PedometerRepository.getInstance(getActivity());
 //		Toast.makeText(getActivity(), MainActivity.myObjectId+"--" ,
 //				Toast.LENGTH_LONG).show();
 		if (MainActivity.myObjectId != null) {
-			step_length = user.getStep_length();
-			weight = user.getWeight();
-			StepDetector.SENSITIVITY = user.getSensitivity();
-			StepDetector.CURRENT_SETP = user.getToday_step();
+			loadUser(MainActivity.myObjectId);
 		} else {
 			Toast.makeText(getActivity(), "this is my", Toast.LENGTH_SHORT)
 					.show();
@@ -157,7 +155,7 @@ public class FragmentPedometer extends Fragment implements OnClickListener {
 		weather = new Weather();
 		circleBar = (CircleBar) view.findViewById(R.id.progress_pedometer);
 		circleBar.setMax(10000);
-		circleBar.setProgress(StepDetector.CURRENT_SETP, 1);
+		circleBar.setProgress(StepCounter.get(), 1);
 		circleBar.startCustomAnimation();
 		circleBar.setOnClickListener(this);
 
@@ -166,25 +164,55 @@ public class FragmentPedometer extends Fragment implements OnClickListener {
 
 	}
 
-	private void mThread() {
-		if (thread == null) {
+	/**
+	 * 在后台线程里读出用户的设置和今天已经保存的步数。设置读出来之前按默认的步长和体重计算
+	 */
+	private void loadUser(String objectId) {
+		repository.loadUserInfo(objectId,
+				new PedometerRepository.Callback<User>() {
 
-			thread = new Thread(new Runnable() {
-				public void run() {
-					while (true) {
-						try {
-							Thread.sleep(500);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
+					@Override
+					public void onResult(User user) {
+						if (user == null) {
+							return;
 						}
-						if (StepService.flag) {
-							Message msg = new Message();
-							handler.sendMessage(msg);
+						// 灵敏度给计步用，界面关闭了也要设置
+						StepDetector.SENSITIVITY = user.getSensitivity();
+						step_length = user.getStep_length();
+						weight = user.getWeight();
+						if (getView() != null) {
+							refresh();
 						}
 					}
-				}
-			});
-			thread.start();
+
+					@Override
+					public void onError(Exception e) {
+						showLoadError();
+					}
+				});
+		// user 表里的 today_step 可能还是昨天的，从今天的记录恢复
+		repository.loadSteps(objectId, today,
+				new PedometerRepository.Callback<Step>() {
+
+					@Override
+					public void onResult(Step step) {
+						if (step != null) {
+							// 恢复后 StepChannel 会通知界面刷新
+							StepCounter.restore(step.getNumber());
+						}
+					}
+
+					@Override
+					public void onError(Exception e) {
+						showLoadError();
+					}
+				});
+	}
+
+	private void showLoadError() {
+		if (isAdded()) {
+			Toast.makeText(getActivity(), "读取数据失败", Toast.LENGTH_SHORT)
+					.show();
 		}
 	}
 
@@ -208,11 +236,17 @@ public class FragmentPedometer extends Fragment implements OnClickListener {
 				} catch (JSONException e) {
 					e.printStackTrace();
 				}
+				if (isAdded()) {
+					handler.sendEmptyMessage(0);
+				}
 			}
 
 			@Override
 			public void onError(Exception e) {
 				test = "同步失败";
+				if (isAdded()) {
+					handler.sendEmptyMessage(0);
+				}
 			}
 		});
 	}
@@ -243,8 +277,7 @@ public class FragmentPedometer extends Fragment implements OnClickListener {
 			} else if (Type == 3) {
 				Type = 1;
 			}
-			Message msg = new Message();
-			handler.sendMessage(msg);
+			refresh();
 			break;
 		default:
 			break;
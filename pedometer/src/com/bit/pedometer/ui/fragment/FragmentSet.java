@@ -7,10 +7,10 @@ import java.util.Date;
 import com.bit.pedometer.ui.activity.MainActivity;
 import com.bit.pedometer.R;
 import com.bit.pedometer.ui.activity.SetToTakePicActivity;
-import com.bit.pedometer.data.db.PedometerDB;
+import com.bit.pedometer.data.db.PedometerRepository;
+import com.bit.pedometer.ui.fragment.tools.AvatarCache;
 import com.bit.pedometer.ui.fragment.tools.PictureUtil;
 import com.bit.pedometer.ui.fragment.tools.ToRoundBitmap;
-import com.bit.pedometer.data.bean.Group;
 import com.bit.pedometer.data.bean.Step;
 import com.bit.pedometer.data.bean.User;
 
@@ -68,9 +68,9 @@ public class FragmentSet extends Fragment implements OnClickListener {
     private AlertDialog.Builder dialog;
     private NumberPicker numberPicker;
 
-    private PedometerDB pedometerDB;
+    private PedometerRepository repository;
+    // 在后台读出来之前是 null，这时不能修改也不用保存
     private User user = null;
-    private Group group = null;
     private ToRoundBitmap toRoundBitmap;
 
     // private Intent pictureIntent;
@@ -87,14 +87,23 @@ public class FragmentSet extends Fragment implements OnClickListener {
     @Override
     public void onPause() {
         super.onPause();
-        pedometerDB.updateUser(user);
+        saveUser();
 
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        pedometerDB.updateUser(user);
+        saveUser();
+    }
+
+    /**
+     * 在后台线程里保存设置
+     */
+    private void saveUser() {
+        if (user != null) {
+            repository.updateUser(user);
+        }
     }
 
     @SuppressLint("SimpleDateFormat")
@@ -115,7 +124,7 @@ public class FragmentSet extends Fragment implements OnClickListener {
         rButton1 = (RadioButton) view.findViewById(R.id.male);
         rButton2 = (RadioButton) view.findViewById(R.id.female);
 
-        pedometerDB = PedometerDB.getInstance(getActivity());
+        repository = PedometerRepository.getInstance(getActivity());
 
         weightLayout.setOnClickListener(this);
         sensitivyLayout.setOnClickListener(this);
@@ -126,21 +135,23 @@ public class FragmentSet extends Fragment implements OnClickListener {
         pictureImage.setOnClickListener(this);
 
         if (MainActivity.myObjectId != null) {
-            user = pedometerDB.loadUser(MainActivity.myObjectId);
-            nameText.setText(user.getName());
-            setSensitivity(user.getSensitivity());
-            weightText.setText(String.valueOf(user.getWeight()));
-
-            Bitmap picture = PictureUtil.Byte2Bitmap(user.getPicture());
-            pictureImage.setImageBitmap(toRoundBitmap.toRoundBitmap(picture));
-
-            lengthText.setText(String.valueOf(user.getStep_length()));
+            // 在后台读出自己的设置，读完后显示
+            repository.loadUser(MainActivity.myObjectId, new PedometerRepository.Callback<User>() {
+                @Override
+                public void onResult(User result) {
+                    if (!isAdded() || result == null) {
+                        return;
+                    }
+                    showUser(result);
+                }
 
-            if (user.getSex().equals("男")) {
-                rButton1.setChecked(true);
-            } else {
-                rButton2.setChecked(true);
-            }
+                @Override
+                public void onError(Exception e) {
+                    if (isAdded()) {
+                        Toast.makeText(getActivity(), "读取设置失败", Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
         } else {
             pictureImage.setImageBitmap(toRoundBitmap
                     .toRoundBitmap(BitmapFactory.decodeResource(getActivity()
@@ -156,12 +167,8 @@ public class FragmentSet extends Fragment implements OnClickListener {
             user.setStep_length(Integer
                     .valueOf(lengthText.getText().toString()));
             user.setGroupId(1);
-            group = pedometerDB.loadGroup(1);
-            group.setMember_number(1);
-            pedometerDB.updateGroup(group);
             user.setObjectId("1");
             MainActivity.myObjectId = user.getObjectId();
-            pedometerDB.saveUser(user);
             // 将当前日期格式化为：yyyyMMdd
             SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
             Step step = new Step();
@@ -169,21 +176,42 @@ public class FragmentSet extends Fragment implements OnClickListener {
             step.setDate(sdf.format(new Date()));
             step.setUserId(MainActivity.myObjectId);
             step.setNumber(0);
-            pedometerDB.saveStep(step);
+            // 在后台线程里保存用户和今天的记录，第 1 组加一个人
+            repository.saveNewUser(user, step, null);
 
         }
 
     }
 
+    private void showUser(User loaded) {
+        user = loaded;
+        nameText.setText(user.getName());
+        setSensitivity(user.getSensitivity());
+        weightText.setText(String.valueOf(user.getWeight()));
+
+        pictureImage.setImageBitmap(AvatarCache.getInstance(getActivity()).get(user));
+
+        lengthText.setText(String.valueOf(user.getStep_length()));
+
+        if (user.getSex().equals("男")) {
+            rButton1.setChecked(true);
+        } else {
+            rButton2.setChecked(true);
+        }
+    }
+
     @Override
     public void onClick(View arg0) {
+        if (user == null) {
+            return;// 设置还没有读出来
+        }
         switch (arg0.getId()) {
             case R.id.picture:
                 Intent intent = new Intent(getActivity(),
                         SetToTakePicActivity.class);
                 startActivityForResult(intent, REQUEST_CODE_TO_TACK_PICTURE);
 
-                pedometerDB.updateUser(user);
+                repository.updateUser(user);
                 break;
             case R.id.set_name:
                 dialog = new AlertDialog.Builder(getActivity());
@@ -199,7 +227,7 @@ public class FragmentSet extends Fragment implements OnClickListener {
                             public void onClick(DialogInterface arg0, int arg1) {
                                 nameText.setText(editText.getText().toString());
                                 user.setName(editText.getText().toString());
-                                pedometerDB.updateUser(user);
+                                repository.updateUser(user);
                             }
                         });
                 dialog.show();
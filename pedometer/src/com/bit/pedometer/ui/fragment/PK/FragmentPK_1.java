@@ -1,31 +1,29 @@
 package com.bit.pedometer.ui.fragment.PK;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.bit.pedometer.ui.activity.MainActivity;
 import com.bit.pedometer.R;
-import com.bit.pedometer.data.db.PedometerDB;
+import com.bit.pedometer.data.db.PedometerRepository;
+import com.bit.pedometer.ui.fragment.tools.AvatarCache;
 import com.bit.pedometer.ui.fragment.tools.MyListAdapter;
-import com.bit.pedometer.ui.fragment.tools.PictureUtil;
 import com.bit.pedometer.ui.fragment.tools.ReFlashListView;
-import com.bit.pedometer.ui.fragment.tools.ToRoundBitmap;
 import com.bit.pedometer.ui.fragment.tools.ReFlashListView.IReflashListener;
-import com.bit.pedometer.data.bean.Group;
 import com.bit.pedometer.data.bean.User;
 
 import android.support.v4.app.Fragment;
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
-import android.graphics.Bitmap;
 import android.os.Bundle;
-import android.os.Handler;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.widget.AdapterView.OnItemClickListener;
 
 public class FragmentPK_1 extends Fragment implements OnItemClickListener,
@@ -34,9 +32,9 @@ public class FragmentPK_1 extends Fragment implements OnItemClickListener,
 	private View view;
 	private ReFlashListView listView;
 	private MyListAdapter mAdapter;
-	private PedometerDB pedometerDB;
+	private PedometerRepository repository;
 	private List<User> users;
-	private ToRoundBitmap toRoundBitmap;
+	private AvatarCache avatarCache;
 
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -50,16 +48,52 @@ public class FragmentPK_1 extends Fragment implements OnItemClickListener,
 	@Override
 	public void onResume() {
 		super.onResume();
-		users = pedometerDB.lodListUsers();
-		showList();
+		loadUsers(false);
+	}
+
+	/**
+	 * 在后台线程里读取所有用户，读完后刷新列表
+	 *
+	 * @param reflash
+	 *            是否是下拉刷新，是的话读完后结束刷新
+	 */
+	private void loadUsers(final boolean reflash) {
+		repository.loadUsers(new PedometerRepository.Callback<List<User>>() {
+
+			@Override
+			public void onResult(List<User> result) {
+				if (!isAdded()) {
+					return;// 查询期间界面已经关闭
+				}
+				users = result;
+				showList();
+				if (reflash) {
+					listView.reflashComplete();
+				}
+			}
+
+			@Override
+			public void onError(Exception e) {
+				if (!isAdded()) {
+					return;
+				}
+				// 读取失败也要结束下拉刷新，列表保留上次的数据
+				if (reflash) {
+					listView.reflashComplete();
+				}
+				Toast.makeText(getActivity(), "读取成员失败", Toast.LENGTH_SHORT)
+						.show();
+			}
+		});
 	}
 
 	@SuppressLint("SimpleDateFormat")
 	private void init() {
-		toRoundBitmap = ToRoundBitmap.getInstance(getActivity());
+		avatarCache = AvatarCache.getInstance(getActivity());
 		listView = (ReFlashListView) view.findViewById(R.id.pk_1_listview);
-		pedometerDB = PedometerDB.getInstance(getActivity());
-		users = pedometerDB.lodListUsers();
+		repository = PedometerRepository.getInstance(getActivity());
+		// 列表先显示为空，onResume 里在后台读取
+		users = new ArrayList<User>();
 		// Toast.makeText(getActivity(), users.get(0).getSex() + "",
 		// Toast.LENGTH_LONG).show();
 		// listView.setOnScrollListener(this);
@@ -92,9 +126,7 @@ public class FragmentPK_1 extends Fragment implements OnItemClickListener,
 		ImageView picture = (ImageView) view.findViewById(R.id.user_picture);
 
 		sex.setText(users.get(pos).getSex());
-		Bitmap bitmap = toRoundBitmap.toRoundBitmap(PictureUtil
-				.Byte2Bitmap(users.get(pos).getPicture()));
-		picture.setImageBitmap(bitmap);
+		picture.setImageBitmap(avatarCache.get(users.get(pos)));
 
 		steps.setText(users.get(pos).getToday_step() + "");
 		number.setText((position) + "");
@@ -108,13 +140,27 @@ public class FragmentPK_1 extends Fragment implements OnItemClickListener,
 			dialog.setNegativeButton("删除",
 					new DialogInterface.OnClickListener() {
 						public void onClick(DialogInterface arg0, int arg1) {
-							pedometerDB.deleteUser(users.get(pos));
-							Group group = pedometerDB.loadGroup(users.get(pos)
-									.getGroupId());
-							group.setMember_number(group.getMember_number() - 1);
-							group.setTotal_number(group.getTotal_number()
-									- users.get(pos).getToday_step());
-							pedometerDB.updateGroup(group);
+							// 在后台线程里删除并修改组，删完后重新读取列表
+							repository.deleteUser(users.get(pos),
+									new PedometerRepository.Callback<Void>() {
+
+										@Override
+										public void onResult(Void result) {
+											if (isAdded()) {
+												loadUsers(false);
+											}
+										}
+
+										@Override
+										public void onError(Exception e) {
+											if (isAdded()) {
+												Toast.makeText(getActivity(),
+														"删除失败",
+														Toast.LENGTH_SHORT)
+														.show();
+											}
+										}
+									});
 						}
 					});
 			dialog.setPositiveButton("确认", null);
@@ -125,19 +171,8 @@ public class FragmentPK_1 extends Fragment implements OnItemClickListener,
 
 	@Override
 	public void onReflash() {
-		Handler handler = new Handler();
-		handler.postDelayed(new Runnable() {
-			@Override
-			public void run() {
-				// TODO Auto-generated method stub
-				// 获取最新数据
-				users = pedometerDB.lodListUsers();
-				// 通知界面显示
-				showList();
-				// 通知listview 刷新数据完毕；
-				listView.reflashComplete();
-			}
-		}, 2000);
+		// 获取最新数据，读完后通知界面显示并结束刷新
+		loadUsers(true);
 	}
 
 }
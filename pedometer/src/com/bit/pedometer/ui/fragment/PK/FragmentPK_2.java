@@ -12,9 +12,10 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ExpandableListView;
 import android.widget.ExpandableListView.OnChildClickListener;
+import android.widget.Toast;
 
 import com.bit.pedometer.R;
-import com.bit.pedometer.data.db.PedometerDB;
+import com.bit.pedometer.data.db.PedometerRepository;
 import com.bit.pedometer.ui.fragment.tools.ExpandableListViewAdapter;
 import com.bit.pedometer.data.bean.Group;
 import com.bit.pedometer.data.bean.User;
@@ -26,14 +27,12 @@ public class FragmentPK_2 extends Fragment implements OnChildClickListener {
 	private ExpandableListViewAdapter eAdapter;
 	private List<Group> list;
 	private HashMap<Group, List<User>> userMap;
-	private List<User> userList;
-	private PedometerDB pedometerDB;
+	private PedometerRepository repository;
 
 	public View onCreateView(LayoutInflater inflater, ViewGroup container,
 			Bundle savedInstanceState) {
 		view = inflater.inflate(R.layout.pk_2, container, false);
 		init();
-		prepareData();
 		showData();
 		return view;
 	}
@@ -42,7 +41,6 @@ public class FragmentPK_2 extends Fragment implements OnChildClickListener {
 	public void onResume() {
 		super.onResume();
 		prepareData();
-		showData();
 	}
 	@Override
 	public void onPause() {
@@ -63,15 +61,47 @@ public class FragmentPK_2 extends Fragment implements OnChildClickListener {
 	private void init() {
 		listView = (ExpandableListView) view.findViewById(R.id.pk_2_listview);
 		userMap = new HashMap<Group, List<User>>();
-		pedometerDB = PedometerDB.getInstance(getActivity());
+		repository = PedometerRepository.getInstance(getActivity());
 		list = new ArrayList<Group>();
-		userList = new ArrayList<User>();
 		listView.setOnChildClickListener(this);
 	}
 
+	/**
+	 * 在后台线程里先读出所有的组，再读出所有成员，都读完后按组分好并刷新列表
+	 */
 	private void prepareData() {
-		list = pedometerDB.loadListGroup();
-		userList = pedometerDB.lodListUsers();
+		repository.loadGroups(new PedometerRepository.Callback<List<Group>>() {
+
+			@Override
+			public void onResult(final List<Group> groups) {
+				repository.loadUsers(new PedometerRepository.Callback<List<User>>() {
+
+					@Override
+					public void onResult(List<User> users) {
+						if (!isAdded()) {
+							return;// 查询期间界面已经关闭
+						}
+						groupUsers(groups, users);
+						showData();
+					}
+
+					@Override
+					public void onError(Exception e) {
+						showError();
+					}
+				});
+			}
+
+			@Override
+			public void onError(Exception e) {
+				showError();
+			}
+		});
+	}
+
+	private void groupUsers(List<Group> groups, List<User> userList) {
+		list = groups;
+		userMap = new HashMap<Group, List<User>>();
 		for (int i = 0; i < list.size(); i++) {
 			List<User> mUser = new ArrayList<User>();
 			for (int j = 0; j < userList.size(); j++) {
@@ -81,7 +111,13 @@ public class FragmentPK_2 extends Fragment implements OnChildClickListener {
 				}
 			}
 		}
+	}
 
+	private void showError() {
+		if (isAdded()) {
+			Toast.makeText(getActivity(), "读取分组失败", Toast.LENGTH_SHORT)
+					.show();
+		}
 	}
 
 	@Override
@@ -6,11 +6,10 @@ import cn.bmob.v3.Bmob;
 
 import com.bit.pedometer.ui.activity.MainActivity;
 import com.bit.pedometer.R;
-import com.bit.pedometer.data.db.PedometerDB;
+import com.bit.pedometer.data.db.PedometerRepository;
 import com.bit.pedometer.ui.fragment.tools.MyAdapter;
 import com.bit.pedometer.ui.fragment.tools.ReFlashListView;
 import com.bit.pedometer.ui.fragment.tools.ReFlashListView.IReflashListener;
-import com.bit.pedometer.data.bean.Step;
 import com.bit.pedometer.data.bean.User;
 import com.bit.pedometer.common.utils.BmobUtil;
 import com.bit.pedometer.common.utils.BmobUtil.BmobQueryListener;
@@ -31,8 +30,7 @@ public class FragmentPK_addmember extends FragmentActivity implements
 	private ReFlashListView memberList;
 	private MyAdapter myAdapter;
 	private User user;
-	private List<Step> steps;
-	private PedometerDB pedometerdb;
+	private PedometerRepository repository;
 	private ProgressDialog progressDialog;
 	private boolean flag = false;
 
@@ -50,11 +48,29 @@ public class FragmentPK_addmember extends FragmentActivity implements
 		Bmob.initialize(this, "c153449e638703134b8fe75c52210bc7");
 		back = (ImageView) findViewById(R.id.member_add_back);
 		memberList = (ReFlashListView) findViewById(R.id.member_add_list);
-		pedometerdb = PedometerDB.getInstance(this);
-		user = pedometerdb.loadFirstUser();
-		steps = pedometerdb.loadListSteps();
+		repository = PedometerRepository.getInstance(this);
 		showProgressDialog();
+		// 在后台读出自己的信息，读完后再上传到服务器
+		repository.loadFirstUser(new PedometerRepository.Callback<User>() {
 
+			@Override
+			public void onResult(User result) {
+				user = result;
+				saveToServer();
+			}
+
+			@Override
+			public void onError(Exception e) {
+				Toast.makeText(FragmentPK_addmember.this, "读取自己的信息失败",
+						Toast.LENGTH_SHORT).show();
+			}
+		});
+		back.setOnClickListener(this);
+		memberList.setInterface(this);
+
+	}
+
+	private void saveToServer() {
 		BmobUtil.saveBmob(user, new BmobSaveAndUpdataListener() {
 			@Override
 			public void onFinishedupdata(User user) {
@@ -67,13 +83,9 @@ public class FragmentPK_addmember extends FragmentActivity implements
 
 				Toast.makeText(FragmentPK_addmember.this, "成功连接服务器",
 						Toast.LENGTH_SHORT).show();
-				pedometerdb.changeObjectId(user);
 				MainActivity.myObjectId = user.getObjectId();
-				for (int i = 0; i < steps.size(); i++) {
-					Step step = steps.get(i);
-					step.setUserId(user.getObjectId());
-					pedometerdb.changeuserId(step);
-				}
+				// 用户和所有的步数记录在一个事务里改到新的 objectId 名下，之后的查询排在它后面
+				repository.changeObjectId(user, null);
 
 			}
 
@@ -84,9 +96,6 @@ public class FragmentPK_addmember extends FragmentActivity implements
 
 			}
 		}, this);
-		back.setOnClickListener(this);
-		memberList.setInterface(this);
-
 	}
 
 	private void queryAll() {
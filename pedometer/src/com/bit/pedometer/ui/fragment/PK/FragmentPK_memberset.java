@@ -1,11 +1,9 @@
 package com.bit.pedometer.ui.fragment.PK;
 
 import com.bit.pedometer.R;
-import com.bit.pedometer.data.db.PedometerDB;
+import com.bit.pedometer.data.db.PedometerRepository;
+import com.bit.pedometer.ui.fragment.tools.AvatarCache;
 import com.bit.pedometer.ui.fragment.tools.MyNumberPicker;
-import com.bit.pedometer.ui.fragment.tools.PictureUtil;
-import com.bit.pedometer.ui.fragment.tools.ToRoundBitmap;
-import com.bit.pedometer.data.bean.Group;
 import com.bit.pedometer.data.bean.User;
 
 import android.graphics.Bitmap;
@@ -30,10 +28,7 @@ public class FragmentPK_memberset extends FragmentActivity implements
 	private MyNumberPicker nPicker;
 	private Button btn1;//OK按钮，确定
 	private Button btn2;//NO按钮，取消当前操作
-	private Group group;
-	private PedometerDB pedometerDB;
 	private int groNum;
-	private ToRoundBitmap toRoundBitmap;
 
 	@Override
 	protected void onCreate(Bundle bundle) {
@@ -45,7 +40,6 @@ public class FragmentPK_memberset extends FragmentActivity implements
 	}
 
 	private void init() {
-		toRoundBitmap = ToRoundBitmap.getInstance(this);
 		picture = (ImageView) findViewById(R.id.member_picture);
 		name = (TextView) findViewById(R.id.member_name);
 		sexImage = (ImageView) findViewById(R.id.member_sexpic);
@@ -56,8 +50,7 @@ public class FragmentPK_memberset extends FragmentActivity implements
 		btn2 = (Button) findViewById(R.id.member_button2);
 
 		user = (User) getIntent().getSerializableExtra("user_data");
-		Bitmap bitmap = toRoundBitmap.toRoundBitmap(PictureUtil
-				.Byte2Bitmap(user.getPicture()));
+		Bitmap bitmap = AvatarCache.getInstance(this).get(user);
 		picture.setImageBitmap(bitmap);
 //		if (user.getPicture() != null) {
 //			
@@ -101,25 +94,12 @@ public class FragmentPK_memberset extends FragmentActivity implements
 	public void onClick(View arg0) {
 		switch (arg0.getId()) {
 		case R.id.member_button1:
-			pedometerDB = PedometerDB.getInstance(this);//实例化数据库操作类
-			group = pedometerDB.loadGroup(user.getGroupId());//取出当前成员所在的组，方便随后的修改
 			groNum = nPicker.getValue();//选择移动的组数
-			//如果移动组数则执行下列的语句
+			//如果移动组数，在后台线程里修改两个组和成员。返回后分组页面的查询排在这次写入之后，
+			//所以不用等写完再关闭
 			if (groNum != user.getGroupId()) {
-				
-				group.setMember_number(group.getMember_number() - 1);
-				group.setTotal_number(group.getTotal_number()
-						- user.getToday_step());
-				pedometerDB.updateGroup(group);
-				
-				Group group1 = pedometerDB.loadGroup(groNum);
-				group1.setMember_number(group1.getMember_number() + 1);
-				group1.setTotal_number(group1.getTotal_number()
-						+ user.getToday_step());
-				pedometerDB.updateGroup(group1);
-				
-				user.setGroupId(groNum);
-				pedometerDB.updateUser(user);
+				PedometerRepository.getInstance(this).moveUser(user, groNum,
+						null);
 			}
 			this.finish();
 
@@ -0,0 +1,85 @@
+package com.bit.pedometer.ui.fragment.tools;
+
+import java.util.Arrays;
+
+import com.bit.pedometer.data.bean.User;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * 按用户的 objectId 缓存已经裁成圆形的头像，列表滚动和重复打开页面时不用再解码和裁剪。
+ * 缓存按图片占用的内存计算大小，最多用应用可用内存的 1/8。
+ * <p>
+ * 每个头像记住它是从哪些字节解码的，用户的头像改了（updateUser 之后读出的字节不同）
+ * 下次取的时候会重新解码，不会显示旧的头像。只在主线程使用。
+ */
+public class AvatarCache {
+
+	private static AvatarCache avatarCache;
+
+	private final ToRoundBitmap toRoundBitmap;
+	private final LruCache<String, Avatar> cache;
+
+	private static class Avatar {
+		final byte[] source;
+		final Bitmap bitmap;
+
+		Avatar(byte[] source, Bitmap bitmap) {
+			this.source = source;
+			this.bitmap = bitmap;
+		}
+	}
+
+	private AvatarCache(Context context) {
+		toRoundBitmap = ToRoundBitmap.getInstance(context);
+		int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+		cache = new LruCache<String, Avatar>(maxKb) {
+			@Override
+			protected int sizeOf(String key, Avatar avatar) {
+				return avatar.bitmap.getRowBytes() * avatar.bitmap.getHeight()
+						/ 1024 + 1;
+			}
+		};
+	}
+
+	public static AvatarCache getInstance(Context context) {
+		if (avatarCache == null) {
+			avatarCache = new AvatarCache(context.getApplicationContext());
+		}
+		return avatarCache;
+	}
+
+	/**
+	 * 取出用户的圆形头像
+	 *
+	 * @return 用户没有头像或者头像无法解码时返回 null
+	 */
+	public Bitmap get(User user) {
+		byte[] picture = user.getPicture();
+		if (picture == null) {
+			return null;
+		}
+		String key = user.getObjectId();
+		if (key != null) {
+			Avatar avatar = cache.get(key);
+			// 字节比较比解码便宜得多，从网络或 Intent 得到的用户每次都是新的数组
+			if (avatar != null
+					&& (avatar.source == picture || Arrays.equals(
+							avatar.source, picture))) {
+				return avatar.bitmap;
+			}
+		}
+
+		Bitmap decoded = PictureUtil.Byte2Bitmap(picture);
+		if (decoded == null) {
+			return null;
+		}
+		Bitmap bitmap = toRoundBitmap.toRoundBitmap(decoded);
+		if (key != null) {
+			cache.put(key, new Avatar(picture, bitmap));
+		}
+		return bitmap;
+	}
+}
@@ -25,7 +25,7 @@ public class ExpandableListViewAdapter extends BaseExpandableListAdapter {
 	private HashMap<Group, List<User>> user;
 	private ExpandableListView accordion;
 	private int last;
-	private ToRoundBitmap toRoundBitmap;
+	private AvatarCache avatarCache;
 
 	// private int[] drawables = new int[] { R.drawable.head1, R.drawable.head2,
 	// R.drawable.head3, R.drawable.head4, R.drawable.head5,
@@ -38,7 +38,7 @@ public class ExpandableListViewAdapter extends BaseExpandableListAdapter {
 		this.group = group;
 		this.user = user;
 		this.accordion = accordion;
-		toRoundBitmap = ToRoundBitmap.getInstance(context);
+		avatarCache = AvatarCache.getInstance(context);
 
 	}
 	public void changeExpandableList(List<Group> group,
@@ -86,14 +86,14 @@ public class ExpandableListViewAdapter extends BaseExpandableListAdapter {
 					.findViewById(R.id.group_memeber_number);
 			viewHolder.imageView = (ImageView) view
 					.findViewById(R.id.group_member_pic);
-			viewHolder.bitmap = toRoundBitmap.toRoundBitmap(PictureUtil
-					.Byte2Bitmap(childUser.getPicture()));
 			view.setTag(viewHolder);
 			
 		}else {
 			view = convertView;
 			viewHolder = (ViewChildHolder) view.getTag();
 		}
+		// 复用的 view 也要换成这一行的头像
+		viewHolder.bitmap = avatarCache.get(childUser);
 		viewHolder.nameTextView.setText(childUser.getName());
 		viewHolder.stepsTextView.setText(childUser.getToday_step() + "");
 		viewHolder.imageView.setImageBitmap(viewHolder.bitmap);
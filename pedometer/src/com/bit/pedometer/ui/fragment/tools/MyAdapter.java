@@ -1,10 +1,10 @@
 package com.bit.pedometer.ui.fragment.tools;
 
 import java.util.List;
+import java.util.Set;
 
 import com.bit.pedometer.R;
-import com.bit.pedometer.data.db.PedometerDB;
-import com.bit.pedometer.data.bean.Group;
+import com.bit.pedometer.data.db.PedometerRepository;
 import com.bit.pedometer.data.bean.User;
 
 import android.content.Context;
@@ -23,11 +23,13 @@ public class MyAdapter extends BaseAdapter {
 	private List<User> user_list;
 	private LayoutInflater inflater;
 	private Context context;
-	private PedometerDB pedometerDB;
+	private PedometerRepository repository;
+	// 已经加到本地的用户，读出来之前是 null
+	private Set<String> addedIds;
 	private User user;
 	private int position;
 	private ReFlashListView reFlashListView;
-	private ToRoundBitmap toRoundBitmap;
+	private AvatarCache avatarCache;
 
 	public MyAdapter(Context context, List<User> user_list,
 			ReFlashListView reFlashListView) {
@@ -36,7 +38,23 @@ public class MyAdapter extends BaseAdapter {
 		this.inflater = LayoutInflater.from(context);
 		this.context = context;
 		this.reFlashListView = reFlashListView;
-		toRoundBitmap = ToRoundBitmap.getInstance(context);
+		avatarCache = AvatarCache.getInstance(context);
+		repository = PedometerRepository.getInstance(context);
+		// 每一行要知道这个用户是否已经加过，在后台一次读出所有 objectId，不在 getView 里逐个查询
+		repository.loadUserIds(new PedometerRepository.Callback<Set<String>>() {
+
+			@Override
+			public void onResult(Set<String> result) {
+				addedIds = result;
+				notifyDataSetChanged();
+			}
+
+			@Override
+			public void onError(Exception e) {
+				Toast.makeText(MyAdapter.this.context, "读取成员失败",
+						Toast.LENGTH_SHORT).show();
+			}
+		});
 	}
 
 	public void onDateChange(List<User> user_list) {
@@ -88,24 +106,23 @@ public class MyAdapter extends BaseAdapter {
 			viewHolder.add = (TextView) view.findViewById(R.id.already_add);
 			viewHolder.btn = (Button) view
 					.findViewById(R.id.member_add_list_button);
-			viewHolder.bitmap = toRoundBitmap.toRoundBitmap(PictureUtil
-					.Byte2Bitmap(user.getPicture()));
-			;
 			view.setTag(viewHolder);
 		} else {
 			view = convertView;
 			viewHolder = (ViewHolder) view.getTag();
 		}
+		// 复用的 view 也要换成这一行的头像
+		viewHolder.bitmap = avatarCache.get(user);
 
 		viewHolder.picture.setImageBitmap(viewHolder.bitmap);
 
 		viewHolder.name.setText(user.getName());
 		viewHolder.steps.setText(user.getToday_step() + "");
 
-		pedometerDB = PedometerDB.getInstance(context);
-		User user1 = pedometerDB.loadUser(user.getObjectId());
-
-		if (user1 != null) {
+		if (addedIds == null) {
+			viewHolder.add.setVisibility(View.GONE);
+			viewHolder.btn.setVisibility(View.GONE);
+		} else if (addedIds.contains(user.getObjectId())) {
 			viewHolder.add.setVisibility(View.VISIBLE);
 			viewHolder.btn.setVisibility(View.GONE);
 		} else {
@@ -117,21 +134,26 @@ public class MyAdapter extends BaseAdapter {
 
 				@Override
 				public void onClick(View arg0) {
-					user = user_list.get(position);
-					pedometerDB.saveUser(user);
-					Group group = pedometerDB.loadGroup(user.getGroupId());
-					if (group != null) {
-						group.setTotal_number(group.getTotal_number()
-								+ user.getToday_step());
-						group.setMember_number(group.getMember_number() + 1);
-						pedometerDB.updateGroup(group);
-						MyAdapter.this.notifyDataSetChanged();
-						reFlashListView.invalidate();
-					} else {
-						Toast.makeText(context, "group is null ",
-								Toast.LENGTH_SHORT).show();
-					}
-
+					final User added = user_list.get(position);
+					// 先显示为已添加，在后台保存，失败了再恢复
+					addedIds.add(added.getObjectId());
+					MyAdapter.this.notifyDataSetChanged();
+					reFlashListView.invalidate();
+					repository.addMember(added,
+							new PedometerRepository.Callback<Void>() {
+
+								@Override
+								public void onResult(Void result) {
+								}
+
+								@Override
+								public void onError(Exception e) {
+									addedIds.remove(added.getObjectId());
+									MyAdapter.this.notifyDataSetChanged();
+									Toast.makeText(context, "添加失败",
+											Toast.LENGTH_SHORT).show();
+								}
+							});
 				}
 			});
 		}
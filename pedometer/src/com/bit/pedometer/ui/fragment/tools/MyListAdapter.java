@@ -24,14 +24,14 @@ public class MyListAdapter extends BaseAdapter {
 	private Context context;
 	private List<User> users;
 	private ReFlashListView reFlashListView;
-	private ToRoundBitmap toRoundBitmap;
+	private AvatarCache avatarCache;
 
 	public MyListAdapter(Context context, List<User> users,
 			ReFlashListView reFlashListView) {
 		this.context = context;
 		this.users = users;
 		this.reFlashListView = reFlashListView;
-		toRoundBitmap = ToRoundBitmap.getInstance(context);
+		avatarCache = AvatarCache.getInstance(context);
 	}
 
 	public void changeData(List<User> users) {
@@ -77,8 +77,7 @@ public class MyListAdapter extends BaseAdapter {
 			view = convertView;
 			viewHolder = (ViewHolder) view.getTag();
 		}
-		viewHolder.bitmap = toRoundBitmap.toRoundBitmap(PictureUtil
-				.Byte2Bitmap(user.getPicture()));
+		viewHolder.bitmap = avatarCache.get(user);
 		viewHolder.name.setText(user.getName());
 		viewHolder.steps.setText(user.getToday_step() + "");
 		viewHolder.picture.setImageBitmap(viewHolder.bitmap);
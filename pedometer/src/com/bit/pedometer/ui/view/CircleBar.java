@@ -3,7 +3,8 @@ package com.bit.pedometer.ui.view;
 import com.bit.pedometer.ui.fragment.tools.DisplayUtil;
 import com.bit.pedometer.data.bean.Weather;
 
-import android.annotation.SuppressLint;
+import android.animation.ValueAnimator;
+import android.animation.ValueAnimator.AnimatorUpdateListener;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -14,8 +15,6 @@ import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
 import android.util.AttributeSet;
 import android.view.View;
-import android.view.animation.Animation;
-import android.view.animation.Transformation;
 
 /**
  * 这是继承view的一个重新绘图的圆圈的一个类 Author: liyachao email:296777513@qq.com Date: 2015-1-5
@@ -40,11 +39,30 @@ public class CircleBar extends View {
 	private int mTextSize1;// 上下文字大小
 	private int mDistance;// 上下文字的距离
 	private int mDistance1;//圆形离父布局的距离
-	BarAnimation anim;// 动画类
+	private ValueAnimator anim;// 动画类
 	private int mType;// 根据传入的数值判断应该显示的页面
 	private Weather weather;
 	private int max = 10000;// 圆形所代表最大的数值
 
+	// 以下对象预先分配，文字只在内容改变时测量，onDraw 中不分配内存
+	private final Rect bounds = new Rect();
+	private char[] middleChars = new char[16];// 中间的文字
+	private int middleStart;
+	private int middleLength;
+	private float middleWidth;
+	private int middleHeight;
+	private String upText = "";// 上面文字
+	private float upWidth;
+	private int upHeight;
+	private String downText = "";// 底部文字
+	private float downWidth;
+	private int downHeight;
+	// 上次显示的天气，天气对象会被外部修改，所以记下各个字段
+	private String lastWeather;
+	private String lastPtime;
+	private String lastTemp1;
+	private String lastTemp2;
+
 	public CircleBar(Context context) {
 		super(context);
 		init();
@@ -105,13 +123,23 @@ public class CircleBar extends View {
 		// 扇形弧度
 		mProgress = 0;
 
-		// 动画类
-		anim = new BarAnimation();
+		// 动画类，由 Choreographer 驱动，每帧只在 UI 线程 invalidate 一次
+		anim = ValueAnimator.ofFloat(0f, 1f);
 		anim.setDuration(1000);
+		anim.addUpdateListener(new AnimatorUpdateListener() {
+			@Override
+			public void onAnimationUpdate(ValueAnimator animation) {
+				float fraction = animation.getAnimatedFraction();
+				mProgressAni = fraction * mProgress;
+				setCount((int) (fraction * mText));
+				invalidate();
+			}
+		});
+
+		updateLabels();
 
 	}
 
-	@SuppressLint("DrawAllocation")
 	@Override
 	protected void onDraw(Canvas canvas) {
 		int halfHeight = getHeight() / 2;
@@ -133,44 +161,15 @@ public class CircleBar extends View {
 		// 根据mProgressAni（角度）画扇形
 		canvas.drawArc(mColorWheelRectangle, -90, mProgressAni, false,
 				mColorWheelPaint);
-		Rect bounds = new Rect();
-		String middleText = "";// 中间的文字
-		String upText = "";// 上面文字
-		String downText = "";// 底部文字
-
-		if (this.mType == 1) {// 第一个页面
-			upText = "步数";
-			downText = "目标:10000";
-			middleText = String.valueOf(mCount);
-		} else if (this.mType == 2) {// 第二个页面
-			upText = "卡路里";
-			downText = "目标:10000";
-			middleText = String.valueOf(mCount);
-		} else if (this.mType == 3) {// 第三个页面
-			upText = weather.getPtime();
-			downText = weather.getTemp1() + "~" + weather.getTemp2();
-			middleText = weather.getWeather();
-			textPaint.setTextSize(mTextSize2);
-			// textPaint1.setTextSize(mTextSize);
-		}
-		// 获得当前画笔绘制文本的宽和高
-		textPaint.getTextBounds(middleText, 0, middleText.length(), bounds);
+		float centerX = mColorWheelRectangle.centerX();
+		float centerY = mColorWheelRectangle.centerY();
 		// drawText各个属性的意思(文字,x坐标,y坐标,画笔)
-		canvas.drawText(middleText, (mColorWheelRectangle.centerX())
-				- (textPaint.measureText(middleText) / 2),
-				mColorWheelRectangle.centerY() + bounds.height() / 2, textPaint);
-		textPaint1.getTextBounds(upText, 0, upText.length(), bounds);
-		canvas.drawText(
-				upText,
-				(mColorWheelRectangle.centerX())
-						- (textPaint1.measureText(upText) / 2),
-				mColorWheelRectangle.centerY() + bounds.height() / 2
-						- mDistance, textPaint1);
-		textPaint1.getTextBounds(downText, 0, downText.length(), bounds);
-		canvas.drawText(downText, (mColorWheelRectangle.centerX())
-				- (textPaint1.measureText(downText) / 2),
-				mColorWheelRectangle.centerY() + bounds.height() / 2
-						+ mDistance, textPaint1);
+		canvas.drawText(middleChars, middleStart, middleLength, centerX
+				- middleWidth / 2, centerY + middleHeight / 2, textPaint);
+		canvas.drawText(upText, centerX - upWidth / 2, centerY + upHeight / 2
+				- mDistance, textPaint1);
+		canvas.drawText(downText, centerX - downWidth / 2, centerY
+				+ downHeight / 2 + mDistance, textPaint1);
 	}
 
 	// 测量父布局的大小
@@ -190,14 +189,21 @@ public class CircleBar extends View {
 
 	// 对外的一个接口，用来开启动画
 	public void startCustomAnimation() {
-		this.startAnimation(anim);
+		anim.cancel();
+		anim.start();
 	}
 
 	// 第三个页面用于显示天气
 	public void setWeather(Weather weather) {
+		if (this.mType == 3 && this.weather != null
+				&& sameWeather(weather)) {
+			return;// 天气没有变化时不重绘
+		}
 		this.weather = weather;
 		this.mType = 3;
 		this.mProgress = 360;
+		rememberWeather(weather);
+		updateLabels();
 	//	this.startCustomAnimation();
 		this.postInvalidate();
 	}
@@ -211,50 +217,124 @@ public class CircleBar extends View {
 	public void setProgress(int progress, int mType) {
 
 		if (this.mType != mType) {
-			this.startCustomAnimation();
-			mProgress = (Float.valueOf(progress) / Float.valueOf(max)) * 360;
+			mProgress = ((float) progress / (float) max) * 360;
 			mText = progress;
 			this.mType = mType;
+			updateLabels();
+			this.startCustomAnimation();
 		} else {
-			this.mCount = progress;
-			this.mProgressAni = (Float.valueOf(progress) / Float.valueOf(max)) * 360;
+			if (progress == mText) {
+				return;// 数值没有变化时不重绘
+			}
+			mText = progress;
+			mProgress = ((float) progress / (float) max) * 360;
+			if (anim.isRunning()) {
+				return;// 动画会过渡到新的数值
+			}
+			this.mProgressAni = mProgress;
+			setCount(progress);
 		}
 
 		this.postInvalidate();// 可以用子线程更新视图的方法调用。
 	}
 
+	private boolean sameWeather(Weather weather) {
+		return equals(lastWeather, weather.getWeather())
+				&& equals(lastPtime, weather.getPtime())
+				&& equals(lastTemp1, weather.getTemp1())
+				&& equals(lastTemp2, weather.getTemp2());
+	}
+
+	private void rememberWeather(Weather weather) {
+		lastWeather = weather.getWeather();
+		lastPtime = weather.getPtime();
+		lastTemp1 = weather.getTemp1();
+		lastTemp2 = weather.getTemp2();
+	}
+
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static String nonNull(String text) {
+		return text == null ? "" : text;
+	}
+
 	/**
-	 * 继承animation的一个动画类
-	 * 
-	 * @author liyachao
-	 *
+	 * 页面或天气改变时更新并测量上下文字和中间文字
 	 */
-	public class BarAnimation extends Animation {
-		/**
-		 * Initializes expand collapse animation, has two types, collapse (1)
-		 * and expand (0).
-		 * 
-		 * @param view
-		 *            The view to animate
-		 * @param type
-		 *            The type of animation: 0 will expand from gone and 0 size
-		 *            to visible and layout size defined in xml. 1 will collapse
-		 *            view and set to gone
-		 */
-		@Override
-		protected void applyTransformation(float interpolatedTime,
-				Transformation t) {
-			super.applyTransformation(interpolatedTime, t);
-			if (interpolatedTime < 1.0f) {
-				mProgressAni = interpolatedTime * mProgress;
-				mCount = (int) (interpolatedTime * mText);
-			} else {
-				mProgressAni = mProgress;
-				mCount = mText;
+	private void updateLabels() {
+		String middleText = null;
+		if (this.mType == 1) {// 第一个页面
+			upText = "步数";
+			downText = "目标:10000";
+			textPaint.setTextSize(mTextSize);
+		} else if (this.mType == 2) {// 第二个页面
+			upText = "卡路里";
+			downText = "目标:10000";
+			textPaint.setTextSize(mTextSize);
+		} else if (this.mType == 3) {// 第三个页面
+			upText = nonNull(weather.getPtime());
+			downText = weather.getTemp1() + "~" + weather.getTemp2();
+			middleText = nonNull(weather.getWeather());
+			textPaint.setTextSize(mTextSize2);
+		} else {
+			upText = "";
+			downText = "";
+			middleText = "";
+			textPaint.setTextSize(mTextSize);
+		}
+
+		// 获得当前画笔绘制文本的宽和高
+		textPaint1.getTextBounds(upText, 0, upText.length(), bounds);
+		upWidth = textPaint1.measureText(upText);
+		upHeight = bounds.height();
+		textPaint1.getTextBounds(downText, 0, downText.length(), bounds);
+		downWidth = textPaint1.measureText(downText);
+		downHeight = bounds.height();
+
+		if (middleText != null) {
+			if (middleChars.length < middleText.length()) {
+				middleChars = new char[middleText.length()];
 			}
-			postInvalidate();
+			middleText.getChars(0, middleText.length(), middleChars, 0);
+			middleStart = 0;
+			middleLength = middleText.length();
+			measureMiddle();
+		} else {
+			setCount(mCount);
+		}
+	}
 
+	/**
+	 * 更新中间的数字，数字写在 middleChars 的末尾，避免创建字符串
+	 *
+	 * @param count
+	 */
+	private void setCount(int count) {
+		mCount = count;
+		if (mType == 3) {
+			return;// 天气页面中间显示的是天气
 		}
+		int i = middleChars.length;
+		long value = Math.abs((long) count);
+		do {
+			middleChars[--i] = (char) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		if (count < 0) {
+			middleChars[--i] = '-';
+		}
+		middleStart = i;
+		middleLength = middleChars.length - i;
+		measureMiddle();
+	}
+
+	private void measureMiddle() {
+		textPaint.getTextBounds(middleChars, middleStart, middleLength, bounds);
+		middleWidth = textPaint.measureText(middleChars, middleStart,
+				middleLength);
+		middleHeight = bounds.height();
 	}
 
 }
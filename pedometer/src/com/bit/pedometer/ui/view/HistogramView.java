@@ -3,7 +3,6 @@ package com.bit.pedometer.ui.view;
 import com.bit.pedometer.R;
 import com.bit.pedometer.ui.fragment.tools.DisplayUtil;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -17,13 +16,21 @@ import android.view.View;
 import android.view.animation.Animation;
 import android.view.animation.Transformation;
 
+/**
+ * 柱状图。坐标轴、网格线和坐标文字不随数据变化，只在尺寸或坐标文字改变时绘制到缓存的位图里，
+ * onDraw 只画缓存位图和柱子，柱子用预先分配的 Rect 绘制，动画过程中不分配内存。
+ * 柱子的数目由 setProgress 的数组长度决定（7、30、90、365 天都可以），
+ * 底部文字过密时隔几个显示一个。
+ */
 public class HistogramView extends View {
 
+	private static final int MAX_VALUE = 10000;// 纵轴代表的最大步数
+
 	private Paint xLinePaint;// 坐标轴 轴线 画笔：
 	private Paint hLinePaint;// 坐标轴水平内部 虚线画笔
 	private Paint titlePaint;// 绘制文本的画笔
 	private Paint paint;// 矩形画笔 柱状图的样式信息
-	private int[] progress;// 7 条
+	private int[] progress;// 每条柱子的值
 	private int[] aniProgress;// 实现动画的值
 	private final int TRUE = 1;// 在柱状图上显示数字
 	private int[] text;
@@ -35,6 +42,26 @@ public class HistogramView extends View {
 
 	private HistogramAnimation ani;
 
+	// 缓存的坐标轴图层，只在尺寸或坐标文字改变时重画
+	private Bitmap chromeBitmap;
+	private Canvas chromeCanvas;
+	private boolean chromeDirty = true;
+
+	// 预先分配的柱子矩形和数字缓冲区，onDraw 中不再分配
+	private final Rect barRect = new Rect();
+	private final char[] valueChars = new char[11];
+
+	// 预先换算好的尺寸
+	private int dp3;
+	private int dp5;
+	private int dp10;
+	private int dp13;
+	private int dp20;
+	private int dp25;
+	private int dp30;
+	private int dp50;
+	private int labelGap;
+
 	public HistogramView(Context context) {
 		super(context);
 		init(context, null);
@@ -51,10 +78,21 @@ public class HistogramView extends View {
 		ySteps = new String[] { "10k", "7.5k", "5k", "2.5k", "0" };
 		xWeeks = new String[] { "周一", "周二", "周三", "周四", "周五", "周六", "周日" };
 		text = new int[] { 0, 0, 0, 0, 0, 0, 0 };
+		progress = new int[] { 0, 0, 0, 0, 0, 0, 0 };
 		aniProgress = new int[] { 0, 0, 0, 0, 0, 0, 0 };
 		ani = new HistogramAnimation();
 		ani.setDuration(2000);
 
+		dp3 = dp2px(3);
+		dp5 = dp2px(5);
+		dp10 = dp2px(10);
+		dp13 = dp2px(13);
+		dp20 = dp2px(20);
+		dp25 = dp2px(25);
+		dp30 = dp2px(30);
+		dp50 = dp2px(50);
+		labelGap = dp2px(4);
+
 		xLinePaint = new Paint();
 		hLinePaint = new Paint();
 		titlePaint = new Paint();
@@ -63,10 +101,25 @@ public class HistogramView extends View {
 		xLinePaint.setColor(Color.DKGRAY);
 		hLinePaint.setColor(Color.LTGRAY);
 		titlePaint.setColor(Color.BLACK);
+
+		hLinePaint.setTextAlign(Align.CENTER);
+
+		titlePaint.setTextAlign(Align.RIGHT);
+		titlePaint.setTextSize(sp2px(12));
+		titlePaint.setAntiAlias(true);
+		titlePaint.setStyle(Paint.Style.FILL);
+
+		paint.setAntiAlias(true);// 抗锯齿效果
+		paint.setStyle(Paint.Style.FILL);
+		paint.setTextSize(sp2px(15));// 字体大小
+		paint.setColor(Color.parseColor("#6DCAEC"));// 字体颜色
+
+		bitmap = BitmapFactory.decodeResource(getResources(), R.drawable.column);
 	}
 
 	public void setWeekd(String[] xWeeks) {
 		this.xWeeks = xWeeks;
+		chromeDirty = true;
 		this.postInvalidate();
 	}
 
@@ -78,92 +131,186 @@ public class HistogramView extends View {
 	}
 
 	public void setProgress(int[] progress) {
-		bitmap = BitmapFactory.decodeResource(getResources(),
-				R.drawable.column);
 		this.progress = progress;
+		if (aniProgress.length != progress.length) {
+			aniProgress = new int[progress.length];
+			// 柱子数目变了，底部文字的间隔要重新计算
+			chromeDirty = true;
+		}
+		if (text.length != progress.length) {
+			text = new int[progress.length];
+		}
 		// this.invalidate(); //失效的意思。
 		// this.postInvalidate(); // 可以子线程 更新视图的方法调用。
 		this.startAnimation(ani);
 	}
 
-	@SuppressLint("DrawAllocation")
+	/**
+	 * 得到横坐标 x 处的柱子序号
+	 *
+	 * @param x
+	 *            相对于控件的横坐标
+	 * @return 柱子的序号，不在任何柱子上时返回 -1
+	 */
+	public int getColumnAt(float x) {
+		int step = getStep();
+		int half = getBarWidth(step) / 2;
+		for (int i = 0; i < aniProgress.length; i++) {
+			int center = getBarLeft(step, i) + getBarWidth(step) / 2;
+			if (x > center - Math.max(half, dp10) && x < center + Math.max(half, dp10)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+
+		if (chromeBitmap != null) {
+			chromeBitmap.recycle();
+			chromeBitmap = null;
+		}
+		if (w > 0 && h > 0) {
+			chromeBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+			chromeCanvas = new Canvas(chromeBitmap);
+		}
+		chromeDirty = true;
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas) {
-		// TODO Auto-generated method stub
 		super.onDraw(canvas);
 
-		int width = getWidth();
-		int height = getHeight() - dp2px(50);
+		if (chromeBitmap == null) {
+			return;
+		}
 
-		// 1 绘制坐标线：startX, startY, stopX, stopY, paint
-		// canvas.drawLine(50, 10, 50, height, xLinePaint);
+		// 1 坐标轴只在需要时重画
+		if (chromeDirty) {
+			chromeBitmap.eraseColor(Color.TRANSPARENT);
+			drawChrome(chromeCanvas);
+			chromeDirty = false;
+		}
+		canvas.drawBitmap(chromeBitmap, 0, 0, null);
 
-		canvas.drawLine(dp2px(30), height + dp2px(3), width - dp2px(30), height
-				+ dp2px(3), xLinePaint);
+		// 2 绘制矩形
+		int height = getHeight() - dp50;
+		int leftHeight = height - dp5;
+		int step = getStep();
+		int barWidth = getBarWidth(step);
 
-		// 2 绘制坐标内部的水平线
+		for (int i = 0; i < aniProgress.length; i++) {// 循环遍历将柱状图形画出来
+			int value = aniProgress[i];
+
+			int rh = (int) (leftHeight - leftHeight * (value / (double) MAX_VALUE));
+			if (rh < 0) {
+				rh = 0;// 超过最大值的柱子画到顶端为止
+			}
 
-		int leftHeight = height - dp2px(5);// 左侧外周的 需要划分的高度：
+			barRect.left = getBarLeft(step, i);
+			barRect.right = barRect.left + barWidth;
+			barRect.top = rh + dp10;
+			barRect.bottom = height;
 
+			canvas.drawBitmap(bitmap, null, barRect, paint);
+
+			if (i < text.length && this.text[i] == TRUE) {
+				int start = formatValue(value);
+				canvas.drawText(valueChars, start, valueChars.length - start,
+						barRect.left, rh + dp5, paint);
+			}
+		}
+	}
+
+	/**
+	 * 绘制不随数据变化的坐标轴、网格线和坐标文字
+	 *
+	 * @param canvas
+	 */
+	private void drawChrome(Canvas canvas) {
+		int width = getWidth();
+		int height = getHeight() - dp50;
+
+		// 1 绘制坐标线：startX, startY, stopX, stopY, paint
+		canvas.drawLine(dp30, height + dp3, width - dp30, height + dp3,
+				xLinePaint);
+
+		// 2 绘制坐标内部的水平线
+		int leftHeight = height - dp5;// 左侧外周的 需要划分的高度：
 		int hPerHeight = leftHeight / 4;// 分成四部分
 
-		hLinePaint.setTextAlign(Align.CENTER);
 		for (int i = 0; i < 4; i++) {
-			canvas.drawLine(dp2px(30), dp2px(10) + i * hPerHeight, width
-					- dp2px(30), dp2px(10) + i * hPerHeight, hLinePaint);
+			canvas.drawLine(dp30, dp10 + i * hPerHeight, width - dp30, dp10
+					+ i * hPerHeight, hLinePaint);
 		}
 
 		// 3 绘制 Y 周坐标
-
-		titlePaint.setTextAlign(Align.RIGHT);
-		titlePaint.setTextSize(sp2px(12));
-		titlePaint.setAntiAlias(true);
-		titlePaint.setStyle(Paint.Style.FILL);
 		for (int i = 0; i < ySteps.length; i++) {
-			canvas.drawText(ySteps[i], dp2px(25), dp2px(13) + i * hPerHeight,
-					titlePaint);
+			canvas.drawText(ySteps[i], dp25, dp13 + i * hPerHeight, titlePaint);
 		}
 
-		// 4 绘制 X 周 做坐标
-		int xAxisLength = width - dp2px(30);
-		int columCount = xWeeks.length + 1;
-		int step = xAxisLength / columCount;
+		// 4 绘制 X 周 做坐标，文字过密时隔几个显示一个
+		int step = getStep();
+		int labels = Math.min(xWeeks.length, aniProgress.length);
+		int labelWidth = 0;
+		for (int i = 0; i < labels; i++) {
+			labelWidth = Math.max(labelWidth,
+					(int) titlePaint.measureText(xWeeks[i]));
+		}
+		int stride = 1;
+		if (step > 0) {
+			stride = Math.max(1, (labelWidth + labelGap + step - 1) / step);
+		}
 
-		for (int i = 0; i < columCount - 1; i++) {
+		for (int i = 0; i < labels; i += stride) {
 			// text, baseX, baseY, textPaint
-			canvas.drawText(xWeeks[i], dp2px(25) + step * (i + 1),
-					height + dp2px(20), titlePaint);
+			canvas.drawText(xWeeks[i], dp25 + step * (i + 1), height + dp20,
+					titlePaint);
 		}
+	}
 
-		// 5 绘制矩形
-
-		if (aniProgress != null && aniProgress.length > 0) {
-			for (int i = 0; i < aniProgress.length; i++) {// 循环遍历将7条柱状图形画出来
-				int value = aniProgress[i];
-				paint.setAntiAlias(true);// 抗锯齿效果
-				paint.setStyle(Paint.Style.FILL);
-				paint.setTextSize(sp2px(15));// 字体大小
-				paint.setColor(Color.parseColor("#6DCAEC"));// 字体颜色
-				Rect rect = new Rect();// 柱状图的形状
-
-				rect.left = step * (i + 1);
-				rect.right = dp2px(30) + step * (i + 1);
-				int rh = (int) (leftHeight - leftHeight * (value / 10000.0));
-				rect.top = rh + dp2px(10);
-				rect.bottom = height;
-
-				
+	/**
+	 * 相邻柱子的间距
+	 */
+	private int getStep() {
+		int xAxisLength = getWidth() - dp30;
+		int columCount = aniProgress.length + 1;
+		return xAxisLength / columCount;
+	}
 
-				canvas.drawBitmap(bitmap, null, rect, paint);
+	/**
+	 * 柱子的宽度，柱子多时变窄
+	 */
+	private int getBarWidth(int step) {
+		int width = Math.min(dp30, step * 3 / 4);
+		return Math.max(1, width);
+	}
 
-				if (this.text[i] == TRUE) {
-					canvas.drawText(value + "", dp2px(15) + step * (i + 1)
-							- dp2px(15), rh + dp2px(5), paint);
-				}
+	private int getBarLeft(int step, int i) {
+		// 柱子与原来的 7 天布局一样从 step * (i + 1) 开始，变窄时居中
+		return step * (i + 1) + (dp30 - getBarWidth(step)) / 2;
+	}
 
-			}
+	/**
+	 * 把数字写到 valueChars 的末尾，避免每帧创建字符串
+	 *
+	 * @param value
+	 * @return 数字在 valueChars 中的起始位置
+	 */
+	private int formatValue(int value) {
+		int i = valueChars.length;
+		boolean negative = value < 0;
+		long v = Math.abs((long) value);
+		do {
+			valueChars[--i] = (char) ('0' + v % 10);
+			v /= 10;
+		} while (v > 0);
+		if (negative) {
+			valueChars[--i] = '-';
 		}
-
+		return i;
 	}
 
 	private int dp2px(int value) {
@@ -176,7 +323,7 @@ public class HistogramView extends View {
 
 	/**
 	 * 集成animation的一个动画类
-	 * 
+	 *
 	 * @author 李垭超
 	 *
 	 */
@@ -185,12 +332,13 @@ public class HistogramView extends View {
 		protected void applyTransformation(float interpolatedTime,
 				Transformation t) {
 			super.applyTransformation(interpolatedTime, t);
+			int count = Math.min(aniProgress.length, progress.length);
 			if (interpolatedTime < 1.0f) {
-				for (int i = 0; i < aniProgress.length; i++) {
+				for (int i = 0; i < count; i++) {
 					aniProgress[i] = (int) (progress[i] * interpolatedTime);
 				}
 			} else {
-				for (int i = 0; i < aniProgress.length; i++) {
+				for (int i = 0; i < count; i++) {
 					aniProgress[i] = progress[i];
 				}
 			}
@@ -198,4 +346,4 @@ public class HistogramView extends View {
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+package com.bit.pedometer.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import com.bit.pedometer.BuildConfig;
+import com.bit.pedometer.ui.view.CircleBar;
+import com.bit.pedometer.ui.view.HistogramView;
+import com.xpf.benchmark.RenderBenchmark;
+
+/**
+ * 自定义控件的绘制性能测试。数据按界面上实际的方式更新：
+ * 计步圆圈每帧收到新的步数，柱状图隔一段时间换一组数据并播放动画。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = RenderBenchmark.SDK)
+public class ViewRenderBenchmarkTest {
+
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 480;
+
+	@Test
+	public void histogramView() {
+		final HistogramView view = new HistogramView(
+				RuntimeEnvironment.application);
+		final int[] text = new int[30];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = 1;
+		}
+		view.setText(text);
+		final int[] progress = new int[30];
+
+		RenderBenchmark benchmark = new RenderBenchmark("HistogramView", view,
+				WIDTH, HEIGHT / 2);
+
+		RenderBenchmark.assertNoRegression(benchmark
+				.run(new RenderBenchmark.FrameUpdater() {
+					@Override
+					public void onFrame(int frame) {
+						// 每 2 秒换一组 30 天的数据，中间是柱子的动画
+						if (frame % 120 == 0) {
+							for (int i = 0; i < progress.length; i++) {
+								progress[i] = (frame * 37 + i * 811) % 12000;
+							}
+							view.setProgress(progress);
+						}
+					}
+				}));
+	}
+
+	@Test
+	public void circleBar() {
+		final CircleBar view = new CircleBar(RuntimeEnvironment.application);
+		view.setMax(10000);
+
+		RenderBenchmark benchmark = new RenderBenchmark("CircleBar", view,
+				WIDTH, HEIGHT);
+
+		RenderBenchmark.assertNoRegression(benchmark
+				.run(new RenderBenchmark.FrameUpdater() {
+					@Override
+					public void onFrame(int frame) {
+						// 走路时大约每秒两步，每帧都收到当前步数；每 5 秒切换一次页面
+						view.setProgress(frame / 30, 1 + frame / 300 % 2);
+					}
+				}));
+	}
+}
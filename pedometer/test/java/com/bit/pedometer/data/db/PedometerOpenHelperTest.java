@@ -0,0 +1,107 @@
+package com.bit.pedometer.data.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.bit.pedometer.BuildConfig;
+
+/**
+ * 从版本 1 的数据库升级。版本 1 的 step 表没有任何约束，旧版本写进去的数据要能升级上来
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PedometerOpenHelperTest {
+
+    private static final String DB_NAME = "upgrade.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void upgradesVersion1WithBadStepRows() {
+        SQLiteDatabase v1 = createVersion1();
+        insertStep(v1, "100", "20160101", "a");
+        insertStep(v1, "200", "20160101", "a");
+        // FragmentHistory 以前在没有注册时用 null 的 objectId 保存过测试数据
+        insertStep(v1, "5", "20160102", null);
+        insertStep(v1, null, "20160103", "a");
+        insertStep(v1, "7", "2016ab01", "a");
+        insertStep(v1, "9", "201601", "a");
+        v1.close();
+
+        SQLiteDatabase db = new PedometerOpenHelper(context, DB_NAME, null,
+                PedometerDB.VERSION).getWritableDatabase();
+        try {
+            assertEquals(PedometerDB.VERSION, db.getVersion());
+            // 只有 a 在 2016-01-01 的一天，取当天最大的步数
+            assertEquals("a 16801 200", dump(db,
+                    "select userId, bucket, steps from step_day order by userId, bucket"));
+            // 重复的一天合并，userId 为 null 的行丢掉，number 为 null 的行步数为 0
+            assertEquals("200 20160101 a\n0 20160103 a\n7 2016 a\n9 201601 a", dump(db,
+                    "select number, date, userId from step order by id"));
+        } finally {
+            db.close();
+        }
+    }
+
+    private SQLiteDatabase createVersion1() {
+        File file = context.getDatabasePath(DB_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.execSQL("create table step(id integer primary key autoincrement, number text, "
+                + "date integer, userId text)");
+        db.execSQL("create table group1(id integer primary key autoincrement, "
+                + "total_number integer, member_number integer)");
+        db.execSQL("create table user(objectId text, name text, sex text, weight integer, "
+                + "step_length integer, sensitivity integer, picture blob, groupId integer, "
+                + "today_step integer)");
+        db.execSQL("create table weather(cityid integer primary key, city text, temp1 text, "
+                + "temp2 text, weather text, ptime text)");
+        db.setVersion(1);
+        return db;
+    }
+
+    private static void insertStep(SQLiteDatabase db, String number, String date,
+                                   String userId) {
+        db.execSQL("insert into step(number, date, userId) values(?, ?, ?)",
+                new Object[]{number, date, userId});
+    }
+
+    private static String dump(SQLiteDatabase db, String sql) {
+        StringBuilder builder = new StringBuilder();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (builder.length() > 0) {
+                    builder.append('\n');
+                }
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    if (i > 0) {
+                        builder.append(' ');
+                    }
+                    builder.append(cursor.getString(i));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return builder.toString();
+    }
+}
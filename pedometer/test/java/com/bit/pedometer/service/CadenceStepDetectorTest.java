@@ -0,0 +1,159 @@
+package com.bit.pedometer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.bit.pedometer.BuildConfig;
+
+/**
+ * 用模拟的走路信号测试 CadenceStepDetector：不同的采样率、采样时间抖动和传感器噪声下，
+ * 计到的步数和实际走的步数最多差一步，站着不动时不计步。
+ * <p>
+ * 计到一步时会调用 StepCounter.add，StepChannel 要用主线程的 Looper，所以在 Robolectric 下运行。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CadenceStepDetectorTest {
+
+	private static final double GRAVITY = 9.81;
+	private static final double WALK_SECONDS = 60;
+
+	// 采样间隔随机变化 ±20%
+	private static final double JITTER = 0.2;
+
+	private static final double[] RATES_HZ = { 25, 50, 100, 200 };
+	private static final double[] CADENCES_HZ = { 1.2, 1.6, 2.0, 2.5, 3.0 };
+
+	@Before
+	public void setUp() {
+		StepDetector.SENSITIVITY = 10;
+	}
+
+	@Test
+	public void countsWalkingAtEveryRate() {
+		for (double rate : RATES_HZ) {
+			for (double cadence : CADENCES_HZ) {
+				for (boolean cadenceEnabled : new boolean[] { true, false }) {
+					CadenceStepDetector detector = new CadenceStepDetector();
+					detector.setCadenceEnabled(cadenceEnabled);
+
+					int expected = (int) (cadence * WALK_SECONDS);
+					int steps = walk(detector, rate, cadence, 2.0, 0.05,
+							new Random(43));
+
+					assertEquals(rate + "Hz 采样，步频 " + cadence + "Hz，估计步频 "
+							+ cadenceEnabled, expected, steps, 1);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void estimatesCadence() {
+		for (double rate : RATES_HZ) {
+			CadenceStepDetector detector = new CadenceStepDetector();
+			walk(detector, rate, 2.0, 2.0, 0.05, new Random(43));
+
+			// 频点间隔 0.2Hz，也就是每分钟 12 步
+			assertEquals(rate + "Hz 采样", 120, detector.getCadence(), 12);
+		}
+	}
+
+	@Test
+	public void countsStepsAddedToStepCounter() {
+		CadenceStepDetector detector = new CadenceStepDetector();
+		int before = StepCounter.get();
+
+		int steps = walk(detector, 50, 2.0, 2.0, 0.05, new Random(43));
+
+		assertTrue(steps > 0);
+		assertEquals(before + steps, StepCounter.get());
+	}
+
+	@Test
+	public void ignoresNoiseWhileStandingStill() {
+		for (double rate : RATES_HZ) {
+			CadenceStepDetector detector = new CadenceStepDetector();
+
+			// 只有传感器噪声，没有走路的加速度
+			int steps = walk(detector, rate, 2.0, 0, 0.05, new Random(43));
+
+			assertEquals(rate + "Hz 采样", 0, steps);
+		}
+	}
+
+	@Test
+	public void ignoresRepeatedTimestamps() {
+		CadenceStepDetector detector = new CadenceStepDetector();
+		Random random = new Random(43);
+		int steps = 0;
+		long timestamp = 1000000000L;
+		for (int i = 0; i < 50 * WALK_SECONDS; i++) {
+			timestamp += 20000000L;
+			float[] sample = sample(timestamp / 1e9, 2.0, 2.0, 0.05, random);
+			// 每个采样上报两次，第二次不应该再计步
+			for (int copy = 0; copy < 2; copy++) {
+				if (detector.addSample(timestamp, sample[0], sample[1],
+						sample[2])) {
+					steps++;
+				}
+			}
+		}
+
+		assertEquals((int) (2.0 * WALK_SECONDS), steps, 1);
+	}
+
+	/**
+	 * 模拟走一段时间
+	 *
+	 * @param rate
+	 *            平均采样率，Hz
+	 * @param cadence
+	 *            步频，Hz
+	 * @param amplitude
+	 *            走路引起的加速度幅度，m/s²
+	 * @param noise
+	 *            传感器噪声的标准差，m/s²
+	 * @return 检测到的步数
+	 */
+	private static int walk(CadenceStepDetector detector, double rate,
+			double cadence, double amplitude, double noise, Random random) {
+		int steps = 0;
+		double t = 0;
+		long start = 1000000000L;
+		while (t < WALK_SECONDS) {
+			float[] sample = sample(t, cadence, amplitude, noise, random);
+			if (detector.addSample(start + (long) (t * 1e9), sample[0],
+					sample[1], sample[2])) {
+				steps++;
+			}
+			t += (1 + JITTER * (2 * random.nextDouble() - 1)) / rate;
+		}
+		return steps;
+	}
+
+	/**
+	 * 手机斜放在口袋里时的三轴加速度：重力加上沿着身体上下方向的走路加速度。
+	 * 每一步有一个主峰，还有脚跟着地引起的二次谐波。
+	 */
+	private static float[] sample(double t, double cadence, double amplitude,
+			double noise, Random random) {
+		double phase = 2 * Math.PI * cadence * t;
+		double vertical = GRAVITY + amplitude
+				* (Math.sin(phase) + 0.3 * Math.sin(2 * phase + 0.5));
+
+		// 上下方向在手机坐标系里是 (0.3, 0.8, 0.52)，已经归一化
+		return new float[] {
+				(float) (0.3 * vertical + noise * random.nextGaussian()),
+				(float) (0.8 * vertical + noise * random.nextGaussian()),
+				(float) (0.52 * vertical + noise * random.nextGaussian()) };
+	}
+}
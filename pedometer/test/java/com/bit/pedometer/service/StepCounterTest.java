@@ -0,0 +1,113 @@
+package com.bit.pedometer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.bit.pedometer.BuildConfig;
+
+/**
+ * StepCounter 的测试。计数是整个进程共享的静态状态，所以每个测试只比较前后的差。
+ * <p>
+ * add 会通过 StepChannel 通知主线程，所以在 Robolectric 下运行。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StepCounterTest {
+
+	private static final int THREADS = 8;
+	private static final int STEPS_PER_THREAD = 200000;
+
+	@Test
+	public void concurrentAddsAreNotLost() throws InterruptedException {
+		int day = StepCounter.today();
+		final int before = StepCounter.get();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int step = 0; step < STEPS_PER_THREAD; step++) {
+						StepCounter.add(1);
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		start.countDown();
+		// 界面重新创建时会用数据库里的步数恢复，比内存里小的值不能覆盖计数
+		while (StepCounter.get() < before + THREADS * STEPS_PER_THREAD / 2) {
+			StepCounter.restore(before);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// 测试跨过零点时计数会从 0 开始
+		assumeTrue(StepCounter.today() == day);
+		assertEquals(before + THREADS * STEPS_PER_THREAD, StepCounter.get());
+		assertEquals(StepCounter.get(), StepCounter.snapshot().steps);
+	}
+
+	@Test
+	public void restoreKeepsTheLargerCount() {
+		int before = StepCounter.get();
+
+		StepCounter.restore(before + 100);
+		assertEquals(before + 100, StepCounter.get());
+
+		StepCounter.restore(before + 50);
+		assertEquals(before + 100, StepCounter.get());
+
+		assertEquals(before + 101, StepCounter.add(1));
+	}
+
+	@Test
+	public void snapshotIsToday() {
+		StepCounter.DayTotal snapshot = StepCounter.snapshot();
+
+		assertEquals(StepCounter.today(), snapshot.day);
+		assertEquals(StepCounter.get(), snapshot.steps);
+		assertEquals(snapshot.day, StepCounter.parseDay(snapshot.getDate()));
+	}
+
+	@Test
+	public void rolloverWithinTheSameDayKeepsTheCount() {
+		StepCounter.add(1);
+		int before = StepCounter.get();
+
+		StepCounter.rollover();
+
+		assertEquals(before, StepCounter.get());
+	}
+
+	@Test
+	public void formatsAndParsesDays() {
+		assertEquals(0, StepCounter.parseDay("19700101"));
+		assertEquals("19700101", StepCounter.formatDay(0));
+
+		int day = StepCounter.parseDay("20160229");
+		assertEquals("20160229", StepCounter.formatDay(day));
+		assertEquals("20160301", StepCounter.formatDay(day + 1));
+		assertEquals(StepCounter.currentMinute() / (24 * 60),
+				StepCounter.today());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBadDates() {
+		StepCounter.parseDay("today");
+	}
+}
@@ -0,0 +1,573 @@
+package com.xpf.benchmark;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.robolectric.Robolectric;
+import org.robolectric.util.Scheduler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Renders a view to an offscreen canvas frame by frame under Robolectric and
+ * measures the time and the bytes allocated per frame. This is the one copy
+ * of the harness; render-benchmark.gradle adds it to the test sources of the
+ * modules that apply it.
+ * <p>
+ * The view is laid out in a parent FrameLayout, as it would be on screen.
+ * Robolectric's shadow of View.draw() only draws the background, so the
+ * harness calls onDraw() itself. The foreground scheduler is paused while
+ * rendering, otherwise Robolectric runs whatever the update posts right away,
+ * and a view animation started by the update would run to its end inside the
+ * measurement. Before every frame the Robolectric clock advances by one frame
+ * interval, which runs posted invalidations, view animations and animators
+ * outside of the measurement. The measurement covers the update of the data
+ * and onDraw().
+ * <p>
+ * The numbers are only relative. Nothing is rasterized under Robolectric,
+ * and its ShadowCanvas appends a text description of every draw call to the
+ * bitmap, which costs more than the views themselves and allocates a varying
+ * amount depending on the JIT. The harness therefore draws into a canvas that
+ * discards the draw calls, so what is measured is the view's own work in
+ * onDraw(): its arithmetic and the objects it allocates per frame. None of it
+ * says how long a frame takes on a device; measure on a device for absolute
+ * frame times. To make the baseline independent of the speed of the machine,
+ * the frame time is compared as a ratio to a reference view with a fixed
+ * amount of work, measured in the same run.
+ * <p>
+ * A run fails when the relative frame time or the allocation per frame
+ * exceeds the committed baseline by more than the tolerance, and when the
+ * baseline has no entry for the view. The tests only write their results to
+ * the build directory. Running them with -PrecordRenderBaseline skips the
+ * comparison, and Gradle then merges the results into the baseline.
+ */
+public class RenderBenchmark {
+    /**
+     * The SDK level every render benchmark runs at, for @Config(sdk = ...).
+     */
+    public static final int SDK = 23;
+
+    public static final int DEFAULT_WARMUP_FRAMES = 200;
+    public static final int DEFAULT_FRAMES = 600;
+
+    // A 60 Hz display
+    private static final long FRAME_INTERVAL_MILLIS = 16;
+
+    // Frame times are noisy on a shared build machine, allocations are not
+    private static final double TIME_TOLERANCE = 0.5;
+    private static final double ALLOCATION_TOLERANCE = 0.1;
+
+    // Slack for views that draw in a few microseconds, where timer noise
+    // swamps the tolerance, in frames of the reference view
+    private static final double RELATIVE_TIME_SLACK = 0.1;
+
+    // Slack for allocation by the JVM itself, like class loading or the JIT
+    private static final long ALLOCATION_SLACK_BYTES = 64;
+
+    private static final String BASELINE_PROPERTY = "renderBenchmark.baseline";
+    private static final String OUTPUT_PROPERTY = "renderBenchmark.output";
+    private static final String RECORD_PROPERTY = "renderBenchmark.record";
+
+    private static final String RELATIVE_TIME_KEY = ".relativeFrameTime";
+    private static final String BYTES_KEY = ".bytesPerFrame";
+
+    /**
+     * An interface for the code that changes the data of the view before a
+     * frame, like a sensor event would.
+     */
+    public interface FrameUpdater {
+        /**
+         * Update the view.
+         *
+         * @param frame The number of the frame, counting from 0 including the
+         *              warmup frames.
+         */
+        public void onFrame(int frame);
+    }
+
+    /**
+     * The measurements of a run.
+     */
+    public static class Result {
+        public final String name;
+        public final int frames;
+
+        public final long medianNanosPerFrame;
+        public final long p90NanosPerFrame;
+
+        // The median frame time of the view over that of the reference view
+        public final double relativeFrameTime;
+
+        // -1 if the JVM can't measure allocation
+        public final long bytesPerFrame;
+
+        Result(String name, int frames, long medianNanosPerFrame,
+               long p90NanosPerFrame, double relativeFrameTime,
+               long bytesPerFrame) {
+            this.name = name;
+            this.frames = frames;
+            this.medianNanosPerFrame = medianNanosPerFrame;
+            this.p90NanosPerFrame = p90NanosPerFrame;
+            this.relativeFrameTime = relativeFrameTime;
+            this.bytesPerFrame = bytesPerFrame;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d frames, median %.1f us, p90 %.1f us, %.2fx reference, %d bytes per frame",
+                    name, frames, medianNanosPerFrame / 1000.0,
+                    p90NanosPerFrame / 1000.0, relativeFrameTime, bytesPerFrame);
+        }
+    }
+
+    private final String name;
+    private final View view;
+    private final int width;
+    private final int height;
+
+    private final Method onDraw;
+    private final Object[] onDrawArguments;
+
+    /**
+     * Initialize a new RenderBenchmark.
+     *
+     * @param name   The name of the baseline entry.
+     * @param view   The view to render.
+     * @param width  The width of the view in pixels.
+     * @param height The height of the view in pixels.
+     */
+    public RenderBenchmark(String name, View view, int width, int height) {
+        this.name = name;
+        this.view = view;
+        this.width = width;
+        this.height = height;
+
+        try {
+            onDraw = View.class.getDeclaredMethod("onDraw", Canvas.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+
+        onDraw.setAccessible(true);
+
+        // Reused, so that invoking onDraw() does not allocate
+        onDrawArguments = new Object[]{new DiscardingCanvas(Bitmap.createBitmap(
+                width, height, Bitmap.Config.ARGB_8888))};
+    }
+
+    public View getView() {
+        return view;
+    }
+
+    /**
+     * Render the default number of frames.
+     *
+     * @param updater Changes the data before each frame.
+     * @return The measurements.
+     */
+    public Result run(FrameUpdater updater) {
+        return run(DEFAULT_WARMUP_FRAMES, DEFAULT_FRAMES, updater);
+    }
+
+    /**
+     * Render frames of the reference view and then of the view.
+     *
+     * @param warmupFrames The frames rendered before measuring, so that the
+     *                     JIT and lazily created caches settle.
+     * @param frames       The frames measured.
+     * @param updater      Changes the data before each frame.
+     * @return The measurements.
+     */
+    public Result run(int warmupFrames, int frames, FrameUpdater updater) {
+        final ReferenceView reference = new ReferenceView(view);
+
+        long[] referenceNanos = measure(reference, warmupFrames, frames,
+                new FrameUpdater() {
+                    @Override
+                    public void onFrame(int frame) {
+                        reference.setFrame(frame);
+                    }
+                }, null);
+
+        long[] bytes = new long[1];
+        long[] nanos = measure(view, warmupFrames, frames, updater, bytes);
+
+        long median = nanos[frames / 2];
+        long referenceMedian = Math.max(1, referenceNanos[frames / 2]);
+
+        return new Result(name, frames, median, nanos[frames * 9 / 10],
+                (double) median / referenceMedian,
+                bytes[0] >= 0 ? bytes[0] / frames : -1);
+    }
+
+    /**
+     * Write the result to the build directory and fail if it regressed beyond
+     * the tolerance of its baseline, or if there is no baseline for it.
+     *
+     * @param result The result.
+     */
+    public static void assertNoRegression(Result result) {
+        String baselinePath = System.getProperty(BASELINE_PROPERTY);
+        String outputPath = System.getProperty(OUTPUT_PROPERTY);
+
+        if (baselinePath == null || outputPath == null) {
+            fail(result + "\nThe render benchmarks need the " + BASELINE_PROPERTY
+                    + " and " + OUTPUT_PROPERTY
+                    + " system properties, run them through Gradle");
+        }
+
+        writeResult(new File(outputPath), result);
+
+        if (Boolean.getBoolean(RECORD_PROPERTY)) {
+            return;
+        }
+
+        File file = new File(baselinePath);
+        Properties baseline = load(file);
+
+        String relativeTime = baseline.getProperty(result.name + RELATIVE_TIME_KEY);
+        String bytes = baseline.getProperty(result.name + BYTES_KEY);
+
+        if (relativeTime == null || bytes == null) {
+            fail(result + "\nNo baseline for " + result.name + " in " + file
+                    + ", record one with -PrecordRenderBaseline");
+        }
+
+        double baselineRelativeTime = Double.parseDouble(relativeTime);
+        long baselineBytes = Long.parseLong(bytes);
+
+        if (result.relativeFrameTime > baselineRelativeTime * (1 + TIME_TOLERANCE)
+                + RELATIVE_TIME_SLACK) {
+            fail(String.format(Locale.US,
+                    "%s\nRelative frame time regressed from %.2fx to %.2fx the reference",
+                    result, baselineRelativeTime, result.relativeFrameTime));
+        }
+
+        if (baselineBytes >= 0 && result.bytesPerFrame >= 0
+                && result.bytesPerFrame > baselineBytes
+                * (1 + ALLOCATION_TOLERANCE) + ALLOCATION_SLACK_BYTES) {
+            fail(String.format(Locale.US,
+                    "%s\nAllocation regressed from %d to %d bytes per frame",
+                    result, baselineBytes, result.bytesPerFrame));
+        }
+    }
+
+    /**
+     * Render frames of a view and measure them.
+     *
+     * @param bytes Receives the bytes allocated over all measured frames, -1
+     *              if the JVM can't measure it, or null.
+     * @return The sorted frame times.
+     */
+    private long[] measure(View view, int warmupFrames, int frames,
+                           FrameUpdater updater, long[] bytes) {
+        ViewGroup parent = new FrameLayout(view.getContext());
+        parent.addView(view, new FrameLayout.LayoutParams(width, height));
+
+        parent.measure(View.MeasureSpec.makeMeasureSpec(width,
+                View.MeasureSpec.EXACTLY), View.MeasureSpec.makeMeasureSpec(
+                height, View.MeasureSpec.EXACTLY));
+        parent.layout(0, 0, width, height);
+
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        boolean paused = scheduler.isPaused();
+
+        scheduler.pause();
+
+        for (int i = 0; i < warmupFrames; i++) {
+            advanceClock();
+
+            updater.onFrame(i);
+            draw(view);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean allocationSupported = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads)
+                .isThreadAllocatedMemorySupported();
+
+        long thread = Thread.currentThread().getId();
+        long[] nanos = new long[frames];
+        long allocated = 0;
+
+        for (int i = 0; i < frames; i++) {
+            advanceClock();
+
+            long bytesBefore = allocationSupported ? getAllocatedBytes(threads, thread) : 0;
+            long start = System.nanoTime();
+
+            updater.onFrame(warmupFrames + i);
+            draw(view);
+
+            nanos[i] = System.nanoTime() - start;
+
+            if (allocationSupported) {
+                allocated += getAllocatedBytes(threads, thread) - bytesBefore;
+            }
+        }
+
+        parent.removeView(view);
+
+        if (!paused) {
+            scheduler.unPause();
+        }
+
+        if (bytes != null) {
+            bytes[0] = allocationSupported ? allocated : -1;
+        }
+
+        Arrays.sort(nanos);
+
+        return nanos;
+    }
+
+    private void draw(View view) {
+        try {
+            onDraw.invoke(view, onDrawArguments);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("onDraw() of " + name + " threw",
+                    e.getCause());
+        }
+    }
+
+    private void advanceClock() {
+        Robolectric.getForegroundThreadScheduler().advanceBy(
+                FRAME_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threads, long thread) {
+        return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(thread);
+    }
+
+    /**
+     * Write a result to its own file in the output directory, where Gradle
+     * picks it up for the report and for recording the baseline.
+     */
+    private static void writeResult(File directory, Result result) {
+        Properties properties = new Properties();
+
+        properties.setProperty(result.name + RELATIVE_TIME_KEY,
+                String.format(Locale.US, "%.3f", result.relativeFrameTime));
+        properties.setProperty(result.name + BYTES_KEY,
+                Long.toString(result.bytesPerFrame));
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Can't create " + directory);
+        }
+
+        OutputStream out = null;
+
+        try {
+            out = new FileOutputStream(new File(directory, result.name
+                    + ".properties"));
+            properties.store(out, result.toString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write the result of "
+                    + result.name, e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static Properties load(File file) {
+        Properties properties = new Properties();
+
+        if (!file.exists()) {
+            return properties;
+        }
+
+        InputStream in = null;
+
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read " + file, e);
+        } finally {
+            close(in);
+        }
+
+        return properties;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+    }
+
+    /**
+     * A canvas that discards the draw calls Robolectric's ShadowCanvas would
+     * record, and every overload of drawText(), so that it doesn't matter
+     * which one a view uses. The others are native and do nothing under
+     * Robolectric anyway.
+     */
+    private static class DiscardingCanvas extends Canvas {
+        DiscardingCanvas(Bitmap bitmap) {
+            super(bitmap);
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+        }
+
+        @Override
+        public void drawText(String text, int start, int end, float x, float y,
+                             Paint paint) {
+        }
+
+        @Override
+        public void drawText(char[] text, int index, int count, float x,
+                             float y, Paint paint) {
+        }
+
+        @Override
+        public void drawText(CharSequence text, int start, int end, float x,
+                             float y, Paint paint) {
+        }
+
+        @Override
+        public void drawPaint(Paint paint) {
+        }
+
+        @Override
+        public void drawColor(int color) {
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint) {
+        }
+
+        @Override
+        public void drawPath(Path path, Paint paint) {
+        }
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        }
+
+        @Override
+        public void drawArc(RectF oval, float startAngle, float sweepAngle,
+                            boolean useCenter, Paint paint) {
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom,
+                             Paint paint) {
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX,
+                             float stopY, Paint paint) {
+        }
+
+        @Override
+        public void drawOval(RectF oval, Paint paint) {
+        }
+    }
+
+    /**
+     * A view with a fixed amount of drawing per frame, a dial with a moving
+     * needle and a label, that the frame time of the view under test is
+     * compared to.
+     */
+    private static class ReferenceView extends View {
+        private static final int TICKS = 60;
+
+        private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final String[] labels = new String[TICKS];
+
+        private int frame;
+
+        ReferenceView(View view) {
+            super(view.getContext());
+
+            paint.setStrokeWidth(2);
+            paint.setTextSize(24);
+
+            for (int i = 0; i < TICKS; i++) {
+                labels[i] = Integer.toString(i);
+            }
+        }
+
+        void setFrame(int frame) {
+            this.frame = frame;
+            invalidate();
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            float cx = getWidth() / 2f;
+            float cy = getHeight() / 2f;
+            float radius = Math.min(cx, cy) * 0.9f;
+
+            canvas.drawColor(Color.WHITE);
+
+            paint.setColor(Color.GRAY);
+
+            for (int i = 0; i < TICKS; i++) {
+                double angle = 2 * Math.PI * i / TICKS;
+                float sin = (float) Math.sin(angle);
+                float cos = (float) Math.cos(angle);
+
+                canvas.drawLine(cx + 0.9f * radius * sin, cy - 0.9f * radius * cos,
+                        cx + radius * sin, cy - radius * cos, paint);
+            }
+
+            double angle = 2 * Math.PI * (frame % TICKS) / TICKS;
+
+            paint.setColor(Color.RED);
+            canvas.drawLine(cx, cy, cx + radius * (float) Math.sin(angle),
+                    cy - radius * (float) Math.cos(angle), paint);
+            canvas.drawCircle(cx, cy, radius * 0.05f, paint);
+
+            paint.setColor(Color.BLACK);
+            canvas.drawText(labels[frame % TICKS], cx, cy + radius / 2, paint);
+        }
+    }
+}